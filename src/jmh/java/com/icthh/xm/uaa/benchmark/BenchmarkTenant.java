@@ -0,0 +1,41 @@
+package com.icthh.xm.uaa.benchmark;
+
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.commons.tenant.TenantContextUtils;
+import com.icthh.xm.commons.tenant.internal.DefaultTenantContextHolder;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import com.icthh.xm.uaa.service.TenantPropertiesService;
+
+/**
+ * Tenant related fixtures shared by benchmarks.
+ */
+public final class BenchmarkTenant {
+
+    public static final String TENANT = "XM";
+
+    private static final String TENANT_PROPERTIES_PATTERN = "/config/tenants/{tenantName}/uaa/uaa.yml";
+
+    private BenchmarkTenant() {
+    }
+
+    /**
+     * Creates a tenant context holder bound to {@link #TENANT} for the calling thread.
+     */
+    public static TenantContextHolder tenantContextHolder() {
+        TenantContextHolder holder = new DefaultTenantContextHolder();
+        TenantContextUtils.setTenant(holder, TENANT);
+        return holder;
+    }
+
+    /**
+     * Creates the real {@link TenantPropertiesService} fed from an in-memory uaa.yml instead of the config server.
+     */
+    public static TenantPropertiesService tenantPropertiesService(TenantContextHolder holder, String uaaYml) {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setTenantPropertiesPathPattern(TENANT_PROPERTIES_PATTERN);
+        applicationProperties.setTenantPropertiesName("uaa.yml");
+        TenantPropertiesService service = new TenantPropertiesService(applicationProperties, null, holder);
+        service.onRefresh(TENANT_PROPERTIES_PATTERN.replace("{tenantName}", TENANT), uaaYml);
+        return service;
+    }
+}
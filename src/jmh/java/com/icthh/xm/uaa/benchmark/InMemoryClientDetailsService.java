@@ -0,0 +1,28 @@
+package com.icthh.xm.uaa.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.NoSuchClientException;
+
+/**
+ * Map backed stand-in for the database/LEP backed {@link ClientDetailsService}.
+ */
+public class InMemoryClientDetailsService implements ClientDetailsService {
+
+    private final Map<String, ClientDetails> clients = new ConcurrentHashMap<>();
+
+    public void add(ClientDetails clientDetails) {
+        clients.put(clientDetails.getClientId(), clientDetails);
+    }
+
+    @Override
+    public ClientDetails loadClientByClientId(String clientId) {
+        ClientDetails clientDetails = clients.get(clientId);
+        if (clientDetails == null) {
+            throw new NoSuchClientException("No client with requested id: " + clientId);
+        }
+        return clientDetails;
+    }
+}
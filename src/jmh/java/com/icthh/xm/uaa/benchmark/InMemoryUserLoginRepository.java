@@ -0,0 +1,42 @@
+package com.icthh.xm.uaa.benchmark;
+
+import com.icthh.xm.uaa.domain.User;
+import com.icthh.xm.uaa.domain.UserLogin;
+import com.icthh.xm.uaa.repository.UserLoginRepository;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Map backed stand-in for {@link UserLoginRepository}. Only the lookups used on the token path are supported,
+ * any other repository method fails fast so a benchmark never silently measures a no-op.
+ */
+public class InMemoryUserLoginRepository {
+
+    private final Map<String, UserLogin> logins = new ConcurrentHashMap<>();
+
+    public void add(User user) {
+        user.getLogins().forEach(login -> logins.put(login.getLogin().toLowerCase(), login));
+    }
+
+    public UserLoginRepository asRepository() {
+        return (UserLoginRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{UserLoginRepository.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "findOneByLoginIgnoreCase":
+                        return Optional.ofNullable(logins.get(((String) args[0]).toLowerCase()));
+                    case "findOneByLogin":
+                        return Optional.ofNullable(logins.get((String) args[0]));
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    case "toString":
+                        return InMemoryUserLoginRepository.class.getSimpleName();
+                    default:
+                        throw new UnsupportedOperationException(method.getName() + " is not supported in benchmarks");
+                }
+            });
+    }
+}
@@ -0,0 +1,154 @@
+package com.icthh.xm.uaa.benchmark;
+
+import com.icthh.xm.uaa.domain.UserLogin;
+import com.icthh.xm.uaa.repository.UserLoginRepository;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Case insensitive login lookups of {@link UserLoginRepository} on a table of a million logins, with the SQL
+ * Hibernate generates for them.
+ *
+ * <p>{@link #findByUpperLogin()} and {@link #findByUpperLoginContaining()} are the former
+ * {@code upper(login) = upper(?)} and {@code upper(login) like upper(?)} queries, which can not use an index.
+ * {@link #findByNormalizedLogin()} and {@link #findByNormalizedLoginContaining()} compare the indexed
+ * {@code normalized_login} column. The default H2 database has no trigram index, so the "contains" search still
+ * scans there; run against PostgreSQL with pg_trgm to measure it, e.g.
+ * {@code ./gradlew jmh -PjmhInclude=LoginLookupBenchmark -PjmhArgs="-p url=jdbc:postgresql://localhost/bench
+ * -p user=postgres"}.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class LoginLookupBenchmark {
+
+    private static final int LOGINS = 1_000_000;
+    private static final int BATCH_SIZE = 10_000;
+    private static final String TABLE = "bench_user_login";
+
+    @Param("jdbc:h2:mem:login-lookup;DB_CLOSE_DELAY=-1")
+    private String url;
+
+    @Param("sa")
+    private String user;
+
+    @Param("")
+    private String password;
+
+    private Connection connection;
+    private PreparedStatement upperLogin;
+    private PreparedStatement upperLoginContaining;
+    private PreparedStatement normalizedLogin;
+    private PreparedStatement normalizedLoginContaining;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        connection = DriverManager.getConnection(url, user, password);
+        boolean postgres = connection.getMetaData().getDatabaseProductName().toLowerCase().contains("postgres");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + TABLE);
+            statement.execute("CREATE TABLE " + TABLE + " (id bigint PRIMARY KEY, login varchar(255) NOT NULL,"
+                + " normalized_login varchar(255) NOT NULL)");
+        }
+        insertLogins();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE UNIQUE INDEX idx_" + TABLE + " ON " + TABLE + " (login)");
+            statement.execute("CREATE INDEX idx_" + TABLE + "_normalized ON " + TABLE + " (normalized_login)");
+            if (postgres) {
+                statement.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+                statement.execute("CREATE INDEX idx_" + TABLE + "_trgm ON " + TABLE
+                    + " USING gin (normalized_login gin_trgm_ops)");
+                statement.execute("ANALYZE " + TABLE);
+            }
+        }
+
+        String select = "SELECT id, login FROM " + TABLE + " WHERE ";
+        upperLogin = connection.prepareStatement(select + "upper(login) = upper(?)");
+        upperLoginContaining = connection.prepareStatement(select + "upper(login) like upper(?) LIMIT 20");
+        normalizedLogin = connection.prepareStatement(select + "normalized_login = ?");
+        normalizedLoginContaining = connection.prepareStatement(select + "normalized_login like ? LIMIT 20");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + TABLE);
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public long findByUpperLogin() throws SQLException {
+        upperLogin.setString(1, "User" + randomIndex() + "@Example.com");
+        return readFirstId(upperLogin);
+    }
+
+    @Benchmark
+    public long findByNormalizedLogin() throws SQLException {
+        normalizedLogin.setString(1, UserLogin.normalize("User" + randomIndex() + "@Example.com"));
+        return readFirstId(normalizedLogin);
+    }
+
+    @Benchmark
+    public long findByUpperLoginContaining() throws SQLException {
+        upperLoginContaining.setString(1, "%R" + randomIndex() + "@%");
+        return readFirstId(upperLoginContaining);
+    }
+
+    @Benchmark
+    public long findByNormalizedLoginContaining() throws SQLException {
+        normalizedLoginContaining.setString(1, "%" + UserLogin.normalize("R" + randomIndex() + "@") + "%");
+        return readFirstId(normalizedLoginContaining);
+    }
+
+    private void insertLogins() throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement(
+            "INSERT INTO " + TABLE + " (id, login, normalized_login) VALUES (?, ?, ?)")) {
+            for (int i = 0; i < LOGINS; i++) {
+                String login = "user" + i + "@example.com";
+                insert.setLong(1, i);
+                insert.setString(2, login);
+                insert.setString(3, UserLogin.normalize(login));
+                insert.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static int randomIndex() {
+        return ThreadLocalRandom.current().nextInt(LOGINS);
+    }
+
+    private static long readFirstId(PreparedStatement statement) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next() ? resultSet.getLong(1) : -1;
+        }
+    }
+}
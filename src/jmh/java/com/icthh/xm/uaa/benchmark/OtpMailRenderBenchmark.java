@@ -0,0 +1,154 @@
+package com.icthh.xm.uaa.benchmark;
+
+import static com.icthh.xm.uaa.benchmark.BenchmarkTenant.TENANT;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import com.icthh.xm.commons.config.client.service.TenantConfigService;
+import com.icthh.xm.commons.mail.provider.MailProviderService;
+import com.icthh.xm.commons.tenant.TenantKey;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import com.icthh.xm.uaa.domain.User;
+import com.icthh.xm.uaa.service.mail.MailDispatcher;
+import com.icthh.xm.uaa.service.mail.MailService;
+import com.icthh.xm.uaa.service.mail.TenantEmailTemplateService;
+import freemarker.template.Configuration;
+import io.github.jhipster.config.JHipsterProperties;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.mail.internet.MimeMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.StaticMessageSource;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+/**
+ * Renders batches of 10,000 OTP emails through {@link MailService}, with a mail sender that drops the messages,
+ * for a tenant with 50 mail settings.
+ *
+ * <p>{@link #renderOtpEmails()} renders from the compiled template cached by {@link TenantEmailTemplateService}.
+ * {@link #renderOtpEmailsCompilingTemplate()} refreshes the template before every email, so it is parsed for every
+ * email, which is what every email used to do. Scores are per email.
+ * Run with {@code ./gradlew jmh -PjmhInclude=OtpMailRenderBenchmark}.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Threads(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class OtpMailRenderBenchmark {
+
+    private static final int OTP_EMAILS = 10_000;
+    private static final int MAIL_SETTINGS = 50;
+
+    private static final String EMAIL_PATH_PATTERN =
+        "/config/tenants/{tenantName}/uaa/emails/{langKey}/{fileName}.ftl";
+    private static final String TEMPLATE_NAME = "tfaOtpEmail";
+    private static final String TEMPLATE_PATH = EMAIL_PATH_PATTERN.replace("{tenantName}", TENANT)
+        .replace("{langKey}", "en").replace("{fileName}", TEMPLATE_NAME);
+    private static final String TEMPLATE = "<!DOCTYPE html>\n"
+        + "<html>\n"
+        + "<head><title>${tenant} one time password</title></head>\n"
+        + "<body>\n"
+        + "<p>Dear <#if (user.firstName)??>${user.firstName}<#else>${user.userKey}</#if>,</p>\n"
+        + "<p>Your one time password is <b>${otp}</b>.</p>\n"
+        + "<#list 1..3 as line><p>Do not share it with anyone (${line}).</p></#list>\n"
+        + "<p><a href=\"${appBaseUrl}\">${appBaseUrl}</a></p>\n"
+        + "</body>\n"
+        + "</html>\n";
+
+    private MailService mailService;
+    private TenantEmailTemplateService tenantEmailTemplateService;
+
+    private TenantKey tenantKey;
+    private User user;
+    private Map<String, Object> model;
+
+    @Setup
+    public void setup() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setEmailPathPattern(EMAIL_PATH_PATTERN);
+        tenantEmailTemplateService = new TenantEmailTemplateService(applicationProperties,
+            new Configuration(Configuration.VERSION_2_3_0));
+        tenantEmailTemplateService.onRefresh(TEMPLATE_PATH, TEMPLATE);
+
+        JHipsterProperties jHipsterProperties = new JHipsterProperties();
+        jHipsterProperties.getMail().setFrom("<tenantname>@xm-online.com");
+
+        StaticMessageSource messageSource = new StaticMessageSource();
+        messageSource.setUseCodeAsDefaultMessage(true);
+
+        // stub only mocks do not record the invocations of the measured loop
+        TenantConfigService tenantConfigService = mock(TenantConfigService.class, withSettings().stubOnly());
+        when(tenantConfigService.getConfig()).thenReturn(tenantConfig());
+
+        mailService = new MailService(jHipsterProperties, new MailProviderService(new DroppingMailSender()),
+            messageSource, tenantEmailTemplateService, BenchmarkTenant.tenantContextHolder(), tenantConfigService,
+            null, new MailDispatcher(applicationProperties, new MetricRegistry()));
+
+        tenantKey = TenantKey.valueOf(TENANT);
+        user = new User();
+        user.setUserKey("bench-user");
+        user.setFirstName("Bench");
+        user.setLangKey("en");
+        model = new HashMap<>();
+        model.put("otp", "123456");
+        model.put("user", user);
+        model.put("tenant", TENANT);
+        model.put("appBaseUrl", "http://xm.local:8080");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OTP_EMAILS)
+    public void renderOtpEmails() {
+        for (int i = 0; i < OTP_EMAILS; i++) {
+            sendOtpEmail();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OTP_EMAILS)
+    public void renderOtpEmailsCompilingTemplate() {
+        for (int i = 0; i < OTP_EMAILS; i++) {
+            tenantEmailTemplateService.onRefresh(TEMPLATE_PATH, TEMPLATE);
+            sendOtpEmail();
+        }
+    }
+
+    private void sendOtpEmail() {
+        mailService.sendEmailFromTemplate(tenantKey, user, TEMPLATE_NAME, "email.tfa.otp.title",
+            "bench-user@xm-online.com", model, "rid");
+    }
+
+    private static Map<String, Object> tenantConfig() {
+        List<Object> mailSettings = new ArrayList<>();
+        for (int i = 0; i < MAIL_SETTINGS; i++) {
+            String templateName = i == MAIL_SETTINGS - 1 ? TEMPLATE_NAME : "template" + i;
+            mailSettings.add(ImmutableMap.of(
+                "templateName", templateName,
+                "subject", ImmutableMap.of("en", "Subject of " + templateName),
+                "from", ImmutableMap.of("en", templateName + "@xm-online.com")));
+        }
+        return ImmutableMap.of("mailSettings", mailSettings);
+    }
+
+    private static class DroppingMailSender extends JavaMailSenderImpl {
+
+        @Override
+        protected void doSend(MimeMessage[] mimeMessages, Object[] originalMessages) {
+            // the benchmark measures rendering, not SMTP
+        }
+    }
+}
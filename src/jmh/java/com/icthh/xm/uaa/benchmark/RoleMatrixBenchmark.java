@@ -0,0 +1,137 @@
+package com.icthh.xm.uaa.benchmark;
+
+import static com.icthh.xm.uaa.benchmark.BenchmarkTenant.TENANT;
+import static java.util.Collections.singletonList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.icthh.xm.commons.config.client.repository.CommonConfigRepository;
+import com.icthh.xm.commons.config.client.repository.TenantConfigRepository;
+import com.icthh.xm.commons.config.domain.Configuration;
+import com.icthh.xm.commons.permission.config.PermissionProperties;
+import com.icthh.xm.commons.permission.service.PermissionMappingService;
+import com.icthh.xm.uaa.service.EnvironmentService;
+import com.icthh.xm.uaa.service.TenantRoleService;
+import com.icthh.xm.uaa.service.dto.RoleMatrixDTO;
+import java.util.Collections;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link TenantRoleService#getRoleMatrix()} for a tenant with 50 roles and 2,000 privileges.
+ *
+ * <p>{@link #getRoleMatrix()} is served from the parsed role snapshot, {@link #getRoleMatrixParsingConfiguration()}
+ * parses roles, permissions and privileges before building the matrix, which is what every call used to do
+ * (without the config service round trip, which is not measured here).
+ * Run with {@code ./gradlew jmh -PjmhInclude=RoleMatrixBenchmark}.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Threads(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class RoleMatrixBenchmark {
+
+    private static final int ROLES = 50;
+    private static final int PRIVILEGES = 2_000;
+    private static final int MS_COUNT = 4;
+
+    private static final String ROLES_PATH = "/config/tenants/{tenantName}/roles.yml";
+    private static final String PERMISSIONS_PATH = "/config/tenants/{tenantName}/permissions.yml";
+    private static final String PRIVILEGES_PATH = "/config/tenants/privileges.yml";
+    private static final String CUSTOM_PRIVILEGES_PATH = "/config/tenants/{tenantName}/custom-privileges.yml";
+
+    private TenantRoleService tenantRoleService;
+
+    private String rolesYml;
+    private String permissionsYml;
+    private String privilegesYml;
+
+    @Setup
+    public void setup() {
+        rolesYml = rolesYml();
+        permissionsYml = permissionsYml();
+        privilegesYml = privilegesYml();
+
+        PermissionProperties permissionProperties = mock(PermissionProperties.class);
+        when(permissionProperties.getRolesSpecPath()).thenReturn(ROLES_PATH);
+        when(permissionProperties.getPermissionsSpecPath()).thenReturn(PERMISSIONS_PATH);
+        when(permissionProperties.getPrivilegesSpecPath()).thenReturn(PRIVILEGES_PATH);
+
+        TenantConfigRepository tenantConfigRepository = mock(TenantConfigRepository.class);
+        when(tenantConfigRepository.getConfigFullPath(TENANT, "/api" + ROLES_PATH)).thenReturn(rolesYml);
+        when(tenantConfigRepository.getConfigFullPath(TENANT, "/api" + PERMISSIONS_PATH)).thenReturn(permissionsYml);
+
+        CommonConfigRepository commonConfigRepository = mock(CommonConfigRepository.class);
+        when(commonConfigRepository.getConfig(isNull(), eq(singletonList(PRIVILEGES_PATH))))
+            .thenReturn(Collections.singletonMap(PRIVILEGES_PATH,
+                Configuration.of().path(PRIVILEGES_PATH).content(privilegesYml).build()));
+
+        tenantRoleService = new TenantRoleService(permissionProperties, tenantConfigRepository, null, null,
+            BenchmarkTenant.tenantContextHolder(), null, mock(EnvironmentService.class), commonConfigRepository,
+            null, new PermissionMappingService(value -> true));
+        tenantRoleService.getRoleMatrix();
+    }
+
+    @Benchmark
+    public RoleMatrixDTO getRoleMatrix() {
+        return tenantRoleService.getRoleMatrix();
+    }
+
+    @Benchmark
+    public RoleMatrixDTO getRoleMatrixParsingConfiguration() {
+        tenantRoleService.onRefresh(ROLES_PATH.replace("{tenantName}", TENANT), rolesYml);
+        tenantRoleService.onRefresh(PERMISSIONS_PATH.replace("{tenantName}", TENANT), permissionsYml);
+        tenantRoleService.onRefresh(CUSTOM_PRIVILEGES_PATH.replace("{tenantName}", TENANT), "");
+        tenantRoleService.onRefresh(PRIVILEGES_PATH, privilegesYml);
+        return tenantRoleService.getRoleMatrix();
+    }
+
+    private static String rolesYml() {
+        StringBuilder yml = new StringBuilder("---\n");
+        for (int role = 0; role < ROLES; role++) {
+            yml.append("ROLE_").append(role).append(":\n")
+                .append("  description: \"Role ").append(role).append("\"\n")
+                .append("  createdDate: \"2020-01-01T00:00:00Z\"\n")
+                .append("  createdBy: \"xm\"\n");
+        }
+        return yml.toString();
+    }
+
+    private static String privilegesYml() {
+        StringBuilder yml = new StringBuilder("---\n");
+        for (int ms = 0; ms < MS_COUNT; ms++) {
+            yml.append("ms").append(ms).append(":\n");
+            for (int privilege = ms; privilege < PRIVILEGES; privilege += MS_COUNT) {
+                yml.append("- key: \"PRIVILEGE.").append(privilege).append("\"\n")
+                    .append("  resources:\n")
+                    .append("  - \"resource\"\n")
+                    .append("  customDescription: \"Privilege ").append(privilege).append("\"\n");
+            }
+        }
+        return yml.toString();
+    }
+
+    private static String permissionsYml() {
+        StringBuilder yml = new StringBuilder("---\n");
+        for (int ms = 0; ms < MS_COUNT; ms++) {
+            yml.append("ms").append(ms).append(":\n");
+            for (int role = 0; role < ROLES; role++) {
+                yml.append("  ROLE_").append(role).append(":\n");
+                for (int privilege = ms; privilege < PRIVILEGES; privilege += MS_COUNT) {
+                    yml.append("  - privilegeKey: \"PRIVILEGE.").append(privilege).append("\"\n")
+                        .append("    disabled: ").append((privilege + role) % 3 == 0).append("\n");
+                }
+            }
+        }
+        return yml.toString();
+    }
+}
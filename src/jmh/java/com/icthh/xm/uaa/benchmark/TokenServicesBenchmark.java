@@ -0,0 +1,211 @@
+package com.icthh.xm.uaa.benchmark;
+
+import static com.icthh.xm.uaa.benchmark.BenchmarkTenant.TENANT;
+import static com.icthh.xm.uaa.config.Constants.KEYSTORE_ALIAS;
+import static com.icthh.xm.uaa.config.Constants.KEYSTORE_PATH;
+import static com.icthh.xm.uaa.config.Constants.KEYSTORE_PSWRD;
+
+import com.codahale.metrics.MetricRegistry;
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import com.icthh.xm.uaa.domain.User;
+import com.icthh.xm.uaa.domain.UserLogin;
+import com.icthh.xm.uaa.domain.UserLoginType;
+import com.icthh.xm.uaa.security.CachingJwtTokenStore;
+import com.icthh.xm.uaa.security.DomainJwtAccessTokenConverter;
+import com.icthh.xm.uaa.security.DomainJwtAccessTokenDetailsPostProcessor;
+import com.icthh.xm.uaa.security.DomainTokenServices;
+import com.icthh.xm.uaa.security.DomainUserDetails;
+import com.icthh.xm.uaa.security.DomainUserDetailsCache;
+import com.icthh.xm.uaa.security.DomainUserDetailsService;
+import com.icthh.xm.uaa.security.TokenConstraintsService;
+import com.icthh.xm.uaa.security.UserSecurityValidator;
+import com.icthh.xm.uaa.security.provider.DefaultAuthenticationRefreshProvider;
+import com.icthh.xm.uaa.service.TenantPropertiesService;
+import com.icthh.xm.uaa.service.UserService;
+import java.security.KeyPair;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.TokenRequest;
+import org.springframework.security.oauth2.provider.client.BaseClientDetails;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+import org.springframework.security.oauth2.provider.token.store.KeyStoreKeyFactory;
+
+/**
+ * Token issuance and verification path: {@link DomainTokenServices#createAccessToken},
+ * {@link DomainJwtAccessTokenConverter#enhance}, {@link JwtTokenStore#readAccessToken} and
+ * {@link DomainTokenServices#refreshAccessToken}.
+ *
+ * <p>Database, config server and LEP backed collaborators are replaced by in-memory stand-ins so that the numbers
+ * reflect RSA signing/verification, JSON (de)serialization and the surrounding allocation only.
+ * Run with {@code ./gradlew jmh -PjmhInclude=TokenServicesBenchmark}.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Threads(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class TokenServicesBenchmark {
+
+    private static final String CLIENT = "webapp";
+    private static final String LOGIN = "admin";
+    private static final String USER_KEY = "admin-user-key";
+    private static final String ROLE = "ROLE_ADMIN";
+
+    private static final String UAA_YML = "security:\n"
+        + "  accessTokenValiditySeconds: 3600\n"
+        + "  refreshTokenValiditySeconds: 86400\n";
+
+    private DomainTokenServices tokenServices;
+    private DomainJwtAccessTokenConverter converter;
+    private JwtTokenStore tokenStore;
+    private CachingJwtTokenStore cachingTokenStore;
+
+    private OAuth2Authentication userAuthentication;
+    private OAuth2Authentication clientAuthentication;
+    private String accessTokenValue;
+    private String refreshTokenValue;
+    private TokenRequest refreshTokenRequest;
+
+    @Setup
+    public void setup() throws Exception {
+        TenantContextHolder tenantContextHolder = BenchmarkTenant.tenantContextHolder();
+        TenantPropertiesService tenantPropertiesService =
+            BenchmarkTenant.tenantPropertiesService(tenantContextHolder, UAA_YML);
+
+        InMemoryClientDetailsService clientDetailsService = new InMemoryClientDetailsService();
+        BaseClientDetails client = new BaseClientDetails(CLIENT, null, "openid", "client_credentials", ROLE);
+        client.setAccessTokenValiditySeconds(3600);
+        clientDetailsService.add(client);
+
+        InMemoryUserLoginRepository userLoginRepository = new InMemoryUserLoginRepository();
+        userLoginRepository.add(user());
+        UserService userService = new UserService(null, userLoginRepository.asRepository(), null, null,
+            tenantPropertiesService, null, null, null, null);
+
+        converter = new DomainJwtAccessTokenConverter(tenantContextHolder, tenantPropertiesService,
+            new DomainJwtAccessTokenDetailsPostProcessor());
+        KeyPair keyPair = new KeyStoreKeyFactory(new ClassPathResource(KEYSTORE_PATH), KEYSTORE_PSWRD.toCharArray())
+            .getKeyPair(KEYSTORE_ALIAS);
+        converter.setKeyPair(keyPair);
+        converter.afterPropertiesSet();
+        tokenStore = new JwtTokenStore(converter);
+        cachingTokenStore = new CachingJwtTokenStore(converter, 10_000, 3600);
+
+        tokenServices = new DomainTokenServices();
+        tokenServices.setTokenStore(tokenStore);
+        tokenServices.setTokenEnhancer(converter);
+        tokenServices.setTenantPropertiesService(tenantPropertiesService);
+        tokenServices.setTenantContextHolder(tenantContextHolder);
+        tokenServices.setTokenConstraintsService(new TokenConstraintsService(tenantPropertiesService,
+            new ApplicationProperties(), clientDetailsService));
+        tokenServices.setAuthenticationRefreshProvider(new DefaultAuthenticationRefreshProvider());
+        tokenServices.setUserService(userService);
+        DomainUserDetailsCache userDetailsCache = new DomainUserDetailsCache(new ApplicationProperties(),
+            tenantContextHolder, null, new MetricRegistry());
+        tokenServices.setUserSecurityValidator(new UserSecurityValidator(new DomainUserDetailsService(
+            userLoginRepository.asRepository(), tenantContextHolder, userDetailsCache)));
+
+        userAuthentication = userAuthentication();
+        clientAuthentication = new OAuth2Authentication(oauth2Request("client_credentials"), null);
+
+        OAuth2AccessToken accessToken = tokenServices.createAccessToken(userAuthentication);
+        accessTokenValue = accessToken.getValue();
+        refreshTokenValue = accessToken.getRefreshToken().getValue();
+
+        Map<String, String> params = new HashMap<>();
+        params.put("grant_type", "refresh_token");
+        params.put("refresh_token", refreshTokenValue);
+        refreshTokenRequest = new TokenRequest(params, CLIENT, null, "refresh_token");
+    }
+
+    @Benchmark
+    public OAuth2AccessToken createAccessToken() {
+        return tokenServices.createAccessToken(userAuthentication);
+    }
+
+    @Benchmark
+    public OAuth2AccessToken createClientAccessToken() {
+        return tokenServices.createAccessToken(clientAuthentication);
+    }
+
+    @Benchmark
+    public OAuth2AccessToken enhance() {
+        DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+        token.setExpiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)));
+        token.setRefreshToken(new DefaultExpiringOAuth2RefreshToken(UUID.randomUUID().toString(),
+            new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1))));
+        return converter.enhance(token, userAuthentication);
+    }
+
+    @Benchmark
+    public OAuth2AccessToken readAccessToken() {
+        return tokenStore.readAccessToken(accessTokenValue);
+    }
+
+    @Benchmark
+    public OAuth2AccessToken readAccessTokenCached() {
+        return cachingTokenStore.readAccessToken(accessTokenValue);
+    }
+
+    @Benchmark
+    public OAuth2Authentication loadAuthentication() {
+        return tokenServices.loadAuthentication(accessTokenValue);
+    }
+
+    @Benchmark
+    public OAuth2AccessToken refreshAccessToken() {
+        return tokenServices.refreshAccessToken(refreshTokenValue, refreshTokenRequest);
+    }
+
+    private static User user() {
+        User user = new User();
+        user.setUserKey(USER_KEY);
+        user.setActivated(true);
+        user.setRoleKey(ROLE);
+        UserLogin login = new UserLogin();
+        login.setTypeKey(UserLoginType.NICKNAME.getValue());
+        login.setLogin(LOGIN);
+        login.setUser(user);
+        user.getLogins().add(login);
+        return user;
+    }
+
+    private static OAuth2Authentication userAuthentication() {
+        List<GrantedAuthority> authorities = Collections.singletonList(new SimpleGrantedAuthority(ROLE));
+        DomainUserDetails principal = new DomainUserDetails(LOGIN, "", authorities, TENANT, USER_KEY,
+            false, null, null, false, null);
+        UsernamePasswordAuthenticationToken authentication =
+            new UsernamePasswordAuthenticationToken(principal, "", authorities);
+        return new OAuth2Authentication(oauth2Request("password"), authentication);
+    }
+
+    private static OAuth2Request oauth2Request(String grantType) {
+        Map<String, String> requestParameters = new HashMap<>();
+        requestParameters.put("grant_type", grantType);
+        return new OAuth2Request(requestParameters, CLIENT, null, true, Collections.singleton("openid"),
+            null, null, null, null);
+    }
+}
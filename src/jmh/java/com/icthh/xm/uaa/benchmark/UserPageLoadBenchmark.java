@@ -0,0 +1,82 @@
+package com.icthh.xm.uaa.benchmark;
+
+import com.icthh.xm.uaa.domain.User;
+import com.icthh.xm.uaa.domain.UserLogin;
+import com.icthh.xm.uaa.domain.UserLoginType;
+import com.icthh.xm.uaa.service.dto.UserDTO;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+import org.jboss.aerogear.security.otp.api.Base32;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hydration of a page of {@link User} entities and their mapping to {@link UserDTO}, as done by GET /api/users.
+ *
+ * <p>{@link #loadPage()} is the current entity, {@link #loadPageWithEagerTfaSecret()} additionally generates a
+ * TFA OTP secret per user the way the entity used to in its field initializer. The difference in time and in
+ * {@code gc.alloc.rate.norm} is the cost saved by generating the secret on demand in the TFA flow only.
+ * Run with {@code ./gradlew jmh -PjmhInclude=UserPageLoadBenchmark}.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Threads(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class UserPageLoadBenchmark {
+
+    @Param({"20", "200", "2000"})
+    private int pageSize;
+
+    private Constructor<User> userConstructor;
+    private Constructor<UserLogin> loginConstructor;
+
+    @Setup
+    public void setup() throws Exception {
+        // Hibernate instantiates entities through their no-arg constructor
+        userConstructor = User.class.getDeclaredConstructor();
+        loginConstructor = UserLogin.class.getDeclaredConstructor();
+    }
+
+    @Benchmark
+    public List<UserDTO> loadPage() throws Exception {
+        List<UserDTO> page = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            page.add(new UserDTO(hydrate(i)));
+        }
+        return page;
+    }
+
+    @Benchmark
+    public List<UserDTO> loadPageWithEagerTfaSecret() throws Exception {
+        List<UserDTO> page = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            User user = hydrate(i);
+            user.setTfaOtpSecret(Base32.random());
+            page.add(new UserDTO(user));
+        }
+        return page;
+    }
+
+    private User hydrate(int index) throws Exception {
+        User user = userConstructor.newInstance();
+        user.setId((long) index);
+        user.setUserKey("user-key-" + index);
+        user.setActivated(true);
+        user.setRoleKey("ROLE_USER");
+        UserLogin login = loginConstructor.newInstance();
+        login.setTypeKey(UserLoginType.EMAIL.getValue());
+        login.setLogin("user" + index + "@example.com");
+        login.setUser(user);
+        user.getLogins().add(login);
+        return user;
+    }
+}
@@ -3,7 +3,9 @@ package com.icthh.xm.uaa.config;
 import com.icthh.xm.commons.lep.TenantScriptStorage;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import lombok.Getter;
@@ -26,6 +28,16 @@ public class ApplicationProperties {
     private final Security security = new Security();
     private final ReCaptcha reCaptcha = new ReCaptcha();
     private final Lep lep = new Lep();
+    private final ClientCache clientCache = new ClientCache();
+    private final UserDetailsCache userDetailsCache = new UserDetailsCache();
+    private final PermissionCache permissionCache = new PermissionCache();
+    private final UserImport userImport = new UserImport();
+    private final OnlineUsers onlineUsers = new OnlineUsers();
+    private final AuditWriter auditWriter = new AuditWriter();
+    private final SystemQueue systemQueue = new SystemQueue();
+    private final ProfileEvents profileEvents = new ProfileEvents();
+    private final Outbox outbox = new Outbox();
+    private final Mail mail = new Mail();
 
     private List<String> tenantIgnoredPathList;
     private List<String> timelineIgnoredHttpMethods = Collections.emptyList();
@@ -52,7 +64,7 @@ public class ApplicationProperties {
 
     @Getter
     @Setter
-    private static class Retry {
+    public static class Retry {
 
         private int maxAttempts;
         private long delay;
@@ -69,6 +81,28 @@ public class ApplicationProperties {
         private Integer passwordEncoderStrength;
         private Boolean enablePasswordHashCaching;
         private Integer enablePasswordHashCacheSize;
+        private final TokenCache tokenCache = new TokenCache();
+        private final PasswordHashing passwordHashing = new PasswordHashing();
+
+        @Getter
+        @Setter
+        public static class TokenCache {
+
+            private boolean enabled = true;
+            private long maximumSize = 10000;
+            private long timeToLiveSeconds = 3600;
+        }
+
+        @Getter
+        @Setter
+        public static class PasswordHashing {
+
+            private boolean bounded = true;
+            private int poolSize = Runtime.getRuntime().availableProcessors();
+            private int queueCapacity = 1000;
+            private int tenantConcurrency = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+            private long waitTimeoutMillis = 10000;
+        }
     }
 
     @Getter
@@ -87,4 +121,123 @@ public class ApplicationProperties {
         private TenantScriptStorage tenantScriptStorage;
     }
 
+    @Getter
+    @Setter
+    public static class ClientCache {
+
+        private boolean enabled = true;
+        private long maximumSize = 1000;
+        private long timeToLiveSeconds = 60;
+    }
+
+    @Getter
+    @Setter
+    public static class UserDetailsCache {
+
+        private boolean enabled = true;
+        private long maximumSize = 10000;
+        private long timeToLiveSeconds = 300;
+    }
+
+    @Getter
+    @Setter
+    public static class PermissionCache {
+
+        private long maximumSize = 1000;
+    }
+
+    @Getter
+    @Setter
+    public static class UserImport {
+
+        private int chunkSize = 500;
+        private int poolSize = Runtime.getRuntime().availableProcessors();
+        private int queueCapacity = 8;
+        private int maxErrors = 1000;
+        private long statusTimeToLiveSeconds = 86400;
+    }
+
+    @Getter
+    @Setter
+    public static class OnlineUsers {
+
+        private int maximumSize = 100000;
+        private long broadcastIntervalMillis = 60000;
+        private long snapshotIntervalMillis = 300000;
+        private int maxPrincipalsPerEvent = 5000;
+    }
+
+    @Getter
+    @Setter
+    public static class AuditWriter {
+
+        public enum OverflowPolicy {
+            BLOCK, DROP_OLDEST, SPILL
+        }
+
+        private boolean async = true;
+        private int queueCapacity = 10000;
+        private int tenantQueueCapacity = 1000;
+        private int batchSize = 50;
+        private long flushIntervalMillis = 1000;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+        private long blockTimeoutMillis = 1000;
+        private String spillFile = System.getProperty("java.io.tmpdir") + "/uaa-audit-events.ndjson";
+        private long shutdownTimeoutMillis = 10000;
+    }
+
+    @Getter
+    @Setter
+    public static class SystemQueue {
+
+        private boolean batchListener = true;
+        private int maxPollRecords = 500;
+        private String deadLetterTopic;
+        private int maxFailures = 10;
+    }
+
+    @Getter
+    @Setter
+    public static class ProfileEvents {
+
+        private int bufferCapacity = 10000;
+        private int lingerMs = 20;
+        private int batchSize = 65536;
+        private String compressionType = "lz4";
+        private boolean idempotence = true;
+        private long shutdownTimeoutMillis = 10000;
+    }
+
+    @Getter
+    @Setter
+    public static class Outbox {
+
+        private boolean enabled = true;
+        private long pollIntervalMillis = 1000;
+        private int batchSize = 100;
+        private int maxBatchesPerRelay = 10;
+        private long claimTimeoutMillis = 300000;
+        private int maxAttempts = 10;
+        private long initialBackoffMillis = 1000;
+        private long maxBackoffMillis = 600000;
+    }
+
+    @Getter
+    @Setter
+    public static class Mail {
+
+        private int executorPoolSize = 2;
+        private int executorQueueCapacity = 1000;
+        private boolean async = true;
+        private int senderThreads = 2;
+        private int queueCapacity = 10000;
+        private int tenantQueueCapacity = 1000;
+        private int batchSize = 50;
+        private long blockTimeoutMillis = 1000;
+        private long connectionIdleTimeoutMillis = 30000;
+        private double ratePerSecond = 0;
+        private Map<String, Double> tenantRatePerSecond = new HashMap<>();
+        private long shutdownTimeoutMillis = 10000;
+    }
+
 }
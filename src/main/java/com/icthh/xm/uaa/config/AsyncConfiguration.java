@@ -5,6 +5,7 @@ import io.github.jhipster.config.JHipsterProperties;
 
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,12 +26,16 @@ import org.springframework.scheduling.config.ScheduledTaskRegistrar;
 @EnableScheduling
 public class AsyncConfiguration implements AsyncConfigurer, SchedulingConfigurer {
 
+    public static final String MAIL_EXECUTOR = "mailExecutor";
+
     private final Logger log = LoggerFactory.getLogger(AsyncConfiguration.class);
 
     private final JHipsterProperties jHipsterProperties;
+    private final ApplicationProperties applicationProperties;
 
-    public AsyncConfiguration(JHipsterProperties jHipsterProperties) {
+    public AsyncConfiguration(JHipsterProperties jHipsterProperties, ApplicationProperties applicationProperties) {
         this.jHipsterProperties = jHipsterProperties;
+        this.applicationProperties = applicationProperties;
     }
 
     @Override
@@ -45,6 +50,22 @@ public class AsyncConfiguration implements AsyncConfigurer, SchedulingConfigurer
         return new ExceptionHandlingAsyncTaskExecutor(executor);
     }
 
+    /**
+     * Executor of the mails, so that a burst of mails does not hold the threads of the other async tasks.
+     * When its queue is full the caller renders the mail.
+     */
+    @Bean(name = MAIL_EXECUTOR)
+    public Executor mailExecutor() {
+        log.debug("Creating Mail Task Executor");
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(applicationProperties.getMail().getExecutorPoolSize());
+        executor.setMaxPoolSize(applicationProperties.getMail().getExecutorPoolSize());
+        executor.setQueueCapacity(applicationProperties.getMail().getExecutorQueueCapacity());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("uaa-mail-Executor-");
+        return new ExceptionHandlingAsyncTaskExecutor(executor);
+    }
+
     @Override
     public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
         return new SimpleAsyncUncaughtExceptionHandler();
@@ -44,6 +44,9 @@ public final class Constants {
     public static final String UPDATE_PROFILE_EVENT_TYPE = "UPDATE_PROFILE";
     public static final String UPDATE_ACCOUNT_EVENT_TYPE = "UPDATE_ACCOUNT";
     public static final String DELETE_PROFILE_EVENT_TYPE = "DELETE_PROFILE";
+    public static final String CLIENT_CHANGED_EVENT_TYPE = "CLIENT_CHANGED";
+    public static final String USER_CHANGED_EVENT_TYPE = "USER_CHANGED";
+    public static final String ONLINE_USERS_EVENT_TYPE = "ONLINE_USERS";
     public static final String AUTH_ADDITIONAL_DETAILS = "additionalDetails";
 
     public static final String CREATE_TOKEN_TIME = "createTokenTime";
@@ -68,6 +71,9 @@ public final class Constants {
     public static final String SYSTEM_EVENT_PROP_LAST_MODIFIED_DATE = "lastModifiedDate";
     public static final String SYSTEM_EVENT_PROP_USER_KEY = "userKey";
     public static final String SYSTEM_EVENT_PROP_ROLE_KEY = "roleKey";
+    public static final String SYSTEM_EVENT_PROP_CLIENT_ID = "clientId";
+    public static final String SYSTEM_EVENT_PROP_ONLINE = "online";
+    public static final String SYSTEM_EVENT_PROP_OFFLINE = "offline";
 
     public static final String DEFAULT_CONFIG_PATH = "config/specs/default-uaa.yml";
     public static final String DEFAULT_LOGINS_CONFIG_PATH = "config/specs/default-logins.yml";
@@ -7,6 +7,7 @@ import com.fasterxml.jackson.datatype.hibernate5.Hibernate5Module;
 import com.icthh.xm.commons.migration.db.XmMultiTenantSpringLiquibase;
 import com.icthh.xm.commons.migration.db.XmSpringLiquibase;
 import com.icthh.xm.commons.migration.db.tenant.SchemaResolver;
+import com.icthh.xm.uaa.repository.util.SqlStatementCounter;
 import io.github.jhipster.config.JHipsterConstants;
 import liquibase.integration.spring.MultiTenantSpringLiquibase;
 import liquibase.integration.spring.SpringLiquibase;
@@ -134,6 +135,7 @@ public class DatabaseConfiguration {
                        currentTenantIdentifierResolverImpl);
         properties.put(JPA_VALIDATION_FACTORY, localValidatorFactoryBean);
         properties.put(AvailableSettings.BEAN_CONTAINER, new SpringBeanContainer(beanFactory));
+        properties.put(AvailableSettings.STATEMENT_INSPECTOR, new SqlStatementCounter());
 
         LocalContainerEntityManagerFactoryBean em = new LocalContainerEntityManagerFactoryBean();
         em.setDataSource(dataSource);
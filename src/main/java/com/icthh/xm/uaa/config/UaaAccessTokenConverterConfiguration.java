@@ -1,8 +1,10 @@
 package com.icthh.xm.uaa.config;
 
+import com.codahale.metrics.MetricRegistry;
 import com.icthh.xm.commons.repository.JwksRepository;
 import com.icthh.xm.commons.tenant.TenantContextHolder;
 import com.icthh.xm.commons.tenant.spring.config.TenantContextConfiguration;
+import com.icthh.xm.uaa.security.CachingJwtTokenStore;
 import com.icthh.xm.uaa.security.DomainJwtAccessTokenConverter;
 
 import com.icthh.xm.uaa.security.DomainJwtAccessTokenDetailsPostProcessor;
@@ -31,6 +33,7 @@ import com.icthh.xm.uaa.security.oauth2.idp.config.IdpConfigRepository;
 import com.icthh.xm.uaa.security.oauth2.idp.converter.XmJwkVerifyingJwtAccessTokenConverter;
 import com.icthh.xm.uaa.security.oauth2.idp.source.XmJwkDefinitionSource;
 import com.icthh.xm.uaa.service.TenantPropertiesService;
+import com.icthh.xm.uaa.util.CacheMetricsSet;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
@@ -60,6 +63,8 @@ import org.springframework.web.client.RestTemplate;
 })
 public class UaaAccessTokenConverterConfiguration {
 
+    private static final String TOKEN_CACHE_METRIC = "token.verification.cache";
+
     private final RestTemplate keyUriRestTemplate;
     private final TenantContextHolder tenantContextHolder;
     private final ApplicationProperties applicationProperties;
@@ -144,8 +149,17 @@ public class UaaAccessTokenConverterConfiguration {
      */
     @Bean
     @Primary
-    public JwtTokenStore tokenStore(JwtAccessTokenConverter jwtAccessTokenConverter) throws Exception {
-        return new JwtTokenStore(jwtAccessTokenConverter);
+    public JwtTokenStore tokenStore(JwtAccessTokenConverter jwtAccessTokenConverter,
+                                    MetricRegistry metricRegistry) throws Exception {
+        ApplicationProperties.Security.TokenCache tokenCache = applicationProperties.getSecurity().getTokenCache();
+        if (!tokenCache.isEnabled()) {
+            return new JwtTokenStore(jwtAccessTokenConverter);
+        }
+
+        CachingJwtTokenStore tokenStore = new CachingJwtTokenStore(jwtAccessTokenConverter,
+            tokenCache.getMaximumSize(), tokenCache.getTimeToLiveSeconds());
+        CacheMetricsSet.register(metricRegistry, TOKEN_CACHE_METRIC, tokenStore.getMetrics());
+        return tokenStore;
     }
 
     private PrivateKey initPrivateKeyFromKeystore(InputStream stream) throws KeyStoreException, UnrecoverableKeyException,
@@ -5,6 +5,8 @@ import com.icthh.xm.commons.permission.service.PermissionMappingService;
 import com.icthh.xm.commons.tenant.TenantContextHolder;
 import com.icthh.xm.uaa.security.DomainTokenServices;
 import com.icthh.xm.uaa.security.DomainUserDetailsService;
+import com.icthh.xm.uaa.security.PasswordUpgradeService;
+import com.icthh.xm.uaa.security.PasswordUpgradingAuthenticationProvider;
 import com.icthh.xm.uaa.security.TokenConstraintsService;
 import com.icthh.xm.uaa.security.UserSecurityValidator;
 import com.icthh.xm.uaa.security.oauth2.athorization.code.CustomAuthorizationCodeServices;
@@ -16,6 +18,7 @@ import com.icthh.xm.uaa.security.oauth2.otp.OtpStore;
 import com.icthh.xm.uaa.security.oauth2.tfa.TfaOtpTokenGranter;
 import com.icthh.xm.uaa.security.provider.DefaultAuthenticationRefreshProvider;
 import com.icthh.xm.uaa.service.IdpIdTokenMappingService;
+import com.icthh.xm.uaa.service.OnlineUsersService;
 import com.icthh.xm.uaa.service.TenantPropertiesService;
 import com.icthh.xm.uaa.service.UserLoginService;
 import com.icthh.xm.uaa.service.UserService;
@@ -54,6 +57,7 @@ import javax.servlet.http.HttpServletResponse;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 @Configuration
 @EnableWebSecurity
@@ -137,6 +141,7 @@ public class UaaConfiguration extends AuthorizationServerConfigurerAdapter {
     private final CustomAuthorizationCodeServices customAuthorizationCodeServices;
     private final DefaultAuthenticationRefreshProvider defaultAuthenticationRefreshProvider;
     private final UserSecurityValidator userSecurityValidator;
+    private final OnlineUsersService onlineUsersService;
     private final XmJwkTokenStore jwkTokenStore;
 
     @Override
@@ -196,6 +201,7 @@ public class UaaConfiguration extends AuthorizationServerConfigurerAdapter {
         tokenServices.setTokenConstraintsService(tokenConstraintsService);
         tokenServices.setUserService(userService);
         tokenServices.setUserSecurityValidator(userSecurityValidator);
+        tokenServices.setOnlineUsersService(onlineUsersService);
         // OTP settings
         tokenServices.setOtpGenerator(otpGenerator);
         tokenServices.setOtpStore(otpStore);
@@ -212,10 +218,14 @@ public class UaaConfiguration extends AuthorizationServerConfigurerAdapter {
 
     @Bean
     public DaoAuthenticationProvider daoAuthenticationProvider(UserDetailsService userDetailsService,
-                                                               PasswordEncoder passwordEncoder) {
-        DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+                                                               PasswordEncoder passwordEncoder,
+                                                               PasswordUpgradeService passwordUpgradeService,
+                                                               @Qualifier("taskExecutor") Executor taskExecutor) {
+        DaoAuthenticationProvider provider = new PasswordUpgradingAuthenticationProvider(tenantContextHolder,
+            taskExecutor);
         provider.setUserDetailsService(userDetailsService);
         provider.setPasswordEncoder(passwordEncoder);
+        provider.setUserDetailsPasswordService(passwordUpgradeService);
         return provider;
     }
 
@@ -1,9 +1,18 @@
 package com.icthh.xm.uaa.config;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.uaa.security.BoundedPasswordEncoder;
 import com.icthh.xm.uaa.security.CachePasswordHashEncoder;
+import com.icthh.xm.uaa.security.TenantStrengthPasswordEncoder;
+import com.icthh.xm.uaa.service.TenantPropertiesService;
+import com.icthh.xm.uaa.util.CacheMetricsSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
 import static java.lang.Boolean.TRUE;
@@ -15,23 +24,37 @@ import static java.lang.Boolean.TRUE;
 @Configuration
 public class UserAuthPasswordEncoderConfiguration {
 
+    private static final String METRIC_NAME = "password.encoder";
+
     @Bean("passwordEncoder")
-    public PasswordEncoder passwordEncoder(ApplicationProperties applicationProperties) {
+    public PasswordEncoder passwordEncoder(ApplicationProperties applicationProperties,
+                                           TenantPropertiesService tenantPropertiesService,
+                                           TenantContextHolder tenantContextHolder,
+                                           MetricRegistry metricRegistry) {
         ApplicationProperties.Security security = applicationProperties.getSecurity();
-        Integer passwordEncoderStrength = security.getPasswordEncoderStrength();
-        PasswordEncoder passwordEncoder = getPasswordEncoder(passwordEncoderStrength);
+        PasswordEncoder passwordEncoder = new TenantStrengthPasswordEncoder(security.getPasswordEncoderStrength(),
+            tenantPropertiesService, tenantContextHolder);
+        ApplicationProperties.Security.PasswordHashing passwordHashing = security.getPasswordHashing();
+        if (passwordHashing.isBounded()) {
+            BoundedPasswordEncoder boundedEncoder = new BoundedPasswordEncoder(passwordEncoder,
+                createExecutor(passwordHashing), tenantContextHolder, passwordHashing.getTenantConcurrency(),
+                passwordHashing.getWaitTimeoutMillis());
+            CacheMetricsSet.register(metricRegistry, METRIC_NAME, boundedEncoder.getMetrics());
+            passwordEncoder = boundedEncoder;
+        }
         if (TRUE.equals(security.getEnablePasswordHashCaching())) {
-            passwordEncoder = new CachePasswordHashEncoder(passwordEncoder, security.getEnablePasswordHashCacheSize());
+            CachePasswordHashEncoder cacheEncoder = new CachePasswordHashEncoder(passwordEncoder,
+                security.getEnablePasswordHashCacheSize());
+            CacheMetricsSet.register(metricRegistry, METRIC_NAME + ".cache", cacheEncoder.getMetrics());
+            passwordEncoder = cacheEncoder;
         }
         return passwordEncoder;
     }
 
-    private PasswordEncoder getPasswordEncoder(Integer passwordEncoderStrength) {
-        if (passwordEncoderStrength != null) {
-            return new BCryptPasswordEncoder(passwordEncoderStrength);
-        } else {
-            return new BCryptPasswordEncoder();
-        }
+    private ThreadPoolExecutor createExecutor(ApplicationProperties.Security.PasswordHashing passwordHashing) {
+        return new ThreadPoolExecutor(passwordHashing.getPoolSize(), passwordHashing.getPoolSize(),
+            0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(passwordHashing.getQueueCapacity()),
+            new ThreadFactoryBuilder().setNameFormat("password-hashing-%d").setDaemon(true).build());
     }
 
 }
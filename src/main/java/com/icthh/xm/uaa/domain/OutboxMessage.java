@@ -0,0 +1,70 @@
+package com.icthh.xm.uaa.domain;
+
+import java.io.Serializable;
+import java.time.Instant;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.validation.constraints.NotNull;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Side effect of a change, stored in the transaction of the change and sent by the outbox relay.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "outbox_message")
+public class OutboxMessage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Type {
+        MAIL, PROFILE_EVENT
+    }
+
+    public enum Status {
+        PENDING, FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequenceGenerator")
+    @SequenceGenerator(name = "sequenceGenerator")
+    private Long id;
+
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", length = 32, nullable = false)
+    private Type type;
+
+    @NotNull
+    @Column(name = "payload", nullable = false)
+    private String payload;
+
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 16, nullable = false)
+    private Status status = Status.PENDING;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @NotNull
+    @Column(name = "next_attempt_at", nullable = false)
+    private Instant nextAttemptAt;
+
+    @NotNull
+    @Column(name = "created_date", nullable = false)
+    private Instant createdDate;
+
+    @Column(name = "last_error", length = 1024)
+    private String lastError;
+}
@@ -13,7 +13,6 @@ import lombok.Getter;
 import lombok.Setter;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
-import org.jboss.aerogear.security.otp.api.Base32;
 
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
@@ -85,8 +84,11 @@ public class User extends AbstractAuditingEntity implements Serializable {
     @Column(name = "tfa_otp_channel_type", length = 64)
     private OtpChannelType tfaOtpChannelType;
 
+    /**
+     * Explicit TFA OTP secret, when not set a random one is generated on demand by {@code DomainUserDetails}.
+     */
     @Transient
-    private transient String tfaOtpSecret = Base32.random();
+    private transient String tfaOtpSecret;
 
     @Size(min = 2, max = 5)
     @Column(name = "lang_key", length = 5)
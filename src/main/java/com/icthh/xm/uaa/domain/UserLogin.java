@@ -1,5 +1,8 @@
 package com.icthh.xm.uaa.domain;
 
+import static org.apache.commons.lang3.StringUtils.lowerCase;
+import static org.apache.commons.lang3.StringUtils.trim;
+
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import javax.persistence.Column;
@@ -9,6 +12,8 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 import javax.validation.constraints.NotBlank;
@@ -27,7 +32,7 @@ import org.hibernate.annotations.CacheConcurrencyStrategy;
 @ToString(exclude = {"user"})
 @Getter
 @Setter
-@EqualsAndHashCode(exclude = {"user"})
+@EqualsAndHashCode(exclude = {"user", "normalizedLogin"})
 public class UserLogin {
 
     private static final long serialVersionUID = 1L;
@@ -48,6 +53,13 @@ public class UserLogin {
     @NotBlank
     private String login;
 
+    /**
+     * Trimmed lower case login, used for the indexed case insensitive lookups.
+     */
+    @JsonIgnore
+    @Column(name = "normalized_login", nullable = false)
+    private String normalizedLogin;
+
     @Column(nullable = false)
     private boolean removed = false;
 
@@ -56,4 +68,19 @@ public class UserLogin {
     @JoinColumn(name = "user_key", referencedColumnName = "user_key")
     private User user;
 
+    @PrePersist
+    @PreUpdate
+    void updateNormalizedLogin() {
+        normalizedLogin = normalize(login);
+    }
+
+    /**
+     * Normalize the login for the case insensitive lookups.
+     *
+     * @param login the login
+     * @return trimmed lower case login
+     */
+    public static String normalize(String login) {
+        return lowerCase(trim(login));
+    }
 }
@@ -86,6 +86,9 @@ public class TenantProperties {
 
         private boolean reIssueRefreshToken = false;
 
+        @JsonProperty("passwordEncoderStrength")
+        private Integer passwordEncoderStrength;
+
         @JsonSetter("accessTokenValiditySeconds")
         public void setAccessTokenValiditySeconds(Integer accessTokenValiditySeconds) {
             this.accessTokenValiditySeconds = accessTokenValiditySeconds;
@@ -16,7 +16,10 @@ import org.springframework.context.ApplicationListener;
 import org.springframework.core.env.Environment;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.BatchMessageListener;
 import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ConsumerAwareBatchErrorHandler;
+import org.springframework.kafka.listener.GenericMessageListener;
 import org.springframework.kafka.listener.MessageListener;
 import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.stereotype.Component;
@@ -66,23 +69,42 @@ public class ApplicationStartup implements ApplicationListener<ApplicationReadyE
     }
 
     private void createKafkaConsumers() {
-        createSystemConsumer(applicationProperties.getKafkaSystemTopic(), systemTopicConsumer::consumeEvent);
-        createSystemConsumer(applicationProperties.getKafkaSystemQueue(), systemQueueConsumer::consumeEvent);
+        createSystemConsumer(applicationProperties.getKafkaSystemTopic(),
+            (MessageListener<String, String>) systemTopicConsumer::consumeEvent);
+        ApplicationProperties.SystemQueue systemQueue = applicationProperties.getSystemQueue();
+        if (systemQueue.isBatchListener()) {
+            createSystemConsumer(applicationProperties.getKafkaSystemQueue(),
+                (BatchMessageListener<String, String>) systemQueueConsumer::consumeEvents);
+        } else {
+            createSystemConsumer(applicationProperties.getKafkaSystemQueue(),
+                (MessageListener<String, String>) systemQueueConsumer::consumeEvent);
+        }
     }
 
-    private void createSystemConsumer(String name, MessageListener<String, String> consumeEvent) {
+    private void createSystemConsumer(String name, GenericMessageListener<?> consumeEvent) {
         log.info("Creating kafka consumer for topic {}", name);
         ContainerProperties containerProps = new ContainerProperties(name);
 
         Map<String, Object> props = kafkaProperties.buildConsumerProperties();
         if (name.equals(applicationProperties.getKafkaSystemTopic())) {
             props.put(ConsumerConfig.GROUP_ID_CONFIG, UUID.randomUUID().toString());
+        } else if (consumeEvent instanceof BatchMessageListener) {
+            // offsets of a poll are committed by the container once the whole batch is processed, the failed
+            // updates of a batch are not committed and consumed again
+            containerProps.setAckMode(ContainerProperties.AckMode.BATCH);
+            containerProps.setAckOnError(false);
+            props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+            props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG,
+                applicationProperties.getSystemQueue().getMaxPollRecords());
         }
         ConsumerFactory<String, String> factory = new DefaultKafkaConsumerFactory<>(props);
 
         ConcurrentMessageListenerContainer<String, String> container =
             new ConcurrentMessageListenerContainer<>(factory, containerProps);
         container.setupMessageListener(consumeEvent);
+        if (consumeEvent instanceof BatchMessageListener) {
+            container.setBatchErrorHandler((ConsumerAwareBatchErrorHandler) systemQueueConsumer::handleError);
+        }
         container.start();
         log.info("Successfully created kafka consumer for topic {}", name);
     }
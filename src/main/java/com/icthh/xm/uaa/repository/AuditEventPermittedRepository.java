@@ -1,6 +1,7 @@
 package com.icthh.xm.uaa.repository;
 
-import com.icthh.xm.commons.permission.repository.PermittedRepository;
+import static org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH;
+
 import com.icthh.xm.commons.permission.service.PermissionCheckService;
 import com.icthh.xm.uaa.domain.PersistentAuditEvent;
 
@@ -13,7 +14,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public class AuditEventPermittedRepository extends PermittedRepository {
+public class AuditEventPermittedRepository extends KeysetPermittedRepository {
 
     public AuditEventPermittedRepository(PermissionCheckService permissionCheckService) {
         super(permissionCheckService);
@@ -41,6 +42,36 @@ public class AuditEventPermittedRepository extends PermittedRepository {
         return findByCondition(whereCondition, conditionParams, pageable, getType(), privilegeKey);
     }
 
+    /**
+     * Find a page of permitted audit events with data, optionally between dates.
+     *
+     * @param fromDate     the from date, can be null
+     * @param toDate       the to date, can be null
+     * @param pageable     the page info
+     * @param privilegeKey the privilege key
+     * @return permitted audit events
+     */
+    public KeysetPage<PersistentAuditEvent> findAllWithData(Instant fromDate,
+                                                            Instant toDate,
+                                                            KeysetPageable pageable,
+                                                            String privilegeKey) {
+        String whereCondition = null;
+        Map<String, Object> conditionParams = new HashMap<>();
+        if (fromDate != null && toDate != null) {
+            whereCondition = "returnObject.auditEventDate between :fromDate and :toDate";
+            conditionParams.put("fromDate", fromDate);
+            conditionParams.put("toDate", toDate);
+        }
+
+        return findPageByCondition(getType(), whereCondition, conditionParams, pageable, privilegeKey,
+            ids -> entityManager.createQuery("select distinct e from PersistentAuditEvent e"
+                + " left join fetch e.data where e.id in :ids order by e.id " + pageable.getDirection().name(),
+                getType())
+                .setParameter("ids", ids)
+                .setHint(HINT_PASS_DISTINCT_THROUGH, false)
+                .getResultList());
+    }
+
     private Class<PersistentAuditEvent> getType() {
         return PersistentAuditEvent.class;
     }
@@ -0,0 +1,399 @@
+package com.icthh.xm.uaa.repository;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.icthh.xm.commons.logging.aop.IgnoreLogginAspect;
+import com.icthh.xm.commons.tenant.PlainTenant;
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.commons.tenant.TenantKey;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import com.icthh.xm.uaa.config.ApplicationProperties.AuditWriter.OverflowPolicy;
+import com.icthh.xm.uaa.domain.PersistentAuditEvent;
+import com.icthh.xm.uaa.util.CacheMetricsSet;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.validation.ConstraintViolationException;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Writes audit events to the tenant schemas.
+ * <p>
+ * In async mode events are put to a bounded queue and a background thread inserts them in batches, one transaction
+ * per tenant of a batch. A batch is flushed when it has {@code batchSize} events or {@code flushIntervalMillis}
+ * after its first event, and the queue is flushed on shutdown. When the queue is full the overflow policy applies:
+ * {@code BLOCK} waits for space up to {@code blockTimeoutMillis} and then drops the event, {@code DROP_OLDEST} drops
+ * the oldest queued event, and {@code SPILL} appends the event to the spill file, which is written to the database
+ * once the queue is empty again. Spilled events are written at least once.
+ * <p>
+ * When the transaction of a tenant fails, its events are retried one by one in their own transactions. Events that
+ * still fail are dropped, or spilled with the {@code SPILL} policy unless the database rejects them as invalid.
+ * <p>
+ * Otherwise, and for events without a tenant, events are inserted by the caller in a new transaction.
+ */
+@Slf4j
+@Component
+@IgnoreLogginAspect
+public class AuditEventWriter {
+
+    private static final String METRIC_NAME = "audit.writer";
+    private static final String REPLAY_SUFFIX = ".replay";
+
+    private final PersistenceAuditEventRepository persistenceAuditEventRepository;
+    private final TenantContextHolder tenantContextHolder;
+    private final ObjectMapper objectMapper;
+    private final ApplicationProperties.AuditWriter properties;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<Entry> queue;
+    private final Path spillFile;
+    private final Path replayFile;
+    private final Object spillLock = new Object();
+
+    private final Timer flushTime = new Timer();
+    private final Meter written = new Meter();
+    private final Meter dropped = new Meter();
+    private final Meter spilled = new Meter();
+    private final Meter failed = new Meter();
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    public AuditEventWriter(PersistenceAuditEventRepository persistenceAuditEventRepository,
+                            TenantContextHolder tenantContextHolder,
+                            ObjectMapper objectMapper,
+                            PlatformTransactionManager transactionManager,
+                            ApplicationProperties applicationProperties,
+                            MetricRegistry metricRegistry) {
+        this.persistenceAuditEventRepository = persistenceAuditEventRepository;
+        this.tenantContextHolder = tenantContextHolder;
+        this.objectMapper = objectMapper;
+        this.properties = applicationProperties.getAuditWriter();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        this.spillFile = Paths.get(properties.getSpillFile());
+        this.replayFile = Paths.get(properties.getSpillFile() + REPLAY_SUFFIX);
+        CacheMetricsSet.register(metricRegistry, METRIC_NAME, getMetrics());
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isAsync()) {
+            return;
+        }
+        running = true;
+        writerThread = new ThreadFactoryBuilder().setNameFormat("audit-writer-%d").setDaemon(true).build()
+            .newThread(this::run);
+        writerThread.start();
+    }
+
+    /**
+     * Stop accepting events to the queue and wait until the queued events are written.
+     */
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            writerThread.join(properties.getShutdownTimeoutMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.warn("Audit writer stopped with {} events not written", queue.size());
+        }
+    }
+
+    /**
+     * Write an audit event to the schema of the current tenant.
+     *
+     * @param event the event
+     */
+    public void write(PersistentAuditEvent event) {
+        Optional<String> tenantKey = tenantContextHolder.getContext().getTenantKey().map(TenantKey::getValue);
+        if (!running || !tenantKey.isPresent()) {
+            transactionTemplate.execute(status -> persistenceAuditEventRepository.save(event));
+            written.mark();
+            return;
+        }
+        enqueue(new Entry(tenantKey.get(), event));
+    }
+
+    public MetricSet getMetrics() {
+        Map<String, Metric> metrics = new HashMap<>();
+        metrics.put("queue-size", (Gauge<Integer>) queue::size);
+        metrics.put("flush-time", flushTime);
+        metrics.put("written", written);
+        metrics.put("dropped", dropped);
+        metrics.put("spilled", spilled);
+        metrics.put("failed", failed);
+        return () -> metrics;
+    }
+
+    private void enqueue(Entry entry) {
+        switch (properties.getOverflowPolicy()) {
+            case DROP_OLDEST:
+                while (!queue.offer(entry)) {
+                    if (queue.poll() != null) {
+                        dropped.mark();
+                    }
+                }
+                break;
+            case SPILL:
+                if (!queue.offer(entry)) {
+                    spill(List.of(entry));
+                }
+                break;
+            case BLOCK:
+            default:
+                if (!offer(entry)) {
+                    dropped.mark();
+                    log.warn("Audit event dropped, the queue is full: {} {}", entry.getEvent().getPrincipal(),
+                        entry.getEvent().getAuditEventType());
+                }
+                break;
+        }
+    }
+
+    private boolean offer(Entry entry) {
+        try {
+            return queue.offer(entry, properties.getBlockTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            try {
+                List<Entry> batch = nextBatch();
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                } else if (running) {
+                    replaySpilled();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Audit writer failed", e);
+            }
+        }
+    }
+
+    private List<Entry> nextBatch() throws InterruptedException {
+        List<Entry> batch = new ArrayList<>(properties.getBatchSize());
+        Entry first = queue.poll(properties.getFlushIntervalMillis(), TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return batch;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getFlushIntervalMillis());
+        while (batch.size() < properties.getBatchSize() && running) {
+            queue.drainTo(batch, properties.getBatchSize() - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() == properties.getBatchSize() || remaining <= 0) {
+                break;
+            }
+            Entry next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        // on shutdown the batch is not waited for
+        queue.drainTo(batch, properties.getBatchSize() - batch.size());
+        return batch;
+    }
+
+    private void flush(List<Entry> batch) {
+        Map<String, List<PersistentAuditEvent>> eventsByTenant = new LinkedHashMap<>();
+        batch.forEach(entry -> eventsByTenant.computeIfAbsent(entry.getTenantKey(), key -> new ArrayList<>())
+            .add(entry.getEvent()));
+
+        eventsByTenant.forEach((tenantKey, events) -> {
+            try (Timer.Context ignored = flushTime.time()) {
+                tenantContextHolder.getPrivilegedContext().setTenant(new PlainTenant(TenantKey.valueOf(tenantKey)));
+                save(tenantKey, events);
+            } finally {
+                tenantContextHolder.getPrivilegedContext().destroyCurrentContext();
+            }
+        });
+    }
+
+    private void save(String tenantKey, List<PersistentAuditEvent> events) {
+        try {
+            transactionTemplate.execute(status -> persistenceAuditEventRepository.saveAll(events));
+            written.mark(events.size());
+            return;
+        } catch (RuntimeException e) {
+            log.warn("Failed to write {} audit events of tenant {}, retry one by one: {}", events.size(), tenantKey,
+                e.getMessage());
+        }
+
+        List<Entry> notWritten = new ArrayList<>();
+        for (PersistentAuditEvent event : events) {
+            // ids were assigned by the rolled back insert
+            event.setId(null);
+            try {
+                transactionTemplate.execute(status -> persistenceAuditEventRepository.save(event));
+                written.mark();
+            } catch (RuntimeException e) {
+                failed.mark();
+                if (isInvalid(e)) {
+                    log.error("Dropped invalid audit event {} {} of tenant {}: {}", event.getPrincipal(),
+                        event.getAuditEventType(), tenantKey, e.getMessage());
+                } else {
+                    log.error("Failed to write audit event {} {} of tenant {}: {}", event.getPrincipal(),
+                        event.getAuditEventType(), tenantKey, e.getMessage());
+                    notWritten.add(new Entry(tenantKey, event));
+                }
+            }
+        }
+        if (!notWritten.isEmpty() && properties.getOverflowPolicy() == OverflowPolicy.SPILL) {
+            spill(notWritten);
+        }
+    }
+
+    /**
+     * Invalid events are never written, they are not spilled.
+     */
+    private static boolean isInvalid(RuntimeException e) {
+        return ExceptionUtils.indexOfType(e, DataIntegrityViolationException.class) >= 0
+            || ExceptionUtils.indexOfType(e, ConstraintViolationException.class) >= 0;
+    }
+
+    private void spill(List<Entry> entries) {
+        synchronized (spillLock) {
+            try (BufferedWriter writer = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (Entry entry : entries) {
+                    writer.write(objectMapper.writeValueAsString(SpilledEvent.of(entry)));
+                    writer.newLine();
+                }
+                spilled.mark(entries.size());
+            } catch (IOException e) {
+                dropped.mark(entries.size());
+                log.error("Failed to spill {} audit events to {}: {}", entries.size(), spillFile, e.getMessage());
+            }
+        }
+    }
+
+    private void replaySpilled() {
+        synchronized (spillLock) {
+            try {
+                if (!Files.exists(replayFile)) {
+                    if (!Files.exists(spillFile)) {
+                        return;
+                    }
+                    Files.move(spillFile, replayFile, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (IOException e) {
+                log.error("Failed to replay spilled audit events from {}: {}", spillFile, e.getMessage());
+                return;
+            }
+        }
+
+        log.info("Replay spilled audit events from {}", replayFile);
+        try (BufferedReader reader = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8)) {
+            List<Entry> batch = new ArrayList<>(properties.getBatchSize());
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    batch.add(objectMapper.readValue(line, SpilledEvent.class).toEntry());
+                }
+                if (batch.size() == properties.getBatchSize()) {
+                    flush(batch);
+                    batch = new ArrayList<>(properties.getBatchSize());
+                }
+            }
+            flush(batch);
+        } catch (IOException e) {
+            log.error("Failed to replay spilled audit events from {}: {}", replayFile, e.getMessage());
+            return;
+        }
+        // events that failed again were spilled again
+        try {
+            Files.delete(replayFile);
+        } catch (IOException e) {
+            log.error("Failed to delete replayed audit events {}: {}", replayFile, e.getMessage());
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class Entry {
+
+        private String tenantKey;
+        private PersistentAuditEvent event;
+    }
+
+    /**
+     * Line of the spill file.
+     */
+    @Data
+    @NoArgsConstructor
+    private static class SpilledEvent {
+
+        private String tenantKey;
+        private String principal;
+        private String type;
+        private Instant date;
+        private Map<String, String> data;
+
+        static SpilledEvent of(Entry entry) {
+            SpilledEvent spilledEvent = new SpilledEvent();
+            spilledEvent.setTenantKey(entry.getTenantKey());
+            spilledEvent.setPrincipal(entry.getEvent().getPrincipal());
+            spilledEvent.setType(entry.getEvent().getAuditEventType());
+            spilledEvent.setDate(entry.getEvent().getAuditEventDate());
+            spilledEvent.setData(entry.getEvent().getData());
+            return spilledEvent;
+        }
+
+        Entry toEntry() {
+            PersistentAuditEvent event = new PersistentAuditEvent();
+            event.setPrincipal(principal);
+            event.setAuditEventType(type);
+            event.setAuditEventDate(date);
+            event.setData(data == null ? new HashMap<>() : data);
+            return new Entry(tenantKey, event);
+        }
+    }
+}
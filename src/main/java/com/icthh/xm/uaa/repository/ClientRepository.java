@@ -22,6 +22,8 @@ public interface ClientRepository extends JpaRepository<Client, Long>, ResourceR
 
     List<Client> findByRoleKey(String roleKey);
 
+    boolean existsByRoleKey(String roleKey);
+
     Page<Client> findAllByClientIdContainingIgnoreCase(String clientId, Pageable pageable);
 
 }
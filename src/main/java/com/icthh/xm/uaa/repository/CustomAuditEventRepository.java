@@ -4,21 +4,22 @@ import com.icthh.xm.uaa.config.ApplicationProperties;
 import com.icthh.xm.uaa.config.Constants;
 import com.icthh.xm.uaa.config.audit.AuditEventConverter;
 import com.icthh.xm.uaa.domain.PersistentAuditEvent;
-import com.icthh.xm.uaa.repository.projection.PrincipalProjection;
 
 import java.time.Instant;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.boot.actuate.audit.AuditEvent;
 import org.springframework.boot.actuate.audit.AuditEventRepository;
 import org.springframework.stereotype.Repository;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
 
 /**
  * An implementation of Spring Boot's AuditEventRepository.
+ * <p>
+ * Added events are written by the {@link AuditEventWriter}, asynchronously unless disabled.
  */
 @RequiredArgsConstructor
 @Repository
@@ -26,9 +27,15 @@ public class CustomAuditEventRepository implements AuditEventRepository {
 
     private static final String AUTHORIZATION_FAILURE = "AUTHORIZATION_FAILURE";
 
+    // column sizes of the audit event tables, the principal of failed logins is user input
+    private static final int PRINCIPAL_MAX_LENGTH = 100;
+    private static final int EVENT_TYPE_MAX_LENGTH = 255;
+    private static final int EVENT_DATA_MAX_LENGTH = 255;
+
     private final PersistenceAuditEventRepository persistenceAuditEventRepository;
     private final AuditEventConverter auditEventConverter;
     private final ApplicationProperties applicationProperties;
+    private final AuditEventWriter auditEventWriter;
 
     public List<AuditEvent> find(Date after) {
         Iterable<PersistentAuditEvent> persistentAuditEvents =
@@ -56,22 +63,19 @@ public class CustomAuditEventRepository implements AuditEventRepository {
         return auditEventConverter.convertToAuditEvent(persistentAuditEvents);
     }
 
-    public List<PrincipalProjection> findAfter(Instant after, String type) {
-        return persistenceAuditEventRepository.findDistinctByAuditEventDateAfterAndAuditEventType(after, type);
-    }
-
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
     @Override
     public void add(AuditEvent event) {
         if (!AUTHORIZATION_FAILURE.equals(event.getType())
                 && !Constants.ANONYMOUS_USER.equals(event.getPrincipal())
                 && applicationProperties.isAuditEventsEnabled()) {
             PersistentAuditEvent persistentAuditEvent = new PersistentAuditEvent();
-            persistentAuditEvent.setPrincipal(event.getPrincipal());
-            persistentAuditEvent.setAuditEventType(event.getType());
+            persistentAuditEvent.setPrincipal(StringUtils.truncate(event.getPrincipal(), PRINCIPAL_MAX_LENGTH));
+            persistentAuditEvent.setAuditEventType(StringUtils.truncate(event.getType(), EVENT_TYPE_MAX_LENGTH));
             persistentAuditEvent.setAuditEventDate(event.getTimestamp());
-            persistentAuditEvent.setData(auditEventConverter.convertDataToStrings(event.getData()));
-            persistenceAuditEventRepository.save(persistentAuditEvent);
+            Map<String, String> data = auditEventConverter.convertDataToStrings(event.getData());
+            data.replaceAll((key, value) -> StringUtils.truncate(value, EVENT_DATA_MAX_LENGTH));
+            persistentAuditEvent.setData(data);
+            auditEventWriter.write(persistentAuditEvent);
         }
     }
 
@@ -0,0 +1,49 @@
+package com.icthh.xm.uaa.repository;
+
+import static java.util.stream.Collectors.toList;
+
+import java.util.List;
+import java.util.function.Function;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Page read with {@link KeysetPageable}.
+ *
+ * @param <T> the content type
+ */
+@Getter
+@RequiredArgsConstructor
+public class KeysetPage<T> {
+
+    private final List<T> content;
+    private final KeysetPageable pageable;
+
+    /**
+     * The last id of this page when there is a next page, null otherwise.
+     */
+    private final Long nextAfterId;
+
+    /**
+     * The total count, null when not requested.
+     */
+    private final Long totalCount;
+
+    public boolean hasNext() {
+        return nextAfterId != null;
+    }
+
+    /**
+     * The next page.
+     *
+     * @return the next page, null if this is the last page
+     */
+    public KeysetPageable nextPageable() {
+        return hasNext() ? pageable.after(nextAfterId) : null;
+    }
+
+    public <R> KeysetPage<R> map(Function<? super T, ? extends R> converter) {
+        return new KeysetPage<>(content.stream().map(converter).collect(toList()), pageable, nextAfterId,
+            totalCount);
+    }
+}
@@ -0,0 +1,50 @@
+package com.icthh.xm.uaa.repository;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import org.springframework.data.domain.Sort;
+
+/**
+ * Keyset ("search after") pagination information.
+ * <p>
+ * A page is read from the entities ordered by id, starting after the last id of the previous page, so deep pages
+ * cost as much as the first one. The total count is only queried when requested.
+ */
+@Getter
+@ToString
+@RequiredArgsConstructor
+public class KeysetPageable {
+
+    /**
+     * The last id of the previous page, null for the first page.
+     */
+    private final Long afterId;
+    private final Sort.Direction direction;
+    private final int size;
+    private final boolean withCount;
+
+    /**
+     * The first page in ascending id order, without the total count.
+     *
+     * @param size the page size
+     * @return the first page
+     */
+    public static KeysetPageable first(int size) {
+        return new KeysetPageable(null, Sort.Direction.ASC, size, false);
+    }
+
+    /**
+     * The page after the id, in the same order and with the same size.
+     *
+     * @param lastId the last id of this page
+     * @return the next page
+     */
+    public KeysetPageable after(long lastId) {
+        return new KeysetPageable(lastId, direction, size, withCount);
+    }
+
+    public Sort getSort() {
+        return Sort.by(direction, "id");
+    }
+}
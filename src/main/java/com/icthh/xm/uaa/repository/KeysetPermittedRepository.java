@@ -0,0 +1,114 @@
+package com.icthh.xm.uaa.repository;
+
+import static java.lang.String.format;
+import static java.util.stream.Collectors.joining;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+import com.icthh.xm.commons.permission.repository.PermittedRepository;
+import com.icthh.xm.commons.permission.service.PermissionCheckService;
+import com.icthh.xm.commons.permission.service.translator.SpelToJpqlTranslator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Permitted repository that also reads the permitted entities in pages ordered by id.
+ * <p>
+ * A page starts after the last id of the previous page, so no offset is queried and the cost of a page does not
+ * depend on its position. The count is only queried when the {@link KeysetPageable} asks for it.
+ */
+public abstract class KeysetPermittedRepository extends PermittedRepository {
+
+    private static final String SELECT_IDS_SQL = "select returnObject.id from %s returnObject";
+    private static final String COUNT_SQL = "select count(returnObject) from %s returnObject";
+    private static final String WHERE_SQL = " where ";
+    private static final String AND_SQL = " and ";
+    private static final String ORDER_BY_ID_SQL = " order by returnObject.id ";
+    private static final String AFTER_ID_ASC_CONDITION = "returnObject.id > :afterId";
+    private static final String AFTER_ID_DESC_CONDITION = "returnObject.id < :afterId";
+
+    private final PermissionCheckService permissionCheckService;
+
+    @PersistenceContext
+    protected EntityManager entityManager;
+
+    protected KeysetPermittedRepository(PermissionCheckService permissionCheckService) {
+        super(permissionCheckService);
+        this.permissionCheckService = permissionCheckService;
+    }
+
+    /**
+     * Find a page of permitted entities.
+     * <p>
+     * The ids of the page are selected first, the entities are then fetched by ids so associations can be
+     * join fetched without paginating in memory.
+     *
+     * @param entityClass     the entity class
+     * @param whereCondition  additional condition on {@code returnObject}, can be null
+     * @param conditionParams the condition parameters
+     * @param pageable        the page info
+     * @param privilegeKey    the privilege key
+     * @param fetchByIds      fetches the entities by ids, in the page order
+     * @param <T>             the entity type
+     * @return permitted entities
+     */
+    protected <T> KeysetPage<T> findPageByCondition(Class<T> entityClass,
+                                                    String whereCondition,
+                                                    Map<String, Object> conditionParams,
+                                                    KeysetPageable pageable,
+                                                    String privilegeKey,
+                                                    Function<List<Long>, List<T>> fetchByIds) {
+        List<String> conditions = new ArrayList<>();
+        if (isNotBlank(whereCondition)) {
+            conditions.add(whereCondition);
+        }
+        String permittedCondition = permissionCheckService.createCondition(
+            SecurityContextHolder.getContext().getAuthentication(), privilegeKey, new SpelToJpqlTranslator());
+        if (isNotBlank(permittedCondition)) {
+            conditions.add(permittedCondition);
+        }
+
+        Long totalCount = null;
+        if (pageable.isWithCount()) {
+            TypedQuery<Long> countQuery = entityManager.createQuery(
+                format(COUNT_SQL, entityClass.getSimpleName()) + where(conditions), Long.class);
+            conditionParams.forEach(countQuery::setParameter);
+            totalCount = countQuery.getSingleResult();
+        }
+
+        List<String> idConditions = new ArrayList<>(conditions);
+        if (pageable.getAfterId() != null) {
+            idConditions.add(pageable.getDirection().isAscending() ? AFTER_ID_ASC_CONDITION : AFTER_ID_DESC_CONDITION);
+        }
+        TypedQuery<Long> idsQuery = entityManager.createQuery(format(SELECT_IDS_SQL, entityClass.getSimpleName())
+            + where(idConditions) + ORDER_BY_ID_SQL + pageable.getDirection().name(), Long.class)
+            .setMaxResults(pageable.getSize() + 1);
+        conditionParams.forEach(idsQuery::setParameter);
+        if (pageable.getAfterId() != null) {
+            idsQuery.setParameter("afterId", pageable.getAfterId());
+        }
+
+        // one id more than the page size tells whether there is a next page
+        List<Long> ids = idsQuery.getResultList();
+        boolean hasNext = ids.size() > pageable.getSize();
+        if (hasNext) {
+            ids = new ArrayList<>(ids.subList(0, pageable.getSize()));
+        }
+        List<T> content = ids.isEmpty() ? Collections.emptyList() : fetchByIds.apply(ids);
+        Long nextAfterId = hasNext ? ids.get(ids.size() - 1) : null;
+        return new KeysetPage<>(content, pageable, nextAfterId, totalCount);
+    }
+
+    private static String where(List<String> conditions) {
+        if (conditions.isEmpty()) {
+            return "";
+        }
+        return conditions.stream().map(condition -> "(" + condition + ")").collect(joining(AND_SQL, WHERE_SQL, ""));
+    }
+}
@@ -0,0 +1,33 @@
+package com.icthh.xm.uaa.repository;
+
+import com.icthh.xm.uaa.domain.OutboxMessage;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Spring Data JPA repository for the OutboxMessage entity.
+ */
+@Repository
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, Long> {
+
+    /**
+     * Lock the messages due for sending. Messages locked by another node are skipped: the lock timeout -2 is
+     * rendered as {@code FOR UPDATE SKIP LOCKED} by the dialects that support it, and as {@code FOR UPDATE} by the
+     * others, e.g. H2.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "-2"))
+    List<OutboxMessage> findByStatusAndNextAttemptAtLessThanEqualOrderByIdAsc(OutboxMessage.Status status,
+                                                                              Instant nextAttemptAt,
+                                                                              Pageable pageable);
+
+    Optional<OutboxMessage> findFirstByStatusOrderByCreatedDateAsc(OutboxMessage.Status status);
+}
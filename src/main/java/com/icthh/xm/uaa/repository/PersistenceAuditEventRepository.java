@@ -1,7 +1,6 @@
 package com.icthh.xm.uaa.repository;
 
 import com.icthh.xm.uaa.domain.PersistentAuditEvent;
-import com.icthh.xm.uaa.repository.projection.PrincipalProjection;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.time.Instant;
@@ -20,7 +19,5 @@ public interface PersistenceAuditEventRepository extends JpaRepository<Persisten
 
     List<PersistentAuditEvent> findByPrincipalAndAuditEventDateAfterAndAuditEventType(String principle, Instant after, String type);
 
-    List<PrincipalProjection> findDistinctByAuditEventDateAfterAndAuditEventType(Instant after, String type);
-
     Long deleteByPrincipal(String principal);
 }
@@ -1,18 +1,49 @@
 package com.icthh.xm.uaa.repository;
 
 import com.icthh.xm.uaa.domain.UserLogin;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+/**
+ * Spring Data JPA repository for the UserLogin entity.
+ * <p>
+ * Case insensitive lookups compare the indexed {@code normalized_login} column with the normalized value,
+ * see {@link UserLogin#normalize(String)}.
+ */
 public interface UserLoginRepository extends JpaRepository<UserLogin, Long> {
 
-    Optional<UserLogin> findOneByLoginIgnoreCase(final String login);
+    default Optional<UserLogin> findOneByLoginIgnoreCase(final String login) {
+        return findOneByNormalizedLogin(UserLogin.normalize(login));
+    }
 
-    Optional<UserLogin> findOneByLoginIgnoreCaseAndUserIdNot(final String login, final Long id);
+    default Optional<UserLogin> findOneByLoginIgnoreCaseAndUserIdNot(final String login, final Long id) {
+        return findOneByNormalizedLoginAndUserIdNot(UserLogin.normalize(login), id);
+    }
+
+    Optional<UserLogin> findOneByNormalizedLogin(String normalizedLogin);
+
+    Optional<UserLogin> findOneByNormalizedLoginAndUserIdNot(String normalizedLogin, Long id);
 
     Optional<UserLogin> findOneByLogin(final String login);
 
-    Page<UserLogin> findAllByLoginContainingIgnoreCase(String login, Pageable pageable);
+    default Page<UserLogin> findAllByLoginContainingIgnoreCase(String login, Pageable pageable) {
+        return findAllByNormalizedLoginContaining(UserLogin.normalize(login), pageable);
+    }
+
+    Page<UserLogin> findAllByNormalizedLoginContaining(String normalizedLogin, Pageable pageable);
+
+    /**
+     * Find which of the logins are used, ignoring case.
+     *
+     * @param logins normalized logins
+     * @return the used logins, normalized
+     */
+    @Query("select ul.normalizedLogin from UserLogin ul where ul.normalizedLogin in :logins")
+    List<String> findUsedLogins(@Param("logins") Collection<String> logins);
 }
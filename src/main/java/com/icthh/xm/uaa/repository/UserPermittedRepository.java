@@ -1,8 +1,8 @@
 package com.icthh.xm.uaa.repository;
 
-import com.icthh.xm.commons.permission.repository.PermittedRepository;
 import com.icthh.xm.commons.permission.service.PermissionCheckService;
 import com.icthh.xm.uaa.domain.User;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
@@ -11,10 +11,13 @@ import java.util.Collections;
 import java.util.Map;
 
 @Repository
-public class UserPermittedRepository extends PermittedRepository {
+public class UserPermittedRepository extends KeysetPermittedRepository {
 
-    public UserPermittedRepository(PermissionCheckService permissionCheckService) {
+    private final UserRepository userRepository;
+
+    public UserPermittedRepository(PermissionCheckService permissionCheckService, UserRepository userRepository) {
         super(permissionCheckService);
+        this.userRepository = userRepository;
     }
 
     /**
@@ -32,6 +35,25 @@ public class UserPermittedRepository extends PermittedRepository {
         return findByCondition(whereCondition, conditionParams, pageable, getType(), privilegeKey);
     }
 
+    /**
+     * Find a page of permitted users with logins.
+     * @param pageable the page info
+     * @param roleKey the role key, can be null
+     * @param privilegeKey the privilege key
+     * @return permitted users
+     */
+    public KeysetPage<User> findAllWithLogins(KeysetPageable pageable, String roleKey, String privilegeKey) {
+        String whereCondition = null;
+        Map<String, Object> conditionParams = Collections.emptyMap();
+        if (StringUtils.isNotBlank(roleKey)) {
+            whereCondition = "returnObject.roleKey = :roleKey";
+            conditionParams = Collections.singletonMap("roleKey", roleKey);
+        }
+
+        return findPageByCondition(getType(), whereCondition, conditionParams, pageable, privilegeKey,
+            ids -> userRepository.findDistinctWithLoginsByIdIn(ids, pageable.getSort()));
+    }
+
     private Class<User> getType() {
         return User.class;
     }
@@ -2,13 +2,17 @@ package com.icthh.xm.uaa.repository;
 
 import com.icthh.xm.commons.permission.access.repository.ResourceRepository;
 import com.icthh.xm.uaa.domain.User;
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -19,6 +23,8 @@ public interface UserRepository extends JpaRepository<User, Long>, ResourceRepos
 
     Optional<User> findOneByUserKey(String userKey);
 
+    List<User> findAllByUserKeyIn(Collection<String> userKeys);
+
     Optional<User> findOneByActivationKey(String activationKey);
 
     Optional<User> findOneByResetKey(String resetKey);
@@ -33,4 +39,10 @@ public interface UserRepository extends JpaRepository<User, Long>, ResourceRepos
     Page<User> findAll(Pageable pageable);
 
     List<User> findByRoleKey(String roleKey);
+
+    boolean existsByRoleKey(String roleKey);
+
+    @EntityGraph(attributePaths = "logins")
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    List<User> findDistinctWithLoginsByIdIn(Collection<Long> ids, Sort sort);
 }
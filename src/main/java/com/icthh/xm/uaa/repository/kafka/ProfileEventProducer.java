@@ -1,43 +1,163 @@
 package com.icthh.xm.uaa.repository.kafka;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.icthh.xm.commons.logging.util.MdcUtils;
 import com.icthh.xm.commons.security.XmAuthenticationContextHolder;
 import com.icthh.xm.commons.tenant.TenantContextHolder;
 import com.icthh.xm.commons.tenant.TenantContextUtils;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import com.icthh.xm.uaa.domain.OutboxMessage;
 import com.icthh.xm.uaa.domain.kafka.SystemEvent;
+import com.icthh.xm.uaa.service.OutboxService;
+import com.icthh.xm.uaa.util.CacheMetricsSet;
 
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
-import lombok.RequiredArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
+import org.springframework.util.concurrent.ListenableFuture;
 
+/**
+ * Publishes profile events to the system queue.
+ * <p>
+ * Events are put to a bounded buffer and a background thread hands them to a dedicated producer, which batches
+ * and compresses the records of bulk operations according to the {@code application.profile-events} properties.
+ * When the buffer is full the caller sends the event itself.
+ * <p>
+ * When the outbox is enabled, events are stored in the outbox of the current tenant instead, and the outbox relay
+ * publishes them.
+ */
 @Slf4j
-@RequiredArgsConstructor
 @Service
 public class ProfileEventProducer {
 
-    private final KafkaTemplate<String, String> template;
+    private static final String METRIC_NAME = "profile.events.producer";
+    private static final long POLL_MILLIS = 100;
+
     private final JavaTimeModule module = new JavaTimeModule();
     private final ObjectMapper mapper = new ObjectMapper().configure(
         SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false).registerModule(module);
 
     private final TenantContextHolder tenantContextHolder;
     private final XmAuthenticationContextHolder authContextHolder;
+    private final OutboxService outboxService;
+    private final ApplicationProperties.ProfileEvents properties;
+    private final ProducerFactory<String, String> producerFactory;
+    private final KafkaTemplate<String, String> template;
+    private final BlockingQueue<Entry> buffer;
+    private final String topicName;
+
+    private final Timer sendLatency = new Timer();
+    private final Meter bufferFull = new Meter();
+    private final Meter failed = new Meter();
+
+    private volatile boolean running;
+    private Thread senderThread;
 
     @Value("${spring.application.name}")
     private String appName;
 
-    @Value("${application.kafka-system-queue}")
-    private String topicName;
+    @Autowired
+    public ProfileEventProducer(KafkaProperties kafkaProperties,
+                                TenantContextHolder tenantContextHolder,
+                                XmAuthenticationContextHolder authContextHolder,
+                                OutboxService outboxService,
+                                ApplicationProperties applicationProperties,
+                                MetricRegistry metricRegistry) {
+        this(new DefaultKafkaProducerFactory<>(
+                buildProducerProperties(kafkaProperties, applicationProperties.getProfileEvents())),
+            tenantContextHolder, authContextHolder, outboxService, applicationProperties, metricRegistry);
+    }
+
+    ProfileEventProducer(ProducerFactory<String, String> producerFactory,
+                         TenantContextHolder tenantContextHolder,
+                         XmAuthenticationContextHolder authContextHolder,
+                         OutboxService outboxService,
+                         ApplicationProperties applicationProperties,
+                         MetricRegistry metricRegistry) {
+        this.tenantContextHolder = tenantContextHolder;
+        this.authContextHolder = authContextHolder;
+        this.outboxService = outboxService;
+        this.properties = applicationProperties.getProfileEvents();
+        this.producerFactory = producerFactory;
+        this.template = new KafkaTemplate<>(producerFactory);
+        this.buffer = new ArrayBlockingQueue<>(properties.getBufferCapacity());
+        this.topicName = applicationProperties.getKafkaSystemQueue();
+        CacheMetricsSet.register(metricRegistry, METRIC_NAME, getMetrics());
+    }
+
+    static Map<String, Object> buildProducerProperties(KafkaProperties kafkaProperties,
+                                                       ApplicationProperties.ProfileEvents properties) {
+        Map<String, Object> props = kafkaProperties.buildProducerProperties();
+        props.put(ProducerConfig.LINGER_MS_CONFIG, properties.getLingerMs());
+        props.put(ProducerConfig.BATCH_SIZE_CONFIG, properties.getBatchSize());
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, properties.getCompressionType());
+        if (properties.isIdempotence()) {
+            props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+            props.put(ProducerConfig.ACKS_CONFIG, "all");
+        }
+        return props;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        senderThread = new ThreadFactoryBuilder().setNameFormat("profile-event-producer-%d").setDaemon(true).build()
+            .newThread(this::run);
+        senderThread.start();
+    }
+
+    /**
+     * Stop accepting events to the buffer and wait until the buffered events are sent.
+     */
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            senderThread.join(properties.getShutdownTimeoutMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!buffer.isEmpty()) {
+            log.warn("Profile event producer stopped with {} events not sent", buffer.size());
+        }
+        if (producerFactory instanceof DefaultKafkaProducerFactory) {
+            ((DefaultKafkaProducerFactory<String, String>) producerFactory).destroy();
+        }
+    }
 
     /**
      * Build message for kafka's event.
@@ -64,17 +184,96 @@ public class ProfileEventProducer {
     }
 
     /**
-     * Send event to kafka.
+     * Send event to kafka, through the outbox of the current tenant when it is enabled.
      *
      * @param content the event content
      */
-    @Async
     public void send(String content) {
-        if (!StringUtils.isBlank(content)) {
-            log.debug("Sending kafka event to topic = '{}', data = '{}'", topicName, content);
-            template.send(topicName, content);
+        if (StringUtils.isBlank(content)) {
+            return;
+        }
+        if (outboxService.isEnabled()) {
+            outboxService.add(OutboxMessage.Type.PROFILE_EVENT, content);
+            return;
+        }
+        Entry entry = new Entry(content, System.nanoTime());
+        if (!running || !buffer.offer(entry)) {
+            if (running) {
+                bufferFull.mark();
+            }
+            doSend(entry);
         }
     }
 
-}
+    /**
+     * Send events to kafka, through the outbox of the current tenant in one batch when it is enabled.
+     *
+     * @param contents the event contents
+     */
+    public void sendAll(List<String> contents) {
+        if (!outboxService.isEnabled()) {
+            contents.forEach(this::send);
+            return;
+        }
+        outboxService.addAll(OutboxMessage.Type.PROFILE_EVENT, contents.stream()
+            .filter(StringUtils::isNotBlank)
+            .collect(Collectors.toList()));
+    }
 
+    /**
+     * Send event to kafka without buffering, used by the outbox relay.
+     *
+     * @param content the event content
+     * @return result of the send
+     */
+    public ListenableFuture<SendResult<String, String>> publish(String content) {
+        return doSend(new Entry(content, System.nanoTime()));
+    }
+
+    public MetricSet getMetrics() {
+        Map<String, Metric> metrics = new HashMap<>();
+        metrics.put("buffer-size", (Gauge<Integer>) buffer::size);
+        metrics.put("buffer-full", bufferFull);
+        metrics.put("send-latency", sendLatency);
+        metrics.put("failed", failed);
+        return () -> metrics;
+    }
+
+    private void run() {
+        while (running || !buffer.isEmpty()) {
+            try {
+                Entry entry = buffer.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (entry != null) {
+                    doSend(entry);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Failed to send profile event", e);
+            }
+        }
+        template.flush();
+    }
+
+    private ListenableFuture<SendResult<String, String>> doSend(Entry entry) {
+        log.debug("Sending kafka event to topic = '{}', data = '{}'", topicName, entry.getContent());
+        ListenableFuture<SendResult<String, String>> result = template.send(topicName, entry.getContent());
+        result.addCallback(
+            sendResult -> sendLatency.update(System.nanoTime() - entry.getEnqueuedNanos(), TimeUnit.NANOSECONDS),
+            e -> {
+                failed.mark();
+                log.warn("Failed to send kafka event to topic = '{}', data = '{}', error: {}", topicName,
+                    entry.getContent(), e.getMessage());
+            });
+        return result;
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class Entry {
+
+        private String content;
+        private long enqueuedNanos;
+    }
+}
@@ -2,6 +2,9 @@ package com.icthh.xm.uaa.repository.kafka;
 
 import static com.icthh.xm.commons.lep.XmLepConstants.THREAD_CONTEXT_KEY_AUTH_CONTEXT;
 import static com.icthh.xm.commons.lep.XmLepConstants.THREAD_CONTEXT_KEY_TENANT_CONTEXT;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -12,6 +15,7 @@ import com.icthh.xm.commons.security.XmAuthenticationContextHolder;
 import com.icthh.xm.commons.tenant.TenantContextHolder;
 import com.icthh.xm.commons.tenant.TenantContextUtils;
 import com.icthh.xm.lep.api.LepManager;
+import com.icthh.xm.uaa.config.ApplicationProperties;
 import com.icthh.xm.uaa.config.Constants;
 import com.icthh.xm.uaa.domain.User;
 import com.icthh.xm.uaa.domain.kafka.SystemEvent;
@@ -19,14 +23,47 @@ import com.icthh.xm.uaa.repository.util.SystemEventMapper;
 import com.icthh.xm.uaa.service.UserService;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import javax.validation.ConstraintViolationException;
 
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.classify.BinaryExceptionClassifier;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.retry.annotation.Backoff;
 import org.springframework.retry.annotation.Retryable;
+import org.springframework.retry.backoff.ExponentialBackOffPolicy;
+import org.springframework.retry.policy.SimpleRetryPolicy;
+import org.springframework.retry.support.RetryTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @RequiredArgsConstructor
 @Slf4j
@@ -34,10 +71,36 @@ import org.springframework.stereotype.Service;
 @IgnoreLogginAspect
 public class SystemQueueConsumer {
 
+    private static final long DEAD_LETTER_SEND_TIMEOUT_SECONDS = 10;
+
+    /**
+     * Errors caused by the content of a message, which fail again however often the message is processed.
+     */
+    private static final Map<Class<? extends Throwable>, Boolean> POISON_ERRORS = new HashMap<>();
+
+    static {
+        POISON_ERRORS.put(ConstraintViolationException.class, false);
+        POISON_ERRORS.put(DataIntegrityViolationException.class, false);
+        POISON_ERRORS.put(IllegalArgumentException.class, false);
+        POISON_ERRORS.put(DateTimeException.class, false);
+        POISON_ERRORS.put(ClassCastException.class, false);
+    }
+
+    private final ObjectMapper mapper = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+        .registerModule(new JavaTimeModule());
+
     private final TenantContextHolder tenantContextHolder;
     private final XmAuthenticationContextHolder authContextHolder;
     private final LepManager lepManager;
     private final UserService userService;
+    private final KafkaTemplate<String, String> template;
+    private final PlatformTransactionManager transactionManager;
+    private final ApplicationProperties applicationProperties;
+
+    // messages of a failed batch that were handled, and failures of the updates consumed again
+    private final Set<RecordOffset> handled = ConcurrentHashMap.newKeySet();
+    private final Map<RecordOffset, Integer> failures = new ConcurrentHashMap<>();
 
     /**
      * Consume tenant command event message.
@@ -51,9 +114,6 @@ public class SystemQueueConsumer {
         MdcUtils.putRid();
         try {
             log.info("Consume event from topic [{}]", message.topic());
-            ObjectMapper mapper = new ObjectMapper()
-                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-            mapper.registerModule(new JavaTimeModule());
             try {
                 SystemEvent event = mapper.readValue(message.value(), SystemEvent.class);
 
@@ -71,12 +131,206 @@ public class SystemQueueConsumer {
                 }
             } catch (IOException e) {
                 log.error("System queue message has incorrect format: '{}'", message.value(), e);
+                sendToDeadLetterTopic(message, e);
+            }
+        } finally {
+            destroy();
+        }
+    }
+
+    /**
+     * Consume the tenant command event messages of one poll. Account updates are grouped by tenant, the users of a
+     * group are loaded with one query and updated in one transaction, retried with backoff on failure. When the
+     * transaction of a group fails because of the content of a message, its updates are applied one by one and the
+     * failed ones are sent to the dead letter topic, as well as the messages with incorrect format. When a group
+     * fails otherwise, e.g. the database not being available, the other groups are still applied and the updates of
+     * the failed group are thrown as a {@link FailedRecordsException} once the retries are exhausted, so that
+     * {@link #handleError} seeks back to them. Messages handled before are skipped when the batch is consumed again,
+     * and updates failing {@code maxFailures} times are sent to the dead letter topic.
+     *
+     * @param messages the tenant command event messages
+     */
+    public void consumeEvents(List<ConsumerRecord<String, String>> messages) {
+        log.info("Consume {} events from system queue", messages.size());
+        Map<String, List<ReceivedEvent>> updatesByTenant = new LinkedHashMap<>();
+        for (ConsumerRecord<String, String> message : messages) {
+            if (handled.contains(RecordOffset.of(message))) {
+                // handled before its batch failed, the failed updates are consumed again
+                continue;
+            }
+            SystemEvent event;
+            try {
+                event = mapper.readValue(message.value(), SystemEvent.class);
+            } catch (IOException e) {
+                log.error("System queue message has incorrect format: '{}'", message.value(), e);
+                sendToDeadLetterTopic(message, e);
+                handled.add(RecordOffset.of(message));
+                continue;
+            }
+
+            if (StringUtils.equalsIgnoreCase(event.getEventType(), Constants.UPDATE_ACCOUNT_EVENT_TYPE)) {
+                String tenantKey = StringUtils.defaultString(event.getTenantKey()).toUpperCase();
+                updatesByTenant.computeIfAbsent(tenantKey, key -> new ArrayList<>())
+                    .add(new ReceivedEvent(message, event));
+            } else {
+                log.info("Event ignored with type='{}', source='{}', event_id='{}'",
+                    event.getEventType(), event.getMessageSource(), event.getEventId());
+                handled.add(RecordOffset.of(message));
+            }
+        }
+        List<ConsumerRecord<String, String>> failed = new ArrayList<>();
+        updatesByTenant.forEach((tenantKey, events) -> failed.addAll(updateAccounts(tenantKey, events)));
+        if (!failed.isEmpty()) {
+            throw new FailedRecordsException(failed);
+        }
+        messages.forEach(message -> {
+            handled.remove(RecordOffset.of(message));
+            failures.remove(RecordOffset.of(message));
+        });
+    }
+
+    /**
+     * Seek back to the failed updates of a batch, or to the whole batch when it failed otherwise. Partitions without
+     * failed updates are not consumed again.
+     *
+     * @param thrownException the exception thrown by {@link #consumeEvents}
+     * @param records         the records of the batch
+     * @param consumer        the consumer
+     */
+    public void handleError(Exception thrownException, ConsumerRecords<?, ?> records, Consumer<?, ?> consumer) {
+        int index = ExceptionUtils.indexOfType(thrownException, FailedRecordsException.class);
+        Iterable<? extends ConsumerRecord<?, ?>> consumedAgain = index < 0 ? records
+            : ((FailedRecordsException) ExceptionUtils.getThrowableList(thrownException).get(index)).getRecords();
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        consumedAgain.forEach(record ->
+            offsets.merge(new TopicPartition(record.topic(), record.partition()), record.offset(), Math::min));
+        offsets.forEach(consumer::seek);
+    }
+
+    /**
+     * Update the accounts of a tenant.
+     *
+     * @return the messages of the updates to be consumed again
+     */
+    private List<ConsumerRecord<String, String>> updateAccounts(String tenantKey, List<ReceivedEvent> events) {
+        MdcUtils.putRid();
+        try {
+            init(tenantKey, null);
+            try {
+                applyUpdatesWithRetry(events);
+                log.info("Updated {} accounts of tenant {}", events.size(), tenantKey);
+                events.forEach(event -> handled.add(RecordOffset.of(event.getMessage())));
+                return Collections.emptyList();
+            } catch (RuntimeException e) {
+                if (!isPoison(e)) {
+                    return consumeAgain(tenantKey, events, e);
+                }
+                log.warn("Failed to update {} accounts of tenant {} in one transaction, update one by one: {}",
+                    events.size(), tenantKey, e.getMessage());
+                for (int i = 0; i < events.size(); i++) {
+                    ReceivedEvent event = events.get(i);
+                    try {
+                        applyUpdatesWithRetry(Collections.singletonList(event));
+                    } catch (RuntimeException ex) {
+                        if (!isPoison(ex)) {
+                            return consumeAgain(tenantKey, events.subList(i, events.size()), ex);
+                        }
+                        log.error("Failed to update account, event_id='{}'", event.getEvent().getEventId(), ex);
+                        sendToDeadLetterTopic(event.getMessage(), ex);
+                    }
+                    handled.add(RecordOffset.of(event.getMessage()));
+                }
+                return Collections.emptyList();
             }
         } finally {
             destroy();
         }
     }
 
+    private List<ConsumerRecord<String, String>> consumeAgain(String tenantKey, List<ReceivedEvent> events,
+                                                              RuntimeException e) {
+        RecordOffset first = RecordOffset.of(events.get(0).getMessage());
+        int failureCount = failures.merge(first, 1, Integer::sum);
+        int maxFailures = applicationProperties.getSystemQueue().getMaxFailures();
+        if (failureCount < maxFailures) {
+            log.error("Failed to update {} accounts of tenant {}, failure {} of {}, the updates will be consumed again",
+                events.size(), tenantKey, failureCount, maxFailures, e);
+            return events.stream().map(ReceivedEvent::getMessage).collect(toList());
+        }
+        log.error("Failed to update {} accounts of tenant {} {} times, send the updates to the dead letter topic",
+            events.size(), tenantKey, failureCount, e);
+        for (ReceivedEvent event : events) {
+            sendToDeadLetterTopic(event.getMessage(), e);
+            handled.add(RecordOffset.of(event.getMessage()));
+        }
+        failures.remove(first);
+        return Collections.emptyList();
+    }
+
+    private void applyUpdatesWithRetry(List<ReceivedEvent> events) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        createRetryTemplate().execute(context -> transactionTemplate.execute(status -> {
+            applyUpdates(events);
+            return null;
+        }));
+    }
+
+    private RetryTemplate createRetryTemplate() {
+        ApplicationProperties.Retry retry = applicationProperties.getRetry();
+        ExponentialBackOffPolicy backOffPolicy = new ExponentialBackOffPolicy();
+        backOffPolicy.setInitialInterval(retry.getDelay());
+        backOffPolicy.setMultiplier(retry.getMultiplier());
+        RetryTemplate retryTemplate = new RetryTemplate();
+        retryTemplate.setRetryPolicy(new SimpleRetryPolicy(Math.max(retry.getMaxAttempts(), 1), POISON_ERRORS,
+            true, true));
+        retryTemplate.setBackOffPolicy(backOffPolicy);
+        return retryTemplate;
+    }
+
+    private static boolean isPoison(Throwable e) {
+        BinaryExceptionClassifier retryable = new BinaryExceptionClassifier(POISON_ERRORS, true);
+        retryable.setTraverseCauses(true);
+        return !retryable.classify(e);
+    }
+
+    private void applyUpdates(List<ReceivedEvent> events) {
+        Set<String> userKeys = events.stream().map(ReceivedEvent::getUserKey).collect(toSet());
+        Map<String, User> users = userService.getUsers(userKeys).stream()
+            .collect(toMap(User::getUserKey, Function.identity()));
+        for (ReceivedEvent event : events) {
+            User user = users.get(event.getUserKey());
+            if (user == null) {
+                log.error("Failed to update account. User with userKey='{}' does not exists.", event.getUserKey());
+            } else {
+                SystemEventMapper.toUser(event.getEvent(), user);
+                userService.saveUser(user);
+            }
+        }
+    }
+
+    private void sendToDeadLetterTopic(ConsumerRecord<String, String> message, Exception cause) {
+        String topic = StringUtils.defaultIfBlank(applicationProperties.getSystemQueue().getDeadLetterTopic(),
+            applicationProperties.getKafkaSystemQueue() + ".DLT");
+        ProducerRecord<String, String> record = new ProducerRecord<>(topic, message.key(), message.value());
+        record.headers()
+            .add(KafkaHeaders.DLT_ORIGINAL_TOPIC, message.topic().getBytes(StandardCharsets.UTF_8))
+            .add(KafkaHeaders.DLT_ORIGINAL_PARTITION,
+                ByteBuffer.allocate(Integer.BYTES).putInt(message.partition()).array())
+            .add(KafkaHeaders.DLT_ORIGINAL_OFFSET, ByteBuffer.allocate(Long.BYTES).putLong(message.offset()).array())
+            .add(KafkaHeaders.DLT_EXCEPTION_MESSAGE,
+                String.valueOf(cause.getMessage()).getBytes(StandardCharsets.UTF_8));
+        try {
+            // the offset is committed after the batch, so the record has to be on the dead letter topic before
+            template.send(record).get(DEAD_LETTER_SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KafkaException("Interrupted while sending message to dead letter topic " + topic, e);
+        } catch (ExecutionException | TimeoutException e) {
+            log.error("Failed to send message to dead letter topic {}: '{}'", topic, message.value(), e);
+            throw new KafkaException("Failed to send message to dead letter topic " + topic, e);
+        }
+    }
+
     private void init(String tenantKey, String login) {
         if (StringUtils.isNotBlank(tenantKey)) {
             TenantContextUtils.setTenant(tenantContextHolder, tenantKey);
@@ -113,4 +367,41 @@ public class SystemQueueConsumer {
             userService.saveUser(user);
         }
     }
+
+    /**
+     * Updates of a batch thrown to be consumed again.
+     */
+    @Getter
+    public static class FailedRecordsException extends KafkaException {
+
+        private final transient List<ConsumerRecord<String, String>> records;
+
+        FailedRecordsException(List<ConsumerRecord<String, String>> records) {
+            super("Failed to update accounts of " + records.size() + " system queue messages");
+            this.records = records;
+        }
+    }
+
+    @Value
+    private static class RecordOffset {
+
+        String topic;
+        int partition;
+        long offset;
+
+        static RecordOffset of(ConsumerRecord<?, ?> record) {
+            return new RecordOffset(record.topic(), record.partition(), record.offset());
+        }
+    }
+
+    @Value
+    private static class ReceivedEvent {
+
+        ConsumerRecord<String, String> message;
+        SystemEvent event;
+
+        String getUserKey() {
+            return String.valueOf(event.getDataMap().get(Constants.SYSTEM_EVENT_PROP_USER_KEY));
+        }
+    }
 }
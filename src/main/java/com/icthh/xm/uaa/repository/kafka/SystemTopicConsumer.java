@@ -1,8 +1,17 @@
 package com.icthh.xm.uaa.repository.kafka;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.icthh.xm.commons.logging.util.MdcUtils;
+import com.icthh.xm.uaa.config.Constants;
+import com.icthh.xm.uaa.domain.kafka.SystemEvent;
+import com.icthh.xm.uaa.security.ClientDetailsCache;
+import com.icthh.xm.uaa.security.DomainUserDetailsCache;
+import com.icthh.xm.uaa.service.OnlineUsersService;
+import java.io.IOException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.retry.annotation.Backoff;
 import org.springframework.retry.annotation.Retryable;
@@ -13,6 +22,13 @@ import org.springframework.stereotype.Service;
 @Service
 public class SystemTopicConsumer {
 
+    private final ObjectMapper mapper = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final ClientDetailsCache clientDetailsCache;
+    private final DomainUserDetailsCache domainUserDetailsCache;
+    private final OnlineUsersService onlineUsersService;
+
     /**
      * Consume tenant command event message.
      *
@@ -25,8 +41,63 @@ public class SystemTopicConsumer {
         MdcUtils.putRid();
         try {
             log.info("Consume event from topic [{}]", message.topic());
+            SystemEvent event = readEvent(message);
+            if (event == null || StringUtils.isBlank(event.getEventType())) {
+                return;
+            }
+
+            switch (event.getEventType().toUpperCase()) {
+                case Constants.CLIENT_CHANGED_EVENT_TYPE:
+                    onClientChanged(event);
+                    break;
+                case Constants.USER_CHANGED_EVENT_TYPE:
+                    onUserChanged(event);
+                    break;
+                case Constants.ONLINE_USERS_EVENT_TYPE:
+                    onOnlineUsers(event);
+                    break;
+                default:
+                    log.debug("Event ignored with type='{}', source='{}', event_id='{}'",
+                        event.getEventType(), event.getMessageSource(), event.getEventId());
+                    break;
+            }
         } finally {
             MdcUtils.removeRid();
         }
     }
+
+    private SystemEvent readEvent(ConsumerRecord<String, String> message) {
+        try {
+            return mapper.readValue(message.value(), SystemEvent.class);
+        } catch (IOException e) {
+            log.warn("System topic message has unsupported format: '{}'", message.value());
+            return null;
+        }
+    }
+
+    private void onClientChanged(SystemEvent event) {
+        Object clientId = event.getDataMap().get(Constants.SYSTEM_EVENT_PROP_CLIENT_ID);
+        if (StringUtils.isBlank(event.getTenantKey()) || clientId == null) {
+            log.warn("Client change event without tenant or client id, event_id='{}'", event.getEventId());
+            return;
+        }
+        clientDetailsCache.evictLocal(event.getTenantKey(), String.valueOf(clientId));
+    }
+
+    private void onUserChanged(SystemEvent event) {
+        Object userKey = event.getDataMap().get(Constants.SYSTEM_EVENT_PROP_USER_KEY);
+        if (StringUtils.isBlank(event.getTenantKey()) || userKey == null) {
+            log.warn("User change event without tenant or user key, event_id='{}'", event.getEventId());
+            return;
+        }
+        domainUserDetailsCache.evictLocal(event.getTenantKey(), String.valueOf(userKey));
+    }
+
+    private void onOnlineUsers(SystemEvent event) {
+        if (StringUtils.isBlank(event.getTenantKey())) {
+            log.warn("Online users event without tenant, event_id='{}'", event.getEventId());
+            return;
+        }
+        onlineUsersService.merge(event.getTenantKey(), event.getDataMap());
+    }
 }
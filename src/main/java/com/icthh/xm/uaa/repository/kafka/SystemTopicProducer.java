@@ -0,0 +1,61 @@
+package com.icthh.xm.uaa.repository.kafka;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.icthh.xm.commons.logging.util.MdcUtils;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import com.icthh.xm.uaa.domain.kafka.SystemEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Publishes events to the system topic. Every UAA instance consumes the system topic with its own consumer group,
+ * so these events reach all nodes of the cluster.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class SystemTopicProducer {
+
+    private final KafkaTemplate<String, String> template;
+    private final ApplicationProperties applicationProperties;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Value("${spring.application.name}")
+    private String appName;
+
+    /**
+     * Send event to the system topic.
+     *
+     * @param eventType the event type
+     * @param tenantKey the tenant key
+     * @param data      the event data
+     */
+    public void send(String eventType, String tenantKey, Object data) {
+        if (!applicationProperties.isKafkaEnabled()) {
+            return;
+        }
+
+        SystemEvent event = new SystemEvent();
+        event.setEventId(MdcUtils.getRid());
+        event.setMessageSource(appName);
+        event.setEventType(eventType);
+        event.setTenantKey(tenantKey);
+        event.setData(data);
+        try {
+            String content = mapper.writeValueAsString(event);
+            log.debug("Sending kafka event to topic = '{}', data = '{}'", applicationProperties.getKafkaSystemTopic(),
+                content);
+            template.send(applicationProperties.getKafkaSystemTopic(), content).addCallback(
+                sendResult -> { },
+                e -> log.warn("Failed to send kafka event {} of tenant {} to topic = '{}', size = {}, error: {}",
+                    eventType, tenantKey, applicationProperties.getKafkaSystemTopic(), content.length(),
+                    e.getMessage()));
+        } catch (JsonProcessingException e) {
+            log.warn("Error creating system topic event, error: {}", e.getMessage(), e);
+        }
+    }
+}
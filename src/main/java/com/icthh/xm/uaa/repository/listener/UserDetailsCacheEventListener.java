@@ -0,0 +1,81 @@
+package com.icthh.xm.uaa.repository.listener;
+
+import com.icthh.xm.uaa.domain.User;
+import com.icthh.xm.uaa.domain.UserLogin;
+import com.icthh.xm.uaa.security.DomainUserDetailsCache;
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+
+/**
+ * Invalidates cached user details when a {@link User} or one of its {@link UserLogin}s is changed.
+ */
+@Component
+@RequiredArgsConstructor
+public class UserDetailsCacheEventListener
+    implements PostUpdateEventListener, PostDeleteEventListener, PostInsertEventListener {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final DomainUserDetailsCache domainUserDetailsCache;
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+            .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+        registry.appendListeners(EventType.POST_INSERT, this);
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        evict(event.getEntity());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        evict(event.getEntity());
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof User) {
+            // a new user is not cached anywhere, neither are its logins inserted along with it
+            String userKey = ((User) event.getEntity()).getUserKey();
+            if (userKey != null) {
+                domainUserDetailsCache.userCreated(userKey);
+            }
+        } else if (event.getEntity() instanceof UserLogin) {
+            // a new login changes the login list of an already cached user
+            evict(event.getEntity());
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    private void evict(Object entity) {
+        User user = null;
+        if (entity instanceof User) {
+            user = (User) entity;
+        } else if (entity instanceof UserLogin) {
+            user = ((UserLogin) entity).getUser();
+        }
+        if (user != null && user.getUserKey() != null) {
+            domainUserDetailsCache.evictUser(user.getUserKey());
+        }
+    }
+}
@@ -1,6 +0,0 @@
-package com.icthh.xm.uaa.repository.projection;
-
-public interface PrincipalProjection {
-
-    String getPrincipal();
-}
@@ -0,0 +1,65 @@
+package com.icthh.xm.uaa.repository.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts SQL statements prepared by Hibernate on the current thread between {@link #start()} and {@link #stop()},
+ * and records them between {@link #startRecording()} and {@link #stopRecording()}.
+ */
+public class SqlStatementCounter implements StatementInspector {
+
+    private static final ThreadLocal<int[]> COUNTER = new ThreadLocal<>();
+    private static final ThreadLocal<List<String>> STATEMENTS = new ThreadLocal<>();
+
+    @Override
+    public String inspect(String sql) {
+        int[] counter = COUNTER.get();
+        if (counter != null) {
+            counter[0]++;
+        }
+        List<String> statements = STATEMENTS.get();
+        if (statements != null) {
+            statements.add(sql);
+        }
+        return sql;
+    }
+
+    /**
+     * Start counting statements on the current thread.
+     */
+    public static void start() {
+        COUNTER.set(new int[1]);
+    }
+
+    /**
+     * Stop counting statements on the current thread.
+     *
+     * @return number of statements since {@link #start()}
+     */
+    public static int stop() {
+        int[] counter = COUNTER.get();
+        COUNTER.remove();
+        return counter == null ? 0 : counter[0];
+    }
+
+    /**
+     * Start recording statements on the current thread.
+     */
+    public static void startRecording() {
+        STATEMENTS.set(new ArrayList<>());
+    }
+
+    /**
+     * Stop recording statements on the current thread.
+     *
+     * @return statements since {@link #startRecording()}, in the order they were prepared
+     */
+    public static List<String> stopRecording() {
+        List<String> statements = STATEMENTS.get();
+        STATEMENTS.remove();
+        return statements == null ? Collections.emptyList() : statements;
+    }
+}
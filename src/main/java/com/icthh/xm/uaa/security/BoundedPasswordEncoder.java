@@ -0,0 +1,162 @@
+package com.icthh.xm.uaa.security;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.Timer;
+import com.icthh.xm.commons.tenant.PlainTenant;
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.commons.tenant.TenantKey;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Runs password hashing on a dedicated bounded executor, in the tenant context of the caller.
+ * <p>
+ * A burst of logins queues up here instead of occupying every web worker thread with BCrypt, and every tenant may have
+ * at most {@code tenantConcurrency} hash operations in flight or queued, so one tenant cannot take the whole pool as
+ * long as {@code tenantConcurrency} is below the pool size. A hash operation keeps its permit until it completes, even
+ * when the caller stopped waiting for it.
+ * Requests that cannot get a permit or a result within the wait timeout fail with
+ * {@link AuthenticationServiceException}.
+ */
+@Slf4j
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private static final String NO_TENANT = "";
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final TenantContextHolder tenantContextHolder;
+    private final int tenantConcurrency;
+    private final long waitTimeoutMillis;
+
+    private final Map<String, Semaphore> tenantPermits = new ConcurrentHashMap<>();
+    private final Timer hashTime = new Timer();
+    private final Timer queueWait = new Timer();
+    private final Meter rejected = new Meter();
+
+    public BoundedPasswordEncoder(PasswordEncoder passwordEncoder,
+                                  ThreadPoolExecutor executor,
+                                  TenantContextHolder tenantContextHolder,
+                                  int tenantConcurrency,
+                                  long waitTimeoutMillis) {
+        this.passwordEncoder = passwordEncoder;
+        this.executor = executor;
+        this.tenantContextHolder = tenantContextHolder;
+        this.tenantConcurrency = tenantConcurrency;
+        this.waitTimeoutMillis = waitTimeoutMillis;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return execute(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return execute(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return passwordEncoder.upgradeEncoding(encodedPassword);
+    }
+
+    public MetricSet getMetrics() {
+        Map<String, Metric> metrics = new HashMap<>();
+        metrics.put("hash-time", hashTime);
+        metrics.put("queue-wait", queueWait);
+        metrics.put("rejected", rejected);
+        metrics.put("queue-size", (Gauge<Integer>) () -> executor.getQueue().size());
+        metrics.put("active", (Gauge<Integer>) executor::getActiveCount);
+        return () -> metrics;
+    }
+
+    private <T> T execute(Supplier<T> task) {
+        Optional<TenantKey> tenant = tenantContextHolder.getContext().getTenantKey();
+        String tenantKey = tenant.map(key -> key.getValue().toUpperCase()).orElse(NO_TENANT);
+        Semaphore permits = tenantPermits.computeIfAbsent(tenantKey, key -> new Semaphore(tenantConcurrency));
+        long submitted = System.nanoTime();
+
+        if (!tryAcquire(permits)) {
+            throw reject(tenantKey, "tenant concurrency limit reached");
+        }
+        // the permit is released by whoever claims it: the task when it runs, or the caller when the task was
+        // rejected or abandoned before it started, as BCrypt keeps running after an interrupt
+        AtomicBoolean claimed = new AtomicBoolean();
+        Future<T> result;
+        try {
+            result = executor.submit(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    return null;
+                }
+                // the wrapped encoder may depend on the tenant, e.g. for its strength
+                tenant.ifPresent(key -> tenantContextHolder.getPrivilegedContext().setTenant(new PlainTenant(key)));
+                try (Timer.Context ignored = hashTime.time()) {
+                    queueWait.update(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+                    return task.get();
+                } finally {
+                    tenantContextHolder.getPrivilegedContext().destroyCurrentContext();
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw reject(tenantKey, "executor queue is full");
+        }
+        try {
+            long remaining = waitTimeoutMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submitted);
+            return result.get(Math.max(remaining, 0), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            abandon(result, claimed, permits);
+            throw reject(tenantKey, "wait timeout exceeded");
+        } catch (InterruptedException e) {
+            abandon(result, claimed, permits);
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("Interrupted while waiting for password hashing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new AuthenticationServiceException("Password hashing failed", e.getCause());
+        }
+    }
+
+    private static void abandon(Future<?> result, AtomicBoolean claimed, Semaphore permits) {
+        if (claimed.compareAndSet(false, true)) {
+            permits.release();
+            result.cancel(false);
+        }
+    }
+
+    private boolean tryAcquire(Semaphore permits) {
+        try {
+            return permits.tryAcquire(waitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private AuthenticationServiceException reject(String tenantKey, String reason) {
+        rejected.mark();
+        log.warn("Password hashing rejected for tenant {}: {}", tenantKey, reason);
+        return new AuthenticationServiceException("Password verification is temporarily unavailable");
+    }
+}
@@ -1,44 +1,85 @@
 package com.icthh.xm.uaa.security;
 
+import com.codahale.metrics.MetricSet;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.icthh.xm.uaa.util.CacheMetricsSet;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+/**
+ * Remembers successful password verifications.
+ * <p>
+ * Neither the raw password nor a plain digest of it is kept: the cache key is an HMAC of the encoded hash and the raw
+ * password under a random key that lives only in this node's memory.
+ */
 public class CachePasswordHashEncoder implements PasswordEncoder {
 
     private static final int DEFAULT_CACHE_SIZE = 1000;
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int HMAC_KEY_SIZE = 32;
 
     private final PasswordEncoder passwordEncoder;
-        private final Cache<String, CharSequence> passwordCache;
+    private final Cache<String, Boolean> verifiedPasswords;
+    private final SecretKeySpec hmacKey;
 
-        public CachePasswordHashEncoder(PasswordEncoder passwordEncoder, Integer cacheSize) {
-            this.passwordEncoder = passwordEncoder;
-            this.passwordCache = CacheBuilder.newBuilder()
-                .maximumSize(cacheSize != null ? cacheSize : DEFAULT_CACHE_SIZE)
-                .build();
-        }
+    public CachePasswordHashEncoder(PasswordEncoder passwordEncoder, Integer cacheSize) {
+        this.passwordEncoder = passwordEncoder;
+        this.verifiedPasswords = CacheBuilder.newBuilder()
+            .maximumSize(cacheSize != null ? cacheSize : DEFAULT_CACHE_SIZE)
+            .recordStats()
+            .build();
+        byte[] key = new byte[HMAC_KEY_SIZE];
+        new SecureRandom().nextBytes(key);
+        this.hmacKey = new SecretKeySpec(key, HMAC_ALGORITHM);
+    }
 
-        @Override
-        public String encode(CharSequence rawPassword) {
-            return passwordEncoder.encode(rawPassword);
-        }
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return passwordEncoder.encode(rawPassword);
+    }
 
-        @Override
-        public boolean matches(CharSequence rawPassword, String encodedPassword) {
-            CharSequence cachedPassword = passwordCache.getIfPresent(encodedPassword);
-            if (cachedPassword != null && cachedPassword.equals(rawPassword)) {
-                return true;
-            } else {
-                boolean matchResult = passwordEncoder.matches(rawPassword, encodedPassword);
-                if (matchResult) {
-                    passwordCache.put(encodedPassword, rawPassword);
-                }
-                return matchResult;
-            }
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if (rawPassword == null || encodedPassword == null) {
+            return passwordEncoder.matches(rawPassword, encodedPassword);
+        }
+        String key = hmac(encodedPassword, rawPassword);
+        if (verifiedPasswords.getIfPresent(key) != null) {
+            return true;
+        }
+        boolean matchResult = passwordEncoder.matches(rawPassword, encodedPassword);
+        if (matchResult) {
+            verifiedPasswords.put(key, Boolean.TRUE);
         }
+        return matchResult;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return passwordEncoder.upgradeEncoding(encodedPassword);
+    }
+
+    public MetricSet getMetrics() {
+        return new CacheMetricsSet(verifiedPasswords);
+    }
 
-        @Override
-        public boolean upgradeEncoding(String encodedPassword) {
-            return passwordEncoder.upgradeEncoding(encodedPassword);
+    private String hmac(String encodedPassword, CharSequence rawPassword) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(hmacKey);
+            mac.update(encodedPassword.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            mac.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(rawPassword)));
+            return Base64.getEncoder().encodeToString(mac.doFinal());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to compute password cache key", e);
         }
     }
+}
@@ -0,0 +1,139 @@
+package com.icthh.xm.uaa.security;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.icthh.xm.uaa.util.CacheMetricsSet;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+
+/**
+ * {@link JwtTokenStore} which keeps verified access tokens until their own expiration, so the signature check and
+ * claims parsing run once per token instead of once per reader (ProxyFilter, resource server, token services and LEP).
+ *
+ * <p>Entries are keyed by the SHA-256 hash of the token value. Callers always get their own copy of the token and
+ * the authentication, because both are mutated further down the filter chain. Tokens revoked through
+ * {@link #removeAccessToken(OAuth2AccessToken)} are rejected by this instance until they expire.
+ */
+@Slf4j
+public class CachingJwtTokenStore extends JwtTokenStore {
+
+    private final Cache<String, VerifiedToken> verifiedTokens;
+    private final Map<String, Long> revokedTokens = new ConcurrentHashMap<>();
+
+    public CachingJwtTokenStore(JwtAccessTokenConverter jwtTokenEnhancer, long maximumSize, long timeToLiveSeconds) {
+        super(jwtTokenEnhancer);
+        this.verifiedTokens = CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(timeToLiveSeconds, TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessToken(String tokenValue) {
+        VerifiedToken verifiedToken = getVerifiedToken(tokenValue);
+        return verifiedToken != null ? new DefaultOAuth2AccessToken(verifiedToken.accessToken) : null;
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+        return readAuthentication(token.getValue());
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(String tokenValue) {
+        VerifiedToken verifiedToken = getVerifiedToken(tokenValue);
+        if (verifiedToken == null) {
+            return null;
+        }
+        OAuth2Authentication authentication = verifiedToken.authentication;
+        if (authentication == null) {
+            authentication = super.readAuthentication(tokenValue);
+            verifiedToken.authentication = authentication;
+        }
+        return copyOf(authentication);
+    }
+
+    @Override
+    public void removeAccessToken(OAuth2AccessToken token) {
+        String key = hash(token.getValue());
+        verifiedTokens.invalidate(key);
+        if (!token.isExpired()) {
+            long now = System.currentTimeMillis();
+            revokedTokens.values().removeIf(expiration -> expiration < now);
+            Date expiration = token.getExpiration();
+            revokedTokens.put(key, expiration != null ? expiration.getTime() : Long.MAX_VALUE);
+        }
+        super.removeAccessToken(token);
+    }
+
+    public MetricSet getMetrics() {
+        Map<String, Metric> metrics = new HashMap<>(new CacheMetricsSet(verifiedTokens).getMetrics());
+        metrics.put("revoked", (Gauge<Integer>) revokedTokens::size);
+        return () -> metrics;
+    }
+
+    private VerifiedToken getVerifiedToken(String tokenValue) {
+        String key = hash(tokenValue);
+        if (revokedTokens.containsKey(key)) {
+            log.warn("Revoked access token was presented");
+            return null;
+        }
+
+        VerifiedToken verifiedToken = verifiedTokens.getIfPresent(key);
+        if (verifiedToken != null && !verifiedToken.accessToken.isExpired()) {
+            return verifiedToken;
+        }
+
+        OAuth2AccessToken accessToken = super.readAccessToken(tokenValue);
+        if (accessToken == null) {
+            return null;
+        }
+        verifiedToken = new VerifiedToken(accessToken);
+        if (accessToken.isExpired()) {
+            verifiedTokens.invalidate(key);
+        } else {
+            verifiedTokens.put(key, verifiedToken);
+        }
+        return verifiedToken;
+    }
+
+    private static OAuth2Authentication copyOf(OAuth2Authentication authentication) {
+        if (authentication == null) {
+            return null;
+        }
+        OAuth2Authentication copy = new OAuth2Authentication(authentication.getOAuth2Request(),
+            authentication.getUserAuthentication());
+        Object details = authentication.getDetails();
+        copy.setDetails(details instanceof Map ? new HashMap<>((Map<?, ?>) details) : details);
+        return copy;
+    }
+
+    private static String hash(String tokenValue) {
+        return Hashing.sha256().hashString(tokenValue, StandardCharsets.UTF_8).toString();
+    }
+
+    private static final class VerifiedToken {
+
+        private final OAuth2AccessToken accessToken;
+        private volatile OAuth2Authentication authentication;
+
+        private VerifiedToken(OAuth2AccessToken accessToken) {
+            this.accessToken = accessToken;
+        }
+    }
+}
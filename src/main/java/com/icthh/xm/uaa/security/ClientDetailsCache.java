@@ -0,0 +1,112 @@
+package com.icthh.xm.uaa.security;
+
+import static com.icthh.xm.uaa.config.Constants.CLIENT_CHANGED_EVENT_TYPE;
+import static com.icthh.xm.uaa.config.Constants.SYSTEM_EVENT_PROP_CLIENT_ID;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.icthh.xm.commons.logging.aop.IgnoreLogginAspect;
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.commons.tenant.TenantContextUtils;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import com.icthh.xm.uaa.repository.kafka.SystemTopicProducer;
+import com.icthh.xm.uaa.util.CacheMetricsSet;
+import com.icthh.xm.uaa.util.TransactionUtils;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per tenant cache of client details loaded from the database.
+ * <p>
+ * Entries are evicted by {@link com.icthh.xm.uaa.service.ClientService} changes on this node and, through the system
+ * topic, on the other nodes. The time to live bounds the window in which a blocked client can still be resolved if an
+ * invalidation signal is lost.
+ */
+@Slf4j
+@Component
+@IgnoreLogginAspect
+public class ClientDetailsCache {
+
+    private static final String METRIC_NAME = "client.details.cache";
+
+    private final boolean enabled;
+    private final Cache<String, ClientDetails> cache;
+    private final TenantContextHolder tenantContextHolder;
+    private final SystemTopicProducer systemTopicProducer;
+
+    public ClientDetailsCache(ApplicationProperties applicationProperties,
+                              TenantContextHolder tenantContextHolder,
+                              SystemTopicProducer systemTopicProducer,
+                              MetricRegistry metricRegistry) {
+        ApplicationProperties.ClientCache properties = applicationProperties.getClientCache();
+        this.enabled = properties.isEnabled();
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(properties.getMaximumSize())
+            .expireAfterWrite(properties.getTimeToLiveSeconds(), TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+        this.tenantContextHolder = tenantContextHolder;
+        this.systemTopicProducer = systemTopicProducer;
+        CacheMetricsSet.register(metricRegistry, METRIC_NAME, new CacheMetricsSet(cache));
+    }
+
+    /**
+     * Get client details of the current tenant, loading them when absent. Failed loads are not cached.
+     *
+     * @param clientId the client id
+     * @param loader   loads the client details
+     * @return the client details
+     */
+    public ClientDetails get(String clientId, Supplier<ClientDetails> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        String key = key(getTenantKey(), clientId);
+        ClientDetails clientDetails = cache.getIfPresent(key);
+        if (clientDetails == null) {
+            clientDetails = loader.get();
+            cache.put(key, clientDetails);
+        }
+        return clientDetails;
+    }
+
+    /**
+     * Evict client details of the current tenant on this node and, once the current transaction commits,
+     * on all other nodes.
+     *
+     * @param clientId the client id
+     */
+    public void evict(String clientId) {
+        String tenantKey = getTenantKey();
+        evictLocal(tenantKey, clientId);
+        TransactionUtils.afterCommit(() -> {
+            evictLocal(tenantKey, clientId);
+            systemTopicProducer.send(CLIENT_CHANGED_EVENT_TYPE, tenantKey,
+                Collections.singletonMap(SYSTEM_EVENT_PROP_CLIENT_ID, clientId));
+        });
+    }
+
+    /**
+     * Evict client details on this node only.
+     *
+     * @param tenantKey the tenant key
+     * @param clientId  the client id
+     */
+    public void evictLocal(String tenantKey, String clientId) {
+        log.debug("Evict client details for tenant {}, clientId {}", tenantKey, clientId);
+        cache.invalidate(key(tenantKey, clientId));
+    }
+
+    private String getTenantKey() {
+        return TenantContextUtils.getRequiredTenantKeyValue(tenantContextHolder);
+    }
+
+    private static String key(String tenantKey, String clientId) {
+        return tenantKey.toUpperCase() + ":" + clientId;
+    }
+}
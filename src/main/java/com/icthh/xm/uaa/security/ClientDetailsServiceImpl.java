@@ -3,16 +3,13 @@ package com.icthh.xm.uaa.security;
 import com.google.common.base.Preconditions;
 import com.icthh.xm.commons.lep.LogicExtensionPoint;
 import com.icthh.xm.commons.lep.spring.LepService;
-import com.icthh.xm.commons.permission.constants.RoleConstant;
 import com.icthh.xm.uaa.config.ApplicationProperties;
 import com.icthh.xm.uaa.domain.Client;
 import com.icthh.xm.uaa.domain.ClientState;
 import com.icthh.xm.uaa.service.ClientService;
-import com.icthh.xm.uaa.service.TenantPropertiesService;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Primary;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.oauth2.provider.ClientDetails;
 import org.springframework.security.oauth2.provider.ClientDetailsService;
 import org.springframework.security.oauth2.provider.ClientRegistrationException;
@@ -29,9 +26,9 @@ public class ClientDetailsServiceImpl implements ClientDetailsService {
 
     private final ApplicationProperties applicationProperties;
 
-    private final PasswordEncoder passwordEncoder;
+    private final DefaultClientDetailsRegistry defaultClientDetailsRegistry;
 
-    private final TenantPropertiesService tenantPropertiesService;
+    private final ClientDetailsCache clientDetailsCache;
 
     @LogicExtensionPoint("LoadClientByClientId")
     @Override
@@ -39,23 +36,19 @@ public class ClientDetailsServiceImpl implements ClientDetailsService {
 
         log.info("Load client with clientId={}", clientId);
         Preconditions.checkNotNull(clientId);
-        Client principal;
-
-        if (applicationProperties.getDefaultClientId().contains(clientId)) {
-            principal = new Client();
-            principal.setClientId(clientId);
-
-            principal.setClientSecret(passwordEncoder.encode(
-                tenantPropertiesService.getTenantProps().getSecurity().getDefaultClientSecret()));
+        if (defaultClientDetailsRegistry.isDefaultClient(clientId)) {
+            return defaultClientDetailsRegistry.getClientDetails(clientId);
+        }
+        return clientDetailsCache.get(clientId, () -> loadClient(clientId));
+    }
 
-            principal.setRoleKey(RoleConstant.SUPER_ADMIN);
-        } else {
-            try {
-                principal = clientService.getClient(clientId);
-            } catch (Exception e) {
-                log.error("Exception on getting client", e);
-                throw new ClientRegistrationException("Client was not found: " + clientId, e);
-            }
+    private ClientDetails loadClient(String clientId) {
+        Client principal;
+        try {
+            principal = clientService.getClient(clientId);
+        } catch (Exception e) {
+            log.error("Exception on getting client", e);
+            throw new ClientRegistrationException("Client was not found: " + clientId, e);
         }
 
         if (principal == null) {
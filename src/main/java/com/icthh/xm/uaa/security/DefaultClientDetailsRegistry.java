@@ -0,0 +1,78 @@
+package com.icthh.xm.uaa.security;
+
+import com.icthh.xm.commons.logging.aop.IgnoreLogginAspect;
+import com.icthh.xm.commons.permission.constants.RoleConstant;
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.commons.tenant.TenantContextUtils;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import com.icthh.xm.uaa.domain.Client;
+import com.icthh.xm.uaa.domain.properties.TenantProperties;
+import com.icthh.xm.uaa.service.TenantPropertiesService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per tenant registry of precomputed {@link ClientDetails} for the default clients
+ * ({@code application.default-client-id}).
+ * <p>
+ * The default client secret comes from tenant properties and is encoded once per tenant properties instance: the
+ * registry is rebuilt on the first lookup after {@link TenantPropertiesService#onRefresh} replaced them.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@IgnoreLogginAspect
+public class DefaultClientDetailsRegistry {
+
+    private final Map<String, TenantDefaultClients> tenantClients = new ConcurrentHashMap<>();
+
+    private final ApplicationProperties applicationProperties;
+    private final PasswordEncoder passwordEncoder;
+    private final TenantPropertiesService tenantPropertiesService;
+    private final TenantContextHolder tenantContextHolder;
+
+    public boolean isDefaultClient(String clientId) {
+        return applicationProperties.getDefaultClientId().contains(clientId);
+    }
+
+    public ClientDetails getClientDetails(String clientId) {
+        String tenant = TenantContextUtils.getRequiredTenantKeyValue(tenantContextHolder).toUpperCase();
+        TenantProperties tenantProperties = tenantPropertiesService.getTenantProps();
+
+        TenantDefaultClients clients = tenantClients.get(tenant);
+        if (clients == null || clients.source != tenantProperties) {
+            clients = tenantClients.compute(tenant, (key, current) ->
+                current != null && current.source == tenantProperties ? current : build(key, tenantProperties));
+        }
+        return clients.clientDetails.get(clientId);
+    }
+
+    private TenantDefaultClients build(String tenant, TenantProperties tenantProperties) {
+        log.info("Build default clients {} for tenant {}", applicationProperties.getDefaultClientId(), tenant);
+        String encodedSecret = passwordEncoder.encode(tenantProperties.getSecurity().getDefaultClientSecret());
+
+        Map<String, ClientDetails> clientDetails = new HashMap<>();
+        for (String clientId : applicationProperties.getDefaultClientId()) {
+            Client client = new Client();
+            client.setClientId(clientId);
+            client.setClientSecret(encodedSecret);
+            client.setRoleKey(RoleConstant.SUPER_ADMIN);
+            clientDetails.put(clientId, new ClientDetailsImpl(client, applicationProperties.getClientGrantTypes(),
+                applicationProperties.getClientScope()));
+        }
+        return new TenantDefaultClients(tenantProperties, clientDetails);
+    }
+
+    @RequiredArgsConstructor
+    private static final class TenantDefaultClients {
+
+        private final TenantProperties source;
+        private final Map<String, ClientDetails> clientDetails;
+    }
+}
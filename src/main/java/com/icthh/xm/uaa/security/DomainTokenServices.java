@@ -5,6 +5,7 @@ import com.icthh.xm.uaa.domain.User;
 import com.icthh.xm.uaa.security.oauth2.otp.OtpGenerator;
 import com.icthh.xm.uaa.security.oauth2.otp.OtpSendStrategy;
 import com.icthh.xm.uaa.security.oauth2.otp.OtpStore;
+import com.icthh.xm.uaa.service.OnlineUsersService;
 import com.icthh.xm.uaa.service.TenantPropertiesService;
 import com.icthh.xm.uaa.service.UserService;
 import java.util.Date;
@@ -70,6 +71,8 @@ public class DomainTokenServices implements AuthorizationServerTokenServices, Re
     private UserService userService;
     @Setter
     private UserSecurityValidator userSecurityValidator;
+    @Setter
+    private OnlineUsersService onlineUsersService;
 
     /**
      * Initialize these token services. If no random generator is set, one will be created.
@@ -103,7 +106,9 @@ public class DomainTokenServices implements AuthorizationServerTokenServices, Re
             return createTfaAccessToken(authentication);
         } else {
             // general OAuth2 flow
-            return getOrCreateAccessToken(authentication);
+            OAuth2AccessToken accessToken = getOrCreateAccessToken(authentication);
+            recordOnlineUser(authentication);
+            return accessToken;
         }
     }
 
@@ -247,9 +252,16 @@ public class DomainTokenServices implements AuthorizationServerTokenServices, Re
         if (tenantPropertiesService.getTenantProps().getSecurity().isReIssueRefreshToken()) {
             tokenStore.storeRefreshToken(accessToken.getRefreshToken(), authentication);
         }
+        recordOnlineUser(authentication);
         return accessToken;
     }
 
+    private void recordOnlineUser(OAuth2Authentication authentication) {
+        if (onlineUsersService != null && !authentication.isClientOnly()) {
+            onlineUsersService.record(authentication.getName());
+        }
+    }
+
     /**
      * Ensures that {@code user} by {@link Authentication#getPrincipal()} is activated
      *
@@ -2,11 +2,13 @@ package com.icthh.xm.uaa.security;
 
 import com.icthh.xm.uaa.domain.OtpChannelType;
 import com.icthh.xm.uaa.service.dto.UserLoginDto;
+import lombok.AccessLevel;
 import lombok.Getter;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
+import org.jboss.aerogear.security.otp.api.Base32;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.User;
 
@@ -15,6 +17,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 import static java.util.Collections.emptyList;
 
@@ -22,7 +25,8 @@ import static java.util.Collections.emptyList;
 public class DomainUserDetails extends User {
 
     private final boolean tfaEnabled;
-    private final String tfaOtpSecret;
+    @Getter(AccessLevel.NONE)
+    private String tfaOtpSecret;
     private final Integer tfaAccessTokenValiditySeconds;
 
     private String tfaEncodedOtp;
@@ -38,6 +42,10 @@ public class DomainUserDetails extends User {
     private final boolean autoLogoutEnabled;
     private final Integer autoLogoutTimeoutSeconds;
 
+    @Getter(AccessLevel.NONE)
+    private transient Supplier<com.icthh.xm.uaa.domain.User> userLoader;
+    private transient com.icthh.xm.uaa.domain.User userSnapshot;
+
     public DomainUserDetails(String username,
                              String password,
                              Collection<? extends GrantedAuthority> authorities,
@@ -99,6 +107,63 @@ public class DomainUserDetails extends User {
         this.autoLogoutTimeoutSeconds = autoLogoutTimeoutSeconds;
     }
 
+    /**
+     * TFA OTP secret, generated on first use so that only the TFA flow pays for the secure random.
+     *
+     * @return the TFA OTP secret
+     */
+    public synchronized String getTfaOtpSecret() {
+        if (tfaOtpSecret == null) {
+            tfaOtpSecret = Base32.random();
+        }
+        return tfaOtpSecret;
+    }
+
+    /**
+     * Copy of these user details without the per authentication state (TFA OTP and additional details).
+     *
+     * @return the copy
+     */
+    public DomainUserDetails copy() {
+        return new DomainUserDetails(getUsername(),
+                                     getPassword(),
+                                     getAuthorities(),
+                                     tenant,
+                                     userKey,
+                                     tfaEnabled,
+                                     tfaOtpSecret,
+                                     tfaOtpChannelType,
+                                     accessTokenValiditySeconds,
+                                     refreshTokenValiditySeconds,
+                                     tfaAccessTokenValiditySeconds,
+                                     autoLogoutEnabled,
+                                     autoLogoutTimeoutSeconds,
+                                     logins);
+    }
+
+    /**
+     * User entity these details were built from, loaded at most once for the authentication they belong to.
+     * Empty when no snapshot source was attached.
+     *
+     * @return the user snapshot
+     */
+    public synchronized Optional<com.icthh.xm.uaa.domain.User> getUserSnapshot() {
+        if (userLoader != null) {
+            userSnapshot = userLoader.get();
+            userLoader = null;
+        }
+        return Optional.ofNullable(userSnapshot);
+    }
+
+    public synchronized boolean hasUserSnapshot() {
+        return userLoader != null || userSnapshot != null;
+    }
+
+    public synchronized void setUserSnapshot(Supplier<com.icthh.xm.uaa.domain.User> userLoader) {
+        this.userLoader = userLoader;
+        this.userSnapshot = null;
+    }
+
     public Optional<String> getTfaEncodedOtp() {
         return Optional.ofNullable(tfaEncodedOtp);
     }
@@ -0,0 +1,220 @@
+package com.icthh.xm.uaa.security;
+
+import static com.icthh.xm.uaa.config.Constants.SYSTEM_EVENT_PROP_USER_KEY;
+import static com.icthh.xm.uaa.config.Constants.USER_CHANGED_EVENT_TYPE;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.icthh.xm.commons.logging.aop.IgnoreLogginAspect;
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.commons.tenant.TenantKey;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import com.icthh.xm.uaa.repository.kafka.SystemTopicProducer;
+import com.icthh.xm.uaa.util.CacheMetricsSet;
+import com.icthh.xm.uaa.util.TransactionUtils;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Per tenant cache of {@link DomainUserDetails} keyed by normalized login.
+ * <p>
+ * Callers always get a copy, as user details are mutated during authentication (erased credentials, TFA OTP).
+ * Loaded details are only cached once the loading transaction committed, and not at all if a user was invalidated
+ * meanwhile. Entries are invalidated by user key on user and login changes on this node and, through the system
+ * topic, on the other nodes: once per user and transaction, and not for users created in the transaction, which
+ * cannot be cached yet. The cache keys of a user are indexed by user key, so that an invalidation does not scan the
+ * cache.
+ */
+@Slf4j
+@Component
+@IgnoreLogginAspect
+public class DomainUserDetailsCache {
+
+    private static final String METRIC_NAME = "user.details.cache";
+
+    private final boolean enabled;
+    private final Cache<String, DomainUserDetails> cache;
+    private final Map<String, Set<String>> keysByUser = new HashMap<>();
+    private final Object transactionChangesKey = new Object();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final TenantContextHolder tenantContextHolder;
+    private final SystemTopicProducer systemTopicProducer;
+
+    public DomainUserDetailsCache(ApplicationProperties applicationProperties,
+                                  TenantContextHolder tenantContextHolder,
+                                  SystemTopicProducer systemTopicProducer,
+                                  MetricRegistry metricRegistry) {
+        ApplicationProperties.UserDetailsCache properties = applicationProperties.getUserDetailsCache();
+        this.enabled = properties.isEnabled();
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(properties.getMaximumSize())
+            .expireAfterWrite(properties.getTimeToLiveSeconds(), TimeUnit.SECONDS)
+            .recordStats()
+            .removalListener(this::onRemoval)
+            .build();
+        this.tenantContextHolder = tenantContextHolder;
+        this.systemTopicProducer = systemTopicProducer;
+        CacheMetricsSet.register(metricRegistry, METRIC_NAME, new CacheMetricsSet(cache));
+    }
+
+    /**
+     * Get user details, loading them when absent.
+     *
+     * @param tenantKey  the tenant key
+     * @param lowerLogin normalized login
+     * @param loader     loads the user details
+     * @return a copy of the user details
+     */
+    public Optional<DomainUserDetails> get(String tenantKey, String lowerLogin,
+                                           Supplier<Optional<DomainUserDetails>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        String key = key(tenantKey, lowerLogin);
+        DomainUserDetails cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return Optional.of(cached.copy());
+        }
+
+        long generation = invalidations.get();
+        Optional<DomainUserDetails> loaded = loader.get();
+        loaded.map(DomainUserDetails::copy).ifPresent(userDetails -> TransactionUtils.afterCommit(() -> {
+            if (generation == invalidations.get()) {
+                put(key, userDetails);
+            }
+        }));
+        return loaded;
+    }
+
+    /**
+     * Mark a user as created in the current transaction, so that its changes in the transaction are not evicted.
+     *
+     * @param userKey the user key
+     */
+    public void userCreated(String userKey) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            getTransactionChanges().created.add(userKey);
+        }
+    }
+
+    /**
+     * Evict user details of a user of the current tenant on this node and, once the current transaction commits,
+     * on all other nodes. Without a tenant context the user is evicted in all tenants of this node.
+     *
+     * @param userKey the user key
+     */
+    public void evictUser(String userKey) {
+        Optional<String> currentTenant = tenantContextHolder.getContext().getTenantKey().map(TenantKey::getValue);
+        if (!currentTenant.isPresent()) {
+            evictLocal("", userKey);
+            return;
+        }
+        String tenantKey = currentTenant.get();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionChanges changes = getTransactionChanges();
+            if (changes.created.contains(userKey) || !changes.evicted.add(key(tenantKey, userKey))) {
+                return;
+            }
+        }
+        evictLocal(tenantKey, userKey);
+        TransactionUtils.afterCommit(() -> {
+            evictLocal(tenantKey, userKey);
+            systemTopicProducer.send(USER_CHANGED_EVENT_TYPE, tenantKey,
+                Collections.singletonMap(SYSTEM_EVENT_PROP_USER_KEY, userKey));
+        });
+    }
+
+    /**
+     * Evict user details of a user on this node only.
+     *
+     * @param tenantKey the tenant key, empty for all tenants
+     * @param userKey   the user key
+     */
+    public void evictLocal(String tenantKey, String userKey) {
+        log.debug("Evict user details for tenant {}, userKey {}", tenantKey, userKey);
+        invalidations.incrementAndGet();
+        String prefix = tenantKey.isEmpty() ? "" : key(tenantKey, "");
+        synchronized (keysByUser) {
+            Set<String> keys = keysByUser.get(userKey);
+            if (keys == null) {
+                return;
+            }
+            keys.removeIf(key -> {
+                if (key.startsWith(prefix)) {
+                    cache.invalidate(key);
+                    return true;
+                }
+                return false;
+            });
+            if (keys.isEmpty()) {
+                keysByUser.remove(userKey);
+            }
+        }
+    }
+
+    private void put(String key, DomainUserDetails userDetails) {
+        synchronized (keysByUser) {
+            keysByUser.computeIfAbsent(userDetails.getUserKey(), userKey -> new HashSet<>()).add(key);
+            cache.put(key, userDetails);
+        }
+    }
+
+    private void onRemoval(RemovalNotification<String, DomainUserDetails> notification) {
+        // explicit removals are done by evictLocal, which updates the index itself
+        if (notification.getCause() == RemovalCause.EXPLICIT || notification.getCause() == RemovalCause.REPLACED
+            || notification.getValue() == null) {
+            return;
+        }
+        String key = notification.getKey();
+        synchronized (keysByUser) {
+            Set<String> keys = keysByUser.get(notification.getValue().getUserKey());
+            if (keys != null && !cache.asMap().containsKey(key)) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysByUser.remove(notification.getValue().getUserKey());
+                }
+            }
+        }
+    }
+
+    private TransactionChanges getTransactionChanges() {
+        TransactionChanges changes = (TransactionChanges) TransactionSynchronizationManager
+            .getResource(transactionChangesKey);
+        if (changes == null) {
+            TransactionChanges newChanges = new TransactionChanges();
+            TransactionSynchronizationManager.bindResource(transactionChangesKey, newChanges);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(transactionChangesKey);
+                }
+            });
+            changes = newChanges;
+        }
+        return changes;
+    }
+
+    private static String key(String tenantKey, String lowerLogin) {
+        return tenantKey.toUpperCase() + ":" + lowerLogin;
+    }
+
+    private static class TransactionChanges {
+
+        private final Set<String> created = new HashSet<>();
+        private final Set<String> evicted = new HashSet<>();
+    }
+}
@@ -6,6 +6,7 @@ import com.icthh.xm.commons.logging.aop.IgnoreLogginAspect;
 import com.icthh.xm.commons.tenant.TenantContextHolder;
 import com.icthh.xm.commons.tenant.TenantKey;
 import com.icthh.xm.uaa.domain.User;
+import com.icthh.xm.uaa.domain.UserLogin;
 import com.icthh.xm.uaa.repository.UserLoginRepository;
 import com.icthh.xm.uaa.service.dto.UserLoginDto;
 import lombok.AllArgsConstructor;
@@ -34,6 +35,7 @@ public class DomainUserDetailsService implements UserDetailsService {
 
     private final UserLoginRepository userLoginRepository;
     private final TenantContextHolder tenantContextHolder;
+    private final DomainUserDetailsCache domainUserDetailsCache;
 
     @Override
     @Transactional
@@ -56,9 +58,16 @@ public class DomainUserDetailsService implements UserDetailsService {
 
         log.debug("Retrieving user with login: {}, lowercase: {}, within tenant: {}", login, lowerLogin, tenantKey);
 
-        return userLoginRepository
-            .findOneByLogin(lowerLogin)
-            .map(userLogin -> buildDomainUserDetails(lowerLogin, tenantKey, userLogin.getUser()));
+        Optional<DomainUserDetails> userDetails = domainUserDetailsCache.get(tenantKey, lowerLogin,
+            () -> findUser(lowerLogin).map(user -> buildDomainUserDetails(lowerLogin, tenantKey, user)));
+        // details from the cache load the user entity only if some step of the authentication needs it
+        userDetails.filter(details -> !details.hasUserSnapshot())
+            .ifPresent(details -> details.setUserSnapshot(() -> findUser(lowerLogin).orElse(null)));
+        return userDetails;
+    }
+
+    private Optional<User> findUser(String lowerLogin) {
+        return userLoginRepository.findOneByLogin(lowerLogin).map(UserLogin::getUser);
     }
 
     private String getTenantKey() {
@@ -92,20 +101,22 @@ public class DomainUserDetailsService implements UserDetailsService {
             .map(SimpleGrantedAuthority::new)
             .collect(toList());
 
-        return new DomainUserDetails(lowerLogin,
-                                     user.getPassword(),
-                                     authorities,
-                                     tenantKey,
-                                     user.getUserKey(),
-                                     user.isTfaEnabled(),
-                                     user.getTfaOtpSecret(),
-                                     user.getTfaOtpChannelType(),
-                                     user.getAccessTokenValiditySeconds(),
-                                     user.getRefreshTokenValiditySeconds(),
-                                     user.getTfaAccessTokenValiditySeconds(),
-                                     user.isAutoLogoutEnabled(),
-                                     user.getAutoLogoutTimeoutSeconds(),
-                                     logins);
+        DomainUserDetails userDetails = new DomainUserDetails(lowerLogin,
+                                                              user.getPassword(),
+                                                              authorities,
+                                                              tenantKey,
+                                                              user.getUserKey(),
+                                                              user.isTfaEnabled(),
+                                                              user.getTfaOtpSecret(),
+                                                              user.getTfaOtpChannelType(),
+                                                              user.getAccessTokenValiditySeconds(),
+                                                              user.getRefreshTokenValiditySeconds(),
+                                                              user.getTfaAccessTokenValiditySeconds(),
+                                                              user.isAutoLogoutEnabled(),
+                                                              user.getAutoLogoutTimeoutSeconds(),
+                                                              logins);
+        userDetails.setUserSnapshot(() -> user);
+        return userDetails;
     }
 
 }
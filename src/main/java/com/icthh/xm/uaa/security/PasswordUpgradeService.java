@@ -0,0 +1,23 @@
+package com.icthh.xm.uaa.security;
+
+import com.icthh.xm.uaa.service.UserService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+import org.springframework.stereotype.Service;
+
+/**
+ * Stores password hashes re-encoded by {@link PasswordUpgradingAuthenticationProvider}.
+ */
+@Service
+@RequiredArgsConstructor
+public class PasswordUpgradeService implements UserDetailsPasswordService {
+
+    private final UserService userService;
+
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        userService.upgradePasswordHash(user.getUsername(), user.getPassword(), newPassword);
+        return user;
+    }
+}
@@ -0,0 +1,73 @@
+package com.icthh.xm.uaa.security;
+
+import com.icthh.xm.commons.logging.util.MdcUtils;
+import com.icthh.xm.commons.tenant.PlainTenant;
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.commons.tenant.TenantKey;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+
+/**
+ * {@link DaoAuthenticationProvider} that upgrades password hashes asynchronously.
+ * <p>
+ * The {@link UserDetailsPasswordService} hook is kept out of the parent class, which would re-encode the password on
+ * the login thread. Instead, after a successful login with a hash that
+ * {@link org.springframework.security.crypto.password.PasswordEncoder#upgradeEncoding(String)} reports as outdated,
+ * the presented password is re-encoded on the given executor in the tenant of the login and passed to the hook
+ * together with a copy of the user details, as the originals have their credentials erased after authentication.
+ */
+@Slf4j
+public class PasswordUpgradingAuthenticationProvider extends DaoAuthenticationProvider {
+
+    private final TenantContextHolder tenantContextHolder;
+    private final Executor executor;
+    private UserDetailsPasswordService userDetailsPasswordService;
+
+    public PasswordUpgradingAuthenticationProvider(TenantContextHolder tenantContextHolder, Executor executor) {
+        this.tenantContextHolder = tenantContextHolder;
+        this.executor = executor;
+    }
+
+    @Override
+    public void setUserDetailsPasswordService(UserDetailsPasswordService userDetailsPasswordService) {
+        this.userDetailsPasswordService = userDetailsPasswordService;
+    }
+
+    @Override
+    protected Authentication createSuccessAuthentication(Object principal, Authentication authentication,
+                                                         UserDetails user) {
+        if (userDetailsPasswordService != null && authentication.getCredentials() != null
+            && getPasswordEncoder().upgradeEncoding(user.getPassword())) {
+            tenantContextHolder.getContext().getTenantKey()
+                .ifPresent(tenantKey -> upgradePassword(tenantKey, User.withUserDetails(user).build(),
+                    authentication.getCredentials().toString()));
+        }
+        return super.createSuccessAuthentication(principal, authentication, user);
+    }
+
+    private void upgradePassword(TenantKey tenantKey, UserDetails user, String rawPassword) {
+        String rid = MdcUtils.getRid();
+        try {
+            executor.execute(() -> {
+                try {
+                    MdcUtils.putRid(rid);
+                    tenantContextHolder.getPrivilegedContext().setTenant(new PlainTenant(tenantKey));
+                    userDetailsPasswordService.updatePassword(user, getPasswordEncoder().encode(rawPassword));
+                } catch (Exception e) {
+                    log.warn("Password hash upgrade failed for user {}", user.getUsername(), e);
+                } finally {
+                    tenantContextHolder.getPrivilegedContext().destroyCurrentContext();
+                    MdcUtils.removeRid();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Password hash upgrade skipped for user {}: {}", user.getUsername(), e.getMessage());
+        }
+    }
+}
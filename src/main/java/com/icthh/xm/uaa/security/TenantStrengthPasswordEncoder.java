@@ -0,0 +1,71 @@
+package com.icthh.xm.uaa.security;
+
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.uaa.service.TenantPropertiesService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * BCrypt password encoder with a per tenant strength ({@code security.passwordEncoderStrength} in tenant properties,
+ * falling back to {@code application.security.passwordEncoderStrength}).
+ * <p>
+ * Hashes of any strength are matched; {@link #upgradeEncoding(String)} reports hashes whose strength differs from
+ * the current tenant target, so that they are re-encoded after a successful login.
+ */
+public class TenantStrengthPasswordEncoder implements PasswordEncoder {
+
+    private static final int DEFAULT_STRENGTH = 10;
+    private static final Pattern BCRYPT_STRENGTH = Pattern.compile("^\\$2[aby]?\\$(\\d\\d)\\$");
+
+    private final Map<Integer, PasswordEncoder> encoders = new ConcurrentHashMap<>();
+    private final int defaultStrength;
+    private final TenantPropertiesService tenantPropertiesService;
+    private final TenantContextHolder tenantContextHolder;
+
+    public TenantStrengthPasswordEncoder(Integer defaultStrength,
+                                         TenantPropertiesService tenantPropertiesService,
+                                         TenantContextHolder tenantContextHolder) {
+        this.defaultStrength = normalize(defaultStrength, DEFAULT_STRENGTH);
+        this.tenantPropertiesService = tenantPropertiesService;
+        this.tenantContextHolder = tenantContextHolder;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return getEncoder(getTargetStrength()).encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return getEncoder(defaultStrength).matches(rawPassword, encodedPassword);
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+        Matcher matcher = BCRYPT_STRENGTH.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) != getTargetStrength();
+    }
+
+    private int getTargetStrength() {
+        if (!tenantContextHolder.getContext().getTenantKey().isPresent()) {
+            return defaultStrength;
+        }
+        Integer tenantStrength = tenantPropertiesService.getTenantProps().getSecurity().getPasswordEncoderStrength();
+        return normalize(tenantStrength, defaultStrength);
+    }
+
+    private PasswordEncoder getEncoder(int strength) {
+        return encoders.computeIfAbsent(strength, BCryptPasswordEncoder::new);
+    }
+
+    private static int normalize(Integer strength, int defaultValue) {
+        return strength == null || strength <= 0 ? defaultValue : strength;
+    }
+}
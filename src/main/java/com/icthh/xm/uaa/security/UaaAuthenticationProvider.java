@@ -122,7 +122,8 @@ public class UaaAuthenticationProvider implements AuthenticationProvider {
 
     private User getUser(Authentication authentication) {
         DomainUserDetails domainUserDetails = (DomainUserDetails) authentication.getPrincipal();
-        return userService.getUser(domainUserDetails.getUserKey());
+        return domainUserDetails.getUserSnapshot()
+            .orElseGet(() -> userService.getUser(domainUserDetails.getUserKey()));
     }
 
     /**
@@ -2,10 +2,9 @@ package com.icthh.xm.uaa.security;
 
 import com.icthh.xm.commons.lep.LogicExtensionPoint;
 import com.icthh.xm.commons.lep.spring.LepService;
-import com.icthh.xm.uaa.domain.User;
-import com.icthh.xm.uaa.service.UserService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
 import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
 import org.springframework.stereotype.Component;
 
@@ -14,7 +13,7 @@ import org.springframework.stereotype.Component;
 @LepService(group = "security.validator")
 public class UserSecurityValidator {
 
-    private final UserService userService;
+    private final DomainUserDetailsService domainUserDetailsService;
 
     @LogicExtensionPoint("IsUserActivated")
     public boolean isUserActivated(Authentication authentication) {
@@ -23,6 +22,11 @@ public class UserSecurityValidator {
             throw new InvalidTokenException("Invalid principal");
         }
         String userLogin = (String) principal;
-        return userService.findOneByLogin(userLogin).map(User::isActivated).orElse(false);
+        try {
+            return domainUserDetailsService.retrieveUserByUsername(userLogin).isPresent();
+        } catch (InvalidGrantException e) {
+            // user details are built for activated users only
+            return false;
+        }
     }
 }
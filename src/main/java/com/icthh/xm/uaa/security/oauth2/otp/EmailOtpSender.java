@@ -7,6 +7,7 @@ import com.icthh.xm.commons.tenant.TenantKey;
 import com.icthh.xm.uaa.commons.UaaUtils;
 import com.icthh.xm.uaa.commons.XmRequestContextHolder;
 import com.icthh.xm.uaa.domain.User;
+import com.icthh.xm.uaa.security.DomainUserDetails;
 import com.icthh.xm.uaa.service.UserService;
 import com.icthh.xm.uaa.service.mail.MailService;
 
@@ -35,9 +36,18 @@ public class EmailOtpSender implements OtpSender {
 
     @Override
     public void send(String otp, String destination, String userKey) {
+        send(otp, destination, userKey, userService.getUser(userKey));
+    }
+
+    @Override
+    public void send(String otp, String destination, DomainUserDetails userDetails) {
+        String userKey = userDetails.getUserKey();
+        send(otp, destination, userKey, userDetails.getUserSnapshot().orElseGet(() -> userService.getUser(userKey)));
+    }
+
+    private void send(String otp, String destination, String userKey, User user) {
         TenantKey tenantKey = TenantContextUtils.getRequiredTenantKey(tenantContextHolder);
 
-        User user = userService.getUser(userKey);
         if (user == null) {
             throw new IllegalStateException("User with key '" + userKey + "' not found in tenant: " + tenantKey.getValue());
         }
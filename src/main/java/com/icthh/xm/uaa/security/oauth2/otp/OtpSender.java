@@ -1,5 +1,7 @@
 package com.icthh.xm.uaa.security.oauth2.otp;
 
+import com.icthh.xm.uaa.security.DomainUserDetails;
+
 /**
  * The {@link OtpSender} interface.
  */
@@ -7,4 +9,8 @@ public interface OtpSender {
 
     void send(String otp, String destination, String userKey);
 
+    default void send(String otp, String destination, DomainUserDetails userDetails) {
+        send(otp, destination, userDetails.getUserKey());
+    }
+
 }
@@ -48,7 +48,7 @@ public class UserLoginOtpSendStrategy implements OtpSendStrategy {
             otpChannel.getType(),
             RequestAttributes.SCOPE_REQUEST);
 
-        sender.send(otp, otpChannel.getDestination(), userDetails.getUserKey());
+        sender.send(otp, otpChannel.getDestination(), userDetails);
     }
 
     private OtpChannel getOtpChannel(DomainUserDetails userDetails) {
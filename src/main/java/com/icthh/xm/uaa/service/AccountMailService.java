@@ -2,13 +2,10 @@ package com.icthh.xm.uaa.service;
 
 import com.icthh.xm.commons.lep.LogicExtensionPoint;
 import com.icthh.xm.commons.lep.spring.LepService;
-import com.icthh.xm.commons.logging.util.MdcUtils;
-import com.icthh.xm.commons.tenant.TenantContextHolder;
-import com.icthh.xm.commons.tenant.TenantContextUtils;
 import com.icthh.xm.uaa.commons.UaaUtils;
 import com.icthh.xm.uaa.commons.XmRequestContextHolder;
 import com.icthh.xm.uaa.domain.User;
-import com.icthh.xm.uaa.service.mail.MailService;
+import com.icthh.xm.uaa.service.mail.UserMailType;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.transaction.annotation.Transactional;
@@ -19,32 +16,25 @@ import org.springframework.transaction.annotation.Transactional;
 @Slf4j
 public class AccountMailService {
 
-    private final TenantContextHolder tenantContextHolder;
     private final XmRequestContextHolder xmRequestContextHolder;
-    private final MailService mailService;
+    private final OutboxService outboxService;
 
     @LogicExtensionPoint("SendMailOnRegistration")
     public void sendMailOnRegistration(User user) {
-        mailService.sendActivationEmail(user,
-            UaaUtils.getApplicationUrl(xmRequestContextHolder),
-            TenantContextUtils.getRequiredTenantKey(tenantContextHolder),
-            MdcUtils.getRid());
+        outboxService.sendUserMail(UserMailType.ACTIVATION, user,
+            UaaUtils.getApplicationUrl(xmRequestContextHolder));
     }
 
     @LogicExtensionPoint("SendMailOnPasswordReset")
     public void sendMailOnPasswordResetFinish(User user) {
-        mailService.sendPasswordChangedMail(user,
-            UaaUtils.getApplicationUrl(xmRequestContextHolder),
-            TenantContextUtils.getRequiredTenantKey(tenantContextHolder),
-            MdcUtils.getRid());
+        outboxService.sendUserMail(UserMailType.PASSWORD_CHANGED, user,
+            UaaUtils.getApplicationUrl(xmRequestContextHolder));
     }
 
     @LogicExtensionPoint("SendMailOnPasswordInit")
     public void sendMailOnPasswordInit(User user) {
-        mailService.sendPasswordResetMail(user,
-            UaaUtils.getApplicationUrl(xmRequestContextHolder),
-            TenantContextUtils.getRequiredTenantKey(tenantContextHolder),
-            MdcUtils.getRid());
+        outboxService.sendUserMail(UserMailType.PASSWORD_RESET, user,
+            UaaUtils.getApplicationUrl(xmRequestContextHolder));
     }
 
 }
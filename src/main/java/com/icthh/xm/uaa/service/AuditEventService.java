@@ -5,6 +5,8 @@ import com.icthh.xm.commons.permission.annotation.PrivilegeDescription;
 import com.icthh.xm.uaa.config.audit.AuditEventConverter;
 import com.icthh.xm.uaa.domain.PersistentAuditEvent;
 import com.icthh.xm.uaa.repository.AuditEventPermittedRepository;
+import com.icthh.xm.uaa.repository.KeysetPage;
+import com.icthh.xm.uaa.repository.KeysetPageable;
 import com.icthh.xm.uaa.repository.PersistenceAuditEventRepository;
 
 import java.time.Instant;
@@ -47,6 +49,39 @@ public class AuditEventService {
             .map(auditEventConverter::convertToAuditEvent);
     }
 
+    /**
+     * Get a page of audit events, ordered by id, without an offset.
+     *
+     * @param pageable     the keyset page info
+     * @param privilegeKey the privilege key
+     * @return audit events
+     */
+    @Transactional(readOnly = true)
+    @FindWithPermission("AUDIT.GET_LIST")
+    @PrivilegeDescription("Privilege to get all the auditEvents")
+    public KeysetPage<AuditEvent> findAll(KeysetPageable pageable, String privilegeKey) {
+        return permittedRepository.findAllWithData(null, null, pageable, privilegeKey)
+            .map(auditEventConverter::convertToAuditEvent);
+    }
+
+    /**
+     * Get a page of audit events between the dates, ordered by id, without an offset.
+     *
+     * @param fromDate     the from date
+     * @param toDate       the to date
+     * @param pageable     the keyset page info
+     * @param privilegeKey the privilege key
+     * @return audit events
+     */
+    @Transactional(readOnly = true)
+    @FindWithPermission("AUDIT.GET_LIST")
+    @PrivilegeDescription("Privilege to get all the auditEvents")
+    public KeysetPage<AuditEvent> findByDates(Instant fromDate, Instant toDate, KeysetPageable pageable,
+                                              String privilegeKey) {
+        return permittedRepository.findAllWithData(fromDate, toDate, pageable, privilegeKey)
+            .map(auditEventConverter::convertToAuditEvent);
+    }
+
     public Optional<AuditEvent> find(Long id) {
         return persistenceAuditEventRepository.findById(id)
             .map(auditEventConverter::convertToAuditEvent);
@@ -11,6 +11,7 @@ import com.icthh.xm.commons.permission.repository.PermittedRepository;
 import com.icthh.xm.uaa.domain.Client;
 import com.icthh.xm.uaa.domain.ClientState;
 import com.icthh.xm.uaa.repository.ClientRepository;
+import com.icthh.xm.uaa.security.ClientDetailsCache;
 import com.icthh.xm.uaa.service.dto.ClientDTO;
 import java.util.Optional;
 import lombok.RequiredArgsConstructor;
@@ -33,6 +34,7 @@ public class ClientService {
     private final ClientRepository clientRepository;
     private final PasswordEncoder passwordEncoder;
     private final PermittedRepository permittedRepository;
+    private final ClientDetailsCache clientDetailsCache;
 
     private static final String PSWRD_MASK = "*****";
 
@@ -43,6 +45,7 @@ public class ClientService {
      * @return the persisted entity
      */
     public Client save(Client client) {
+        clientDetailsCache.evict(client.getClientId());
         return clientRepository.save(client);
     }
 
@@ -72,6 +75,7 @@ public class ClientService {
         newClient.setDescription(client.getDescription());
         newClient.setAccessTokenValiditySeconds(client.getAccessTokenValiditySeconds());
         newClient.setScopes(client.getScopes());
+        clientDetailsCache.evict(newClient.getClientId());
         return clientRepository.save(newClient);
     }
 
@@ -95,6 +99,7 @@ public class ClientService {
             client.setDescription(updatedClient.getDescription());
             client.setAccessTokenValiditySeconds(updatedClient.getAccessTokenValiditySeconds());
             client.setScopes(updatedClient.getScopes());
+            clientDetailsCache.evict(client.getClientId());
             return client;
         }).orElseThrow(() -> new EntityNotFoundException("Entity not found"));
     }
@@ -131,6 +136,7 @@ public class ClientService {
      * @param id the id of the entity
      */
     public void delete(Long id) {
+        clientRepository.findById(id).map(Client::getClientId).ifPresent(clientDetailsCache::evict);
         clientRepository.deleteById(id);
     }
 
@@ -158,6 +164,7 @@ public class ClientService {
         return Optional.ofNullable(getClient(clientKey))
             .map(client-> {
                 client.setState(clientState);
+                clientDetailsCache.evict(client.getClientId());
                 return client;
             })
             .map(ClientDTO::new);
@@ -1,51 +1,188 @@
 package com.icthh.xm.uaa.service;
 
-import static org.springframework.boot.actuate.security.AuthenticationAuditListener.AUTHENTICATION_SUCCESS;
+import static com.icthh.xm.uaa.config.Constants.ONLINE_USERS_EVENT_TYPE;
+import static com.icthh.xm.uaa.config.Constants.SYSTEM_EVENT_PROP_OFFLINE;
+import static com.icthh.xm.uaa.config.Constants.SYSTEM_EVENT_PROP_ONLINE;
 
-import com.icthh.xm.uaa.repository.CustomAuditEventRepository;
-import com.icthh.xm.uaa.repository.projection.PrincipalProjection;
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.commons.tenant.TenantContextUtils;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import com.icthh.xm.uaa.repository.kafka.SystemTopicProducer;
 import com.icthh.xm.uaa.security.TokenConstraintsService;
 
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.stream.Collectors;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
-import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 /**
  * Service Implementation for managing online users.
+ * <p>
+ * A user is online while the access token of the last login or refresh is valid. Logins and refreshes are kept in
+ * memory in an {@link OnlineUsersWindow} per tenant, as long as the tenant access token validity. Every node
+ * periodically broadcasts the logins and refreshes it recorded through the system topic, and merges the ones
+ * recorded on the other nodes. Every {@code snapshot-interval-millis} a node broadcasts its whole windows instead,
+ * so that a node started after the logins, or one that missed events, catches up without waiting for the window
+ * to turn over.
+ * <p>
+ * Online users are no longer derived from the audit events, so deleting an online user does not delete its audit
+ * events.
  */
 @Slf4j
-@AllArgsConstructor
+@RequiredArgsConstructor
 @Service
 public class OnlineUsersService {
 
-    private final CustomAuditEventRepository auditEventRepository;
+    private final ConcurrentMap<String, OnlineUsersWindow> windows = new ConcurrentHashMap<>();
+    private volatile long lastSnapshotMillis = System.currentTimeMillis();
+
+    private final TenantContextHolder tenantContextHolder;
     private final TokenConstraintsService tokenConstraints;
+    private final SystemTopicProducer systemTopicProducer;
+    private final ApplicationProperties applicationProperties;
+
+    /**
+     * Record a login or a token refresh of a user of the current tenant.
+     *
+     * @param principal the user principal
+     */
+    public void record(String principal) {
+        record(principal, Instant.now());
+    }
+
+    /**
+     * Record a login or a token refresh of a user of the current tenant.
+     *
+     * @param principal the user principal
+     * @param timestamp time of the login or refresh
+     */
+    public void record(String principal, Instant timestamp) {
+        window(currentTenant()).record(principal, toMinute(timestamp), windowMinutes());
+    }
+
+    /**
+     * Count online users of the current tenant.
+     *
+     * @return number of online users
+     */
+    public int count() {
+        return window(currentTenant()).count(toMinute(Instant.now()), windowMinutes());
+    }
 
     /**
-     * Find online users for current tenant. But for super tenant it finds online users from all tenants.
+     * Find online users of the current tenant.
      *
      * @return collection of online users
      */
     public Collection<String> find() {
-        return auditEventRepository
-            .findAfter(Instant.now().minus(tokenConstraints.getDefaultAccessTokenValiditySeconds(),
-                ChronoUnit.SECONDS), AUTHENTICATION_SUCCESS)
-            .stream()
-            .map(PrincipalProjection::getPrincipal)
-            .collect(Collectors.toList());
+        return window(currentTenant()).principals(toMinute(Instant.now()), windowMinutes());
     }
 
     /**
-     * Delete online user from repository by key.
+     * Delete online user of the current tenant on all nodes.
      *
-     * @param key key for search
+     * @param key the user principal
      */
     public void delete(String key) {
-        auditEventRepository.delete(key);
+        window(currentTenant()).remove(key, toMinute(Instant.now()), true);
+    }
+
+    /**
+     * Merge logins, refreshes and deletions broadcast by another node.
+     *
+     * @param tenantKey the tenant key
+     * @param data      the event data
+     */
+    public void merge(String tenantKey, Map<String, Object> data) {
+        OnlineUsersWindow window = window(tenantKey.toUpperCase());
+        forEachByMinute(data.get(SYSTEM_EVENT_PROP_ONLINE), window::merge);
+        forEachByMinute(data.get(SYSTEM_EVENT_PROP_OFFLINE),
+            (principal, minute) -> window.remove(principal, minute, false));
+    }
+
+    /**
+     * Broadcast the logins, refreshes and deletions recorded on this node since the previous broadcast, one event
+     * per tenant with the principals grouped by minute, split into events of at most
+     * {@code max-principals-per-event} principals. Once per snapshot interval all principals and deletions in the
+     * windows of this node are broadcast instead.
+     */
+    @Scheduled(fixedDelayString = "${application.online-users.broadcast-interval-millis:60000}")
+    public void broadcast() {
+        long now = System.currentTimeMillis();
+        long snapshotIntervalMillis = applicationProperties.getOnlineUsers().getSnapshotIntervalMillis();
+        boolean snapshot = now - lastSnapshotMillis >= snapshotIntervalMillis;
+        if (snapshot) {
+            lastSnapshotMillis = now;
+        }
+        long currentMinute = toMinute(Instant.ofEpochMilli(now));
+        int maxPrincipalsPerEvent = applicationProperties.getOnlineUsers().getMaxPrincipalsPerEvent();
+        windows.forEach((tenantKey, window) -> {
+            window.expire(currentMinute);
+            OnlineUsersWindow.Changes changes = window.drainChanges(snapshot);
+            if (!changes.isEmpty()) {
+                log.debug("Broadcast online users of tenant {}, snapshot: {}, recorded: {}, removed: {}", tenantKey,
+                    snapshot, changes.getRecorded().size(), changes.getRemoved().size());
+                changes.split(maxPrincipalsPerEvent).forEach(part ->
+                    systemTopicProducer.send(ONLINE_USERS_EVENT_TYPE, tenantKey, toEventData(part)));
+            }
+        });
+    }
+
+    private static Map<String, Object> toEventData(OnlineUsersWindow.Changes changes) {
+        Map<String, Object> data = new HashMap<>();
+        data.put(SYSTEM_EVENT_PROP_ONLINE, groupByMinute(changes.getRecorded()));
+        data.put(SYSTEM_EVENT_PROP_OFFLINE, groupByMinute(changes.getRemoved()));
+        return data;
+    }
+
+    private static Map<String, List<String>> groupByMinute(Map<String, Long> minutes) {
+        Map<String, List<String>> principals = new TreeMap<>();
+        minutes.forEach((principal, minute) ->
+            principals.computeIfAbsent(String.valueOf(minute), key -> new ArrayList<>()).add(principal));
+        return principals;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void forEachByMinute(Object principalsByMinute, BiConsumer<String, Long> action) {
+        if (principalsByMinute instanceof Map) {
+            ((Map<String, Object>) principalsByMinute).forEach((minute, principals) -> {
+                if (principals instanceof Collection) {
+                    long epochMinute = Long.parseLong(minute);
+                    ((Collection<Object>) principals).forEach(principal ->
+                        action.accept(String.valueOf(principal), epochMinute));
+                }
+            });
+        }
+    }
+
+    private OnlineUsersWindow window(String tenantKey) {
+        // the tenant window length is only known in the tenant context, it is updated on every record and count
+        return windows.computeIfAbsent(tenantKey, key -> new OnlineUsersWindow(
+            applicationProperties.getOnlineUsers().getMaximumSize(),
+            TimeUnit.SECONDS.toMinutes(tokenConstraints.getDefaultAccessTokenValiditySeconds())));
+    }
+
+    private String currentTenant() {
+        return TenantContextUtils.getRequiredTenantKeyValue(tenantContextHolder).toUpperCase();
+    }
+
+    private long windowMinutes() {
+        return TimeUnit.SECONDS.toMinutes(tokenConstraints.getTenantRelatedAccessTokenValiditySeconds());
+    }
+
+    private static long toMinute(Instant timestamp) {
+        return timestamp.getEpochSecond() / 60;
     }
 }
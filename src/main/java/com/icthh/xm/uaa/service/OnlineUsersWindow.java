@@ -0,0 +1,226 @@
+package com.icthh.xm.uaa.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Sliding window of the principals active in one tenant.
+ * <p>
+ * Each principal is kept once, in the bucket of the minute it was last seen. Buckets that leave the window are
+ * dropped as a whole, so the number of online principals is the number of kept principals and reading it does not
+ * depend on the activity in the window. At most {@code maxPrincipals} are kept, the oldest buckets are dropped
+ * first when a new principal does not fit.
+ * <p>
+ * Principals recorded on this node are also collected as changes, which are drained to be broadcast to the other
+ * nodes. Principals merged from the other nodes are not collected again, but are part of a snapshot drain.
+ * <p>
+ * A removed principal is kept with the minute of the removal until the minute leaves the window, so activity of the
+ * principal merged later from a node that did not see the removal yet is ignored unless it is newer.
+ */
+public class OnlineUsersWindow {
+
+    private final int maxPrincipals;
+    private final Map<String, Long> lastSeenMinutes = new HashMap<>();
+    private final NavigableMap<Long, Set<String>> buckets = new TreeMap<>();
+    private final Map<String, Long> removedMinutes = new HashMap<>();
+    private Map<String, Long> recorded = new HashMap<>();
+    private Map<String, Long> removed = new HashMap<>();
+    private long windowMinutes;
+
+    public OnlineUsersWindow(int maxPrincipals, long windowMinutes) {
+        this.maxPrincipals = maxPrincipals;
+        this.windowMinutes = windowMinutes;
+    }
+
+    /**
+     * Record activity of a principal on this node.
+     *
+     * @param principal     the principal
+     * @param minute        epoch minute of the activity
+     * @param windowMinutes the window length
+     */
+    public synchronized void record(String principal, long minute, long windowMinutes) {
+        this.windowMinutes = windowMinutes;
+        if (add(principal, minute)) {
+            recorded.merge(principal, minute, Math::max);
+            removed.remove(principal);
+            removedMinutes.remove(principal);
+        }
+    }
+
+    /**
+     * Merge activity of a principal recorded on another node.
+     *
+     * @param principal the principal
+     * @param minute    epoch minute of the activity
+     */
+    public synchronized void merge(String principal, long minute) {
+        Long removedMinute = removedMinutes.get(principal);
+        if (removedMinute == null || minute > removedMinute) {
+            add(principal, minute);
+        }
+    }
+
+    /**
+     * Remove a principal from the window, unless it was seen after the removal.
+     *
+     * @param principal the principal
+     * @param minute    epoch minute of the removal
+     * @param local     whether the principal is removed on this node, and the removal has to be broadcast
+     */
+    public synchronized void remove(String principal, long minute, boolean local) {
+        Long lastSeenMinute = lastSeenMinutes.get(principal);
+        if (lastSeenMinute != null && lastSeenMinute <= minute) {
+            lastSeenMinutes.remove(principal);
+            removeFromBucket(principal, lastSeenMinute);
+        }
+        removedMinutes.merge(principal, minute, Math::max);
+        if (local) {
+            recorded.remove(principal);
+            removed.put(principal, minute);
+        }
+    }
+
+    /**
+     * Count the principals online at the given minute.
+     *
+     * @param currentMinute the current epoch minute
+     * @param windowMinutes the window length
+     * @return number of online principals
+     */
+    public synchronized int count(long currentMinute, long windowMinutes) {
+        this.windowMinutes = windowMinutes;
+        expire(currentMinute);
+        return lastSeenMinutes.size();
+    }
+
+    /**
+     * Get the principals online at the given minute.
+     *
+     * @param currentMinute the current epoch minute
+     * @param windowMinutes the window length
+     * @return online principals, the most recently seen last
+     */
+    public synchronized Collection<String> principals(long currentMinute, long windowMinutes) {
+        this.windowMinutes = windowMinutes;
+        expire(currentMinute);
+        List<String> principals = new ArrayList<>(lastSeenMinutes.size());
+        buckets.values().forEach(principals::addAll);
+        return principals;
+    }
+
+    /**
+     * Drop the buckets outside of the window, with the window length last used for this tenant.
+     *
+     * @param currentMinute the current epoch minute
+     */
+    public synchronized void expire(long currentMinute) {
+        long firstMinute = currentMinute - windowMinutes;
+        while (!buckets.isEmpty() && buckets.firstKey() < firstMinute) {
+            buckets.pollFirstEntry().getValue().forEach(lastSeenMinutes::remove);
+        }
+        removedMinutes.values().removeIf(minute -> minute < firstMinute);
+    }
+
+    /**
+     * Take the changes made on this node since the previous call.
+     *
+     * @return the changes
+     */
+    public synchronized Changes drainChanges() {
+        return drainChanges(false);
+    }
+
+    /**
+     * Take the changes made on this node since the previous call.
+     *
+     * @param snapshot whether all principals and removals in the window are taken, not only the local changes
+     * @return the changes
+     */
+    public synchronized Changes drainChanges(boolean snapshot) {
+        Changes changes = snapshot ? new Changes(new HashMap<>(lastSeenMinutes), new HashMap<>(removedMinutes))
+            : new Changes(recorded, removed);
+        recorded = new HashMap<>();
+        removed = new HashMap<>();
+        return changes;
+    }
+
+    private boolean add(String principal, long minute) {
+        Long lastSeenMinute = lastSeenMinutes.get(principal);
+        if (lastSeenMinute != null) {
+            if (lastSeenMinute >= minute) {
+                return false;
+            }
+            removeFromBucket(principal, lastSeenMinute);
+        } else {
+            while (lastSeenMinutes.size() >= maxPrincipals && !buckets.isEmpty()) {
+                buckets.pollFirstEntry().getValue().forEach(lastSeenMinutes::remove);
+            }
+        }
+        lastSeenMinutes.put(principal, minute);
+        buckets.computeIfAbsent(minute, key -> new LinkedHashSet<>()).add(principal);
+        return true;
+    }
+
+    private void removeFromBucket(String principal, long minute) {
+        Set<String> bucket = buckets.get(minute);
+        if (bucket != null) {
+            bucket.remove(principal);
+            if (bucket.isEmpty()) {
+                buckets.remove(minute);
+            }
+        }
+    }
+
+    /**
+     * Changes of a window made on one node.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class Changes {
+
+        private final Map<String, Long> recorded;
+        private final Map<String, Long> removed;
+
+        public boolean isEmpty() {
+            return recorded.isEmpty() && removed.isEmpty();
+        }
+
+        public int size() {
+            return recorded.size() + removed.size();
+        }
+
+        /**
+         * Split the changes into parts of at most the given number of principals.
+         *
+         * @param maxSize the maximum number of principals of a part
+         * @return the parts
+         */
+        public List<Changes> split(int maxSize) {
+            if (size() <= maxSize) {
+                return Collections.singletonList(this);
+            }
+            List<Changes> parts = new ArrayList<>();
+            recorded.forEach((principal, minute) -> nextPart(parts, maxSize).recorded.put(principal, minute));
+            removed.forEach((principal, minute) -> nextPart(parts, maxSize).removed.put(principal, minute));
+            return parts;
+        }
+
+        private static Changes nextPart(List<Changes> parts, int maxSize) {
+            if (parts.isEmpty() || parts.get(parts.size() - 1).size() >= maxSize) {
+                parts.add(new Changes(new HashMap<>(), new HashMap<>()));
+            }
+            return parts.get(parts.size() - 1);
+        }
+    }
+}
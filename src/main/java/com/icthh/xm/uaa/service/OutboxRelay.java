@@ -0,0 +1,287 @@
+package com.icthh.xm.uaa.service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.icthh.xm.commons.config.client.repository.TenantListRepository;
+import com.icthh.xm.commons.logging.aop.IgnoreLogginAspect;
+import com.icthh.xm.commons.logging.util.MdcUtils;
+import com.icthh.xm.commons.tenant.PlainTenant;
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.commons.tenant.TenantKey;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import com.icthh.xm.uaa.domain.OutboxMessage;
+import com.icthh.xm.uaa.domain.User;
+import com.icthh.xm.uaa.repository.OutboxMessageRepository;
+import com.icthh.xm.uaa.repository.UserRepository;
+import com.icthh.xm.uaa.repository.kafka.ProfileEventProducer;
+import com.icthh.xm.uaa.service.mail.MailService;
+import com.icthh.xm.uaa.util.CacheMetricsSet;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Sends the outbox messages of all tenants.
+ * <p>
+ * Every node polls the outbox of each tenant and claims a batch of due messages in a short transaction, skipping
+ * the ones locked by the other nodes: the next attempt of a claimed message is put off by {@code claimTimeoutMillis},
+ * so that no other node takes it while it is sent. Profile events and mails of a batch are then handed to the
+ * producer and the mail dispatcher together and awaited once, outside of a transaction, and the results are stored
+ * in a second short transaction. A batch claims no more mails than the mail rate of the tenant sends within the send
+ * timeout, the others are left to the next batch, and at most {@code maxBatchesPerRelay} batches of a tenant are sent
+ * before the next tenant. A mail not sent within the timeout is withdrawn from the mail dispatcher queue and retried,
+ * one being sent already stays claimed until its result is known. Sent messages are deleted; failed ones are retried
+ * with exponential backoff and kept with the {@code FAILED} status after {@code maxAttempts}.
+ */
+@Slf4j
+@Component
+@IgnoreLogginAspect
+public class OutboxRelay {
+
+    private static final String METRIC_NAME = "outbox";
+    private static final long SEND_TIMEOUT_SECONDS = 30;
+    private static final int MAX_ERROR_LENGTH = 1024;
+
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final UserRepository userRepository;
+    private final MailService mailService;
+    private final ProfileEventProducer profileEventProducer;
+    private final TenantListRepository tenantListRepository;
+    private final TenantContextHolder tenantContextHolder;
+    private final ObjectMapper objectMapper;
+    private final ApplicationProperties.Outbox properties;
+    private final ApplicationProperties.Mail mailProperties;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Meter sent = new Meter();
+    private final Meter retried = new Meter();
+    private final Meter failed = new Meter();
+
+    private volatile long lagMillis;
+
+    public OutboxRelay(OutboxMessageRepository outboxMessageRepository,
+                       UserRepository userRepository,
+                       MailService mailService,
+                       ProfileEventProducer profileEventProducer,
+                       TenantListRepository tenantListRepository,
+                       TenantContextHolder tenantContextHolder,
+                       ObjectMapper objectMapper,
+                       PlatformTransactionManager transactionManager,
+                       ApplicationProperties applicationProperties,
+                       MetricRegistry metricRegistry) {
+        this.outboxMessageRepository = outboxMessageRepository;
+        this.userRepository = userRepository;
+        this.mailService = mailService;
+        this.profileEventProducer = profileEventProducer;
+        this.tenantListRepository = tenantListRepository;
+        this.tenantContextHolder = tenantContextHolder;
+        this.objectMapper = objectMapper;
+        this.properties = applicationProperties.getOutbox();
+        this.mailProperties = applicationProperties.getMail();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        CacheMetricsSet.register(metricRegistry, METRIC_NAME, getMetrics());
+    }
+
+    /**
+     * Send the due messages of all tenants and update the outbox lag.
+     */
+    @Scheduled(fixedDelayString = "${application.outbox.poll-interval-millis:1000}")
+    public void relay() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        long lag = 0;
+        for (String tenant : tenantListRepository.getTenants()) {
+            TenantKey tenantKey = TenantKey.valueOf(tenant.toUpperCase());
+            try {
+                relay(tenantKey);
+                lag = Math.max(lag, inTenant(tenantKey, this::getLagMillis));
+            } catch (RuntimeException e) {
+                log.error("Failed to send outbox messages of tenant {}", tenantKey.getValue(), e);
+            }
+        }
+        lagMillis = lag;
+    }
+
+    /**
+     * Send the due messages of the tenant, batch by batch, up to {@code maxBatchesPerRelay} batches.
+     *
+     * @param tenantKey the tenant key
+     */
+    public void relay(TenantKey tenantKey) {
+        for (int i = 0; i < properties.getMaxBatchesPerRelay(); i++) {
+            if (inTenant(tenantKey, () -> relayBatch(tenantKey)) < properties.getBatchSize()) {
+                return;
+            }
+        }
+    }
+
+    public MetricSet getMetrics() {
+        Map<String, Metric> metrics = new HashMap<>();
+        metrics.put("lag-millis", (Gauge<Long>) () -> lagMillis);
+        metrics.put("sent", sent);
+        metrics.put("retried", retried);
+        metrics.put("failed", failed);
+        return () -> metrics;
+    }
+
+    private int relayBatch(TenantKey tenantKey) {
+        List<OutboxMessage> messages = transactionTemplate.execute(status -> claim(tenantKey));
+        if (messages.isEmpty()) {
+            return 0;
+        }
+        log.debug("Send {} outbox messages of tenant {}", messages.size(), tenantKey.getValue());
+
+        List<OutboxMessage> sentMessages = new ArrayList<>();
+        List<OutboxMessage> failedMessages = new ArrayList<>();
+        Map<OutboxMessage, Future<?>> sends = new LinkedHashMap<>();
+        for (OutboxMessage message : messages) {
+            try {
+                if (message.getType() == OutboxMessage.Type.PROFILE_EVENT) {
+                    sends.put(message, profileEventProducer.publish(message.getPayload()));
+                } else {
+                    sends.put(message, sendMail(message, tenantKey));
+                }
+            } catch (RuntimeException e) {
+                failed(message, e);
+                failedMessages.add(message);
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SEND_TIMEOUT_SECONDS);
+        sends.forEach((message, future) -> {
+            try {
+                try {
+                    future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    if (future.cancel(false)) {
+                        throw e;
+                    }
+                    // taken by a sender already, retrying the message would send it twice
+                    future.get();
+                }
+                sentMessages.add(message);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed(message, e);
+                failedMessages.add(message);
+            } catch (ExecutionException | TimeoutException e) {
+                failed(message, e);
+                failedMessages.add(message);
+            }
+        });
+        transactionTemplate.execute(status -> {
+            outboxMessageRepository.deleteAll(sentMessages);
+            return outboxMessageRepository.saveAll(failedMessages);
+        });
+        sent.mark(sentMessages.size());
+        return messages.size();
+    }
+
+    /**
+     * Lock the due messages of the tenant and put off their next attempt until they are sent.
+     */
+    private List<OutboxMessage> claim(TenantKey tenantKey) {
+        List<OutboxMessage> messages = outboxMessageRepository
+            .findByStatusAndNextAttemptAtLessThanEqualOrderByIdAsc(OutboxMessage.Status.PENDING, Instant.now(),
+                PageRequest.of(0, properties.getBatchSize()));
+        int mailBudget = getMailBudget(tenantKey);
+        Instant claimedUntil = Instant.now().plusMillis(properties.getClaimTimeoutMillis());
+        List<OutboxMessage> claimed = new ArrayList<>(messages.size());
+        for (OutboxMessage message : messages) {
+            if (message.getType() == OutboxMessage.Type.MAIL && mailBudget-- <= 0) {
+                continue;
+            }
+            message.setNextAttemptAt(claimedUntil);
+            claimed.add(message);
+        }
+        return outboxMessageRepository.saveAll(claimed);
+    }
+
+    /**
+     * Number of mails the mail dispatcher sends for the tenant within the send timeout.
+     */
+    private int getMailBudget(TenantKey tenantKey) {
+        double ratePerSecond = mailProperties.getTenantRatePerSecond().getOrDefault(tenantKey.getValue(),
+            mailProperties.getRatePerSecond());
+        return ratePerSecond > 0 ? (int) Math.max(1, ratePerSecond * SEND_TIMEOUT_SECONDS) : Integer.MAX_VALUE;
+    }
+
+    private Future<?> sendMail(OutboxMessage message, TenantKey tenantKey) {
+        OutboxService.UserMail mail;
+        try {
+            mail = objectMapper.readValue(message.getPayload(), OutboxService.UserMail.class);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Outbox mail message has incorrect format", e);
+        }
+        User user = userRepository.findOneWithLoginsByUserKey(mail.getUserKey())
+            .orElseThrow(() -> new IllegalStateException("User with userKey " + mail.getUserKey() + " not found"));
+        String oldRid = MdcUtils.getRid();
+        try {
+            MdcUtils.putRid(mail.getRid());
+            return mailService.deliverUserMail(mail.getType(), user, mail.getApplicationUrl(), tenantKey);
+        } finally {
+            if (oldRid != null) {
+                MdcUtils.putRid(oldRid);
+            } else {
+                MdcUtils.removeRid();
+            }
+            // the mail service destroys the tenant context when the mail is sent
+            tenantContextHolder.getPrivilegedContext().setTenant(new PlainTenant(tenantKey));
+        }
+    }
+
+    private void failed(OutboxMessage message, Exception e) {
+        int attempts = message.getAttempts() + 1;
+        message.setAttempts(attempts);
+        message.setLastError(StringUtils.abbreviate(String.valueOf(e.getMessage()), MAX_ERROR_LENGTH));
+        if (attempts >= properties.getMaxAttempts()) {
+            message.setStatus(OutboxMessage.Status.FAILED);
+            failed.mark();
+            log.error("Outbox message {} of type {} failed after {} attempts", message.getId(), message.getType(),
+                attempts, e);
+        } else {
+            long backoff = Math.min(properties.getInitialBackoffMillis() << Math.min(attempts - 1, 30),
+                properties.getMaxBackoffMillis());
+            message.setNextAttemptAt(Instant.now().plusMillis(backoff));
+            retried.mark();
+            log.warn("Outbox message {} of type {} failed, retry in {} ms: {}", message.getId(), message.getType(),
+                backoff, e.getMessage());
+        }
+    }
+
+    private long getLagMillis() {
+        return outboxMessageRepository.findFirstByStatusOrderByCreatedDateAsc(OutboxMessage.Status.PENDING)
+            .map(message -> Duration.between(message.getCreatedDate(), Instant.now()).toMillis())
+            .orElse(0L);
+    }
+
+    private <T> T inTenant(TenantKey tenantKey, Supplier<T> action) {
+        tenantContextHolder.getPrivilegedContext().setTenant(new PlainTenant(tenantKey));
+        try {
+            return action.get();
+        } finally {
+            tenantContextHolder.getPrivilegedContext().destroyCurrentContext();
+        }
+    }
+}
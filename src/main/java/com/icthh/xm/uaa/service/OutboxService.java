@@ -0,0 +1,121 @@
+package com.icthh.xm.uaa.service;
+
+import static java.util.stream.Collectors.toList;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.icthh.xm.commons.logging.util.MdcUtils;
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.commons.tenant.TenantContextUtils;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import com.icthh.xm.uaa.domain.OutboxMessage;
+import com.icthh.xm.uaa.domain.User;
+import com.icthh.xm.uaa.repository.OutboxMessageRepository;
+import com.icthh.xm.uaa.service.mail.MailService;
+import com.icthh.xm.uaa.service.mail.UserMailType;
+import java.time.Instant;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Stores mails and profile events in the outbox of the current tenant. They are sent by the {@link OutboxRelay}
+ * after the commit, and are never sent when the transaction is rolled back.
+ * <p>
+ * Messages are stored in the transaction of the caller, so the caller must own the transaction of the business
+ * change for the message to be atomic with it: the REST endpoints that change users and send mails or events are
+ * transactional for that reason. Without a transaction the message is stored in its own one.
+ */
+@Slf4j
+@Service
+@Transactional
+@RequiredArgsConstructor
+public class OutboxService {
+
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final TenantContextHolder tenantContextHolder;
+    private final MailService mailService;
+    private final ObjectMapper objectMapper;
+    private final ApplicationProperties applicationProperties;
+
+    public boolean isEnabled() {
+        return applicationProperties.getOutbox().isEnabled();
+    }
+
+    /**
+     * Send user account email through the outbox, or asynchronously when the outbox is disabled.
+     *
+     * @param type           type of the email
+     * @param user           the user
+     * @param applicationUrl application url
+     */
+    public void sendUserMail(UserMailType type, User user, String applicationUrl) {
+        if (!isEnabled()) {
+            mailService.sendUserMail(type, user, applicationUrl,
+                TenantContextUtils.getRequiredTenantKey(tenantContextHolder), MdcUtils.getRid());
+            return;
+        }
+        UserMail mail = new UserMail(type, user.getUserKey(), applicationUrl, MdcUtils.getRid());
+        try {
+            add(OutboxMessage.Type.MAIL, objectMapper.writeValueAsString(mail));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Error creating outbox mail message", e);
+        }
+    }
+
+    /**
+     * Add message to the outbox of the current tenant.
+     *
+     * @param type    the message type
+     * @param payload the message payload
+     */
+    public void add(OutboxMessage.Type type, String payload) {
+        outboxMessageRepository.save(newMessage(type, payload));
+        log.debug("Added {} message to the outbox", type);
+    }
+
+    /**
+     * Add messages to the outbox of the current tenant in one batch.
+     *
+     * @param type     the message type
+     * @param payloads the message payloads
+     */
+    public void addAll(OutboxMessage.Type type, List<String> payloads) {
+        if (payloads.isEmpty()) {
+            return;
+        }
+        outboxMessageRepository.saveAll(payloads.stream()
+            .map(payload -> newMessage(type, payload))
+            .collect(toList()));
+        log.debug("Added {} {} messages to the outbox", payloads.size(), type);
+    }
+
+    private static OutboxMessage newMessage(OutboxMessage.Type type, String payload) {
+        Instant now = Instant.now();
+        OutboxMessage message = new OutboxMessage();
+        message.setType(type);
+        message.setPayload(payload);
+        message.setCreatedDate(now);
+        message.setNextAttemptAt(now);
+        return message;
+    }
+
+    /**
+     * Payload of the user account email messages. The user is loaded when the email is sent.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class UserMail {
+
+        private UserMailType type;
+        private String userKey;
+        private String applicationUrl;
+        private String rid;
+    }
+}
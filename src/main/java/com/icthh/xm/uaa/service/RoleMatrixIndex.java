@@ -0,0 +1,188 @@
+package com.icthh.xm.uaa.service;
+
+import static com.icthh.xm.uaa.service.dto.PermissionType.SYSTEM;
+import static com.icthh.xm.uaa.service.dto.PermissionType.TENANT;
+
+import com.icthh.xm.commons.permission.domain.Permission;
+import com.icthh.xm.commons.permission.domain.Privilege;
+import com.icthh.xm.uaa.service.dto.PermissionType;
+import com.icthh.xm.uaa.service.dto.RoleMatrixChangeDTO;
+import com.icthh.xm.uaa.service.dto.RoleMatrixDTO;
+import com.icthh.xm.uaa.service.dto.RoleMatrixDTO.PermissionMatrixDTO;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Role matrix of a tenant: privileges of the matrix get an id and keep a bitset of the roles they are enabled for.
+ * <p>
+ * The index is immutable; {@link #withChanges(Collection)} derives the index after a matrix change without
+ * rebuilding it from the permissions.
+ */
+@Slf4j
+final class RoleMatrixIndex {
+
+    private final Map<String, Set<Privilege>> privileges;
+    private final Set<String> roles;
+    private final List<String> roleKeys;
+    private final Map<String, Integer> roleIds;
+    private final Map<String, Integer> privilegeIds;
+    private final String[] msNames;
+    private final String[] privilegeKeys;
+    private final String[] descriptions;
+    private final PermissionType[] permissionTypes;
+    private final BitSet[] enabledRoles;
+
+    private RoleMatrixIndex(RoleMatrixIndex index, BitSet[] enabledRoles) {
+        this.privileges = index.privileges;
+        this.roles = index.roles;
+        this.roleKeys = index.roleKeys;
+        this.roleIds = index.roleIds;
+        this.privilegeIds = index.privilegeIds;
+        this.msNames = index.msNames;
+        this.privilegeKeys = index.privilegeKeys;
+        this.descriptions = index.descriptions;
+        this.permissionTypes = index.permissionTypes;
+        this.enabledRoles = enabledRoles;
+    }
+
+    private RoleMatrixIndex(Collection<String> roles,
+                            Map<String, Map<String, Set<Permission>>> permissions,
+                            Map<String, Set<Privilege>> privileges,
+                            Map<String, Set<Privilege>> customPrivileges) {
+        this.privileges = privileges;
+        this.roles = new TreeSet<>(roles);
+        this.roleKeys = new ArrayList<>(roles);
+        this.roleIds = new HashMap<>();
+        for (int id = 0; id < roleKeys.size(); id++) {
+            roleIds.put(roleKeys.get(id), id);
+        }
+
+        this.privilegeIds = new HashMap<>();
+        List<Privilege> matrixPrivileges = new ArrayList<>();
+        List<PermissionType> types = new ArrayList<>();
+        Set<String> systemPrivilegeKeys = new HashSet<>();
+        privileges.values().forEach(msPrivileges -> msPrivileges.forEach(privilege -> {
+            systemPrivilegeKeys.add(privilege.getKey());
+            if (privilegeIds.putIfAbsent(id(privilege.getMsName(), privilege.getKey()), matrixPrivileges.size()) == null) {
+                matrixPrivileges.add(privilege);
+                types.add(SYSTEM);
+            }
+        }));
+        customPrivileges.values().forEach(msPrivileges -> msPrivileges.forEach(privilege -> {
+            if (systemPrivilegeKeys.contains(privilege.getKey())) {
+                log.error("Custom privilege {} try to override system privilege, and ignored", privilege.getKey());
+            }
+            if (privilegeIds.putIfAbsent(id(privilege.getMsName(), privilege.getKey()), matrixPrivileges.size()) == null) {
+                matrixPrivileges.add(privilege);
+                types.add(TENANT);
+            }
+        }));
+
+        int size = matrixPrivileges.size();
+        this.msNames = new String[size];
+        this.privilegeKeys = new String[size];
+        this.descriptions = new String[size];
+        this.permissionTypes = types.toArray(new PermissionType[size]);
+        this.enabledRoles = new BitSet[size];
+        for (int id = 0; id < size; id++) {
+            Privilege privilege = matrixPrivileges.get(id);
+            msNames[id] = privilege.getMsName();
+            privilegeKeys[id] = privilege.getKey();
+            descriptions[id] = privilege.getCustomDescription();
+            enabledRoles[id] = new BitSet();
+        }
+
+        permissions.forEach((msName, rolePermissions) -> rolePermissions.forEach((roleKey, rolePermissionSet) ->
+            rolePermissionSet.stream()
+                .filter(permission -> !permission.isDisabled())
+                .map(permission -> privilegeIds.get(id(msName, permission.getPrivilegeKey())))
+                .filter(id -> id != null)
+                .forEach(id -> enabledRoles[id].set(roleId(roleKey)))
+        ));
+    }
+
+    /**
+     * Build the role matrix index.
+     *
+     * @param roles            roles of the tenant
+     * @param permissions      permissions by microservice and role
+     * @param privileges       system privileges by microservice
+     * @param customPrivileges custom privileges of the tenant by microservice
+     * @return the index
+     */
+    static RoleMatrixIndex build(Collection<String> roles,
+                                 Map<String, Map<String, Set<Permission>>> permissions,
+                                 Map<String, Set<Privilege>> privileges,
+                                 Map<String, Set<Privilege>> customPrivileges) {
+        return new RoleMatrixIndex(roles, permissions, privileges, customPrivileges);
+    }
+
+    boolean isBuiltFrom(Map<String, Set<Privilege>> privileges) {
+        return this.privileges == privileges;
+    }
+
+    /**
+     * Derive the index with changed matrix cells.
+     *
+     * @param changes the changed cells
+     * @return the index with the changes applied
+     */
+    RoleMatrixIndex withChanges(Collection<RoleMatrixChangeDTO> changes) {
+        BitSet[] changed = enabledRoles.clone();
+        Set<Integer> copied = new HashSet<>();
+        for (RoleMatrixChangeDTO change : changes) {
+            Integer id = privilegeIds.get(id(change.getMsName(), change.getPrivilegeKey()));
+            Integer roleId = roleIds.get(change.getRoleKey());
+            if (id == null || roleId == null) {
+                continue;
+            }
+            if (copied.add(id)) {
+                changed[id] = (BitSet) changed[id].clone();
+            }
+            changed[id].set(roleId, change.isEnabled());
+        }
+        return new RoleMatrixIndex(this, changed);
+    }
+
+    /**
+     * Create the role matrix.
+     *
+     * @return a new role matrix dto
+     */
+    RoleMatrixDTO toRoleMatrix() {
+        RoleMatrixDTO roleMatrix = new RoleMatrixDTO();
+        roleMatrix.setRoles(new TreeSet<>(roles));
+        for (int id = 0; id < privilegeKeys.length; id++) {
+            PermissionMatrixDTO permission = new PermissionMatrixDTO();
+            permission.setMsName(msNames[id]);
+            permission.setPrivilegeKey(privilegeKeys[id]);
+            permission.setDescription(descriptions[id]);
+            permission.setPermissionType(permissionTypes[id]);
+            BitSet enabled = enabledRoles[id];
+            for (int roleId = enabled.nextSetBit(0); roleId >= 0; roleId = enabled.nextSetBit(roleId + 1)) {
+                permission.getRoles().add(roleKeys.get(roleId));
+            }
+            roleMatrix.getPermissions().add(permission);
+        }
+        return roleMatrix;
+    }
+
+    private int roleId(String roleKey) {
+        return roleIds.computeIfAbsent(roleKey, key -> {
+            roleKeys.add(key);
+            return roleKeys.size() - 1;
+        });
+    }
+
+    private static String id(String msName, String privilegeKey) {
+        return msName + ":" + privilegeKey;
+    }
+}
@@ -1,69 +1,107 @@
 package com.icthh.xm.uaa.service;
 
-import static java.util.Optional.ofNullable;
-
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.icthh.xm.commons.config.client.api.RefreshableConfiguration;
 import com.icthh.xm.commons.permission.config.PermissionProperties;
 import com.icthh.xm.commons.permission.domain.Permission;
 import com.icthh.xm.commons.permission.service.PermissionMappingService;
 import com.icthh.xm.commons.tenant.TenantContextHolder;
 import com.icthh.xm.commons.tenant.TenantContextUtils;
+import com.icthh.xm.uaa.config.ApplicationProperties;
 import com.icthh.xm.uaa.service.dto.AccPermissionDTO;
-import java.util.Collection;
+import com.icthh.xm.uaa.util.CacheMetricsSet;
 import java.util.Objects;
-import lombok.RequiredArgsConstructor;
+import java.util.TreeSet;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.springframework.util.AntPathMatcher;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 /**
  * Service for retrieving Permissions from refreshable configuration.
+ * <p>
+ * Enabled permissions are precomputed per role on configuration refresh, the union for a set of roles is cached.
+ * Returned lists are shared and immutable.
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class TenantPermissionService implements RefreshableConfiguration {
 
     private static final String TENANT_NAME = "tenantName";
+    private static final String METRIC_NAME = "permission.union.cache";
 
     private final PermissionProperties permissionProperties;
     private final TenantContextHolder tenantContextHolder;
-    @Qualifier("allPermissionMappingService")
     private final PermissionMappingService permissionMappingService;
 
     private final AntPathMatcher matcher = new AntPathMatcher();
 
-    // Map structure: <Tenant, <Role, [Permission]>>
-    final Map<String, Map<String, List<Permission>>> tenantRolePermissions = new ConcurrentHashMap<>();
+    // Map structure: <Tenant, <Role, [enabled Permission]>>
+    final Map<String, Map<String, List<AccPermissionDTO>>> tenantRolePermissions = new ConcurrentHashMap<>();
+
+    // key: tenant and sorted role keys, value: union of enabled permissions of the roles
+    private final Cache<List<String>, List<AccPermissionDTO>> rolesPermissions;
+
+    public TenantPermissionService(PermissionProperties permissionProperties,
+                                   TenantContextHolder tenantContextHolder,
+                                   @Qualifier("allPermissionMappingService")
+                                   PermissionMappingService permissionMappingService,
+                                   ApplicationProperties applicationProperties,
+                                   MetricRegistry metricRegistry) {
+        this.permissionProperties = permissionProperties;
+        this.tenantContextHolder = tenantContextHolder;
+        this.permissionMappingService = permissionMappingService;
+        this.rolesPermissions = CacheBuilder.newBuilder()
+            .maximumSize(applicationProperties.getPermissionCache().getMaximumSize())
+            .recordStats()
+            .build();
+        CacheMetricsSet.register(metricRegistry, METRIC_NAME, new CacheMetricsSet(rolesPermissions));
+    }
 
     public List<AccPermissionDTO> getEnabledPermissionByRole(List<String> roles) {
+        if (roles == null || roles.isEmpty()) {
+            return Collections.emptyList();
+        }
 
-        Map<String, List<Permission>> tenantRoles = getTenantRoles();
+        String tenant = TenantContextUtils.getRequiredTenantKeyValue(tenantContextHolder);
+        Map<String, List<AccPermissionDTO>> tenantRoles = tenantRolePermissions.getOrDefault(tenant,
+            Collections.emptyMap());
+        if (roles.size() == 1) {
+            return tenantRoles.getOrDefault(roles.get(0), Collections.emptyList());
+        }
 
-        return ofNullable(roles)
-            .stream()
-            .flatMap(Collection::stream)
-            .map(tenantRoles::get)
-            .filter(Objects::nonNull)
-            .flatMap(Collection::stream)
-            .filter(permission -> !permission.isDisabled())
-            .map(AccPermissionDTO::new)
-            .collect(Collectors.toList());
+        List<String> key = new ArrayList<>(roles.size() + 1);
+        key.add(tenant);
+        key.addAll(new TreeSet<>(roles));
+        List<AccPermissionDTO> permissions = rolesPermissions.getIfPresent(key);
+        if (permissions == null) {
+            permissions = union(tenantRoles, key.subList(1, key.size()));
+            // a concurrent refresh may have replaced the tenant roles, do not cache a stale union
+            if (tenantRoles == tenantRolePermissions.get(tenant)) {
+                rolesPermissions.put(key, permissions);
+            }
+        }
+        return permissions;
     }
 
-    private Map<String, List<Permission>> getTenantRoles(){
-        String tenant = TenantContextUtils.getRequiredTenantKeyValue(tenantContextHolder);
-        return tenantRolePermissions.getOrDefault(tenant, Collections.emptyMap());
+    private static List<AccPermissionDTO> union(Map<String, List<AccPermissionDTO>> tenantRoles,
+                                                List<String> sortedRoles) {
+        List<AccPermissionDTO> union = new ArrayList<>();
+        sortedRoles.stream()
+            .map(tenantRoles::get)
+            .filter(Objects::nonNull)
+            .forEach(union::addAll);
+        return Collections.unmodifiableList(union);
     }
 
     @Override
@@ -79,16 +117,20 @@ public class TenantPermissionService implements RefreshableConfiguration {
             } else {
                 Map<String, Permission> permissions = permissionMappingService.ymlToPermissions(config);
 
-                Map<String, List<Permission>> tenantPermissions = new HashMap<>();
+                Map<String, List<AccPermissionDTO>> tenantPermissions = new HashMap<>();
 
                 permissions.values()
-                           .forEach(p -> tenantPermissions.computeIfAbsent(p.getRoleKey(), role -> new LinkedList<>())
-                                                          .add(p));
+                           .stream()
+                           .filter(permission -> !permission.isDisabled())
+                           .forEach(p -> tenantPermissions.computeIfAbsent(p.getRoleKey(), role -> new ArrayList<>())
+                                                          .add(new AccPermissionDTO(p)));
+                tenantPermissions.replaceAll((role, rolePermissions) -> List.copyOf(rolePermissions));
 
                 tenantRolePermissions.put(tenant, Collections.unmodifiableMap(tenantPermissions));
 
                 log.info("Permission configuration was updated for tenant [{}] by key [{}]", tenant, updatedKey);
             }
+            rolesPermissions.asMap().keySet().removeIf(key -> key.get(0).equals(tenant));
         } catch (Exception e) {
             log.error("Error read xm specification from path " + updatedKey, e);
         }
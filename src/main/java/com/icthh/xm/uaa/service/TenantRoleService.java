@@ -3,6 +3,7 @@ package com.icthh.xm.uaa.service;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.icthh.xm.commons.config.client.api.RefreshableConfiguration;
 import com.icthh.xm.commons.config.client.repository.CommonConfigRepository;
 import com.icthh.xm.commons.config.client.repository.TenantConfigRepository;
 import com.icthh.xm.commons.config.domain.Configuration;
@@ -20,25 +21,29 @@ import com.icthh.xm.commons.tenant.TenantContextUtils;
 import com.icthh.xm.uaa.repository.ClientRepository;
 import com.icthh.xm.uaa.repository.UserRepository;
 import com.icthh.xm.uaa.service.dto.PermissionDTO;
+import com.icthh.xm.uaa.service.dto.RoleMatrixChangeDTO;
 import com.icthh.xm.uaa.service.dto.RoleDTO;
 import com.icthh.xm.uaa.service.dto.RoleMatrixDTO;
 import com.icthh.xm.uaa.service.dto.RoleMatrixDTO.PermissionMatrixDTO;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.AntPathMatcher;
 import org.springframework.web.client.HttpClientErrorException;
 
 import javax.validation.Valid;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
-import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.icthh.xm.commons.permission.domain.ReactionStrategy.EXCEPTION;
 import static com.icthh.xm.uaa.service.dto.PermissionType.SYSTEM;
@@ -50,11 +55,14 @@ import static java.util.Optional.ofNullable;
 
 /**
  * Service Implementation for managing Role.
+ * <p>
+ * Reads are served from a parsed, immutable snapshot per tenant which is refreshed from configuration updates and
+ * from the writes of this service. Writes always start from the current configuration in the config service.
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
-public class TenantRoleService {
+public class TenantRoleService implements RefreshableConfiguration {
 
     private static final String API = "/api";
 
@@ -62,6 +70,8 @@ public class TenantRoleService {
 
     private static final String CUSTOM_PRIVILEGES_PATH = "/config/tenants/{tenantName}/custom-privileges.yml";
 
+    private static final String TENANT_NAME = "tenantName";
+
     @Value("${xm-permission.custom-privileges-path:}")
     private String customPrivilegesPath;
 
@@ -78,40 +88,118 @@ public class TenantRoleService {
     @Qualifier("allPermissionMappingService")
     private final PermissionMappingService permissionMappingService;
 
+    private final AntPathMatcher matcher = new AntPathMatcher();
+
+    // Map structure: <Tenant, parsed roles, permissions and custom privileges>
+    private final Map<String, RoleSnapshot> roleSnapshots = new ConcurrentHashMap<>();
+
+    // privileges are common for all tenants, null until loaded
+    private final AtomicReference<Map<String, Set<Privilege>>> privilegesSnapshot = new AtomicReference<>();
+
+    // writes of a tenant are serialized, each one reads and writes the whole configuration
+    private final Map<String, Object> writeLocks = new ConcurrentHashMap<>();
+
     /**
-     * Get roles properties.
+     * Get roles properties from the config service.
      * @return role props
      */
     public Map<String, Role> getRoles() {
-        TreeMap<String, Role> roles = getConfig(permissionProperties.getRolesSpecPath(),
-            new TypeReference<>() {
-            });
-        return roles != null ? roles : new TreeMap<>();
+        return toRoles(getConfigContent(permissionProperties.getRolesSpecPath()).orElse(EMPTY_YAML));
     }
 
     private Map<String, Map<String, Set<Permission>>> getPermissions() {
-        SortedMap<String, SortedMap<String, SortedSet<Permission>>> permissions = getConfig(
-            permissionProperties.getPermissionsSpecPath(),
-            new TypeReference<>() {
-            });
-        permissions = permissions != null ? permissions : new TreeMap<>();
-        Map<String, Map<String, Set<Permission>>> result = new TreeMap<>();
-        permissions.forEach((key, value) -> result.put(key, value != null ? new TreeMap<>(value) : null));
-        return result;
+        return toPermissions(getConfigContent(permissionProperties.getPermissionsSpecPath()).orElse(EMPTY_YAML));
     }
 
     private Map<String, Set<Privilege>> getPrivileges() {
-        String privilegesFile = getCommonConfigContent(permissionProperties.getPrivilegesSpecPath()).orElse("");
-        return StringUtils.isBlank(privilegesFile) ? new TreeMap<>() : PrivilegeMapper
-                        .ymlToPrivileges(privilegesFile);
+        Map<String, Set<Privilege>> privileges = privilegesSnapshot.get();
+        if (privileges == null) {
+            String privilegesFile = getCommonConfigContent(permissionProperties.getPrivilegesSpecPath()).orElse("");
+            // a concurrent refresh is newer than the loaded configuration
+            privilegesSnapshot.compareAndSet(null, toImmutablePrivileges(privilegesFile));
+            privileges = privilegesSnapshot.get();
+        }
+        return privileges;
     }
 
-    private Map<String, Set<Privilege>> getCustomPrivileges() {
-        String tenant = TenantContextUtils.getRequiredTenantKeyValue(tenantContextHolder.getContext());
-        String path = StringUtils.isBlank(customPrivilegesPath) ? CUSTOM_PRIVILEGES_PATH : customPrivilegesPath;
-        String privilegesFile = getConfigContent(path.replace("{tenantName}", tenant)).orElse("");
-        return StringUtils.isBlank(privilegesFile) ? new TreeMap<>() : PrivilegeMapper
-            .ymlToPrivileges(privilegesFile);
+    private Map<String, Set<Privilege>> loadCustomPrivileges(String tenant) {
+        String privilegesFile = getConfigContent(getCustomPrivilegesPath().replace("{" + TENANT_NAME + "}", tenant))
+            .orElse("");
+        return toImmutablePrivileges(privilegesFile);
+    }
+
+    private String getCustomPrivilegesPath() {
+        return StringUtils.isBlank(customPrivilegesPath) ? CUSTOM_PRIVILEGES_PATH : customPrivilegesPath;
+    }
+
+    /**
+     * Get parsed roles, permissions and custom privileges of the current tenant, loading the parts that were not
+     * received from configuration updates yet.
+     * @return the role snapshot
+     */
+    private RoleSnapshot getRoleSnapshot() {
+        String tenant = getTenantKeyValue();
+        RoleSnapshot snapshot = roleSnapshots.getOrDefault(tenant, RoleSnapshot.EMPTY);
+        if (snapshot.isComplete()) {
+            return snapshot;
+        }
+
+        RoleSnapshot loaded = new RoleSnapshot(
+            snapshot.roles != null ? snapshot.roles : toImmutableRoles(
+                getConfigContent(permissionProperties.getRolesSpecPath()).orElse(EMPTY_YAML)),
+            snapshot.permissions != null ? snapshot.permissions : toImmutablePermissions(
+                getConfigContent(permissionProperties.getPermissionsSpecPath()).orElse(EMPTY_YAML)),
+            snapshot.customPrivileges != null ? snapshot.customPrivileges : loadCustomPrivileges(tenant));
+        // parts refreshed meanwhile are newer than the loaded ones
+        return roleSnapshots.merge(tenant, loaded, RoleSnapshot::completeWith);
+    }
+
+    private void updateRoleSnapshot(String tenant, UnaryOperator<RoleSnapshot> update) {
+        roleSnapshots.compute(tenant, (key, snapshot) -> update.apply(snapshot != null ? snapshot : RoleSnapshot.EMPTY));
+    }
+
+    @Override
+    public void onRefresh(String updatedKey, String config) {
+        try {
+            if (matcher.match(permissionProperties.getPrivilegesSpecPath(), updatedKey)) {
+                privilegesSnapshot.set(toImmutablePrivileges(config));
+                log.info("Privileges were updated by key [{}]", updatedKey);
+            } else if (matcher.match(permissionProperties.getRolesSpecPath(), updatedKey)) {
+                Map<String, Role> roles = toImmutableRoles(config);
+                updateRoleSnapshot(extractTenant(permissionProperties.getRolesSpecPath(), updatedKey),
+                    snapshot -> snapshot.withRoles(roles));
+                log.info("Roles were updated by key [{}]", updatedKey);
+            } else if (matcher.match(permissionProperties.getPermissionsSpecPath(), updatedKey)) {
+                Map<String, Map<String, Set<Permission>>> permissions = toImmutablePermissions(config);
+                updateRoleSnapshot(extractTenant(permissionProperties.getPermissionsSpecPath(), updatedKey),
+                    snapshot -> snapshot.withPermissions(permissions));
+                log.info("Role permissions were updated by key [{}]", updatedKey);
+            } else if (matcher.match(getCustomPrivilegesPath(), updatedKey)) {
+                Map<String, Set<Privilege>> customPrivileges = toImmutablePrivileges(config);
+                updateRoleSnapshot(extractTenant(getCustomPrivilegesPath(), updatedKey),
+                    snapshot -> snapshot.withCustomPrivileges(customPrivileges));
+                log.info("Custom privileges were updated by key [{}]", updatedKey);
+            }
+        } catch (Exception e) {
+            log.error("Error read role configuration from path " + updatedKey, e);
+        }
+    }
+
+    @Override
+    public boolean isListeningConfiguration(String updatedKey) {
+        return matcher.match(permissionProperties.getPrivilegesSpecPath(), updatedKey)
+            || matcher.match(permissionProperties.getRolesSpecPath(), updatedKey)
+            || matcher.match(permissionProperties.getPermissionsSpecPath(), updatedKey)
+            || matcher.match(getCustomPrivilegesPath(), updatedKey);
+    }
+
+    @Override
+    public void onInit(String configKey, String configValue) {
+        onRefresh(configKey, configValue);
+    }
+
+    private String extractTenant(String pathPattern, String updatedKey) {
+        return matcher.extractUriTemplateVariables(pathPattern, updatedKey).get(TENANT_NAME);
     }
 
     /**
@@ -120,35 +208,36 @@ public class TenantRoleService {
      */
     @SneakyThrows
     public void addRole(@Valid RoleDTO roleDto) {
+        synchronized (getWriteLock()) {
+            if (StringUtils.equalsIgnoreCase(RoleConstant.SUPER_ADMIN, roleDto.getRoleKey())) {
+                throw new BusinessException(ERROR_FORBIDDEN_ROLE, "Forbidden role key");
+            }
 
-        if (StringUtils.equalsIgnoreCase(RoleConstant.SUPER_ADMIN, roleDto.getRoleKey())) {
-            throw new BusinessException(ERROR_FORBIDDEN_ROLE, "Forbidden role key");
-        }
+            Map<String, Role> roles = getRoles();
 
-        Map<String, Role> roles = getRoles();
+            if (null != roles.get(roleDto.getRoleKey())) {
+                throw new BusinessException("Role already exists");
+            }
 
-        if (null != roles.get(roleDto.getRoleKey())) {
-            throw new BusinessException("Role already exists");
-        }
+            Role role = new Role();
+            role.setDescription(roleDto.getDescription());
+            role.setCreatedBy(xmAuthenticationContextHolder.getContext().getRequiredLogin());
+            role.setCreatedDate(Instant.now().toString());
+            role.setUpdatedBy(xmAuthenticationContextHolder.getContext().getRequiredLogin());
+            role.setUpdatedDate(roleDto.getUpdatedDate());
+            roles.put(roleDto.getRoleKey(), role);
 
-        Role role = new Role();
-        role.setDescription(roleDto.getDescription());
-        role.setCreatedBy(xmAuthenticationContextHolder.getContext().getRequiredLogin());
-        role.setCreatedDate(Instant.now().toString());
-        role.setUpdatedBy(xmAuthenticationContextHolder.getContext().getRequiredLogin());
-        role.setUpdatedDate(roleDto.getUpdatedDate());
-        roles.put(roleDto.getRoleKey(), role);
-
-        updateRoles(mapper.writeValueAsString(roles));
-
-        Map<String, Map<String, Set<Permission>>> permissions = getPermissions();
-        if (StringUtils.isBlank(roleDto.getBasedOn())) {
-            enrichExistingPermissions(permissions, roleDto.getRoleKey());
-        } else {
-            enrichExistingPermissions(permissions, roleDto.getRoleKey(), roleDto.getBasedOn());
-        }
+            updateRoles(mapper.writeValueAsString(roles));
+
+            Map<String, Map<String, Set<Permission>>> permissions = getPermissions();
+            if (StringUtils.isBlank(roleDto.getBasedOn())) {
+                enrichExistingPermissions(permissions, roleDto.getRoleKey());
+            } else {
+                enrichExistingPermissions(permissions, roleDto.getRoleKey(), roleDto.getBasedOn());
+            }
 
-        updatePermissions(permissions);
+            updatePermissions(permissions);
+        }
     }
 
     private void removeDefaultValues(Map<String, Map<String, Set<Permission>>> permissions) {
@@ -174,32 +263,34 @@ public class TenantRoleService {
      */
     @SneakyThrows
     public void updateRole(RoleDTO roleDto) {
-        Map<String, Role> roles = getRoles();
-        Role roleToUpdate = roles.get(roleDto.getRoleKey());
+        synchronized (getWriteLock()) {
+            Map<String, Role> roles = getRoles();
+            Role roleToUpdate = roles.get(roleDto.getRoleKey());
 
-        if (roleToUpdate == null) {
-            throw new BusinessException("Role doesn't exist");
-        }
+            if (roleToUpdate == null) {
+                throw new BusinessException("Role doesn't exist");
+            }
 
-        roleToUpdate.setDescription(roleDto.getDescription());
-        roleToUpdate.setUpdatedBy(xmAuthenticationContextHolder.getContext().getRequiredLogin());
-        roleToUpdate.setUpdatedDate(Instant.now().toString());
+            roleToUpdate.setDescription(roleDto.getDescription());
+            roleToUpdate.setUpdatedBy(xmAuthenticationContextHolder.getContext().getRequiredLogin());
+            roleToUpdate.setUpdatedDate(Instant.now().toString());
 
-        roles.put(roleDto.getRoleKey(), roleToUpdate);
+            roles.put(roleDto.getRoleKey(), roleToUpdate);
 
-        updateRoles(mapper.writeValueAsString(roles));
+            updateRoles(mapper.writeValueAsString(roles));
 
-        Collection<PermissionDTO> newPermissions = roleDto.getPermissions();
+            Collection<PermissionDTO> newPermissions = roleDto.getPermissions();
 
-        if (newPermissions.isEmpty()) {
-            return;
-        }
+            if (newPermissions.isEmpty()) {
+                return;
+            }
 
-        Map<String, Map<String, Set<Permission>>> existingPermissions = getPermissions();
+            Map<String, Map<String, Set<Permission>>> existingPermissions = getPermissions();
 
-        enrichExistingPermissions(existingPermissions, newPermissions);
+            enrichExistingPermissions(existingPermissions, newPermissions);
 
-        updatePermissions(existingPermissions);
+            updatePermissions(existingPermissions);
+        }
     }
 
     @SneakyThrows
@@ -229,16 +320,27 @@ public class TenantRoleService {
 
         tenantConfigRepository.updateConfigFullPath(tenant,
             API + permissionProperties.getRolesSpecPath(), rolesYml);
+
+        Map<String, Role> roles = toImmutableRoles(rolesYml);
+        updateRoleSnapshot(tenant, snapshot -> snapshot.withRoles(roles));
     }
 
-    @SneakyThrows
     private void updatePermissions(Map<String, Map<String, Set<Permission>>> permission) {
+        String tenant = TenantContextUtils.getRequiredTenantKeyValue(tenantContextHolder.getContext());
+        String permissionsYml = writePermissions(tenant, permission);
+
+        Map<String, Map<String, Set<Permission>>> permissions = toImmutablePermissions(permissionsYml);
+        updateRoleSnapshot(tenant, snapshot -> snapshot.withPermissions(permissions));
+    }
+
+    @SneakyThrows
+    private String writePermissions(String tenant, Map<String, Map<String, Set<Permission>>> permission) {
         removeDefaultValues(permission);
         String permissionsYml = mapper.writeValueAsString(permission);
-        String tenant = TenantContextUtils.getRequiredTenantKeyValue(tenantContextHolder.getContext());
 
         tenantConfigRepository.updateConfigFullPath(tenant, API + permissionProperties.getPermissionsSpecPath(),
             permissionsYml);
+        return permissionsYml;
     }
 
     /**
@@ -246,9 +348,7 @@ public class TenantRoleService {
      * @return roles set
      */
     public Set<RoleDTO> getAllRoles() {
-        return getRoles().entrySet().stream()
-            .peek(entry -> entry.getValue().setKey(entry.getKey()))
-            .map(Map.Entry::getValue)
+        return getRoleSnapshot().roles.values().stream()
             .map(RoleDTO::new)
             .collect(Collectors.toSet());
     }
@@ -259,11 +359,11 @@ public class TenantRoleService {
      * @return roleDTO
      */
     public Optional<RoleDTO> getRole(String roleKey) {
-        Role role = getRoles().get(roleKey);
+        RoleSnapshot snapshot = getRoleSnapshot();
+        Role role = snapshot.roles.get(roleKey);
         if (role == null) {
             return Optional.empty();
         }
-        role.setKey(roleKey);
         RoleDTO roleDto = new RoleDTO(role);
         roleDto.setPermissions(new TreeSet<>());
 
@@ -271,15 +371,14 @@ public class TenantRoleService {
         Map<String, PermissionDTO> permissions = new TreeMap<>();
 
         // create permissions dto with role permissions
-        getPermissions().forEach((msName, rolePermissions) ->
+        snapshot.permissions.forEach((msName, rolePermissions) ->
             rolePermissions.entrySet().stream()
                 .filter(entry -> roleKey.equalsIgnoreCase(entry.getKey()))
                 .forEach(entry ->
                     entry.getValue().forEach(permission -> {
-                        permission.setMsName(msName);
-                        permission.setRoleKey(roleKey);
-                        permissions.put(msName + ":" + permission.getPrivilegeKey(),
-                            new PermissionDTO(permission));
+                        PermissionDTO permissionDto = new PermissionDTO(permission);
+                        permissionDto.setRoleKey(roleKey);
+                        permissions.put(msName + ":" + permission.getPrivilegeKey(), permissionDto);
                     })
                 ));
 
@@ -301,7 +400,7 @@ public class TenantRoleService {
 
         getPrivileges().forEach(privilegesProcessor);
         roleDto.getPermissions().forEach(it -> it.setPermissionType(SYSTEM));
-        Map<String, Set<Privilege>> customPrivileges = getCustomPrivileges();
+        Map<String, Set<Privilege>> customPrivileges = snapshot.customPrivileges;
         customPrivileges.forEach(privilegesProcessor);
         Set<String> customPrivilegeKeys = customPrivileges.values().stream().flatMap(Set::stream).map(Privilege::getKey)
             .collect(Collectors.toSet());
@@ -321,23 +420,24 @@ public class TenantRoleService {
 
     @SneakyThrows
     public void deleteRole(String roleKey) {
-        if (CollectionUtils.isNotEmpty(userRepository.findByRoleKey(roleKey))) {
-            throw new BusinessException("Failed to delete role. Role is assigned to user.");
-        }
-        if (CollectionUtils.isNotEmpty(clientRepository.findByRoleKey(roleKey))) {
-            throw new BusinessException("Failed to delete role. Role is assigned to client.");
-        }
+        synchronized (getWriteLock()) {
+            if (userRepository.existsByRoleKey(roleKey)) {
+                throw new BusinessException("Failed to delete role. Role is assigned to user.");
+            }
+            if (clientRepository.existsByRoleKey(roleKey)) {
+                throw new BusinessException("Failed to delete role. Role is assigned to client.");
+            }
 
-        Map<String, Role> roles = getRoles();
-        roles.remove(roleKey);
-        updateRoles(mapper.writeValueAsString(roles));
+            Map<String, Role> roles = getRoles();
+            roles.remove(roleKey);
+            updateRoles(mapper.writeValueAsString(roles));
 
-        Map<String, Map<String, Set<Permission>>> permissions = getPermissions();
-        for (Map<String, Set<Permission>> perm : permissions.values()) {
-            perm.remove(roleKey);
+            Map<String, Map<String, Set<Permission>>> permissions = getPermissions();
+            for (Map<String, Set<Permission>> perm : permissions.values()) {
+                perm.remove(roleKey);
+            }
+            updatePermissions(permissions);
         }
-        updatePermissions(permissions);
-
     }
 
     /**
@@ -345,61 +445,110 @@ public class TenantRoleService {
      * @return the role matrix
      */
     public RoleMatrixDTO getRoleMatrix() {
-        RoleMatrixDTO roleMatrix = new RoleMatrixDTO();
-        roleMatrix.setRoles(getRoles().keySet());
-
-        // map key = MS_NAME:PRIVILEGE_KEY, value = PermissionMatrixDTO
-        Map<String, PermissionMatrixDTO> matrixPermissions = new HashMap<>();
-
-        // create permissions matrix dto with role permissions
-        getPermissions().forEach((msName, rolePermissions) ->
-            rolePermissions.forEach((roleKey, permissions) ->
-                    permissions.forEach(permission -> {
-                        PermissionMatrixDTO permissionMatrix = matrixPermissions
-                            .get(msName + ":" + permission.getPrivilegeKey());
-                        if (permissionMatrix == null) {
-                            permissionMatrix = new PermissionMatrixDTO();
-                            permissionMatrix.setMsName(msName);
-                            permissionMatrix.setPrivilegeKey(permission.getPrivilegeKey());
-                            matrixPermissions.put(msName + ":" + permission.getPrivilegeKey(), permissionMatrix);
-                        }
-                        if (!permission.isDisabled()) {
-                            permissionMatrix.getRoles().add(roleKey);
-                        }
-                    })
-                ));
+        return getRoleMatrixIndex(getRoleSnapshot()).toRoleMatrix();
+    }
 
-        // enrich role permissions with missing privileges
-        Consumer<Set<Privilege>> privilegesProcessor = privileges ->
-            roleMatrix.getPermissions().addAll(privileges.stream().map(privilege -> {
-                PermissionMatrixDTO permission = matrixPermissions
-                    .get(privilege.getMsName() + ":" + privilege.getKey());
-                if (permission == null) {
-                    permission = new PermissionMatrixDTO();
-                    permission.setMsName(privilege.getMsName());
-                    permission.setPrivilegeKey(privilege.getKey());
+    private RoleMatrixIndex getRoleMatrixIndex(RoleSnapshot snapshot) {
+        return snapshot.getMatrixIndex(getPrivileges());
+    }
+
+    /**
+     * Apply changed cells of the role matrix. Only cells that differ from the current permissions are applied.
+     * @param changes the changed cells
+     * @return the applied changes, empty when the permissions were not changed
+     */
+    public List<RoleMatrixChangeDTO> patchRoleMatrix(List<RoleMatrixChangeDTO> changes) {
+        synchronized (getWriteLock()) {
+            String tenant = getTenantKeyValue();
+            RoleSnapshot snapshot = getRoleSnapshot();
+            Map<String, Role> roles = getRoles();
+            Map<String, Map<String, Set<Permission>>> permissions = getPermissions();
+            // the matrix of the snapshot is derived when the changes are applied to the same cells
+            boolean sameCells = roles.keySet().equals(snapshot.roles.keySet())
+                && enabledCells(permissions).equals(enabledCells(snapshot.permissions));
+
+            List<RoleMatrixChangeDTO> applied = new ArrayList<>();
+            for (RoleMatrixChangeDTO change : changes) {
+                if (StringUtils.isAnyBlank(change.getMsName(), change.getPrivilegeKey(), change.getRoleKey())) {
+                    throw new BusinessException("Role matrix change must have msName, privilegeKey and roleKey");
                 }
-                permission.setDescription(privilege.getCustomDescription());
-                return permission;
-            }).collect(Collectors.toList()));
+                if (!roles.containsKey(change.getRoleKey())) {
+                    throw new BusinessException("Role doesn't exist");
+                }
+                if (!isPrivilege(snapshot, change.getMsName(), change.getPrivilegeKey())) {
+                    throw new BusinessException("Privilege doesn't exist");
+                }
+                if (applyChange(permissions, change)) {
+                    applied.add(change);
+                }
+            }
+            if (applied.isEmpty()) {
+                return applied;
+            }
 
+            writePermissions(tenant, permissions);
+            log.info("Role matrix changed: {}", applied);
 
-        getPrivileges().values().forEach(privilegesProcessor);
-        roleMatrix.getPermissions().forEach(it -> it.setPermissionType(SYSTEM));
-        Map<String, Set<Privilege>> customPrivileges = getCustomPrivileges();
-        customPrivileges.values().forEach(privilegesProcessor);
-        Set<String> customPrivilegeKeys = customPrivileges.values().stream().flatMap(Set::stream).map(Privilege::getKey)
-            .collect(Collectors.toSet());
-        roleMatrix.getPermissions().stream()
-            .filter(it -> customPrivilegeKeys.contains(it.getPrivilegeKey())).forEach(it -> {
-            if (it.getPermissionType() == SYSTEM) {
-                log.error("Custom privilege {} try to override system privilege, and ignored", it.getPrivilegeKey());
-            } else {
-                it.setPermissionType(TENANT);
+            Map<String, Map<String, Set<Permission>>> updatedPermissions = toImmutablePermissions(permissions);
+            RoleMatrixIndex updatedIndex = sameCells ? getRoleMatrixIndex(snapshot).withChanges(applied) : null;
+            updateRoleSnapshot(tenant, current -> current == snapshot && updatedIndex != null
+                ? current.withPermissions(updatedPermissions, updatedIndex)
+                : current.withPermissions(updatedPermissions));
+            return applied;
+        }
+    }
+
+    private boolean isPrivilege(RoleSnapshot snapshot, String msName, String privilegeKey) {
+        return Stream.of(getPrivileges(), snapshot.customPrivileges)
+            .map(privileges -> privileges.getOrDefault(msName, Collections.emptySet()))
+            .flatMap(Set::stream)
+            .anyMatch(privilege -> privilegeKey.equals(privilege.getKey()));
+    }
+
+    /**
+     * Enabled cells of the permissions as MS_NAME:ROLE_KEY:PRIVILEGE_KEY.
+     */
+    private static Set<String> enabledCells(Map<String, Map<String, Set<Permission>>> permissions) {
+        Set<String> cells = new HashSet<>();
+        permissions.forEach((msName, rolePermissions) -> {
+            if (rolePermissions != null) {
+                rolePermissions.forEach((roleKey, rolePermissionSet) -> {
+                    if (rolePermissionSet != null) {
+                        rolePermissionSet.stream()
+                            .filter(permission -> !permission.isDisabled())
+                            .map(permission -> msName + ":" + roleKey + ":" + permission.getPrivilegeKey())
+                            .forEach(cells::add);
+                    }
+                });
             }
         });
+        return cells;
+    }
+
+    private boolean applyChange(Map<String, Map<String, Set<Permission>>> permissions, RoleMatrixChangeDTO change) {
+        Set<Permission> rolePermissions = permissions.getOrDefault(change.getMsName(), Collections.emptyMap())
+            .get(change.getRoleKey());
+        Permission current = rolePermissions == null ? null : rolePermissions.stream()
+            .filter(permission -> change.getPrivilegeKey().equals(permission.getPrivilegeKey()))
+            .findFirst()
+            .orElse(null);
+        boolean enabled = current != null && !current.isDisabled();
+        if (enabled == change.isEnabled()) {
+            return false;
+        }
 
-        return roleMatrix;
+        Permission permission = current != null ? mapper.convertValue(current, Permission.class) : new Permission();
+        permission.setMsName(change.getMsName());
+        permission.setRoleKey(change.getRoleKey());
+        permission.setPrivilegeKey(change.getPrivilegeKey());
+        permission.setDisabled(!change.isEnabled());
+        if (rolePermissions == null) {
+            rolePermissions = permissions.computeIfAbsent(change.getMsName(), msName -> new TreeMap<>())
+                .computeIfAbsent(change.getRoleKey(), roleKey -> new TreeSet<>());
+        }
+        rolePermissions.removeIf(it -> change.getPrivilegeKey().equals(it.getPrivilegeKey()));
+        rolePermissions.add(permission);
+        return true;
     }
 
     /**
@@ -408,51 +557,53 @@ public class TenantRoleService {
      */
     @SneakyThrows
     public void updateRoleMatrix(RoleMatrixDTO roleMatrix) {
-        // create map key: MS_NAME:PRIVILEGE_KEY, value: PermissionMatrixDTO for easy search
-        Map<String, PermissionMatrixDTO> newPermissions = new HashMap<>();
-        for (PermissionMatrixDTO permission : roleMatrix.getPermissions()) {
-            newPermissions.put(permission.getMsName() + ":" + permission.getPrivilegeKey(), permission);
-        }
+        synchronized (getWriteLock()) {
+            // create map key: MS_NAME:PRIVILEGE_KEY, value: PermissionMatrixDTO for easy search
+            Map<String, PermissionMatrixDTO> newPermissions = new HashMap<>();
+            for (PermissionMatrixDTO permission : roleMatrix.getPermissions()) {
+                newPermissions.put(permission.getMsName() + ":" + permission.getPrivilegeKey(), permission);
+            }
 
-        Map<String, Map<String, Set<Permission>>> allPermissions = getPermissions();
-        allPermissions.forEach((msName, rolePermissions) ->
-            rolePermissions.entrySet().stream()
-                // do not update hidden roles
-                .filter(roleWithPermissions -> roleMatrix.getRoles().contains(roleWithPermissions.getKey()))
-                // roleWithPermissions -> key: ROLE_KEY, value: set of role permissions
-                .forEach(roleWithPermissions ->
-                    roleWithPermissions.getValue().forEach(permission -> {
-                        String key = msName + ":" + permission.getPrivilegeKey();
-                        if (newPermissions.get(key) != null) {
-                            /*
-                             * disable permissions for current ROLE_KEY if it
-                             * is not present in roleMatrix.permissions[].roles[] list
-                             */
-                            Set<String> roles = newPermissions.get(key).getRoles();
-                            if (roles.contains(roleWithPermissions.getKey())) {
-                                permission.setDisabled(false);
-                                roles.remove(roleWithPermissions.getKey());
-                            } else {
-                                permission.setDisabled(true);
+            Map<String, Map<String, Set<Permission>>> allPermissions = getPermissions();
+            allPermissions.forEach((msName, rolePermissions) ->
+                rolePermissions.entrySet().stream()
+                    // do not update hidden roles
+                    .filter(roleWithPermissions -> roleMatrix.getRoles().contains(roleWithPermissions.getKey()))
+                    // roleWithPermissions -> key: ROLE_KEY, value: set of role permissions
+                    .forEach(roleWithPermissions ->
+                        roleWithPermissions.getValue().forEach(permission -> {
+                            String key = msName + ":" + permission.getPrivilegeKey();
+                            if (newPermissions.get(key) != null) {
+                                /*
+                                 * disable permissions for current ROLE_KEY if it
+                                 * is not present in roleMatrix.permissions[].roles[] list
+                                 */
+                                Set<String> roles = newPermissions.get(key).getRoles();
+                                if (roles.contains(roleWithPermissions.getKey())) {
+                                    permission.setDisabled(false);
+                                    roles.remove(roleWithPermissions.getKey());
+                                } else {
+                                    permission.setDisabled(true);
+                                }
                             }
-                        }
-                    }))
-        );
-
-        // processing permissions for new role
-        roleMatrix.getPermissions().stream().filter(permissionMatrixDTO ->
-            !permissionMatrixDTO.getRoles().isEmpty()).forEach(permissionMatrixDTO -> {
-                allPermissions.putIfAbsent(permissionMatrixDTO.getMsName(), new TreeMap<>());
-                permissionMatrixDTO.getRoles().forEach(role -> {
-                    allPermissions.get(permissionMatrixDTO.getMsName()).putIfAbsent(role, new TreeSet<>());
-                    Permission permission = new Permission();
-                    permission.setPrivilegeKey(permissionMatrixDTO.getPrivilegeKey());
-                    permission.setDisabled(false);
-                    allPermissions.get(permissionMatrixDTO.getMsName()).get(role).add(permission);
+                        }))
+            );
+
+            // processing permissions for new role
+            roleMatrix.getPermissions().stream().filter(permissionMatrixDTO ->
+                !permissionMatrixDTO.getRoles().isEmpty()).forEach(permissionMatrixDTO -> {
+                    allPermissions.putIfAbsent(permissionMatrixDTO.getMsName(), new TreeMap<>());
+                    permissionMatrixDTO.getRoles().forEach(role -> {
+                        allPermissions.get(permissionMatrixDTO.getMsName()).putIfAbsent(role, new TreeSet<>());
+                        Permission permission = new Permission();
+                        permission.setPrivilegeKey(permissionMatrixDTO.getPrivilegeKey());
+                        permission.setDisabled(false);
+                        allPermissions.get(permissionMatrixDTO.getMsName()).get(role).add(permission);
+                    });
                 });
-            });
 
-        updatePermissions(allPermissions);
+            updatePermissions(allPermissions);
+        }
     }
 
     /**
@@ -507,9 +658,76 @@ public class TenantRoleService {
     }
 
     @SneakyThrows
-    private <T> T getConfig(String configPath, TypeReference<T> typeReference) {
-        String config = getConfigContent(configPath).orElse(EMPTY_YAML);
-        return mapper.readValue(config, typeReference);
+    private Map<String, Role> toRoles(String rolesYml) {
+        TreeMap<String, Role> roles = mapper.readValue(StringUtils.defaultIfBlank(rolesYml, EMPTY_YAML),
+            new TypeReference<>() {
+            });
+        return roles != null ? roles : new TreeMap<>();
+    }
+
+    @SneakyThrows
+    private Map<String, Map<String, Set<Permission>>> toPermissions(String permissionsYml) {
+        SortedMap<String, SortedMap<String, SortedSet<Permission>>> permissions = mapper.readValue(
+            StringUtils.defaultIfBlank(permissionsYml, EMPTY_YAML),
+            new TypeReference<>() {
+            });
+        permissions = permissions != null ? permissions : new TreeMap<>();
+        Map<String, Map<String, Set<Permission>>> result = new TreeMap<>();
+        permissions.forEach((key, value) -> result.put(key, value != null ? new TreeMap<>(value) : null));
+        return result;
+    }
+
+    private Map<String, Role> toImmutableRoles(String rolesYml) {
+        Map<String, Role> roles = toRoles(rolesYml);
+        roles.forEach((key, role) -> role.setKey(key));
+        return Collections.unmodifiableMap(roles);
+    }
+
+    private Map<String, Map<String, Set<Permission>>> toImmutablePermissions(String permissionsYml) {
+        Map<String, Map<String, Set<Permission>>> permissions = toPermissions(permissionsYml);
+        permissions.forEach((msName, rolePermissions) -> {
+            if (rolePermissions != null) {
+                rolePermissions.forEach((roleKey, rolePermissionSet) -> {
+                    if (rolePermissionSet != null) {
+                        rolePermissionSet.forEach(permission -> {
+                            permission.setMsName(msName);
+                            permission.setRoleKey(roleKey);
+                        });
+                    }
+                });
+            }
+        });
+        return toImmutablePermissions(permissions);
+    }
+
+    private static Map<String, Map<String, Set<Permission>>> toImmutablePermissions(
+        Map<String, Map<String, Set<Permission>>> permissions) {
+        Map<String, Map<String, Set<Permission>>> result = new TreeMap<>();
+        permissions.forEach((msName, rolePermissions) -> {
+            Map<String, Set<Permission>> roles = new TreeMap<>();
+            if (rolePermissions != null) {
+                rolePermissions.forEach((roleKey, rolePermissionSet) -> roles.put(roleKey,
+                    Collections.unmodifiableSet(rolePermissionSet != null ? rolePermissionSet : new TreeSet<>())));
+            }
+            result.put(msName, Collections.unmodifiableMap(roles));
+        });
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static Map<String, Set<Privilege>> toImmutablePrivileges(String privilegesYml) {
+        Map<String, Set<Privilege>> privileges = StringUtils.isBlank(privilegesYml) ? new TreeMap<>()
+            : PrivilegeMapper.ymlToPrivileges(privilegesYml);
+        Map<String, Set<Privilege>> result = new TreeMap<>();
+        privileges.forEach((msName, msPrivileges) -> result.put(msName, Collections.unmodifiableSet(msPrivileges)));
+        return Collections.unmodifiableMap(result);
+    }
+
+    private Object getWriteLock() {
+        return writeLocks.computeIfAbsent(getTenantKeyValue(), tenant -> new Object());
+    }
+
+    private String getTenantKeyValue() {
+        return TenantContextUtils.getRequiredTenantKeyValue(tenantContextHolder.getContext());
     }
 
     private Optional<String> getConfigContent(String configPath) {
@@ -534,4 +752,58 @@ public class TenantRoleService {
                                      .map(Configuration::getContent)
                                      .findFirst();
     }
+
+    /**
+     * Parsed role configuration of a tenant, a {@code null} part is not loaded yet.
+     */
+    @RequiredArgsConstructor
+    private static final class RoleSnapshot {
+
+        static final RoleSnapshot EMPTY = new RoleSnapshot(null, null, null);
+
+        final Map<String, Role> roles;
+        final Map<String, Map<String, Set<Permission>>> permissions;
+        final Map<String, Set<Privilege>> customPrivileges;
+
+        // built on first matrix read, privileges are not part of the snapshot
+        private volatile RoleMatrixIndex matrixIndex;
+
+        boolean isComplete() {
+            return roles != null && permissions != null && customPrivileges != null;
+        }
+
+        RoleMatrixIndex getMatrixIndex(Map<String, Set<Privilege>> privileges) {
+            RoleMatrixIndex index = matrixIndex;
+            if (index == null || !index.isBuiltFrom(privileges)) {
+                index = RoleMatrixIndex.build(roles.keySet(), permissions, privileges, customPrivileges);
+                matrixIndex = index;
+            }
+            return index;
+        }
+
+        RoleSnapshot withRoles(Map<String, Role> roles) {
+            return new RoleSnapshot(roles, permissions, customPrivileges);
+        }
+
+        RoleSnapshot withPermissions(Map<String, Map<String, Set<Permission>>> permissions) {
+            return new RoleSnapshot(roles, permissions, customPrivileges);
+        }
+
+        RoleSnapshot withPermissions(Map<String, Map<String, Set<Permission>>> permissions,
+                                     RoleMatrixIndex matrixIndex) {
+            RoleSnapshot snapshot = withPermissions(permissions);
+            snapshot.matrixIndex = matrixIndex;
+            return snapshot;
+        }
+
+        RoleSnapshot withCustomPrivileges(Map<String, Set<Privilege>> customPrivileges) {
+            return new RoleSnapshot(roles, permissions, customPrivileges);
+        }
+
+        RoleSnapshot completeWith(RoleSnapshot loaded) {
+            return new RoleSnapshot(roles != null ? roles : loaded.roles,
+                permissions != null ? permissions : loaded.permissions,
+                customPrivileges != null ? customPrivileges : loaded.customPrivileges);
+        }
+    }
 }
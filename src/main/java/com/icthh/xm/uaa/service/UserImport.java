@@ -0,0 +1,130 @@
+package com.icthh.xm.uaa.service;
+
+import com.icthh.xm.uaa.service.dto.UserImportStatusDTO;
+import com.icthh.xm.uaa.service.dto.UserImportStatusDTO.RowErrorDTO;
+import com.icthh.xm.uaa.service.dto.UserImportStatusDTO.State;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a bulk user import, shared by the request thread reading the rows and the import workers.
+ * <p>
+ * The import is done when all rows are read and all submitted chunks are completed.
+ */
+final class UserImport {
+
+    private final String id;
+    private final String tenant;
+    private final int maxErrors;
+    private final Instant startDate = Instant.now();
+
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    // logins of the rows of this import, used to reject duplicates inside the import
+    private final Set<String> logins = ConcurrentHashMap.newKeySet();
+
+    // guarded by this
+    private final List<RowErrorDTO> errors = new ArrayList<>();
+    private int pendingChunks;
+    private boolean readCompleted;
+    private boolean readFailed;
+    private Instant endDate;
+
+    UserImport(String id, String tenant, int maxErrors) {
+        this.id = id;
+        this.tenant = tenant;
+        this.maxErrors = maxErrors;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    String getTenant() {
+        return tenant;
+    }
+
+    void rowRead() {
+        rows.incrementAndGet();
+    }
+
+    void rowsCreated(int count) {
+        created.addAndGet(count);
+    }
+
+    void rowFailed(long row, String login, String code, String message) {
+        failed.incrementAndGet();
+        addError(new RowErrorDTO(row, login, code, message));
+    }
+
+    /**
+     * Reserve the logins of a row for this import.
+     *
+     * @param rowLogins normalized logins of the row
+     * @return false, when one of the logins is already used by another row, nothing is reserved then
+     */
+    boolean claimLogins(Collection<String> rowLogins) {
+        List<String> claimed = new ArrayList<>(rowLogins.size());
+        for (String login : rowLogins) {
+            if (!logins.add(login)) {
+                logins.removeAll(claimed);
+                return false;
+            }
+            claimed.add(login);
+        }
+        return true;
+    }
+
+    synchronized void chunkSubmitted() {
+        pendingChunks++;
+    }
+
+    synchronized void chunkCompleted() {
+        pendingChunks--;
+        completeIfDone();
+    }
+
+    synchronized void readCompleted() {
+        readCompleted = true;
+        completeIfDone();
+    }
+
+    synchronized void readFailed(String code, String message) {
+        readFailed = true;
+        addError(new RowErrorDTO(0, null, code, message));
+        readCompleted();
+    }
+
+    synchronized UserImportStatusDTO toDto() {
+        UserImportStatusDTO status = new UserImportStatusDTO();
+        status.setId(id);
+        status.setState(endDate == null ? State.RUNNING : readFailed ? State.FAILED : State.COMPLETED);
+        status.setRows(rows.get());
+        status.setCreated(created.get());
+        status.setFailed(failed.get());
+        status.setStartDate(startDate);
+        status.setEndDate(endDate);
+        status.setErrors(new ArrayList<>(errors));
+        return status;
+    }
+
+    private synchronized void addError(RowErrorDTO error) {
+        if (errors.size() < maxErrors) {
+            errors.add(error);
+        }
+    }
+
+    private void completeIfDone() {
+        if (readCompleted && pendingChunks == 0 && endDate == null) {
+            endDate = Instant.now();
+            logins.clear();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.icthh.xm.uaa.service;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.icthh.xm.uaa.domain.User;
+import com.icthh.xm.uaa.domain.UserLogin;
+import com.icthh.xm.uaa.domain.UserLoginType;
+import com.icthh.xm.uaa.service.dto.UserDTO;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Reads the users of a bulk import row by row, without keeping the stream in memory.
+ * <p>
+ * NDJSON rows are {@link UserDTO} objects, one per line. CSV has a header row with the columns
+ * {@code firstName, lastName, imageUrl, langKey, authorities} (separated by {@code ;}), a column per login type
+ * ({@code email, msisdn, nickname}) and {@code data} with a JSON object; all columns are optional.
+ */
+final class UserImportReader {
+
+    private static final TypeReference<Map<String, String>> CSV_RECORD = new TypeReference<>() {
+    };
+    private static final TypeReference<Map<String, Object>> DATA = new TypeReference<>() {
+    };
+    private static final String AUTHORITIES_SEPARATOR = ";";
+
+    private final CsvMapper csvMapper = new CsvMapper();
+    private final ObjectMapper objectMapper;
+    private final ObjectReader userReader;
+
+    UserImportReader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.userReader = objectMapper.readerFor(UserDTO.class);
+    }
+
+    /**
+     * Read the rows of the stream, a row that can not be parsed is passed with an error.
+     *
+     * @param in     import stream
+     * @param format import format
+     * @param rows   row consumer
+     * @throws IOException when the stream can not be read or is not in the format
+     */
+    void read(InputStream in, UserImportService.Format format, Consumer<Row> rows) throws IOException {
+        if (format == UserImportService.Format.CSV) {
+            readCsv(in, rows);
+        } else {
+            readNdjson(in, rows);
+        }
+    }
+
+    private void readNdjson(InputStream in, Consumer<Row> rows) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF_8));
+        long number = 0;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            number++;
+            if (StringUtils.isBlank(line)) {
+                continue;
+            }
+            Row row;
+            try {
+                row = new Row(number, userReader.readValue(line), null);
+            } catch (JsonProcessingException e) {
+                row = new Row(number, null, e.getOriginalMessage());
+            }
+            rows.accept(row);
+        }
+    }
+
+    private void readCsv(InputStream in, Consumer<Row> rows) throws IOException {
+        MappingIterator<Map<String, String>> records = csvMapper.readerFor(CSV_RECORD)
+            .with(CsvSchema.emptySchema().withHeader())
+            .readValues(new InputStreamReader(in, UTF_8));
+        long number = 0;
+        while (records.hasNextValue()) {
+            number++;
+            Map<String, String> record = records.nextValue();
+            Row row;
+            try {
+                row = new Row(number, toUser(record), null);
+            } catch (JsonProcessingException e) {
+                row = new Row(number, null, e.getOriginalMessage());
+            }
+            rows.accept(row);
+        }
+    }
+
+    private UserDTO toUser(Map<String, String> record) throws JsonProcessingException {
+        UserDTO user = new UserDTO();
+        user.setFirstName(value(record, "firstName"));
+        user.setLastName(value(record, "lastName"));
+        user.setImageUrl(value(record, "imageUrl"));
+        user.setLangKey(value(record, "langKey"));
+
+        String authorities = value(record, "authorities");
+        if (authorities != null) {
+            user.setAuthorities(Arrays.stream(authorities.split(AUTHORITIES_SEPARATOR))
+                .map(String::trim)
+                .filter(StringUtils::isNotEmpty)
+                .collect(toList()));
+        }
+
+        List<UserLogin> logins = new ArrayList<>();
+        for (UserLoginType type : UserLoginType.values()) {
+            String login = value(record, type.name().toLowerCase());
+            if (login != null) {
+                UserLogin userLogin = new UserLogin();
+                userLogin.setTypeKey(type.getValue());
+                userLogin.setLogin(login);
+                logins.add(userLogin);
+            }
+        }
+        user.setLogins(logins);
+
+        String data = value(record, "data");
+        if (data != null) {
+            user.setData(objectMapper.readValue(data, DATA));
+        }
+        return user;
+    }
+
+    private static String value(Map<String, String> record, String column) {
+        return StringUtils.trimToNull(record.get(column));
+    }
+
+    /**
+     * Row of the import, either a parsed user or the parse error.
+     */
+    static final class Row {
+
+        private final long number;
+        private final UserDTO user;
+        private final String error;
+        private User newUser;
+        private boolean done;
+
+        Row(long number, UserDTO user, String error) {
+            this.number = number;
+            this.user = user;
+            this.error = error;
+        }
+
+        long getNumber() {
+            return number;
+        }
+
+        UserDTO getUser() {
+            return user;
+        }
+
+        String getError() {
+            return error;
+        }
+
+        User getNewUser() {
+            return newUser;
+        }
+
+        void setNewUser(User newUser) {
+            this.newUser = newUser;
+        }
+
+        boolean isDone() {
+            return done;
+        }
+
+        void setDone() {
+            this.done = true;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.icthh.xm.uaa.service;
+
+import static com.icthh.xm.uaa.config.Constants.LOGIN_IS_USED_ERROR_TEXT;
+import static com.icthh.xm.uaa.config.Constants.LOGIN_USED_CODE;
+import static com.icthh.xm.uaa.web.constant.ErrorConstants.ERROR_IMPORT_PARSE;
+import static com.icthh.xm.uaa.web.constant.ErrorConstants.ERROR_IMPORT_READ;
+import static com.icthh.xm.uaa.web.constant.ErrorConstants.ERROR_IMPORT_SAVE;
+import static com.icthh.xm.uaa.web.constant.ErrorConstants.ERROR_IMPORT_VALIDATION;
+import static com.icthh.xm.uaa.web.rest.util.VerificationUtils.assertNotSuperAdmin;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.icthh.xm.commons.exceptions.BusinessException;
+import com.icthh.xm.commons.logging.util.MdcUtils;
+import com.icthh.xm.commons.tenant.PlainTenant;
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.commons.tenant.TenantContextUtils;
+import com.icthh.xm.commons.tenant.TenantKey;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import com.icthh.xm.uaa.config.Constants;
+import com.icthh.xm.uaa.domain.User;
+import com.icthh.xm.uaa.domain.UserLogin;
+import com.icthh.xm.uaa.repository.UserLoginRepository;
+import com.icthh.xm.uaa.repository.kafka.ProfileEventProducer;
+import com.icthh.xm.uaa.service.UserImportReader.Row;
+import com.icthh.xm.uaa.service.dto.UserDTO;
+import com.icthh.xm.uaa.service.dto.UserImportStatusDTO;
+import com.icthh.xm.uaa.service.util.RandomUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+/**
+ * Service for bulk import of users.
+ * <p>
+ * The request thread reads the stream and normalizes the logins, rows are imported in chunks by a bounded pool
+ * of workers: a chunk is validated, its logins are checked with one query and its users are inserted in one
+ * transaction with batched inserts. When all workers are busy the request thread imports the chunk itself,
+ * so the upload is read no faster than it is imported. A chunk that fails on insert is retried row by row.
+ * <p>
+ * Users are created as by {@link UserService#createUser(UserDTO)} without its logic extension point, with an
+ * initial password shared by the users of a chunk that is never disclosed; they set their password with
+ * the reset key. Profile events are sent for created users, stored with the chunk when the outbox is enabled;
+ * creation mails are not.
+ */
+@Slf4j
+@Service
+public class UserImportService {
+
+    public enum Format {
+        NDJSON, CSV
+    }
+
+    private final UserService userService;
+    private final UserLoginService userLoginService;
+    private final UserLoginRepository userLoginRepository;
+    private final ProfileEventProducer profileEventProducer;
+    private final PasswordEncoder passwordEncoder;
+    private final TenantContextHolder tenantContextHolder;
+    private final Validator validator;
+    private final UserImportReader reader;
+    private final ApplicationProperties.UserImport properties;
+    private final ThreadPoolExecutor executor;
+    private final Cache<String, UserImport> imports;
+
+    public UserImportService(UserService userService,
+                             UserLoginService userLoginService,
+                             UserLoginRepository userLoginRepository,
+                             ProfileEventProducer profileEventProducer,
+                             PasswordEncoder passwordEncoder,
+                             TenantContextHolder tenantContextHolder,
+                             Validator validator,
+                             ObjectMapper objectMapper,
+                             ApplicationProperties applicationProperties) {
+        this.userService = userService;
+        this.userLoginService = userLoginService;
+        this.userLoginRepository = userLoginRepository;
+        this.profileEventProducer = profileEventProducer;
+        this.passwordEncoder = passwordEncoder;
+        this.tenantContextHolder = tenantContextHolder;
+        this.validator = validator;
+        this.reader = new UserImportReader(objectMapper);
+        this.properties = applicationProperties.getUserImport();
+        this.executor = new ThreadPoolExecutor(properties.getPoolSize(), properties.getPoolSize(),
+            0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+            new ThreadFactoryBuilder().setNameFormat("user-import-%d").setDaemon(true).build());
+        this.imports = CacheBuilder.newBuilder()
+            .expireAfterWrite(properties.getStatusTimeToLiveSeconds(), TimeUnit.SECONDS)
+            .build();
+    }
+
+    /**
+     * Import users from the stream. Returns when the stream is read, the last chunks may still be imported.
+     *
+     * @param in     import stream
+     * @param format import format
+     * @return import status
+     */
+    public UserImportStatusDTO importUsers(InputStream in, Format format) {
+        String tenant = TenantContextUtils.getRequiredTenantKeyValue(tenantContextHolder);
+        UserImport userImport = new UserImport(UUID.randomUUID().toString(), tenant, properties.getMaxErrors());
+        imports.put(userImport.getId(), userImport);
+        log.info("Start user import {} from {}", userImport.getId(), format);
+
+        List<Row> chunk = new ArrayList<>(properties.getChunkSize());
+        try {
+            reader.read(in, format, row -> {
+                userImport.rowRead();
+                if (row.getError() != null) {
+                    userImport.rowFailed(row.getNumber(), null, ERROR_IMPORT_PARSE, row.getError());
+                    return;
+                }
+                if (row.getUser().getLogins() != null) {
+                    userLoginService.normalizeLogins(row.getUser().getLogins());
+                }
+                chunk.add(row);
+                if (chunk.size() == properties.getChunkSize()) {
+                    submit(userImport, new ArrayList<>(chunk));
+                    chunk.clear();
+                }
+            });
+            if (!chunk.isEmpty()) {
+                submit(userImport, chunk);
+            }
+            userImport.readCompleted();
+        } catch (IOException | RuntimeException e) {
+            log.error("User import {} failed to read the stream", userImport.getId(), e);
+            userImport.readFailed(ERROR_IMPORT_READ, e.getMessage());
+        }
+        return userImport.toDto();
+    }
+
+    /**
+     * Get the status of an import of the current tenant.
+     *
+     * @param id import id
+     * @return import status
+     */
+    public Optional<UserImportStatusDTO> getStatus(String id) {
+        String tenant = TenantContextUtils.getRequiredTenantKeyValue(tenantContextHolder);
+        return Optional.ofNullable(imports.getIfPresent(id))
+            .filter(userImport -> userImport.getTenant().equals(tenant))
+            .map(UserImport::toDto);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    private void submit(UserImport userImport, List<Row> chunk) {
+        TenantKey tenantKey = TenantContextUtils.getRequiredTenantKey(tenantContextHolder);
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        String rid = MdcUtils.getRid();
+        userImport.chunkSubmitted();
+        try {
+            executor.execute(() -> {
+                try {
+                    MdcUtils.putRid(rid);
+                    tenantContextHolder.getPrivilegedContext().setTenant(new PlainTenant(tenantKey));
+                    SecurityContextHolder.setContext(securityContext);
+                    importChunk(userImport, chunk);
+                } finally {
+                    SecurityContextHolder.clearContext();
+                    tenantContextHolder.getPrivilegedContext().destroyCurrentContext();
+                    MdcUtils.removeRid();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // all workers are busy, import in the request thread
+            importChunk(userImport, chunk);
+        }
+    }
+
+    private void importChunk(UserImport userImport, List<Row> chunk) {
+        try {
+            String encryptedPassword = passwordEncoder.encode(RandomUtil.generatePassword());
+            List<Row> valid = chunk.stream()
+                .filter(row -> validate(userImport, row, encryptedPassword))
+                .collect(toList());
+
+            Set<String> usedLogins = findUsedLogins(valid);
+            List<Row> unique = valid.stream()
+                .filter(row -> checkLogins(userImport, row, usedLogins))
+                .collect(toList());
+
+            save(userImport, unique);
+        } catch (RuntimeException e) {
+            log.error("User import {} failed to import a chunk", userImport.getId(), e);
+            chunk.stream()
+                .filter(row -> !row.isDone())
+                .forEach(row -> fail(userImport, row, ERROR_IMPORT_SAVE, e.getMessage()));
+        } finally {
+            userImport.chunkCompleted();
+        }
+    }
+
+    private boolean validate(UserImport userImport, Row row, String encryptedPassword) {
+        UserDTO user = row.getUser();
+        Set<ConstraintViolation<UserDTO>> violations = validator.validate(user);
+        if (!violations.isEmpty()) {
+            fail(userImport, row, ERROR_IMPORT_VALIDATION, toMessage(violations));
+            return false;
+        }
+        try {
+            User newUser = userService.buildNewUser(user, encryptedPassword);
+            assertNotSuperAdmin(newUser.getAuthorities());
+            Set<ConstraintViolation<User>> userViolations = validator.validate(newUser);
+            if (!userViolations.isEmpty()) {
+                fail(userImport, row, ERROR_IMPORT_VALIDATION, toMessage(userViolations));
+                return false;
+            }
+            row.setNewUser(newUser);
+            return true;
+        } catch (BusinessException e) {
+            fail(userImport, row, e.getCode(), e.getMessage());
+            return false;
+        }
+    }
+
+    private Set<String> findUsedLogins(List<Row> rows) {
+        Set<String> logins = rows.stream()
+            .flatMap(row -> row.getUser().getLogins().stream())
+            .map(login -> UserLogin.normalize(login.getLogin()))
+            .collect(toSet());
+        return logins.isEmpty() ? Collections.emptySet() : Set.copyOf(userLoginRepository.findUsedLogins(logins));
+    }
+
+    private boolean checkLogins(UserImport userImport, Row row, Set<String> usedLogins) {
+        List<String> logins = row.getUser().getLogins().stream()
+            .map(login -> UserLogin.normalize(login.getLogin()))
+            .collect(toList());
+        if (logins.stream().anyMatch(usedLogins::contains) || !userImport.claimLogins(logins)) {
+            fail(userImport, row, LOGIN_USED_CODE, LOGIN_IS_USED_ERROR_TEXT);
+            return false;
+        }
+        return true;
+    }
+
+    private void save(UserImport userImport, List<Row> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            userService.saveNewUsers(rows.stream().map(Row::getNewUser).collect(toList()), this::sendCreatedEvents);
+            created(userImport, rows);
+        } catch (RuntimeException e) {
+            log.warn("User import {} failed to insert a chunk, retry row by row: {}", userImport.getId(),
+                e.getMessage());
+            rows.forEach(row -> saveRow(userImport, row));
+        }
+    }
+
+    private void saveRow(UserImport userImport, Row row) {
+        User user = row.getNewUser();
+        // ids were assigned by the rolled back insert
+        user.setId(null);
+        user.getLogins().forEach(login -> login.setId(null));
+        try {
+            userService.saveNewUsers(List.of(user), this::sendCreatedEvents);
+            created(userImport, List.of(row));
+        } catch (RuntimeException e) {
+            fail(userImport, row, ERROR_IMPORT_SAVE, e.getMessage());
+        }
+    }
+
+    private void sendCreatedEvents(List<User> users) {
+        profileEventProducer.sendAll(users.stream()
+            .map(user -> profileEventProducer.createEventJson(new UserDTO(user), Constants.CREATE_PROFILE_EVENT_TYPE))
+            .collect(toList()));
+    }
+
+    private static void created(UserImport userImport, List<Row> rows) {
+        userImport.rowsCreated(rows.size());
+        rows.forEach(Row::setDone);
+    }
+
+    private static void fail(UserImport userImport, Row row, String code, String message) {
+        row.setDone();
+        userImport.rowFailed(row.getNumber(), firstLogin(row), code, message);
+    }
+
+    private static String firstLogin(Row row) {
+        List<UserLogin> logins = row.getUser() == null ? null : row.getUser().getLogins();
+        return logins == null || logins.isEmpty() ? null : logins.get(0).getLogin();
+    }
+
+    private static <T> String toMessage(Set<ConstraintViolation<T>> violations) {
+        return violations.stream()
+            .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+            .sorted()
+            .collect(joining("; "));
+    }
+}
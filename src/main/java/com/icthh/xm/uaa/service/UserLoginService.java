@@ -17,8 +17,6 @@ import java.util.Optional;
 
 import static com.icthh.xm.uaa.config.Constants.LOGIN_USED_CODE;
 import static com.icthh.xm.uaa.config.Constants.LOGIN_USED_PARAM;
-import static org.apache.commons.lang3.StringUtils.lowerCase;
-import static org.apache.commons.lang3.StringUtils.trim;
 
 /**
  * Service class for managing user's login.
@@ -37,15 +35,11 @@ public class UserLoginService {
 
     @LogicExtensionPoint("NormalizeLogins")
     public void normalizeLogins(List<UserLogin> logins) {
-        logins.forEach(userLogin ->
-            userLogin.setLogin(
-                lowerCase(
-                    trim(
-                        userLogin.getLogin()
-                    )
-                )
-            )
-        );
+        logins.forEach(userLogin -> {
+            String login = UserLogin.normalize(userLogin.getLogin());
+            userLogin.setLogin(login);
+            userLogin.setNormalizedLogin(login);
+        });
     }
 
     /**
@@ -2,13 +2,10 @@ package com.icthh.xm.uaa.service;
 
 import com.icthh.xm.commons.lep.LogicExtensionPoint;
 import com.icthh.xm.commons.lep.spring.LepService;
-import com.icthh.xm.commons.logging.util.MdcUtils;
-import com.icthh.xm.commons.tenant.TenantContextHolder;
-import com.icthh.xm.commons.tenant.TenantContextUtils;
 import com.icthh.xm.uaa.commons.UaaUtils;
 import com.icthh.xm.uaa.commons.XmRequestContextHolder;
 import com.icthh.xm.uaa.domain.User;
-import com.icthh.xm.uaa.service.mail.MailService;
+import com.icthh.xm.uaa.service.mail.UserMailType;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.transaction.annotation.Transactional;
@@ -19,15 +16,12 @@ import org.springframework.transaction.annotation.Transactional;
 @Slf4j
 public class UserMailService {
 
-    private final TenantContextHolder tenantContextHolder;
     private final XmRequestContextHolder xmRequestContextHolder;
-    private final MailService mailService;
+    private final OutboxService outboxService;
 
     @LogicExtensionPoint("SendMailOnCreateUser")
     public void sendMailOnCreateUser(User newUser) {
-        mailService.sendCreationEmail(newUser,
-                                      UaaUtils.getApplicationUrl(xmRequestContextHolder),
-                                      TenantContextUtils.getRequiredTenantKey(tenantContextHolder),
-                                      MdcUtils.getRid());
+        outboxService.sendUserMail(UserMailType.CREATION, newUser,
+                                   UaaUtils.getApplicationUrl(xmRequestContextHolder));
     }
 }
@@ -15,6 +15,8 @@ import com.icthh.xm.uaa.domain.UserLogin;
 import com.icthh.xm.uaa.domain.UserLoginType;
 import com.icthh.xm.uaa.domain.properties.TenantProperties.PublicSettings;
 import com.icthh.xm.uaa.domain.properties.TenantProperties.PublicSettings.PasswordSettings;
+import com.icthh.xm.uaa.repository.KeysetPage;
+import com.icthh.xm.uaa.repository.KeysetPageable;
 import com.icthh.xm.uaa.repository.UserLoginRepository;
 import com.icthh.xm.uaa.repository.UserPermittedRepository;
 import com.icthh.xm.uaa.repository.UserRepository;
@@ -147,13 +149,24 @@ public class UserService {
      */
     @LogicExtensionPoint("CreateUser")
     public User createUser(UserDTO user) {
+        String encryptedPassword = passwordEncoder.encode(RandomUtil.generatePassword());
+        return userRepository.save(buildNewUser(user, encryptedPassword));
+    }
+
+    /**
+     * Build a new user by admin the same way as {@link #createUser(UserDTO)} does, without saving it.
+     *
+     * @param user              new user
+     * @param encryptedPassword encoded initial password of the user
+     * @return not saved user
+     */
+    public User buildNewUser(UserDTO user, String encryptedPassword) {
         User newUser = new User();
         newUser.setFirstName(user.getFirstName());
         newUser.setLastName(user.getLastName());
         newUser.setImageUrl(user.getImageUrl());
         newUser.setLangKey(user.getLangKey() == null ? "en" : user.getLangKey());
         newUser.setAuthorities(getRequiredRoleKey(user));
-        String encryptedPassword = passwordEncoder.encode(RandomUtil.generatePassword());
         newUser.setPassword(encryptedPassword);
         newUser.setResetKey(RandomUtil.generateResetKey());
         newUser.setResetDate(Instant.now());
@@ -163,8 +176,22 @@ public class UserService {
         newUser.getLogins().forEach(userLogin -> userLogin.setUser(newUser));
         newUser.setData(user.getData());
         newUser.setUpdatePasswordDate(Instant.now());
+        return updateUserAutoLogoutSettings(user, newUser);
+    }
 
-        return userRepository.save(updateUserAutoLogoutSettings(user, newUser));
+    /**
+     * Save users built by {@link #buildNewUser(UserDTO, String)} in one transaction and call notification with
+     * the saved users in the same transaction.
+     * The inserts are flushed before returning, so they are sent in JDBC batches and constraint violations
+     * are thrown from here.
+     *
+     * @param users        new users
+     * @param notification called with the saved users
+     */
+    public void saveNewUsers(List<User> users, Consumer<List<User>> notification) {
+        userRepository.saveAll(users);
+        userRepository.flush();
+        notification.accept(users);
     }
 
 
@@ -291,6 +318,21 @@ public class UserService {
         }
     }
 
+    /**
+     * Get a page of users with logins, ordered by id, without an offset.
+     *
+     * @param pageable     the keyset page info
+     * @param roleKey      the role key, can be null
+     * @param privilegeKey the privilege key
+     * @return users with logins
+     */
+    @Transactional(readOnly = true)
+    @FindWithPermission("USER.GET_LIST")
+    @PrivilegeDescription("Privilege to get all the users")
+    public KeysetPage<UserDTO> getAllManagedUsers(KeysetPageable pageable, String roleKey, String privilegeKey) {
+        return userPermittedRepository.findAllWithLogins(pageable, roleKey, privilegeKey).map(UserDTO::new);
+    }
+
     /**
      * Search user by user key.
      *
@@ -312,6 +354,11 @@ public class UserService {
         return userRepository.findOneByUserKey(userKey).orElse(null);
     }
 
+    @Transactional(readOnly = true)
+    public List<User> getUsers(Collection<String> userKeys) {
+        return userRepository.findAllByUserKeyIn(userKeys);
+    }
+
     @Transactional(readOnly = true)
     public User getUser(Long id) {
         return userRepository.findById(id).orElse(null);
@@ -322,6 +369,24 @@ public class UserService {
         userRepository.save(user);
     }
 
+    /**
+     * Replace the password hash of a user with the same password encoded at the current strength.
+     * Nothing is changed if the password was changed after the current hash was read.
+     *
+     * @param login        user login
+     * @param currentHash  password hash the upgraded hash was computed for
+     * @param upgradedHash password hash to store
+     */
+    public void upgradePasswordHash(String login, String currentHash, String upgradedHash) {
+        userLoginRepository.findOneByLoginIgnoreCase(login)
+            .map(UserLogin::getUser)
+            .filter(user -> Objects.equals(user.getPassword(), currentHash))
+            .ifPresent(user -> {
+                user.setPassword(upgradedHash);
+                log.info("Password hash upgraded for user {}", user.getUserKey());
+            });
+    }
+
     @LogicExtensionPoint("ResetActivationKey")
     public void resetActivationKey(String login) {
         UserLogin userLogin = userLoginRepository.findOneByLoginIgnoreCase(login)
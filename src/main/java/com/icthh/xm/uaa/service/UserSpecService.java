@@ -2,6 +2,9 @@ package com.icthh.xm.uaa.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.github.fge.jackson.JsonLoader;
+import com.github.fge.jsonschema.main.JsonSchema;
+import com.github.fge.jsonschema.main.JsonSchemaFactory;
 import com.icthh.xm.commons.config.client.api.RefreshableConfiguration;
 import com.icthh.xm.commons.logging.LoggingAspectConfig;
 import com.icthh.xm.commons.tenant.TenantContextHolder;
@@ -17,6 +20,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.AntPathMatcher;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -36,6 +40,8 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 public class UserSpecService implements RefreshableConfiguration {
 
     private final ConcurrentMap<String, Map<String, UserSpec>> userSpecs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Map<String, JsonSchema>> dataSchemas = new ConcurrentHashMap<>();
+    private final JsonSchemaFactory schemaFactory = JsonSchemaFactory.byDefault();
     private final ApplicationProperties applicationProperties;
     private final AntPathMatcher matcher = new AntPathMatcher();
     private final ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
@@ -58,10 +64,15 @@ public class UserSpecService implements RefreshableConfiguration {
             String tenant = matcher.extractUriTemplateVariables(tenantPropertiesPathPattern, updatedKey).get("tenantName");
             if (isBlank(config)) {
                 userSpecs.remove(tenant);
+                dataSchemas.remove(tenant);
                 return;
             }
             TenantProperties tenantProperties = parseProperties(config);
-            userSpecs.put(tenant, toTypeSpecsMap(tenantProperties.getUserSpec()));
+            Map<String, UserSpec> specs = toTypeSpecsMap(tenantProperties.getUserSpec());
+            // compile before publishing, so an invalid schema keeps the previous specification
+            Map<String, JsonSchema> schemas = compileDataSchemas(specs);
+            userSpecs.put(tenant, specs);
+            dataSchemas.put(tenant, schemas);
             log.info("Specification was for tenant {} updated", tenant);
         } catch (Exception e) {
             log.error("Error read specification from path " + updatedKey, e);
@@ -89,6 +100,34 @@ public class UserSpecService implements RefreshableConfiguration {
             emptyList();
     }
 
+    /**
+     * Get data schemas compiled from the user specifications of the current tenant.
+     *
+     * @param roleKeys role keys of the user
+     * @return compiled data schemas of the roles having a user specification
+     */
+    public List<JsonSchema> getDataSchemas(List<String> roleKeys) {
+        Map<String, JsonSchema> schemas = dataSchemas.get(getTenantKeyValue());
+        return schemas != null ?
+            roleKeys
+                .stream()
+                .map(schemas::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList()) :
+            emptyList();
+    }
+
+    @SneakyThrows
+    private Map<String, JsonSchema> compileDataSchemas(Map<String, UserSpec> specs) {
+        Map<String, JsonSchema> schemas = new HashMap<>();
+        for (UserSpec spec : specs.values()) {
+            if (spec.getDataSpec() != null) {
+                schemas.put(spec.getRoleKey(), schemaFactory.getJsonSchema(JsonLoader.fromString(spec.getDataSpec())));
+            }
+        }
+        return Collections.unmodifiableMap(schemas);
+    }
+
     private Map<String, UserSpec> toTypeSpecsMap(List<UserSpec> userSpecs) {
         if (Objects.isNull(userSpecs)) {
             return Collections.emptyMap();
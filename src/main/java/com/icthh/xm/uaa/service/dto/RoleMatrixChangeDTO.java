@@ -0,0 +1,20 @@
+package com.icthh.xm.uaa.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A single cell of the role matrix: whether the role has the privilege of the microservice.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoleMatrixChangeDTO {
+
+    private String msName;
+    private String privilegeKey;
+    private String roleKey;
+    private boolean enabled;
+
+}
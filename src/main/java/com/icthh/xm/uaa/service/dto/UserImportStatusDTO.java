@@ -0,0 +1,42 @@
+package com.icthh.xm.uaa.service.dto;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Progress of a bulk user import.
+ */
+@Data
+public class UserImportStatusDTO {
+
+    private String id;
+    private State state;
+    private long rows;
+    private long created;
+    private long failed;
+    private Instant startDate;
+    private Instant endDate;
+    private List<RowErrorDTO> errors = new ArrayList<>();
+
+    public enum State {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    /**
+     * Why a row of the import was not created, row 0 is an error of the whole import.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RowErrorDTO {
+
+        private long row;
+        private String login;
+        private String code;
+        private String message;
+    }
+}
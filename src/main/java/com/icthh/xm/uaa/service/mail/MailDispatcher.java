@@ -0,0 +1,521 @@
+package com.icthh.xm.uaa.service.mail;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.icthh.xm.commons.logging.aop.IgnoreLogginAspect;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import com.icthh.xm.uaa.util.CacheMetricsSet;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sends mails over pooled SMTP connections.
+ * <p>
+ * In async mode mails are put to a bounded queue and sender threads send them in batches: the mails of a batch for
+ * the same mail server are sent over one connected transport, which is kept in a pool for the next batches and
+ * closed after {@code connectionIdleTimeoutMillis} without use. Each tenant is given a send slot per mail according
+ * to its {@code ratePerSecond} and a mail stays queued until its slot. Mails due to be sent count against the
+ * {@code queueCapacity} and mails waiting for their slot against the {@code tenantQueueCapacity} of their tenant, so a
+ * burst of one tenant does not hold the mails of the others. When the queue is still full after
+ * {@code blockTimeoutMillis} the mail fails.
+ * <p>
+ * Otherwise mails are sent by the caller through the mail sender.
+ */
+@Slf4j
+@Component
+@IgnoreLogginAspect
+public class MailDispatcher {
+
+    private static final String METRIC_NAME = "mail.dispatcher";
+    private static final long POLL_MILLIS = 100;
+    private static final String DEFAULT_PROTOCOL = "smtp";
+
+    private final ApplicationProperties.Mail properties;
+    private final DelayQueue<Entry> queue = new DelayQueue<>();
+    private final Semaphore capacity;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, TenantRate> tenantRates = new ConcurrentHashMap<>();
+    private final Map<ServerKey, Deque<PooledTransport>> transports = new ConcurrentHashMap<>();
+
+    private final Timer queueTime = new Timer();
+    private final Timer sendTime = new Timer();
+    private final Timer connectTime = new Timer();
+    private final Meter sent = new Meter();
+    private final Meter throttled = new Meter();
+    private final Meter rejected = new Meter();
+    private final Meter failed = new Meter();
+
+    private volatile boolean running;
+    private final List<Thread> senderThreads = new ArrayList<>();
+
+    public MailDispatcher(ApplicationProperties applicationProperties, MetricRegistry metricRegistry) {
+        this.properties = applicationProperties.getMail();
+        this.capacity = new Semaphore(properties.getQueueCapacity());
+        CacheMetricsSet.register(metricRegistry, METRIC_NAME, getMetrics());
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isAsync()) {
+            return;
+        }
+        running = true;
+        ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("mail-sender-%d").setDaemon(true)
+            .build();
+        for (int i = 0; i < properties.getSenderThreads(); i++) {
+            Thread senderThread = threadFactory.newThread(this::run);
+            senderThreads.add(senderThread);
+            senderThread.start();
+        }
+    }
+
+    /**
+     * Stop accepting mails to the queue and wait until the queued mails are sent, regardless of the rate caps.
+     */
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        long deadline = System.currentTimeMillis() + properties.getShutdownTimeoutMillis();
+        try {
+            for (Thread senderThread : senderThreads) {
+                senderThread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Entry> notSent = nextBatch(Integer.MAX_VALUE);
+        if (!notSent.isEmpty()) {
+            log.warn("Mail dispatcher stopped with {} mails not sent", notSent.size());
+            notSent.forEach(entry -> fail(entry, new MailSendException("Mail dispatcher is stopped")));
+        }
+        transports.values().forEach(pool -> {
+            PooledTransport transport;
+            while ((transport = pool.pollFirst()) != null) {
+                close(transport);
+            }
+        });
+    }
+
+    /**
+     * Send the mail, through the queue in async mode.
+     *
+     * @param tenantKey      key of the tenant the rate cap of which applies, or null for no cap
+     * @param javaMailSender the mail sender of the tenant
+     * @param mimeMessage    the mail
+     * @return result of the send, completed with a {@link MailException} when the mail could not be sent; cancelling
+     * it withdraws the mail as long as it is queued
+     */
+    public CompletableFuture<Void> send(String tenantKey, JavaMailSender javaMailSender, MimeMessage mimeMessage) {
+        if (!running) {
+            return sendNow(javaMailSender, mimeMessage);
+        }
+        long now = System.nanoTime();
+        TenantRate tenantRate = tenantKey == null ? null
+            : tenantRates.computeIfAbsent(tenantKey, key -> createTenantRate(key, now));
+        long sendAt = tenantRate == null ? now : tenantRate.reserve(now);
+        boolean isThrottled = sendAt - now > 0;
+        QueuedResult result = new QueuedResult();
+        Entry entry = new Entry(javaMailSender, mimeMessage, now, sendAt, sequence.incrementAndGet(),
+            isThrottled ? tenantRate : null, result);
+        result.setEntry(entry);
+        if (offer(entry)) {
+            if (isThrottled) {
+                throttled.mark();
+            }
+            return sendNowIfStopped(entry);
+        }
+        if (tenantRate != null) {
+            tenantRate.release(sendAt);
+        }
+        rejected.mark();
+        return CompletableFuture.failedFuture(new MailSendException("Mail queue is full"));
+    }
+
+    public MetricSet getMetrics() {
+        Map<String, Metric> metrics = new HashMap<>();
+        metrics.put("queue-size", (Gauge<Integer>) queue::size);
+        metrics.put("queue-time", queueTime);
+        metrics.put("send-time", sendTime);
+        metrics.put("connect-time", connectTime);
+        metrics.put("sent", sent);
+        metrics.put("throttled", throttled);
+        metrics.put("rejected", rejected);
+        metrics.put("failed", failed);
+        return () -> metrics;
+    }
+
+    private TenantRate createTenantRate(String tenantKey, long now) {
+        double ratePerSecond = properties.getTenantRatePerSecond().getOrDefault(tenantKey,
+            properties.getRatePerSecond());
+        return new TenantRate(ratePerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond) : 0, now,
+            properties.getTenantQueueCapacity());
+    }
+
+    private boolean offer(Entry entry) {
+        try {
+            if (!getPermits(entry).tryAcquire(properties.getBlockTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        queue.add(entry);
+        return true;
+    }
+
+    /**
+     * Mails waiting for their send slot are bounded per tenant, the others by the whole queue.
+     */
+    private Semaphore getPermits(Entry entry) {
+        return entry.getTenantRate() != null ? entry.getTenantRate().getQueued() : capacity;
+    }
+
+    private void release(List<Entry> entries) {
+        entries.forEach(entry -> getPermits(entry).release());
+    }
+
+    private CompletableFuture<Void> sendNowIfStopped(Entry entry) {
+        // the dispatcher was stopped while the mail was queued, after the queue was drained
+        if (!running && queue.remove(entry)) {
+            getPermits(entry).release();
+            complete(entry, sendNow(entry.getJavaMailSender(), entry.getMimeMessage()));
+        }
+        return entry.getResult();
+    }
+
+    private CompletableFuture<Void> sendNow(JavaMailSender javaMailSender, MimeMessage mimeMessage) {
+        try (Timer.Context ignored = sendTime.time()) {
+            javaMailSender.send(mimeMessage);
+            sent.mark();
+            return CompletableFuture.completedFuture(null);
+        } catch (MailException e) {
+            failed.mark();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            try {
+                List<Entry> batch = nextBatch();
+                if (batch.isEmpty()) {
+                    closeIdleTransports();
+                } else {
+                    send(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Mail sender failed", e);
+            }
+        }
+    }
+
+    private List<Entry> nextBatch() throws InterruptedException {
+        if (!running) {
+            return nextBatch(properties.getBatchSize());
+        }
+        List<Entry> batch = new ArrayList<>(properties.getBatchSize());
+        Entry first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first != null) {
+            batch.add(first);
+            queue.drainTo(batch, properties.getBatchSize() - 1);
+        }
+        release(batch);
+        return batch;
+    }
+
+    /**
+     * Take queued mails whether their send slot has come or not.
+     */
+    private List<Entry> nextBatch(int batchSize) {
+        List<Entry> batch = new ArrayList<>();
+        Entry next;
+        while (batch.size() < batchSize && (next = queue.peek()) != null) {
+            if (queue.remove(next)) {
+                batch.add(next);
+            }
+        }
+        release(batch);
+        return batch;
+    }
+
+    private void send(List<Entry> batch) {
+        Map<JavaMailSender, List<Entry>> entriesBySender = new LinkedHashMap<>();
+        batch.forEach(entry -> entriesBySender.computeIfAbsent(entry.getJavaMailSender(), key -> new ArrayList<>())
+            .add(entry));
+        entriesBySender.forEach((javaMailSender, entries) -> {
+            if (javaMailSender instanceof JavaMailSenderImpl) {
+                send((JavaMailSenderImpl) javaMailSender, entries);
+            } else {
+                entries.forEach(entry -> complete(entry, sendNow(javaMailSender, entry.getMimeMessage())));
+            }
+        });
+    }
+
+    private void send(JavaMailSenderImpl javaMailSender, List<Entry> entries) {
+        ServerKey serverKey = ServerKey.of(javaMailSender);
+        PooledTransport transport = null;
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                if (transport == null) {
+                    try {
+                        transport = borrow(serverKey, javaMailSender);
+                    } catch (MessagingException | RuntimeException e) {
+                        MailSendException error = new MailSendException("Mail server connection failed", e);
+                        entries.subList(i, entries.size()).forEach(notSent -> fail(notSent, error));
+                        return;
+                    }
+                }
+                try {
+                    sendMessage(transport.getTransport(), entry);
+                    entry.getResult().complete(null);
+                    sent.mark();
+                } catch (MessagingException | RuntimeException e) {
+                    fail(entry, new MailSendException("Failed to send mail", e));
+                    if (!transport.getTransport().isConnected()) {
+                        close(transport);
+                        transport = null;
+                    }
+                }
+            }
+        } finally {
+            if (transport != null) {
+                transport.setLastUsedNanos(System.nanoTime());
+                transports.get(serverKey).offerFirst(transport);
+            }
+        }
+    }
+
+    private void sendMessage(Transport transport, Entry entry) throws MessagingException {
+        queueTime.update(System.nanoTime() - entry.getEnqueuedNanos(), TimeUnit.NANOSECONDS);
+        try (Timer.Context ignored = sendTime.time()) {
+            // same preparation as JavaMailSenderImpl does
+            MimeMessage mimeMessage = entry.getMimeMessage();
+            if (mimeMessage.getSentDate() == null) {
+                mimeMessage.setSentDate(new Date());
+            }
+            String messageId = mimeMessage.getMessageID();
+            mimeMessage.saveChanges();
+            if (messageId != null) {
+                mimeMessage.setHeader("Message-ID", messageId);
+            }
+            Address[] addresses = mimeMessage.getAllRecipients();
+            transport.sendMessage(mimeMessage, addresses != null ? addresses : new Address[0]);
+        }
+    }
+
+    private PooledTransport borrow(ServerKey serverKey, JavaMailSenderImpl javaMailSender)
+        throws MessagingException {
+        Deque<PooledTransport> pool = transports.computeIfAbsent(serverKey, key -> new ConcurrentLinkedDeque<>());
+        PooledTransport transport;
+        while ((transport = pool.pollFirst()) != null) {
+            if (!isIdle(transport, System.nanoTime()) && transport.getTransport().isConnected()) {
+                return transport;
+            }
+            close(transport);
+        }
+        try (Timer.Context ignored = connectTime.time()) {
+            Transport connected = javaMailSender.getSession().getTransport(serverKey.getProtocol());
+            connected.connect(serverKey.getHost(), serverKey.getPort(), serverKey.getUsername(),
+                serverKey.getPassword());
+            return new PooledTransport(connected, System.nanoTime());
+        }
+    }
+
+    private void closeIdleTransports() {
+        long now = System.nanoTime();
+        transports.values().forEach(pool -> pool.forEach(transport -> {
+            if (isIdle(transport, now) && pool.remove(transport)) {
+                close(transport);
+            }
+        }));
+    }
+
+    private boolean isIdle(PooledTransport transport, long now) {
+        return now - transport.getLastUsedNanos()
+            > TimeUnit.MILLISECONDS.toNanos(properties.getConnectionIdleTimeoutMillis());
+    }
+
+    private void close(PooledTransport transport) {
+        try {
+            transport.getTransport().close();
+        } catch (MessagingException e) {
+            log.debug("Failed to close mail server connection: {}", e.getMessage());
+        }
+    }
+
+    private void complete(Entry entry, CompletableFuture<Void> result) {
+        result.whenComplete((ignored, e) -> {
+            if (e != null) {
+                entry.getResult().completeExceptionally(e);
+            } else {
+                entry.getResult().complete(null);
+            }
+        });
+    }
+
+    private void fail(Entry entry, MailException e) {
+        failed.mark();
+        entry.getResult().completeExceptionally(e);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class Entry implements Delayed {
+
+        private final JavaMailSender javaMailSender;
+        private final MimeMessage mimeMessage;
+        private final long enqueuedNanos;
+        private final long sendAtNanos;
+        private final long sequence;
+        // rate of the tenant the queued mails of which the mail counts against, null when it was due to be sent
+        private final TenantRate tenantRate;
+        private final CompletableFuture<Void> result;
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(sendAtNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Entry entry = (Entry) other;
+            int order = Long.compare(sendAtNanos - entry.sendAtNanos, 0);
+            return order != 0 ? order : Long.compare(sequence, entry.sequence);
+        }
+    }
+
+    /**
+     * Result of a mail that can be cancelled until a sender thread takes the mail from the queue.
+     */
+    private class QueuedResult extends CompletableFuture<Void> {
+
+        @Setter
+        private volatile Entry entry;
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            Entry queued = entry;
+            if (queued == null || !queue.remove(queued)) {
+                return false;
+            }
+            getPermits(queued).release();
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+
+    /**
+     * Send slots of a tenant, one per {@code intervalNanos}, and the mails of the tenant waiting for their slot.
+     */
+    private static class TenantRate {
+
+        private final long intervalNanos;
+        private long nextSlotNanos;
+        @Getter
+        private final Semaphore queued;
+
+        TenantRate(long intervalNanos, long now, int queueCapacity) {
+            this.intervalNanos = intervalNanos;
+            this.nextSlotNanos = now;
+            this.queued = new Semaphore(queueCapacity);
+        }
+
+        synchronized long reserve(long now) {
+            if (now - nextSlotNanos > 0) {
+                nextSlotNanos = now;
+            }
+            long slot = nextSlotNanos;
+            nextSlotNanos += intervalNanos;
+            return slot;
+        }
+
+        /**
+         * Give back the slot of a mail that was not queued, when no later slot was reserved meanwhile.
+         */
+        synchronized void release(long slot) {
+            if (nextSlotNanos - intervalNanos == slot) {
+                nextSlotNanos = slot;
+            }
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class PooledTransport {
+
+        private final Transport transport;
+        @Setter
+        private volatile long lastUsedNanos;
+    }
+
+    /**
+     * Mail server and account a transport is connected to.
+     */
+    @Value
+    private static class ServerKey {
+
+        String protocol;
+        String host;
+        int port;
+        String username;
+        @ToString.Exclude
+        String password;
+
+        static ServerKey of(JavaMailSenderImpl javaMailSender) {
+            // same defaults as JavaMailSenderImpl does
+            String username = javaMailSender.getUsername();
+            String password = javaMailSender.getPassword();
+            if ("".equals(username)) {
+                username = null;
+                if ("".equals(password)) {
+                    password = null;
+                }
+            }
+            String protocol = javaMailSender.getProtocol() != null ? javaMailSender.getProtocol() : DEFAULT_PROTOCOL;
+            return new ServerKey(protocol, javaMailSender.getHost(), javaMailSender.getPort(), username, password);
+        }
+    }
+}
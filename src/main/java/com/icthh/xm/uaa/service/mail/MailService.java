@@ -16,28 +16,35 @@ import com.icthh.xm.commons.mail.provider.MailProviderService;
 import com.icthh.xm.commons.tenant.PlainTenant;
 import com.icthh.xm.commons.tenant.TenantContextHolder;
 import com.icthh.xm.commons.tenant.TenantKey;
+import com.icthh.xm.uaa.config.AsyncConfiguration;
 import com.icthh.xm.uaa.domain.User;
-import freemarker.template.Configuration;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
 import io.github.jhipster.config.JHipsterProperties;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.Resource;
+import javax.mail.MessagingException;
 import javax.mail.internet.MimeMessage;
 
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.context.MessageSource;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.context.i18n.LocaleContext;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailPreparationException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.scheduling.annotation.Async;
@@ -46,7 +53,8 @@ import org.springframework.ui.freemarker.FreeMarkerTemplateUtils;
 
 /**
  * Service for sending emails.
- * We use the @Async annotation to send emails asynchronously.
+ * We use the @Async annotation to render emails asynchronously on the mail executor, and the {@link MailDispatcher}
+ * to send them.
  */
 @Slf4j
 @RequiredArgsConstructor
@@ -67,10 +75,12 @@ public class MailService {
     private final MailProviderService mailProviderService;
     private final MessageSource messageSource;
     private final TenantEmailTemplateService tenantEmailTemplateService;
-    private final Configuration freeMarker;
     private final TenantContextHolder tenantContextHolder;
     private final TenantConfigService tenantConfigService;
     private final LocalizationMessageService localizationMessageService;
+    private final MailDispatcher mailDispatcher;
+
+    private final Map<String, MailSettings> mailSettingsByTenant = new ConcurrentHashMap<>();
 
     @Resource
     @Lazy
@@ -93,51 +103,18 @@ public class MailService {
     /**
      * Send activation email.
      */
-    @Async
+    @Async(AsyncConfiguration.MAIL_EXECUTOR)
     public void sendActivationEmail(User user, String applicationUrl, TenantKey tenantKey, String rid) {
-        execForCustomRid(rid, () -> {
-            String email = user.getEmail();
-            log.info("Sending activation email to {}", email);
-
-            Map<String, Object> objectModel = new HashMap<>();
-            objectModel.put(USER, user);
-            objectModel.put(BASE_URL, applicationUrl);
-            objectModel.put(TENANT_KEY_VALUE, tenantKey.getValue());
-
-            sendEmailFromTemplate(
-                tenantKey,
-                user,
-                "activationEmail",
-                "email.activation.title",
-                email,
-                objectModel
-            );
-        });
+        sendUserMail(UserMailType.ACTIVATION, user, applicationUrl, tenantKey, rid);
     }
 
 
     /**
      * Send creation email.
      */
-    @Async
+    @Async(AsyncConfiguration.MAIL_EXECUTOR)
     public void sendCreationEmail(User user, String applicationUrl, TenantKey tenantKey, String rid) {
-        execForCustomRid(rid, () -> {
-            log.info("Sending creation email to '{}'", user.getEmail());
-
-            Map<String, Object> objectModel = new HashMap<>();
-            objectModel.put(USER, user);
-            objectModel.put(BASE_URL, applicationUrl);
-            objectModel.put(TENANT_KEY_VALUE, tenantKey.getValue());
-
-            sendEmailFromTemplate(
-                tenantKey,
-                user,
-                "creationEmail",
-                "email.activation.title",
-                user.getEmail(),
-                objectModel
-            );
-        });
+        sendUserMail(UserMailType.CREATION, user, applicationUrl, tenantKey, rid);
     }
 
     /**
@@ -148,25 +125,9 @@ public class MailService {
      * @param tenantKey      tenant key
      * @param rid            request/transaction id (used for logging)
      */
-    @Async
+    @Async(AsyncConfiguration.MAIL_EXECUTOR)
     public void sendPasswordResetMail(User user, String applicationUrl, TenantKey tenantKey, String rid) {
-        execForCustomRid(rid, () -> {
-            log.info("Sending password reset email to '{}'", user.getEmail());
-            Map<String, Object> objectModel = new HashMap<>();
-            objectModel.put(USER, user);
-            objectModel.put(BASE_URL, applicationUrl);
-            objectModel.put(TENANT_KEY_VALUE, tenantKey.getValue());
-
-            sendEmailFromTemplate(
-                tenantKey,
-                user,
-                "passwordResetEmail",
-                "email.reset.title",
-                user.getEmail(),
-                objectModel
-            );
-
-        });
+        sendUserMail(UserMailType.PASSWORD_RESET, user, applicationUrl, tenantKey, rid);
     }
 
     /**
@@ -177,24 +138,58 @@ public class MailService {
      * @param tenantKey      tenant key
      * @param rid            request/transaction id (used for logging)
      */
-    @Async
+    @Async(AsyncConfiguration.MAIL_EXECUTOR)
     public void sendPasswordChangedMail(User user, String applicationUrl, TenantKey tenantKey, String rid) {
-        execForCustomRid(rid, () -> {
-            log.info("Sending password changed email to '{}'", user.getEmail());
-            Map<String, Object> objectModel = new HashMap<>();
-            objectModel.put(USER, user);
-            objectModel.put(BASE_URL, applicationUrl);
-            objectModel.put(TENANT_KEY_VALUE, tenantKey.getValue());
-
-            sendEmailFromTemplate(
-                tenantKey,
-                user,
-                "passwordChangedEmail",
-                "email.changed.title",
-                user.getEmail(),
-                objectModel
-            );
-        });
+        sendUserMail(UserMailType.PASSWORD_CHANGED, user, applicationUrl, tenantKey, rid);
+    }
+
+    /**
+     * Send user account email, errors are logged.
+     *
+     * @param type           type of the email
+     * @param user           object which stores info about user
+     * @param applicationUrl application url
+     * @param tenantKey      tenant key
+     * @param rid            request/transaction id (used for logging)
+     */
+    @Async(AsyncConfiguration.MAIL_EXECUTOR)
+    public void sendUserMail(UserMailType type, User user, String applicationUrl, TenantKey tenantKey, String rid) {
+        execForCustomRid(rid, () -> sendUserMail(type, user, applicationUrl, tenantKey, false));
+    }
+
+    /**
+     * Render user account email in the calling thread and hand it to the mail dispatcher, used by the outbox relay.
+     *
+     * @param type           type of the email
+     * @param user           object which stores info about user
+     * @param applicationUrl application url
+     * @param tenantKey      tenant key
+     * @return result of the send, completed with a {@link MailException} when the email could not be sent
+     */
+    public CompletableFuture<Void> deliverUserMail(UserMailType type, User user, String applicationUrl,
+                                                   TenantKey tenantKey) {
+        return sendUserMail(type, user, applicationUrl, tenantKey, true);
+    }
+
+    private CompletableFuture<Void> sendUserMail(UserMailType type, User user, String applicationUrl,
+                                                 TenantKey tenantKey, boolean failOnError) {
+        log.info("Sending {} to '{}'", type.getTemplateName(), user.getEmail());
+
+        Map<String, Object> objectModel = new HashMap<>();
+        objectModel.put(USER, user);
+        objectModel.put(BASE_URL, applicationUrl);
+        objectModel.put(TENANT_KEY_VALUE, tenantKey.getValue());
+
+        return sendEmailFromTemplate(
+            tenantKey,
+            user,
+            type.getTemplateName(),
+            type.getTitleKey(),
+            user.getEmail(),
+            generateFrom(tenantKey),
+            objectModel,
+            failOnError
+        );
     }
 
     public void sendEmailFromTemplate(User user,
@@ -213,7 +208,7 @@ public class MailService {
             MdcUtils.getRid());
     }
 
-    @Async
+    @Async(AsyncConfiguration.MAIL_EXECUTOR)
     protected void sendEmailFromTemplateAsync(TenantKey tenantKey,
                                               User user,
                                               String templateName,
@@ -227,7 +222,7 @@ public class MailService {
         });
     }
 
-    @Async
+    @Async(AsyncConfiguration.MAIL_EXECUTOR)
     public void sendEmailFromTemplate(TenantKey tenantKey,
                                       User user,
                                       String templateName,
@@ -258,30 +253,47 @@ public class MailService {
                                        String email,
                                        String from,
                                        Map<String, Object> objectModel) {
+        sendEmailFromTemplate(tenantKey, user, templateName, titleKey, email, from, objectModel, false);
+    }
+
+    /**
+     * Send email from template. Errors are logged, unless failOnError is set: then they are thrown or complete
+     * the returned future.
+     */
+    private CompletableFuture<Void> sendEmailFromTemplate(TenantKey tenantKey,
+                                                          User user,
+                                                          String templateName,
+                                                          String titleKey,
+                                                          String email,
+                                                          String from,
+                                                          Map<String, Object> objectModel,
+                                                          boolean failOnError) {
         if (email == null) {
             log.warn("Can't send email on null address for tenant: {}, user key: {}, email template: {}",
                 tenantKey.getValue(),
                 user.getUserKey(),
                 templateName);
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
         String templateKey = EmailTemplateUtil.emailTemplateKey(tenantKey, user.getLangKey(), templateName);
-        String emailTemplate = tenantEmailTemplateService.getEmailTemplate(templateKey);
+        Template mailTemplate = tenantEmailTemplateService.getTemplate(templateKey);
         Locale locale = forLanguageTag(user.getLangKey());
 
         try {
             tenantContextHolder.getPrivilegedContext().setTenant(new PlainTenant(tenantKey));
 
-            Template mailTemplate = new Template(templateKey, emailTemplate, freeMarker);
             String content = FreeMarkerTemplateUtils.processTemplateIntoString(mailTemplate, objectModel);
             String subject = messageSource.getMessage(titleKey, null, locale);
-            sendEmail(
-                email,
-                resolve(SUBJECT, subject, templateName, locale),
-                content,
-                resolve(FROM, from, templateName, locale),
-                mailProviderService.getJavaMailSender(tenantKey.getValue()));
+            Map<String, Object> templateSettings = getMailSettings(tenantKey).getTemplateSettings(templateName);
+            subject = resolve(templateSettings, SUBJECT, subject, locale);
+            from = resolve(templateSettings, FROM, from, locale);
+            JavaMailSender javaMailSender = mailProviderService.getJavaMailSender(tenantKey.getValue());
+            if (failOnError) {
+                return dispatchEmail(tenantKey, email, subject, content, from, javaMailSender);
+            }
+            sendEmail(tenantKey, email, subject, content, from, javaMailSender);
+            return CompletableFuture.completedFuture(null);
         } catch (TemplateException e) {
             throw new IllegalStateException("Mail template rendering failed");
         } catch (IOException e) {
@@ -295,31 +307,37 @@ public class MailService {
         return jHipsterProperties.getMail().getFrom().replace("<tenantname>", tenantKey.getValue());
     }
 
-    private String resolve(String key, String defaultValue, String templateName, Locale locale) {
-        Object settings = tenantConfigService.getConfig().get(MAIL_SETTINGS);
+    private String resolve(Map<String, Object> templateSettings, String key, String defaultValue, Locale locale) {
+        if (templateSettings == null) {
+            return defaultValue;
+        }
         LocaleContext localeContext = getLocaleContext();
         setLocale(locale);
 
-        String result = Optional.ofNullable(settings)
-            .filter(List.class::isInstance).map(it -> (List<Object>) it)
-            .flatMap(mailSettings ->
-                mailSettings.stream()
-                    .filter(Map.class::isInstance).map(it -> (Map<String, Object>) it)
-                    // find by templateName
-                    .filter(it -> templateName.equals(it.get(TEMPLATE_NAME)))
-                    .findFirst()
-                    // get from of subject or etc it exists...
-                    .filter(it -> it.containsKey(key))
-                    .map(it -> it.get(key))
-                    // get localized name
-                    .filter(Map.class::isInstance).map(it -> (Map<String, String>) it)
-                    .flatMap(this::getI18nName)
-            ).orElse(defaultValue);
+        // get from of subject or etc it exists, then get localized name
+        String result = Optional.ofNullable(templateSettings.get(key))
+            .filter(Map.class::isInstance).map(it -> (Map<String, String>) it)
+            .flatMap(this::getI18nName)
+            .orElse(defaultValue);
 
         setLocaleContext(localeContext);
         return result;
     }
 
+    /**
+     * Mail settings of the tenant indexed by template name. The index is rebuilt when the tenant config is
+     * refreshed, which replaces the mail settings list.
+     */
+    private MailSettings getMailSettings(TenantKey tenantKey) {
+        Object settings = tenantConfigService.getConfig().get(MAIL_SETTINGS);
+        MailSettings mailSettings = mailSettingsByTenant.get(tenantKey.getValue());
+        if (mailSettings == null || mailSettings.getSource() != settings) {
+            mailSettings = MailSettings.of(settings);
+            mailSettingsByTenant.put(tenantKey.getValue(), mailSettings);
+        }
+        return mailSettings;
+    }
+
     private Optional<String> getI18nName(Map<String, String> name) {
         if (name.containsKey(TRANSLATION_KEY)) {
             String translationKey = name.get(TRANSLATION_KEY);
@@ -333,7 +351,31 @@ public class MailService {
     }
 
     // package level for testing
-    void sendEmail(String to, String subject, String content, String from, JavaMailSender javaMailSender) {
+    void sendEmail(TenantKey tenantKey, String to, String subject, String content, String from,
+                   JavaMailSender javaMailSender) {
+        try {
+            dispatchEmail(tenantKey, to, subject, content, from, javaMailSender).whenComplete((result, e) -> {
+                if (e != null) {
+                    logNotSent(to, e);
+                } else {
+                    log.debug("Sent email to User '{}'", to);
+                }
+            });
+        } catch (Exception e) {
+            logNotSent(to, e);
+        }
+    }
+
+    private void logNotSent(String to, Throwable e) {
+        if (log.isDebugEnabled()) {
+            log.warn("Email could not be sent to user '{}'", to, e);
+        } else {
+            log.warn("Email could not be sent to user '{}': {}", to, e.getMessage());
+        }
+    }
+
+    private CompletableFuture<Void> dispatchEmail(TenantKey tenantKey, String to, String subject, String content,
+                                                  String from, JavaMailSender javaMailSender) {
         log.debug("Send email[multipart '{}' and html '{}'] to '{}' with subject '{}' and content={}",
             false, true, to, subject, content);
 
@@ -346,15 +388,32 @@ public class MailService {
             message.setFrom(from);
             message.setSubject(subject);
             message.setText(content, true);
-            javaMailSender.send(mimeMessage);
-            log.debug("Sent email to User '{}'", to);
-        } catch (Exception e) {
-            if (log.isDebugEnabled()) {
-                log.warn("Email could not be sent to user '{}'", to, e);
-            } else {
-                log.warn("Email could not be sent to user '{}': {}", to, e.getMessage());
-            }
+        } catch (MessagingException e) {
+            throw new MailPreparationException(e);
         }
+        return mailDispatcher.send(tenantKey.getValue(), javaMailSender, mimeMessage);
     }
 
+    @Value
+    private static class MailSettings {
+
+        Object source;
+        Map<String, Map<String, Object>> byTemplateName;
+
+        static MailSettings of(Object settings) {
+            Map<String, Map<String, Object>> index = new HashMap<>();
+            Optional.ofNullable(settings)
+                .filter(List.class::isInstance).map(it -> (List<Object>) it)
+                .ifPresent(mailSettings -> mailSettings.stream()
+                    .filter(Map.class::isInstance).map(it -> (Map<String, Object>) it)
+                    .filter(it -> it.get(TEMPLATE_NAME) instanceof String)
+                    // the first settings of the template win
+                    .forEach(it -> index.putIfAbsent((String) it.get(TEMPLATE_NAME), it)));
+            return new MailSettings(settings, Collections.unmodifiableMap(index));
+        }
+
+        Map<String, Object> getTemplateSettings(String templateName) {
+            return byTemplateName.get(templateName);
+        }
+    }
 }
@@ -4,16 +4,22 @@ import com.icthh.xm.commons.config.client.api.RefreshableConfiguration;
 import com.icthh.xm.commons.logging.LoggingAspectConfig;
 import com.icthh.xm.commons.tenant.TenantKey;
 import com.icthh.xm.uaa.config.ApplicationProperties;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.util.AntPathMatcher;
 
+import java.io.IOException;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Service for managing email template.
+ * <p>
+ * Templates are compiled on first use and kept until the template is refreshed, so every email with the same
+ * tenant, language and template name is rendered from the same compiled {@link Template}.
  */
 @Slf4j
 @Service
@@ -24,9 +30,10 @@ public class TenantEmailTemplateService implements RefreshableConfiguration {
     private static final String LANG_KEY = "langKey";
     private static final String TENANT_NAME = "tenantName";
 
-    private ConcurrentHashMap<String, String> emailTemplates = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, EmailTemplate> emailTemplates = new ConcurrentHashMap<>();
     private final AntPathMatcher matcher = new AntPathMatcher();
     private final ApplicationProperties applicationProperties;
+    private final Configuration freeMarker;
 
     /**
      * Search email template by email template key.
@@ -36,10 +43,26 @@ public class TenantEmailTemplateService implements RefreshableConfiguration {
      */
     @LoggingAspectConfig(resultDetails = false)
     public String getEmailTemplate(String emailTemplateKey) {
-        if (!emailTemplates.containsKey(emailTemplateKey)) {
+        return getRequiredEmailTemplate(emailTemplateKey).getContent();
+    }
+
+    /**
+     * Search compiled email template by email template key.
+     *
+     * @param emailTemplateKey search key
+     * @return compiled email template
+     */
+    @LoggingAspectConfig(resultDetails = false)
+    public Template getTemplate(String emailTemplateKey) {
+        return getRequiredEmailTemplate(emailTemplateKey).getTemplate();
+    }
+
+    private EmailTemplate getRequiredEmailTemplate(String emailTemplateKey) {
+        EmailTemplate emailTemplate = emailTemplates.get(emailTemplateKey);
+        if (emailTemplate == null) {
             throw new IllegalArgumentException("Email template was not found");
         }
-        return emailTemplates.get(emailTemplateKey);
+        return emailTemplate;
     }
 
     @Override
@@ -58,7 +81,7 @@ public class TenantEmailTemplateService implements RefreshableConfiguration {
             log.info("Email template '{}' with locale {} for tenant '{}' was removed", templateName,
                             langKey, tenantKeyValue);
         } else {
-            emailTemplates.put(templateKey, config);
+            emailTemplates.put(templateKey, new EmailTemplate(templateKey, config));
             log.info("Email template '{}' with locale {} for tenant '{}' was updated", templateName,
                             langKey, tenantKeyValue);
         }
@@ -76,4 +99,37 @@ public class TenantEmailTemplateService implements RefreshableConfiguration {
             onRefresh(key, config);
         }
     }
+
+    /**
+     * Template content with its compiled template, replaced as a whole when the template is refreshed.
+     */
+    private class EmailTemplate {
+
+        private final String templateKey;
+        private final String content;
+        private volatile Template template;
+
+        EmailTemplate(String templateKey, String content) {
+            this.templateKey = templateKey;
+            this.content = content;
+        }
+
+        String getContent() {
+            return content;
+        }
+
+        Template getTemplate() {
+            Template result = template;
+            if (result == null) {
+                try {
+                    // templates are thread safe, compiling the same one twice on a race is harmless
+                    result = new Template(templateKey, content, freeMarker);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Error while reading mail template", e);
+                }
+                template = result;
+            }
+            return result;
+        }
+    }
 }
@@ -0,0 +1,20 @@
+package com.icthh.xm.uaa.service.mail;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Emails sent to a user on account changes, with their template and title key.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum UserMailType {
+
+    ACTIVATION("activationEmail", "email.activation.title"),
+    CREATION("creationEmail", "email.activation.title"),
+    PASSWORD_RESET("passwordResetEmail", "email.reset.title"),
+    PASSWORD_CHANGED("passwordChangedEmail", "email.changed.title");
+
+    private final String templateName;
+    private final String titleKey;
+}
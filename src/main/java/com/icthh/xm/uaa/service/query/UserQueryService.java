@@ -6,17 +6,27 @@ import com.icthh.xm.uaa.domain.User;
 import com.icthh.xm.uaa.domain.UserLogin;
 import com.icthh.xm.uaa.domain.UserLogin_;
 import com.icthh.xm.uaa.domain.User_;
+import com.icthh.xm.uaa.repository.KeysetPage;
+import com.icthh.xm.uaa.repository.KeysetPageable;
 import com.icthh.xm.uaa.repository.UserRepository;
 import com.icthh.xm.uaa.service.dto.UserDTO;
 import com.icthh.xm.uaa.service.query.filter.UserFilterQuery;
 import io.github.jhipster.service.QueryService;
 import io.github.jhipster.service.filter.StringFilter;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Expression;
 import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Root;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
@@ -32,29 +42,79 @@ public class UserQueryService extends QueryService<User> {
 
     private final UserRepository userRepository;
 
+    @PersistenceContext
+    private EntityManager entityManager;
+
     public Page<UserDTO> findAllUsers(UserFilterQuery filterQuery, Pageable pageable) {
-        Specification<User> specification = createSpecification(filterQuery);
+        Specification<User> specification = createSpecification(filterQuery, true);
         return userRepository.findAll(specification, pageable).map(UserDTO::new);
     }
 
-    private Specification<User> createSpecification(UserFilterQuery filterQuery) {
-        return createSpecs(filterQuery)
+    /**
+     * Find a page of users ordered by id, without an offset.
+     * The ids of the page are selected first, then the users are fetched with logins by ids.
+     *
+     * @param filterQuery the filter
+     * @param pageable    the keyset page info
+     * @return users with logins
+     */
+    public KeysetPage<UserDTO> findAllUsers(UserFilterQuery filterQuery, KeysetPageable pageable) {
+        Specification<User> specification = createSpecification(filterQuery, false);
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+
+        Long totalCount = null;
+        if (pageable.isWithCount()) {
+            CriteriaQuery<Long> countQuery = builder.createQuery(Long.class);
+            Root<User> root = countQuery.from(User.class);
+            countQuery.select(builder.countDistinct(root))
+                .where(specification.toPredicate(root, countQuery, builder));
+            totalCount = entityManager.createQuery(countQuery).getSingleResult();
+        }
+
+        CriteriaQuery<Long> idsQuery = builder.createQuery(Long.class);
+        Root<User> root = idsQuery.from(User.class);
+        Path<Long> id = root.get(User_.id);
+        Specification<User> idsSpecification = specification;
+        if (pageable.getAfterId() != null) {
+            idsSpecification = specification.and((user, query, cb) -> pageable.getDirection().isAscending()
+                ? cb.greaterThan(user.get(User_.id), pageable.getAfterId())
+                : cb.lessThan(user.get(User_.id), pageable.getAfterId()));
+        }
+        idsQuery.select(id).distinct(true)
+            .where(idsSpecification.toPredicate(root, idsQuery, builder))
+            .orderBy(pageable.getDirection().isAscending() ? builder.asc(id) : builder.desc(id));
+
+        // one id more than the page size tells whether there is a next page
+        List<Long> ids = entityManager.createQuery(idsQuery).setMaxResults(pageable.getSize() + 1).getResultList();
+        boolean hasNext = ids.size() > pageable.getSize();
+        if (hasNext) {
+            ids = new ArrayList<>(ids.subList(0, pageable.getSize()));
+        }
+        List<User> users = ids.isEmpty() ? Collections.emptyList()
+            : userRepository.findDistinctWithLoginsByIdIn(ids, pageable.getSort());
+        return new KeysetPage<>(users, pageable, hasNext ? ids.get(ids.size() - 1) : null, totalCount)
+            .map(UserDTO::new);
+    }
+
+    private Specification<User> createSpecification(UserFilterQuery filterQuery, boolean fetchLogins) {
+        return createSpecs(filterQuery, fetchLogins)
             .filter(Optional::isPresent)
             .map(Optional::get)
             .reduce(Specification.where(null), Specification::and);
     }
 
-    private Stream<Optional<Specification<User>>> createSpecs(UserFilterQuery filterQuery) {
+    private Stream<Optional<Specification<User>>> createSpecs(UserFilterQuery filterQuery, boolean fetchLogins) {
         return Stream.of(
-            ofNullable(filterQuery.getLogin()).map(this::getLoginSpecification),
+            ofNullable(filterQuery.getLogin()).map(login -> getLoginSpecification(login, fetchLogins)),
             ofNullable(filterQuery.getLastName()).map(ln -> buildStringSpecification(ln, User_.lastName)),
             ofNullable(filterQuery.getFirstName()).map(fn -> buildStringSpecification(fn, User_.firstName)),
             ofNullable(filterQuery.getRoleKey()).map(fn -> buildStringSpecification(fn, User_.roleKey))
         );
     }
 
-    private Specification<User> getLoginSpecification(StringFilter loginFilter) {
-        Function<Root<User>, Join<User, UserLogin>> functionToEntity = userRoot -> (Join<User, UserLogin>)userRoot.fetch(User_.logins);
+    private Specification<User> getLoginSpecification(StringFilter loginFilter, boolean fetchLogins) {
+        Function<Root<User>, Join<User, UserLogin>> functionToEntity = userRoot -> fetchLogins
+            ? (Join<User, UserLogin>)userRoot.fetch(User_.logins) : userRoot.join(User_.logins);
         Function<Join<User, UserLogin>, Expression<String>> entityToColumn = entity -> entity.get(UserLogin_.login);
         return buildSpecification(loginFilter, functionToEntity.andThen(entityToColumn));
     }
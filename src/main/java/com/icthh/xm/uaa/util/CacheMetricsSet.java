@@ -0,0 +1,41 @@
+package com.icthh.xm.uaa.util;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import com.google.common.cache.Cache;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Exposes statistics of a Guava {@link Cache} built with {@code recordStats()} as Dropwizard gauges.
+ */
+public class CacheMetricsSet implements MetricSet {
+
+    private final Cache<?, ?> cache;
+
+    public CacheMetricsSet(Cache<?, ?> cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        Map<String, Metric> metrics = new HashMap<>();
+        metrics.put("size", (Gauge<Long>) cache::size);
+        metrics.put("hit", (Gauge<Long>) () -> cache.stats().hitCount());
+        metrics.put("miss", (Gauge<Long>) () -> cache.stats().missCount());
+        metrics.put("hit-ratio", (Gauge<Double>) () -> cache.stats().hitRate());
+        metrics.put("eviction", (Gauge<Long>) () -> cache.stats().evictionCount());
+        return metrics;
+    }
+
+    /**
+     * Registers the metric set under the given name, replacing metrics left by a previous registration.
+     */
+    public static void register(MetricRegistry metricRegistry, String name, MetricSet metricSet) {
+        metricRegistry.removeMatching(MetricFilter.startsWith(name + "."));
+        metricRegistry.register(name, metricSet);
+    }
+}
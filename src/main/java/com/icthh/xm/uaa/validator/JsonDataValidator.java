@@ -3,12 +3,9 @@ package com.icthh.xm.uaa.validator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
-import com.github.fge.jackson.JsonLoader;
 import com.github.fge.jsonschema.core.report.ProcessingMessage;
 import com.github.fge.jsonschema.main.JsonSchema;
-import com.github.fge.jsonschema.main.JsonSchemaFactory;
 import com.icthh.xm.uaa.domain.User;
-import com.icthh.xm.uaa.domain.UserSpec;
 import com.icthh.xm.uaa.service.UserSpecService;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
@@ -19,7 +16,6 @@ import org.apache.commons.collections.MapUtils;
 import javax.validation.ConstraintValidator;
 import javax.validation.ConstraintValidatorContext;
 import java.util.List;
-import java.util.Map;
 
 import static com.github.fge.jsonschema.core.report.LogLevel.ERROR;
 import static java.util.stream.Collectors.toList;
@@ -42,9 +38,9 @@ public class JsonDataValidator implements ConstraintValidator<com.icthh.xm.uaa.v
 
     @Override
     public boolean isValid(User user, ConstraintValidatorContext context) {
-        List<UserSpec> userSpec = userSpecService.getUserSpec(user.getAuthorities());
+        List<JsonSchema> dataSchemas = userSpecService.getDataSchemas(user.getAuthorities());
 
-        if (userSpec.isEmpty()) {
+        if (dataSchemas.isEmpty()) {
             // if user specification is not found we return successful validation result
             // to support backward compatibility case
             return true;
@@ -54,19 +50,14 @@ public class JsonDataValidator implements ConstraintValidator<com.icthh.xm.uaa.v
             log.error("User specification is not null, but data is null: {}", user.getData());
             return false;
         }
-        return  userSpec.stream().allMatch(spec -> validate(user.getData(), spec.getDataSpec(), context));
+        JsonNode dataNode = objectMapper.valueToTree(user.getData());
+        return dataSchemas.stream().allMatch(schema -> validate(dataNode, schema, context));
     }
 
     @SneakyThrows
-    private boolean validate(Map<String, Object> data, String jsonSchema, ConstraintValidatorContext context) {
-        String stringData = objectMapper.writeValueAsString(data);
-        log.debug("Validation data. map: {}, jsonData: {}", data, stringData);
+    private boolean validate(JsonNode dataNode, JsonSchema schema, ConstraintValidatorContext context) {
+        log.debug("Validation data. jsonData: {}", dataNode);
 
-        JsonNode schemaNode = JsonLoader.fromString(jsonSchema);
-
-        JsonNode dataNode = JsonLoader.fromString(stringData);
-        JsonSchemaFactory factory = JsonSchemaFactory.byDefault();
-        JsonSchema schema = factory.getJsonSchema(schemaNode);
         val report = schema.validate(dataNode);
 
         boolean isSuccess = report.isSuccess();
@@ -21,4 +21,11 @@ public class ErrorConstants {
     public static final String ERROR_USER_ACTIVATES_HIMSELF = "error.user.activate.himself";
 
     public static final String ERROR_SUPER_ADMIN_FORBIDDEN_OPERATION = "error.super-admin.forbidden-operation";
+
+    public static final String ERROR_IMPORT_READ = "error.import.read";
+    public static final String ERROR_IMPORT_PARSE = "error.import.parse";
+    public static final String ERROR_IMPORT_VALIDATION = "error.import.validation";
+    public static final String ERROR_IMPORT_SAVE = "error.import.save";
+
+    public static final String ERROR_PAGINATION_CURSOR = "error.pagination.cursor";
 }
@@ -0,0 +1,43 @@
+package com.icthh.xm.uaa.web.filter;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.icthh.xm.uaa.repository.util.SqlStatementCounter;
+import java.io.IOException;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Records the number of SQL statements executed per token request ({@code token.issuance.sql-statements}).
+ */
+@Component
+public class TokenSqlMetricsFilter extends OncePerRequestFilter {
+
+    private static final String TOKEN_PATH = "/oauth/token";
+
+    private final Histogram sqlStatements;
+
+    public TokenSqlMetricsFilter(MetricRegistry metricRegistry) {
+        this.sqlStatements = metricRegistry.histogram("token.issuance.sql-statements");
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().endsWith(TOKEN_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+        throws ServletException, IOException {
+        SqlStatementCounter.start();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            sqlStatements.update(SqlStatementCounter.stop());
+        }
+    }
+}
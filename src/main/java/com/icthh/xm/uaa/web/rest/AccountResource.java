@@ -37,6 +37,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PostAuthorize;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -92,6 +93,7 @@ public class AccountResource {
      */
     @PostMapping(path = "/register", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.TEXT_PLAIN_VALUE})
     @Timed
+    @Transactional
     @PreAuthorize("hasPermission({'user': #user, 'request': #request}, 'ACCOUNT.REGISTER')")
     @PrivilegeDescription("Privilege to register the user")
     public ResponseEntity<Void> registerAccount(@Valid @RequestBody ManagedUserVM user, HttpServletRequest request) {
@@ -130,6 +132,7 @@ public class AccountResource {
      */
     @GetMapping("/activate")
     @Timed
+    @Transactional
     @PreAuthorize("hasPermission(null, 'ACCOUNT.ACTIVATE')")
     @PrivilegeDescription("Privilege to activate the registered user")
     public ResponseEntity<String> activateAccount(@RequestParam("key") String key) {
@@ -194,6 +197,7 @@ public class AccountResource {
      */
     @PostMapping("/account")
     @Timed
+    @Transactional
     @PreAuthorize("hasPermission({'user': #user}, 'ACCOUNT.UPDATE')")
     @PrivilegeDescription("Privilege to update the current user information")
     public ResponseEntity<UserDTO> saveAccount(@Valid @RequestBody UserDTO user) {
@@ -217,6 +221,7 @@ public class AccountResource {
      */
     @PutMapping("/account/logins")
     @Timed
+    @Transactional
     @PreAuthorize("hasPermission({'userKey': #user.userKey, 'newUser': #user}, 'user', 'ACCOUNT.LOGIN.UPDATE')")
     @PrivilegeDescription("Privilege to updates an existing Account logins")
     public ResponseEntity<UserDTO> updateUserLogins(@Valid @RequestBody UserDTO user) {
@@ -238,6 +243,7 @@ public class AccountResource {
      */
     @PostMapping(path = "/account/change_password", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
     @Timed
+    @Transactional
     @PreAuthorize("hasPermission({'password': #password}, 'ACCOUNT.PASSWORD.UPDATE')")
     @PrivilegeDescription("Privilege to changes the current user's password")
     public ResponseEntity<Void> changePassword(@Valid @RequestBody ChangePasswordVM password) {
@@ -255,6 +261,7 @@ public class AccountResource {
      */
     @PostMapping(path = "/account/reset_password/init", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
     @Timed
+    @Transactional
     @PreAuthorize("hasPermission({'mail': #mail}, 'ACCOUNT.PASSWORD.RESET')")
     @PrivilegeDescription("Privilege to send an email to reset the password of the user")
     public ResponseEntity<Void> requestPasswordReset(@RequestBody String mail) {
@@ -271,6 +278,7 @@ public class AccountResource {
      */
     @PostMapping(path = "/account/reset_password/init", produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
     @Timed
+    @Transactional
     @PreAuthorize("hasPermission({'login': #request.login}, 'ACCOUNT.PASSWORD.RESET_BY_TYPE')")
     @PrivilegeDescription("Privilege to reset password and start customizable reset flow")
     public ResponseEntity<Void> requestPasswordResetViaRequestedFlow(@RequestBody ResetPasswordVM request) {
@@ -308,6 +316,7 @@ public class AccountResource {
      */
     @PostMapping(path = "/account/reset_password/finish", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
     @Timed
+    @Transactional
     @PreAuthorize("hasPermission({'keyAndPassword': #keyAndPassword}, 'ACCOUNT.PASSWORD.RESET.FINISH')")
     @PrivilegeDescription("Privilege to reset the password of the user by link")
     public ResponseEntity<Void> finishPasswordReset(@RequestBody KeyAndPasswordVM keyAndPassword) {
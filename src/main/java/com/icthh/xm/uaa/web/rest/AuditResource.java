@@ -1,7 +1,10 @@
 package com.icthh.xm.uaa.web.rest;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.icthh.xm.commons.permission.annotation.PrivilegeDescription;
+import com.icthh.xm.uaa.repository.KeysetPage;
 import com.icthh.xm.uaa.service.AuditEventService;
+import com.icthh.xm.uaa.web.rest.util.ExportUtil;
 import com.icthh.xm.uaa.web.rest.util.PaginationUtil;
 import io.github.jhipster.web.util.ResponseUtil;
 import io.swagger.annotations.ApiParam;
@@ -18,10 +21,14 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.IOException;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.List;
+import javax.servlet.http.HttpServletResponse;
 
 /**
  * REST controller for getting the audit events.
@@ -32,15 +39,30 @@ import java.util.List;
 public class AuditResource {
 
     private final AuditEventService auditEventService;
+    private final ObjectMapper objectMapper;
 
     /**
      * GET  /audits : get a page of AuditEvents.
+     * With the cursor parameter, empty for the first page, AuditEvents are paged by id without an offset.
      *
      * @param pageable the pagination information
+     * @param cursor the keyset pagination cursor
+     * @param count whether the total count is returned with keyset pagination
      * @return the ResponseEntity with status 200 (OK) and the list of AuditEvents in body
      */
     @GetMapping
-    public ResponseEntity<List<AuditEvent>> getAll(@ApiParam Pageable pageable) {
+    public ResponseEntity<List<AuditEvent>> getAll(
+        @ApiParam Pageable pageable,
+        @RequestParam(value = PaginationUtil.CURSOR_PARAM, required = false) String cursor,
+        @RequestParam(value = PaginationUtil.COUNT_PARAM, defaultValue = "false") boolean count) {
+
+        if (cursor != null) {
+            KeysetPage<AuditEvent> page = auditEventService.findAll(
+                PaginationUtil.getKeysetPageable(cursor, pageable, count), null);
+            HttpHeaders headers = PaginationUtil.generateKeysetPaginationHttpHeaders(page,
+                ServletUriComponentsBuilder.fromCurrentRequest());
+            return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
+        }
         Page<AuditEvent> page = auditEventService.findAll(pageable, null);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, "/management/audits");
         return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
@@ -52,22 +74,54 @@ public class AuditResource {
      * @param fromDate the start of the time period of AuditEvents to get
      * @param toDate the end of the time period of AuditEvents to get
      * @param pageable the pagination information
+     * @param cursor the keyset pagination cursor
+     * @param count whether the total count is returned with keyset pagination
      * @return the ResponseEntity with status 200 (OK) and the list of AuditEvents in body
      */
     @GetMapping(params = {"fromDate", "toDate"})
     public ResponseEntity<List<AuditEvent>> getByDates(
         @RequestParam(value = "fromDate") LocalDate fromDate,
         @RequestParam(value = "toDate") LocalDate toDate,
-        @ApiParam Pageable pageable) {
+        @ApiParam Pageable pageable,
+        @RequestParam(value = PaginationUtil.CURSOR_PARAM, required = false) String cursor,
+        @RequestParam(value = PaginationUtil.COUNT_PARAM, defaultValue = "false") boolean count) {
 
-        Page<AuditEvent> page = auditEventService.findByDates(
-            fromDate.atStartOfDay(ZoneId.systemDefault()).toInstant(),
-            toDate.atStartOfDay(ZoneId.systemDefault()).plusDays(1).toInstant(),
-            pageable, null);
+        Instant from = fromDate.atStartOfDay(ZoneId.systemDefault()).toInstant();
+        Instant to = toDate.atStartOfDay(ZoneId.systemDefault()).plusDays(1).toInstant();
+        if (cursor != null) {
+            KeysetPage<AuditEvent> page = auditEventService.findByDates(from, to,
+                PaginationUtil.getKeysetPageable(cursor, pageable, count), null);
+            HttpHeaders headers = PaginationUtil.generateKeysetPaginationHttpHeaders(page,
+                ServletUriComponentsBuilder.fromCurrentRequest());
+            return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
+        }
+        Page<AuditEvent> page = auditEventService.findByDates(from, to, pageable, null);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, "/management/audits");
         return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
 
+    /**
+     * GET  /audits/export : export all AuditEvents, or the AuditEvents between the fromDate and toDate.
+     * AuditEvents are read in batches ordered by id and written to the response as they are read.
+     *
+     * @param fromDate the start of the time period of AuditEvents to export
+     * @param toDate the end of the time period of AuditEvents to export
+     * @param response the response to write the JSON array of AuditEvents to
+     * @throws IOException if the response can not be written
+     */
+    @GetMapping("/export")
+    public void export(@RequestParam(value = "fromDate", required = false) LocalDate fromDate,
+                       @RequestParam(value = "toDate", required = false) LocalDate toDate,
+                       HttpServletResponse response) throws IOException {
+        Instant from = fromDate == null || toDate == null ? null
+            : fromDate.atStartOfDay(ZoneId.systemDefault()).toInstant();
+        Instant to = fromDate == null || toDate == null ? null
+            : toDate.atStartOfDay(ZoneId.systemDefault()).plusDays(1).toInstant();
+        ExportUtil.writeJsonArray(response, objectMapper, pageable -> from == null
+            ? auditEventService.findAll(pageable, null)
+            : auditEventService.findByDates(from, to, pageable, null));
+    }
+
     /**
      * GET  /audits/:id : get an AuditEvent by id.
      *
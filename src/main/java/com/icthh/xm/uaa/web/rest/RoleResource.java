@@ -4,6 +4,7 @@ import com.codahale.metrics.annotation.Timed;
 import com.icthh.xm.commons.permission.annotation.PrivilegeDescription;
 import com.icthh.xm.uaa.service.TenantRoleService;
 import com.icthh.xm.uaa.service.dto.RoleDTO;
+import com.icthh.xm.uaa.service.dto.RoleMatrixChangeDTO;
 import com.icthh.xm.uaa.service.dto.RoleMatrixDTO;
 import io.github.jhipster.web.util.ResponseUtil;
 import org.springframework.http.ResponseEntity;
@@ -12,6 +13,7 @@ import org.springframework.security.access.prepost.PostFilter;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
@@ -20,6 +22,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.Collection;
+import java.util.List;
 
 /**
  * REST controller for managing Role.
@@ -131,4 +134,18 @@ public class RoleResource {
         return ResponseEntity.ok().build();
     }
 
+    /**
+     * PATCH /roles/matrix : Update only the changed cells of the role matrix.
+     * @param changes the changed role matrix cells
+     * @return the ResponseEntity with status 200 (OK) and with body the applied changes, or with status 400
+     *         (Bad Request)
+     */
+    @PatchMapping("/roles/matrix")
+    @Timed
+    @PreAuthorize("hasPermission({'changes': #changes}, 'ROLE.MATRIX.UPDATE')")
+    @PrivilegeDescription("Privilege to update permissions by role matrix")
+    public ResponseEntity<List<RoleMatrixChangeDTO>> patchRoleMatrix(@RequestBody List<RoleMatrixChangeDTO> changes) {
+        return ResponseEntity.ok(tenantRoleService.patchRoleMatrix(changes));
+    }
+
 }
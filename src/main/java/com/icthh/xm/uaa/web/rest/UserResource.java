@@ -4,30 +4,38 @@ import static com.icthh.xm.uaa.web.rest.util.VerificationUtils.assertNotSuperAdm
 import static org.apache.commons.collections.CollectionUtils.isNotEmpty;
 
 import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Preconditions;
 import com.icthh.xm.commons.permission.annotation.PrivilegeDescription;
 import com.icthh.xm.uaa.config.Constants;
 import com.icthh.xm.uaa.domain.OtpChannelType;
 import com.icthh.xm.uaa.domain.User;
+import com.icthh.xm.uaa.repository.KeysetPage;
 import com.icthh.xm.uaa.repository.kafka.ProfileEventProducer;
+import com.icthh.xm.uaa.service.UserImportService;
 import com.icthh.xm.uaa.service.UserLoginService;
 import com.icthh.xm.uaa.service.UserMailService;
 import com.icthh.xm.uaa.service.UserService;
 import com.icthh.xm.uaa.service.dto.TfaEnableRequest;
 import com.icthh.xm.uaa.service.dto.TfaOtpChannelSpec;
 import com.icthh.xm.uaa.service.dto.UserDTO;
+import com.icthh.xm.uaa.service.dto.UserImportStatusDTO;
 import com.icthh.xm.uaa.service.dto.UserPublicDTO;
 import com.icthh.xm.uaa.service.query.UserQueryService;
 import com.icthh.xm.uaa.service.query.filter.UserFilterQuery;
+import com.icthh.xm.uaa.web.rest.util.ExportUtil;
 import com.icthh.xm.uaa.web.rest.util.HeaderUtil;
 import com.icthh.xm.uaa.web.rest.util.PaginationUtil;
 import io.github.jhipster.web.util.ResponseUtil;
 import io.swagger.annotations.ApiParam;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
@@ -38,9 +46,11 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PostAuthorize;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -48,9 +58,11 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 
 /**
@@ -84,6 +96,8 @@ import org.springframework.web.bind.annotation.RestController;
 public class UserResource {
 
     private static final String ENTITY_NAME = "userManagement";
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+    private static final String CSV_VALUE = "text/csv";
 
     private final UserLoginService userLoginService;
 
@@ -95,6 +109,10 @@ public class UserResource {
 
     private final UserQueryService userQueryService;
 
+    private final UserImportService userImportService;
+
+    private final ObjectMapper objectMapper;
+
 
     /**
      * POST /users : Creates a new user.
@@ -108,6 +126,7 @@ public class UserResource {
      */
     @PostMapping("/users")
     @Timed
+    @Transactional
     @PreAuthorize("hasPermission({'user': #user}, 'USER.CREATE')")
     @PrivilegeDescription("Privilege to create a new user")
     public ResponseEntity createUser(@Valid @RequestBody UserDTO user) throws URISyntaxException {
@@ -128,6 +147,44 @@ public class UserResource {
             .body(new UserDTO(newUser));
     }
 
+    /**
+     * POST /users/import : Imports users from an NDJSON or CSV stream.
+     * The stream is read before the response is sent, the last chunks of users may still be created after it;
+     * the progress and the errors of rows that were not created are available by the returned import id.
+     *
+     * @param contentType {@code application/x-ndjson} or {@code text/csv}
+     * @param body        the users to create
+     * @return the ResponseEntity with status 202 (Accepted) and with body the import status
+     * @throws URISyntaxException if the Location URI syntax is incorrect
+     */
+    @PostMapping(path = "/users/import", consumes = {NDJSON_VALUE, CSV_VALUE})
+    @Timed
+    @PreAuthorize("hasPermission(null, 'USER.IMPORT')")
+    @PrivilegeDescription("Privilege to import users")
+    public ResponseEntity<UserImportStatusDTO> importUsers(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                           InputStream body) throws URISyntaxException {
+        UserImportService.Format format = MediaType.parseMediaType(contentType).isCompatibleWith(
+            MediaType.parseMediaType(CSV_VALUE)) ? UserImportService.Format.CSV : UserImportService.Format.NDJSON;
+        UserImportStatusDTO status = userImportService.importUsers(body, format);
+        return ResponseEntity.accepted()
+            .location(new URI("/api/users/import/" + status.getId()))
+            .body(status);
+    }
+
+    /**
+     * GET /users/import/:id : get the status of the "id" user import.
+     *
+     * @param id the id of the import
+     * @return the ResponseEntity with status 200 (OK) and with body the import status, or with status 404 (Not Found)
+     */
+    @GetMapping("/users/import/{id}")
+    @Timed
+    @PreAuthorize("hasPermission(null, 'USER.IMPORT.GET')")
+    @PrivilegeDescription("Privilege to get the status of a user import")
+    public ResponseEntity<UserImportStatusDTO> getImportStatus(@PathVariable String id) {
+        return ResponseUtil.wrapOrNotFound(userImportService.getStatus(id));
+    }
+
     /**
      * PUT  /users : Updates an existing User.
      *
@@ -136,6 +193,7 @@ public class UserResource {
      */
     @PutMapping("/users")
     @Timed
+    @Transactional
     @PreAuthorize("hasPermission({'userKey': #user.userKey, 'newUser': #user}, 'user', 'USER.UPDATE')")
     @PrivilegeDescription("Privilege to updates an existing user")
     public ResponseEntity<UserDTO> updateUser(@Valid @RequestBody UserDTO user) {
@@ -154,6 +212,7 @@ public class UserResource {
      */
     @PutMapping("/users/{userKey}/block")
     @Timed
+    @Transactional
     @PreAuthorize("hasPermission(null, 'USER.BLOCK')")
     @PrivilegeDescription("Privilege to blocks user")
     public ResponseEntity<UserDTO> blockUser(@NotEmpty @PathVariable String userKey) {
@@ -171,6 +230,7 @@ public class UserResource {
      */
     @PutMapping("/users/{userKey}/activate")
     @Timed
+    @Transactional
     @PreAuthorize("hasPermission(null, 'USER.UNBLOCK')")
     @PrivilegeDescription("Privilege to unblocks user")
     public ResponseEntity<UserDTO> unblockUser(@NotEmpty @PathVariable String userKey) {
@@ -188,6 +248,7 @@ public class UserResource {
      */
     @PutMapping("/users/role")
     @Timed
+    @Transactional
     @PreAuthorize("hasPermission({'id': #user.userKey, 'newUser': #user}, 'user', 'USER.CHANGE.ROLE')")
     @PrivilegeDescription("Privilege to change roleKey for user")
     public ResponseEntity<UserDTO> changeRoleKey(@Valid @RequestBody UserDTO user) {
@@ -209,6 +270,7 @@ public class UserResource {
      */
     @PutMapping("/users/logins")
     @Timed
+    @Transactional
     @PreAuthorize("hasPermission({'userKey': #user.userKey, 'newUser': #user}, 'user', 'USER.LOGIN.UPDATE')")
     @PrivilegeDescription("Privilege to updates an existing User logins")
     public ResponseEntity<UserDTO> updateUserLogins(@Valid @RequestBody UserDTO user) {
@@ -223,24 +285,59 @@ public class UserResource {
 
     /**
      * GET  /users : get all users.
+     * With the cursor parameter, empty for the first page, users are paged by id without an offset.
      *
      * @param pageable the pagination information
+     * @param cursor the keyset pagination cursor
+     * @param count whether the total count is returned with keyset pagination
      * @return the ResponseEntity with status 200 (OK) and with body all users
      */
     @GetMapping("/users")
     @Timed
     public ResponseEntity<List<UserDTO>> getAllUsers(
         @ApiParam Pageable pageable,
-        @RequestParam(required = false) String roleKey) {
+        @RequestParam(required = false) String roleKey,
+        @RequestParam(value = PaginationUtil.CURSOR_PARAM, required = false) String cursor,
+        @RequestParam(value = PaginationUtil.COUNT_PARAM, defaultValue = "false") boolean count) {
+        if (cursor != null) {
+            KeysetPage<UserDTO> page = userService.getAllManagedUsers(
+                PaginationUtil.getKeysetPageable(cursor, pageable, count), roleKey, null);
+            HttpHeaders headers = PaginationUtil.generateKeysetPaginationHttpHeaders(page,
+                ServletUriComponentsBuilder.fromCurrentRequest());
+            return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
+        }
         final Page<UserDTO> page = userService.getAllManagedUsers(pageable, roleKey, null);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, "/api/users");
         return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
 
+    /**
+     * GET  /users/export : export all users with logins.
+     * Users are read in batches ordered by id and written to the response as they are read.
+     *
+     * @param response the response to write the JSON array of users to
+     * @throws IOException if the response can not be written
+     */
+    @GetMapping("/users/export")
+    @Timed
+    public void exportUsers(HttpServletResponse response) throws IOException {
+        ExportUtil.writeJsonArray(response, objectMapper,
+            pageable -> userService.getAllManagedUsers(pageable, null, null));
+    }
+
     @GetMapping("/users/filter")
     @PostAuthorize("hasPermission({'returnObject': returnObject.body}, 'USER.GET_BY_FILTER.LIST')")
     @Timed
-    public ResponseEntity<List<UserDTO>> getAllByFilters(@ApiParam Pageable pageable, UserFilterQuery userFilterQuery){
+    public ResponseEntity<List<UserDTO>> getAllByFilters(@ApiParam Pageable pageable, UserFilterQuery userFilterQuery,
+        @RequestParam(value = PaginationUtil.CURSOR_PARAM, required = false) String cursor,
+        @RequestParam(value = PaginationUtil.COUNT_PARAM, defaultValue = "false") boolean count) {
+        if (cursor != null) {
+            KeysetPage<UserDTO> page = userQueryService.findAllUsers(userFilterQuery,
+                PaginationUtil.getKeysetPageable(cursor, pageable, count));
+            HttpHeaders headers = PaginationUtil.generateKeysetPaginationHttpHeaders(page,
+                ServletUriComponentsBuilder.fromCurrentRequest());
+            return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
+        }
         final Page<UserDTO> page = userQueryService.findAllUsers(userFilterQuery,pageable);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, "/api/users/filter");
         return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
@@ -0,0 +1,60 @@
+package com.icthh.xm.uaa.web.rest.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.icthh.xm.uaa.repository.KeysetPage;
+import com.icthh.xm.uaa.repository.KeysetPageable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+
+/**
+ * Utility class for streaming exports.
+ *
+ * <p>
+ * Entities are read in keyset pages ordered by id, each page starting after the last id of the previous one, and
+ * written to the response as a JSON array while they are read, so the memory used does not depend on the number
+ * of exported entities.
+ */
+public final class ExportUtil {
+
+    public static final int BATCH_SIZE = 500;
+
+    private ExportUtil() {
+    }
+
+    /**
+     * Write all pages to the response as one JSON array.
+     *
+     * @param response the response
+     * @param mapper   the object mapper
+     * @param pages    reads a page, the first page is {@link KeysetPageable#first(int)} of {@link #BATCH_SIZE}
+     * @param <T>      the item type
+     * @throws IOException if the response can not be written
+     */
+    public static <T> void writeJsonArray(HttpServletResponse response,
+                                          ObjectMapper mapper,
+                                          Function<KeysetPageable, KeysetPage<T>> pages) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        ObjectWriter writer = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartArray();
+            KeysetPageable pageable = KeysetPageable.first(BATCH_SIZE);
+            while (pageable != null) {
+                KeysetPage<T> page = pages.apply(pageable);
+                for (T item : page.getContent()) {
+                    writer.writeValue(generator, item);
+                }
+                generator.flush();
+                pageable = page.nextPageable();
+            }
+            generator.writeEndArray();
+        }
+    }
+}
@@ -1,6 +1,16 @@
 package com.icthh.xm.uaa.web.rest.util;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.icthh.xm.commons.exceptions.BusinessException;
+import com.icthh.xm.uaa.repository.KeysetPage;
+import com.icthh.xm.uaa.repository.KeysetPageable;
+import com.icthh.xm.uaa.web.constant.ErrorConstants;
+import java.util.Base64;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpHeaders;
 import org.springframework.web.util.UriComponentsBuilder;
 
@@ -10,16 +20,29 @@ import org.springframework.web.util.UriComponentsBuilder;
  * <p>
  * Pagination uses the same principles as the <a href="https://developer.github.com/v3/#pagination">Github API</a>,
  * and follow <a href="http://tools.ietf.org/html/rfc5988">RFC 5988 (Link header)</a>.
+ *
+ * <p>
+ * Keyset pagination is used when the request has the {@value #CURSOR_PARAM} parameter, empty for the first page.
+ * The cursor of the next page is an opaque token returned in the {@value #NEXT_CURSOR_HEADER} header and the next
+ * link; the total count is only returned when the request asks for it with {@value #COUNT_PARAM}.
  */
 public final class PaginationUtil {
 
+    public static final String CURSOR_PARAM = "cursor";
+    public static final String COUNT_PARAM = "count";
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+    private static final String CURSOR_SEPARATOR = ":";
+    private static final String ID_PROPERTY = "id";
+
     private PaginationUtil() {
     }
 
     public static HttpHeaders generatePaginationHttpHeaders(Page page, String baseUrl) {
 
         HttpHeaders headers = new HttpHeaders();
-        headers.add("X-Total-Count", Long.toString(page.getTotalElements()));
+        headers.add(TOTAL_COUNT_HEADER, Long.toString(page.getTotalElements()));
         String link = "";
         if ((page.getNumber() + 1) < page.getTotalPages()) {
             link = "<" + generateUri(baseUrl, page.getNumber() + 1, page.getSize()) + ">; rel=\"next\",";
@@ -39,6 +62,57 @@ public final class PaginationUtil {
         return headers;
     }
 
+    public static HttpHeaders generateKeysetPaginationHttpHeaders(KeysetPage<?> page, UriComponentsBuilder uri) {
+
+        HttpHeaders headers = new HttpHeaders();
+        if (page.getTotalCount() != null) {
+            headers.add(TOTAL_COUNT_HEADER, Long.toString(page.getTotalCount()));
+        }
+        String link = "";
+        KeysetPageable next = page.nextPageable();
+        if (next != null) {
+            String cursor = encodeCursor(next);
+            headers.add(NEXT_CURSOR_HEADER, cursor);
+            link = "<" + generateUri(uri, cursor, next.getSize()) + ">; rel=\"next\",";
+        }
+        link += "<" + generateUri(uri, "", page.getPageable().getSize()) + ">; rel=\"first\"";
+        headers.add(HttpHeaders.LINK, link);
+        return headers;
+    }
+
+    /**
+     * Get the keyset page info of the request.
+     *
+     * @param cursor   the cursor of the request, empty for the first page
+     * @param pageable the page size and the sort, only the direction of the id sort is used for the first page
+     * @param count    whether the total count is returned
+     * @return the keyset page info
+     */
+    public static KeysetPageable getKeysetPageable(String cursor, Pageable pageable, boolean count) {
+        if (StringUtils.isEmpty(cursor)) {
+            Sort.Order order = pageable.getSort().getOrderFor(ID_PROPERTY);
+            Sort.Direction direction = order == null ? Sort.Direction.ASC : order.getDirection();
+            return new KeysetPageable(null, direction, pageable.getPageSize(), count);
+        }
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), UTF_8).split(CURSOR_SEPARATOR);
+            return new KeysetPageable(Long.valueOf(parts[1]), Sort.Direction.fromString(parts[0]),
+                pageable.getPageSize(), count);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new BusinessException(ErrorConstants.ERROR_PAGINATION_CURSOR, "Invalid pagination cursor");
+        }
+    }
+
+    private static String encodeCursor(KeysetPageable pageable) {
+        String cursor = pageable.getDirection().name() + CURSOR_SEPARATOR + pageable.getAfterId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(UTF_8));
+    }
+
+    private static String generateUri(UriComponentsBuilder uri, String cursor, int size) {
+        return uri.cloneBuilder().replaceQueryParam(CURSOR_PARAM, cursor).replaceQueryParam("size", size)
+            .toUriString();
+    }
+
     private static String generateUri(String baseUrl, int page, int size) {
         return UriComponentsBuilder.fromUriString(baseUrl).queryParam("page", page).queryParam("size", size).toUriString();
     }
@@ -0,0 +1,79 @@
+package com.icthh.xm.uaa.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.commons.tenant.TenantContextUtils;
+import com.icthh.xm.uaa.UaaApp;
+import com.icthh.xm.uaa.config.xm.XmOverrideConfiguration;
+import com.icthh.xm.uaa.domain.properties.TenantProperties;
+import com.icthh.xm.uaa.service.TenantPropertiesService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * Test class for the password encoder configured by {@link UserAuthPasswordEncoderConfiguration}.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {
+    UaaApp.class,
+    XmOverrideConfiguration.class
+})
+public class UserAuthPasswordEncoderConfigurationIntTest {
+
+    private static final String TENANT = "XM";
+    private static final int TENANT_STRENGTH = 4;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
+    @Autowired
+    private TenantContextHolder tenantContextHolder;
+
+    @MockBean
+    private TenantPropertiesService tenantPropertiesService;
+
+    @Before
+    public void setup() {
+        TenantContextUtils.setTenant(tenantContextHolder, TENANT);
+        TenantProperties tenantProperties = new TenantProperties();
+        tenantProperties.getSecurity().setPasswordEncoderStrength(TENANT_STRENGTH);
+        when(tenantPropertiesService.getTenantProps()).thenReturn(tenantProperties);
+    }
+
+    @After
+    public void tearDown() {
+        tenantContextHolder.getPrivilegedContext().destroyCurrentContext();
+    }
+
+    @Test
+    public void testHashingPoolEncodesWithTenantStrength() {
+        assertThat(applicationProperties.getSecurity().getPasswordHashing().isBounded()).isTrue();
+
+        String encoded = passwordEncoder.encode("password");
+
+        assertThat(encoded).startsWith("$2a$04$");
+        assertThat(passwordEncoder.matches("password", encoded)).isTrue();
+        assertThat(passwordEncoder.upgradeEncoding(encoded)).isFalse();
+    }
+
+    @Test
+    public void testHashOfDefaultStrengthIsUpgradedToTenantStrength() {
+        String encoded = new BCryptPasswordEncoder(10).encode("password");
+
+        assertThat(passwordEncoder.matches("password", encoded)).isTrue();
+        assertThat(passwordEncoder.upgradeEncoding(encoded)).isTrue();
+    }
+}
@@ -0,0 +1,181 @@
+package com.icthh.xm.uaa.repository;
+
+import static com.icthh.xm.uaa.UaaTestConstants.DEFAULT_TENANT_KEY_VALUE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.commons.tenant.TenantContextUtils;
+import com.icthh.xm.uaa.UaaApp;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import com.icthh.xm.uaa.config.ApplicationProperties.AuditWriter.OverflowPolicy;
+import com.icthh.xm.uaa.config.xm.XmOverrideConfiguration;
+import com.icthh.xm.uaa.domain.PersistentAuditEvent;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Test class for the asynchronous mode of the AuditEventWriter.
+ *
+ * @see AuditEventWriter
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {
+    UaaApp.class,
+    XmOverrideConfiguration.class
+})
+public class AuditEventWriterIntTest {
+
+    private static final long WAIT_MILLIS = 10000;
+
+    @Autowired
+    private PersistenceAuditEventRepository persistenceAuditEventRepository;
+
+    @Autowired
+    private TenantContextHolder tenantContextHolder;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private ApplicationProperties applicationProperties;
+
+    private MetricRegistry metricRegistry;
+
+    private Path spillFile;
+
+    private AuditEventWriter auditEventWriter;
+
+    @Before
+    public void setup() throws Exception {
+        spillFile = Files.createTempFile("audit-events", ".ndjson");
+        Files.delete(spillFile);
+
+        applicationProperties = new ApplicationProperties();
+        ApplicationProperties.AuditWriter properties = applicationProperties.getAuditWriter();
+        properties.setAsync(true);
+        properties.setBatchSize(2);
+        properties.setFlushIntervalMillis(100);
+        properties.setOverflowPolicy(OverflowPolicy.SPILL);
+        properties.setSpillFile(spillFile.toString());
+        metricRegistry = new MetricRegistry();
+
+        TenantContextUtils.setTenant(tenantContextHolder, DEFAULT_TENANT_KEY_VALUE);
+        persistenceAuditEventRepository.deleteAll();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        auditEventWriter.stop();
+        persistenceAuditEventRepository.deleteAll();
+        Files.deleteIfExists(spillFile);
+        Files.deleteIfExists(spillFile.resolveSibling(spillFile.getFileName() + ".replay"));
+        tenantContextHolder.getPrivilegedContext().destroyCurrentContext();
+    }
+
+    @Test
+    public void testQueuedEventsWrittenOnStop() {
+        auditEventWriter = createWriter();
+        auditEventWriter.start();
+
+        for (int i = 0; i < 5; i++) {
+            auditEventWriter.write(createEvent("user" + i));
+        }
+        auditEventWriter.stop();
+
+        List<PersistentAuditEvent> events = persistenceAuditEventRepository.findAll();
+        assertThat(events).extracting(PersistentAuditEvent::getPrincipal)
+            .containsExactlyInAnyOrder("user0", "user1", "user2", "user3", "user4");
+        assertThat(getMeter("written").getCount()).isEqualTo(5);
+    }
+
+    @Test
+    public void testEventsWrittenSynchronouslyWhenStopped() {
+        auditEventWriter = createWriter();
+
+        auditEventWriter.write(createEvent("user"));
+
+        assertThat(persistenceAuditEventRepository.findAll()).hasSize(1);
+    }
+
+    @Test
+    public void testInvalidEventDoesNotFailItsBatch() {
+        auditEventWriter = createWriter();
+        auditEventWriter.start();
+
+        auditEventWriter.write(createEvent("user"));
+        auditEventWriter.write(createEvent(null));
+        auditEventWriter.stop();
+
+        assertThat(persistenceAuditEventRepository.findAll()).extracting(PersistentAuditEvent::getPrincipal)
+            .containsExactly("user");
+        assertThat(getMeter("written").getCount()).isEqualTo(1);
+        assertThat(getMeter("failed").getCount()).isEqualTo(1);
+        // the invalid event is not spilled
+        assertThat(spillFile).doesNotExist();
+    }
+
+    @Test
+    public void testSpilledEventsReplayed() throws Exception {
+        Map<String, Object> spilledEvent = new HashMap<>();
+        spilledEvent.put("tenantKey", DEFAULT_TENANT_KEY_VALUE);
+        spilledEvent.put("principal", "spilled-user");
+        spilledEvent.put("type", "test-type");
+        spilledEvent.put("date", Instant.now().truncatedTo(ChronoUnit.SECONDS).toString());
+        spilledEvent.put("data", Collections.singletonMap("test-key", "test-value"));
+        Files.write(spillFile, Collections.singletonList(objectMapper.writeValueAsString(spilledEvent)));
+
+        auditEventWriter = createWriter();
+        auditEventWriter.start();
+
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (getMeter("written").getCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        new TransactionTemplate(transactionManager).execute(status -> {
+            List<PersistentAuditEvent> events = persistenceAuditEventRepository.findAll();
+            assertThat(events).hasSize(1);
+            assertThat(events.get(0).getPrincipal()).isEqualTo("spilled-user");
+            assertThat(events.get(0).getData()).containsEntry("test-key", "test-value");
+            return null;
+        });
+        assertThat(spillFile).doesNotExist();
+    }
+
+    private AuditEventWriter createWriter() {
+        return new AuditEventWriter(persistenceAuditEventRepository, tenantContextHolder, objectMapper,
+            transactionManager, applicationProperties, metricRegistry);
+    }
+
+    private Meter getMeter(String name) {
+        return metricRegistry.getMeters().get("audit.writer." + name);
+    }
+
+    private static PersistentAuditEvent createEvent(String principal) {
+        PersistentAuditEvent event = new PersistentAuditEvent();
+        event.setPrincipal(principal);
+        event.setAuditEventType("test-type");
+        event.setAuditEventDate(Instant.now());
+        return event;
+    }
+}
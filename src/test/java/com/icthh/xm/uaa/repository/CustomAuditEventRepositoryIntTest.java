@@ -8,6 +8,7 @@ import com.icthh.xm.uaa.config.Constants;
 import com.icthh.xm.uaa.config.audit.AuditEventConverter;
 import com.icthh.xm.uaa.config.xm.XmOverrideConfiguration;
 import com.icthh.xm.uaa.domain.PersistentAuditEvent;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -56,6 +57,9 @@ public class CustomAuditEventRepositoryIntTest {
     @Autowired
     private TenantContextHolder tenantContextHolder;
 
+    @Autowired
+    private AuditEventWriter auditEventWriter;
+
     @Mock
     private ApplicationProperties applicationProperties;
 
@@ -77,7 +81,8 @@ public class CustomAuditEventRepositoryIntTest {
         when(applicationProperties.isAuditEventsEnabled()).thenReturn(true);
         customAuditEventRepository = new CustomAuditEventRepository(persistenceAuditEventRepository,
                                                                     auditEventConverter,
-                                                                    applicationProperties);
+                                                                    applicationProperties,
+                                                                    auditEventWriter);
 
         persistenceAuditEventRepository.deleteAll();
         Instant oneHourAgo = Instant.now().minusSeconds(3600);
@@ -202,6 +207,19 @@ public class CustomAuditEventRepositoryIntTest {
         assertThat(persistentAuditEvent.getAuditEventDate()).isEqualTo(event.getTimestamp());
     }
 
+    @Test
+    public void addAuditEventTruncatedToColumnSizes() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("test-key", StringUtils.repeat('v', 300));
+        AuditEvent event = new AuditEvent(StringUtils.repeat('u', 150), "test-type", data);
+        customAuditEventRepository.add(event);
+        List<PersistentAuditEvent> persistentAuditEvents = persistenceAuditEventRepository.findAll();
+        assertThat(persistentAuditEvents).hasSize(1);
+        PersistentAuditEvent persistentAuditEvent = persistentAuditEvents.get(0);
+        assertThat(persistentAuditEvent.getPrincipal()).isEqualTo(StringUtils.repeat('u', 100));
+        assertThat(persistentAuditEvent.getData().get("test-key")).isEqualTo(StringUtils.repeat('v', 255));
+    }
+
     @Test
     public void addAuditEventDisabled() {
         when(applicationProperties.isAuditEventsEnabled()).thenReturn(false);
@@ -0,0 +1,124 @@
+package com.icthh.xm.uaa.repository;
+
+import static com.icthh.xm.uaa.UaaTestConstants.DEFAULT_TENANT_KEY_VALUE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.commons.tenant.TenantContextUtils;
+import com.icthh.xm.uaa.UaaApp;
+import com.icthh.xm.uaa.config.xm.XmOverrideConfiguration;
+import com.icthh.xm.uaa.repository.util.SqlStatementCounter;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+import javax.persistence.EntityManager;
+import org.hibernate.Session;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.transaction.BeforeTransaction;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Schema test for the lookups on hot paths: the SQL of each repository query is explained on the embedded
+ * database and must not plan as a table scan.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {
+    UaaApp.class,
+    XmOverrideConfiguration.class
+})
+@Transactional
+public class RepositoryQueryPlanIntTest {
+
+    private static final String TABLE_SCAN = ".tableScan";
+    private static final String VALUE = "1";
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserLoginRepository userLoginRepository;
+
+    @Autowired
+    private ClientRepository clientRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TenantContextHolder tenantContextHolder;
+
+    @BeforeTransaction
+    public void beforeTransaction() {
+        TenantContextUtils.setTenant(tenantContextHolder, DEFAULT_TENANT_KEY_VALUE);
+    }
+
+    @Test
+    public void findOneByActivationKeyUsesIndex() {
+        assertIndexUsed(() -> userRepository.findOneByActivationKey(VALUE));
+    }
+
+    @Test
+    public void findOneByResetKeyUsesIndex() {
+        assertIndexUsed(() -> userRepository.findOneByResetKey(VALUE));
+    }
+
+    @Test
+    public void findOneByAcceptTocOneTimeTokenUsesIndex() {
+        assertIndexUsed(() -> userRepository.findOneByAcceptTocOneTimeToken(VALUE));
+    }
+
+    @Test
+    public void findOneByUserKeyUsesIndex() {
+        assertIndexUsed(() -> userRepository.findOneByUserKey(VALUE));
+    }
+
+    @Test
+    public void findByRoleKeyUsesIndex() {
+        assertIndexUsed(() -> userRepository.findByRoleKey(VALUE));
+        assertIndexUsed(() -> userRepository.existsByRoleKey(VALUE));
+        assertIndexUsed(() -> clientRepository.existsByRoleKey(VALUE));
+    }
+
+    @Test
+    public void findOneByLoginUsesIndex() {
+        assertIndexUsed(() -> userLoginRepository.findOneByLogin(VALUE));
+        assertIndexUsed(() -> userLoginRepository.findOneByLoginIgnoreCase(VALUE));
+    }
+
+    private void assertIndexUsed(Runnable query) {
+        List<String> statements;
+        SqlStatementCounter.startRecording();
+        try {
+            query.run();
+        } finally {
+            statements = SqlStatementCounter.stopRecording();
+        }
+
+        assertThat(statements).isNotEmpty();
+        // the first statement is the repository query, the next ones load associations
+        String sql = statements.get(0);
+        assertThat(explain(sql)).as("plan of %s", sql).doesNotContain(TABLE_SCAN);
+    }
+
+    private String explain(String sql) {
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+                int parameters = statement.getParameterMetaData().getParameterCount();
+                for (int i = 1; i <= parameters; i++) {
+                    statement.setString(i, VALUE);
+                }
+                try (ResultSet plan = statement.executeQuery()) {
+                    StringBuilder result = new StringBuilder();
+                    while (plan.next()) {
+                        result.append(plan.getString(1)).append('\n');
+                    }
+                    return result.toString();
+                }
+            }
+        });
+    }
+}
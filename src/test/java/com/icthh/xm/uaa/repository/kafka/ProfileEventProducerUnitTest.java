@@ -0,0 +1,182 @@
+package com.icthh.xm.uaa.repository.kafka;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.icthh.xm.commons.security.XmAuthenticationContextHolder;
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import com.icthh.xm.uaa.domain.OutboxMessage;
+import com.icthh.xm.uaa.service.OutboxService;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+
+public class ProfileEventProducerUnitTest {
+
+    private static final String TOPIC = "system_queue";
+    private static final long WAIT_MILLIS = 10000;
+
+    @Mock
+    private TenantContextHolder tenantContextHolder;
+
+    @Mock
+    private XmAuthenticationContextHolder authContextHolder;
+
+    @Mock
+    private OutboxService outboxService;
+
+    private MockProducer<String, String> producer;
+
+    private ApplicationProperties applicationProperties;
+
+    private MetricRegistry metricRegistry;
+
+    private ProfileEventProducer profileEventProducer;
+
+    private CountDownLatch senderReleased;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        producer = new MockProducer<String, String>(true, new StringSerializer(), new StringSerializer()) {
+            @Override
+            public Future<RecordMetadata> send(ProducerRecord<String, String> record, Callback callback) {
+                if (Thread.currentThread().getName().startsWith("profile-event-producer")) {
+                    Uninterruptibles.awaitUninterruptibly(senderReleased);
+                }
+                return super.send(record, callback);
+            }
+
+            @Override
+            public void close() {
+                // the producer is shared by all sends of the template
+            }
+
+            @Override
+            public void close(long timeout, TimeUnit timeUnit) {
+                // the producer is shared by all sends of the template
+            }
+        };
+        applicationProperties = new ApplicationProperties();
+        applicationProperties.setKafkaSystemQueue(TOPIC);
+        metricRegistry = new MetricRegistry();
+        senderReleased = new CountDownLatch(0);
+    }
+
+    @After
+    public void tearDown() {
+        senderReleased.countDown();
+        if (profileEventProducer != null) {
+            profileEventProducer.stop();
+        }
+    }
+
+    @Test
+    public void testBufferedEventsSentOnStop() {
+        profileEventProducer = createProducer();
+        profileEventProducer.start();
+
+        for (int i = 0; i < 5; i++) {
+            profileEventProducer.send("event" + i);
+        }
+        profileEventProducer.send("");
+        profileEventProducer.stop();
+
+        assertThat(producer.history()).extracting(ProducerRecord::value)
+            .containsExactly("event0", "event1", "event2", "event3", "event4");
+        assertThat(producer.history()).extracting(ProducerRecord::topic).containsOnly(TOPIC);
+        assertThat(metricRegistry.getTimers().get("profile.events.producer.send-latency").getCount()).isEqualTo(5);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testEventSentByCallerWhenBufferFull() throws Exception {
+        applicationProperties.getProfileEvents().setBufferCapacity(1);
+        senderReleased = new CountDownLatch(1);
+        profileEventProducer = createProducer();
+        profileEventProducer.start();
+
+        // the sender thread takes the first event and waits, the second one fills the buffer
+        profileEventProducer.send("sent by sender");
+        Gauge<Integer> bufferSize = metricRegistry.getGauges().get("profile.events.producer.buffer-size");
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (bufferSize.getValue() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        profileEventProducer.send("buffered");
+        profileEventProducer.send("sent by caller");
+
+        assertThat(producer.history()).extracting(ProducerRecord::value).containsExactly("sent by caller");
+        assertThat(metricRegistry.getMeters().get("profile.events.producer.buffer-full").getCount()).isEqualTo(1);
+
+        senderReleased.countDown();
+        profileEventProducer.stop();
+        assertThat(producer.history()).extracting(ProducerRecord::value)
+            .containsExactly("sent by caller", "sent by sender", "buffered");
+    }
+
+    @Test
+    public void testEventAddedToOutboxWhenEnabled() {
+        when(outboxService.isEnabled()).thenReturn(true);
+        profileEventProducer = createProducer();
+        profileEventProducer.start();
+
+        profileEventProducer.send("event");
+        profileEventProducer.stop();
+
+        verify(outboxService).add(OutboxMessage.Type.PROFILE_EVENT, "event");
+        assertThat(producer.history()).isEmpty();
+    }
+
+    @Test
+    public void testEventsAddedToOutboxInOneBatch() {
+        when(outboxService.isEnabled()).thenReturn(true);
+        profileEventProducer = createProducer();
+        profileEventProducer.start();
+
+        profileEventProducer.sendAll(Arrays.asList("event1", null, "event2"));
+        profileEventProducer.stop();
+
+        verify(outboxService).addAll(OutboxMessage.Type.PROFILE_EVENT, Arrays.asList("event1", "event2"));
+        verify(outboxService, never()).add(any(), any());
+        assertThat(producer.history()).isEmpty();
+    }
+
+    @Test
+    public void testProducerProperties() {
+        Map<String, Object> props = ProfileEventProducer.buildProducerProperties(new KafkaProperties(),
+            applicationProperties.getProfileEvents());
+
+        assertThat(props).containsEntry(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4")
+            .containsEntry(ProducerConfig.LINGER_MS_CONFIG, 20)
+            .containsEntry(ProducerConfig.BATCH_SIZE_CONFIG, 65536)
+            .containsEntry(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true)
+            .containsEntry(ProducerConfig.ACKS_CONFIG, "all");
+    }
+
+    private ProfileEventProducer createProducer() {
+        return new ProfileEventProducer(() -> producer, tenantContextHolder, authContextHolder, outboxService,
+            applicationProperties, metricRegistry);
+    }
+}
@@ -0,0 +1,187 @@
+package com.icthh.xm.uaa.repository.kafka;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.when;
+
+import com.icthh.xm.commons.security.XmAuthenticationContext;
+import com.icthh.xm.commons.security.XmAuthenticationContextHolder;
+import com.icthh.xm.commons.tenant.PrivilegedTenantContext;
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.lep.api.LepManager;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import com.icthh.xm.uaa.domain.User;
+import com.icthh.xm.uaa.service.UserService;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchMessageListener;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.KafkaMessageListenerContainer;
+import org.springframework.kafka.test.rule.EmbeddedKafkaRule;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Test class for the batch listener of the SystemQueueConsumer on an embedded Kafka broker.
+ *
+ * @see SystemQueueConsumer#consumeEvents
+ */
+@Slf4j
+public class SystemQueueConsumerKafkaIntTest {
+
+    private static final String TOPIC = "system_queue";
+    private static final String DEAD_LETTER_TOPIC = TOPIC + ".DLT";
+    private static final String[] TENANTS = {"XM", "DEMO", "TEST", "ONE"};
+    private static final int EVENTS = 10000;
+    private static final int USERS = 1000;
+    private static final int MAX_POLL_RECORDS = 500;
+
+    @ClassRule
+    public static final EmbeddedKafkaRule EMBEDDED_KAFKA = new EmbeddedKafkaRule(1, true, TOPIC, DEAD_LETTER_TOPIC);
+
+    @Mock
+    private UserService userService;
+    @Mock
+    private TenantContextHolder tenantContextHolder;
+    @Mock
+    private PrivilegedTenantContext privilegedTenantContext;
+    @Mock
+    private XmAuthenticationContextHolder authContextHolder;
+    @Mock
+    private XmAuthenticationContext authContext;
+    @Mock
+    private LepManager lepManager;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private KafkaTemplate<String, String> template;
+
+    private KafkaMessageListenerContainer<String, String> container;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(authContextHolder.getContext()).thenReturn(authContext);
+        when(authContext.getLogin()).thenReturn(Optional.empty());
+        when(tenantContextHolder.getPrivilegedContext()).thenReturn(privilegedTenantContext);
+
+        Map<String, Object> producerProps = KafkaTestUtils.producerProps(EMBEDDED_KAFKA.getEmbeddedKafka());
+        producerProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        template = new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(producerProps));
+    }
+
+    @After
+    public void tearDown() {
+        if (container != null) {
+            container.stop();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testEventsPerSecond() throws Exception {
+        when(userService.getUsers(anyCollection())).thenAnswer(invocation ->
+            ((Collection<String>) invocation.getArgument(0)).stream().map(SystemQueueConsumerKafkaIntTest::createUser)
+                .collect(Collectors.toList()));
+        CountDownLatch saved = new CountDownLatch(EVENTS);
+        doAnswer(invocation -> {
+            saved.countDown();
+            return null;
+        }).when(userService).saveUser(any());
+
+        template.send(TOPIC, "poison", "not a json");
+        for (int i = 0; i < EVENTS; i++) {
+            String event = updateAccountEvent(TENANTS[i % TENANTS.length], "user" + i % USERS);
+            template.send(TOPIC, String.valueOf(i), event);
+        }
+        template.flush();
+
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setKafkaSystemQueue(TOPIC);
+        SystemQueueConsumer consumer = new SystemQueueConsumer(tenantContextHolder, authContextHolder, lepManager,
+            userService, template, transactionManager, applicationProperties);
+
+        long start = System.currentTimeMillis();
+        container = createContainer(consumer);
+        container.start();
+        ContainerTestUtils.waitForAssignment(container, EMBEDDED_KAFKA.getEmbeddedKafka().getPartitionsPerTopic());
+
+        assertThat(saved.await(60, TimeUnit.SECONDS)).isTrue();
+        long elapsed = Math.max(System.currentTimeMillis() - start, 1);
+        long lookups = mockingDetails(userService).getInvocations().stream()
+            .filter(invocation -> invocation.getMethod().getName().equals("getUsers"))
+            .count();
+        log.info("Consumed {} events in {} ms, {} events per second, {} user lookups", EVENTS, elapsed,
+            EVENTS * 1000L / elapsed, lookups);
+
+        // users are loaded once per tenant of a poll instead of once per event
+        assertThat(lookups).isLessThan(EVENTS / 10);
+
+        Consumer<String, String> deadLetterConsumer = createDeadLetterConsumer();
+        try {
+            ConsumerRecord<String, String> deadLetter =
+                KafkaTestUtils.getSingleRecord(deadLetterConsumer, DEAD_LETTER_TOPIC);
+            assertThat(deadLetter.key()).isEqualTo("poison");
+            assertThat(deadLetter.value()).isEqualTo("not a json");
+        } finally {
+            deadLetterConsumer.close();
+        }
+    }
+
+    private KafkaMessageListenerContainer<String, String> createContainer(SystemQueueConsumer consumer) {
+        Map<String, Object> props = KafkaTestUtils.consumerProps("uaa", "false", EMBEDDED_KAFKA.getEmbeddedKafka());
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, MAX_POLL_RECORDS);
+
+        ContainerProperties containerProps = new ContainerProperties(TOPIC);
+        containerProps.setAckMode(ContainerProperties.AckMode.BATCH);
+        KafkaMessageListenerContainer<String, String> listenerContainer =
+            new KafkaMessageListenerContainer<>(new DefaultKafkaConsumerFactory<>(props), containerProps);
+        listenerContainer.setupMessageListener((BatchMessageListener<String, String>) consumer::consumeEvents);
+        return listenerContainer;
+    }
+
+    private Consumer<String, String> createDeadLetterConsumer() {
+        Map<String, Object> props = KafkaTestUtils.consumerProps("dlt", "false", EMBEDDED_KAFKA.getEmbeddedKafka());
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        Consumer<String, String> deadLetterConsumer = new DefaultKafkaConsumerFactory<String, String>(props)
+            .createConsumer();
+        EMBEDDED_KAFKA.getEmbeddedKafka().consumeFromAnEmbeddedTopic(deadLetterConsumer, DEAD_LETTER_TOPIC);
+        return deadLetterConsumer;
+    }
+
+    private static String updateAccountEvent(String tenantKey, String userKey) {
+        return "{\"eventType\":\"UPDATE_ACCOUNT\",\"tenantKey\":\"" + tenantKey + "\","
+            + "\"data\":{\"lastModifiedDate\":\"\",\"userKey\":\"" + userKey + "\"}}";
+    }
+
+    private static User createUser(String userKey) {
+        User user = new User();
+        user.setUserKey(userKey);
+        return user;
+    }
+}
@@ -5,22 +5,50 @@ import com.icthh.xm.commons.security.XmAuthenticationContextHolder;
 import com.icthh.xm.commons.tenant.PrivilegedTenantContext;
 import com.icthh.xm.commons.tenant.TenantContextHolder;
 import com.icthh.xm.lep.api.LepManager;
+import com.icthh.xm.uaa.config.ApplicationProperties;
 import com.icthh.xm.uaa.domain.User;
 import com.icthh.xm.uaa.service.UserService;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.concurrent.SettableListenableFuture;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 @Slf4j
@@ -79,13 +107,29 @@ public class SystemQueueConsumerUnitTest {
     @Mock
     private LepManager lepManager;
 
+    @Mock
+    private KafkaTemplate<String, String> template;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @Before
     public void init() {
         MockitoAnnotations.initMocks(this);
         when(authContextHolder.getContext()).thenReturn(authContext);
+        when(authContext.getLogin()).thenReturn(Optional.empty());
         when(tenantContextHolder.getPrivilegedContext()).thenReturn(privilegedTenantContext);
+        SettableListenableFuture<SendResult<String, String>> sent = new SettableListenableFuture<>();
+        sent.set(null);
+        when(template.send(any(ProducerRecord.class))).thenReturn(sent);
 
-        consumer = new SystemQueueConsumer(tenantContextHolder, authContextHolder, lepManager, userService);
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setKafkaSystemQueue("test");
+        applicationProperties.getRetry().setMaxAttempts(3);
+        applicationProperties.getRetry().setDelay(1);
+        applicationProperties.getSystemQueue().setMaxFailures(2);
+        consumer = new SystemQueueConsumer(tenantContextHolder, authContextHolder, lepManager, userService,
+            template, transactionManager, applicationProperties);
     }
 
     @After
@@ -115,4 +159,151 @@ public class SystemQueueConsumerUnitTest {
         verify(userService, times(0)).saveUser(any());
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void updateProfilesGroupedByTenant() {
+        when(userService.getUsers(anyCollection())).thenAnswer(invocation ->
+            ((Collection<String>) invocation.getArgument(0)).stream().map(SystemQueueConsumerUnitTest::createUser)
+                .collect(Collectors.toList()));
+
+        consumer.consumeEvents(Arrays.asList(
+            record(0, updateAccountEvent("XM", "user1")),
+            record(1, updateAccountEvent("DEMO", "user2")),
+            record(2, updateAccountEvent("xm", "user3"))));
+
+        ArgumentCaptor<Collection<String>> userKeys = ArgumentCaptor.forClass(Collection.class);
+        verify(userService, times(2)).getUsers(userKeys.capture());
+        List<Collection<String>> lookups = userKeys.getAllValues();
+        assertThat(lookups.get(0)).containsExactlyInAnyOrder("user1", "user3");
+        assertThat(lookups.get(1)).containsExactly("user2");
+        verify(userService, times(3)).saveUser(any());
+        verify(transactionManager, times(2)).commit(any());
+        verify(template, never()).send(any(ProducerRecord.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void sendIncorrectFormatToDeadLetterTopic() {
+        consumer.consumeEvents(Arrays.asList(record(0, "not a json"), record(1, UPDATE_ACCOUNT_EVENT)));
+
+        ArgumentCaptor<ProducerRecord<String, String>> deadLetter = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(template).send(deadLetter.capture());
+        assertThat(deadLetter.getValue().topic()).isEqualTo("test.DLT");
+        assertThat(deadLetter.getValue().value()).isEqualTo("not a json");
+        verify(userService).getUsers(anyCollection());
+    }
+
+    @Test
+    public void retryAndThrowInfrastructureErrors() {
+        when(userService.getUsers(anyCollection())).thenThrow(new CannotCreateTransactionException("db is down"));
+
+        assertThatThrownBy(() -> consumer.consumeEvents(Arrays.asList(
+            record(0, updateAccountEvent("XM", "user1")),
+            record(1, updateAccountEvent("XM", "user2")))))
+            .isInstanceOf(SystemQueueConsumer.FailedRecordsException.class);
+
+        verify(userService, times(3)).getUsers(anyCollection());
+        verify(template, never()).send(any(ProducerRecord.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void consumeAgainOnlyFailedTenantUpdates() {
+        when(userService.getUsers(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> userKeys = invocation.getArgument(0);
+            if (userKeys.contains("user1")) {
+                throw new CannotCreateTransactionException("db is down");
+            }
+            return userKeys.stream().map(SystemQueueConsumerUnitTest::createUser).collect(Collectors.toList());
+        });
+        List<ConsumerRecord<String, String>> batch = Arrays.asList(
+            record(0, updateAccountEvent("XM", "user1")),
+            record(1, updateAccountEvent("DEMO", "user2")),
+            record(2, "not a json"));
+
+        assertThatThrownBy(() -> consumer.consumeEvents(batch))
+            .isInstanceOf(SystemQueueConsumer.FailedRecordsException.class)
+            .satisfies(e -> assertThat(((SystemQueueConsumer.FailedRecordsException) e).getRecords())
+                .containsExactly(batch.get(0)));
+        verify(userService).getUsers(argThat(userKeys -> userKeys.contains("user2")));
+        verify(template).send(any(ProducerRecord.class));
+
+        // the demo update and the dead letter are not repeated when the batch is consumed again
+        doAnswer(invocation -> ((Collection<String>) invocation.getArgument(0)).stream()
+            .map(SystemQueueConsumerUnitTest::createUser).collect(Collectors.toList()))
+            .when(userService).getUsers(anyCollection());
+        consumer.consumeEvents(batch);
+        verify(userService).getUsers(argThat(userKeys -> userKeys.contains("user2")));
+        verify(template).send(any(ProducerRecord.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void sendToDeadLetterTopicAfterMaxFailures() {
+        when(userService.getUsers(anyCollection())).thenThrow(new CannotCreateTransactionException("db is down"));
+        List<ConsumerRecord<String, String>> batch = Arrays.asList(
+            record(0, updateAccountEvent("XM", "user1")),
+            record(1, updateAccountEvent("XM", "user2")));
+
+        assertThatThrownBy(() -> consumer.consumeEvents(batch))
+            .isInstanceOf(SystemQueueConsumer.FailedRecordsException.class);
+        consumer.consumeEvents(batch);
+
+        ArgumentCaptor<ProducerRecord<String, String>> deadLetter = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(template, times(2)).send(deadLetter.capture());
+        assertThat(deadLetter.getAllValues()).extracting(ProducerRecord::value)
+            .containsExactly(batch.get(0).value(), batch.get(1).value());
+    }
+
+    @Test
+    public void seekBackOnlyToFailedUpdates() {
+        ConsumerRecord<String, String> failed = new ConsumerRecord<>("test", 0, 5, "", "");
+        Map<TopicPartition, List<ConsumerRecord<String, String>>> records = new HashMap<>();
+        records.put(new TopicPartition("test", 0), Arrays.asList(new ConsumerRecord<>("test", 0, 4, "", ""), failed,
+            new ConsumerRecord<>("test", 0, 6, "", "")));
+        records.put(new TopicPartition("test", 1),
+            Collections.singletonList(new ConsumerRecord<>("test", 1, 7, "", "")));
+        Consumer<?, ?> kafkaConsumer = mock(Consumer.class);
+
+        consumer.handleError(new SystemQueueConsumer.FailedRecordsException(Collections.singletonList(failed)),
+            new ConsumerRecords<>(records), kafkaConsumer);
+
+        verify(kafkaConsumer).seek(new TopicPartition("test", 0), 5);
+        verifyNoMoreInteractions(kafkaConsumer);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void sendInvalidUpdateToDeadLetterTopic() {
+        when(userService.getUsers(anyCollection())).thenAnswer(invocation ->
+            ((Collection<String>) invocation.getArgument(0)).stream().map(SystemQueueConsumerUnitTest::createUser)
+                .collect(Collectors.toList()));
+        doThrow(new DataIntegrityViolationException("first name is too long")).when(userService)
+            .saveUser(argThat(user -> "user1".equals(user.getUserKey())));
+
+        consumer.consumeEvents(Arrays.asList(
+            record(0, updateAccountEvent("XM", "user1")),
+            record(1, updateAccountEvent("XM", "user2"))));
+
+        ArgumentCaptor<ProducerRecord<String, String>> deadLetter = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(template).send(deadLetter.capture());
+        assertThat(deadLetter.getValue().value()).contains("user1");
+        // the group, then each update once: invalid updates are not retried
+        verify(userService, times(3)).getUsers(anyCollection());
+    }
+
+    private static ConsumerRecord<String, String> record(long offset, String value) {
+        return new ConsumerRecord<>("test", 0, offset, "", value);
+    }
+
+    private static String updateAccountEvent(String tenantKey, String userKey) {
+        return "{\"eventType\":\"UPDATE_ACCOUNT\",\"tenantKey\":\"" + tenantKey + "\","
+            + "\"data\":{\"firstName\":\"Olena\",\"lastModifiedDate\":\"\",\"userKey\":\"" + userKey + "\"}}";
+    }
+
+    private static User createUser(String userKey) {
+        User user = new User();
+        user.setUserKey(userKey);
+        return user;
+    }
 }
@@ -0,0 +1,154 @@
+package com.icthh.xm.uaa.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.commons.tenant.TenantContextUtils;
+import com.icthh.xm.commons.tenant.internal.DefaultTenantContextHolder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+public class BoundedPasswordEncoderUnitTest {
+
+    private final TenantContextHolder tenantContextHolder = new DefaultTenantContextHolder();
+    private final PasswordEncoder mockEncoder = mock(PasswordEncoder.class);
+
+    private ThreadPoolExecutor executor;
+    private BoundedPasswordEncoder boundedEncoder;
+
+    @Before
+    public void before() {
+        TenantContextUtils.setTenant(tenantContextHolder, "XM");
+        executor = new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(10));
+        boundedEncoder = new BoundedPasswordEncoder(mockEncoder, executor, tenantContextHolder, 1, 200);
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+        tenantContextHolder.getPrivilegedContext().destroyCurrentContext();
+    }
+
+    @Test
+    public void testHashingIsDelegatedAndTimed() {
+        when(mockEncoder.encode(eq("rawPassword"))).thenReturn("encoded");
+        when(mockEncoder.matches(eq("rawPassword"), eq("encoded"))).thenReturn(true);
+
+        assertEquals("encoded", boundedEncoder.encode("rawPassword"));
+        assertTrue(boundedEncoder.matches("rawPassword", "encoded"));
+
+        assertEquals(2, ((Timer) boundedEncoder.getMetrics().getMetrics().get("hash-time")).getCount());
+        assertEquals(2, ((Timer) boundedEncoder.getMetrics().getMetrics().get("queue-wait")).getCount());
+    }
+
+    @Test
+    public void testHashingRunsInCallerTenantContext() {
+        when(mockEncoder.encode(eq("rawPassword"))).thenAnswer(invocation ->
+            TenantContextUtils.getRequiredTenantKeyValue(tenantContextHolder));
+
+        assertEquals("XM", boundedEncoder.encode("rawPassword"));
+        TenantContextUtils.setTenant(tenantContextHolder, "OTHER");
+        assertEquals("OTHER", boundedEncoder.encode("rawPassword"));
+    }
+
+    @Test
+    public void testTenantConcurrencyLimitRejectsExcessRequests() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(mockEncoder.matches(eq("slow"), eq("encoded"))).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return true;
+        });
+
+        Thread slowLogin = new Thread(() -> {
+            TenantContextUtils.setTenant(tenantContextHolder, "XM");
+            boundedEncoder.matches("slow", "encoded");
+        });
+        slowLogin.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        try {
+            boundedEncoder.matches("rawPassword", "encoded");
+            fail("AuthenticationServiceException expected");
+        } catch (AuthenticationServiceException e) {
+            assertEquals(1, ((Meter) boundedEncoder.getMetrics().getMetrics().get("rejected")).getCount());
+        } finally {
+            release.countDown();
+            slowLogin.join();
+        }
+    }
+
+    @Test
+    public void testPermitIsHeldUntilTimedOutHashCompletes() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(mockEncoder.matches(eq("slow"), eq("encoded"))).thenAnswer(invocation -> {
+            // like BCrypt, the hash does not stop on interrupt
+            while (!release.await(1, TimeUnit.SECONDS)) {
+                Thread.interrupted();
+            }
+            return true;
+        });
+        when(mockEncoder.matches(eq("rawPassword"), eq("encoded"))).thenReturn(true);
+
+        try {
+            boundedEncoder.matches("slow", "encoded");
+            fail("AuthenticationServiceException expected");
+        } catch (AuthenticationServiceException e) {
+            try {
+                boundedEncoder.matches("rawPassword", "encoded");
+                fail("AuthenticationServiceException expected");
+            } catch (AuthenticationServiceException expected) {
+                assertEquals(2, ((Meter) boundedEncoder.getMetrics().getMetrics().get("rejected")).getCount());
+            }
+        } finally {
+            release.countDown();
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getCompletedTaskCount() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(boundedEncoder.matches("rawPassword", "encoded"));
+    }
+
+    @Test
+    public void testOtherTenantIsNotLimited() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(mockEncoder.matches(eq("slow"), eq("encoded"))).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return true;
+        });
+        when(mockEncoder.matches(eq("rawPassword"), eq("encoded"))).thenReturn(true);
+
+        Thread slowLogin = new Thread(() -> {
+            TenantContextUtils.setTenant(tenantContextHolder, "OTHER");
+            boundedEncoder.matches("slow", "encoded");
+        });
+        slowLogin.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        try {
+            assertTrue(boundedEncoder.matches("rawPassword", "encoded"));
+        } finally {
+            release.countDown();
+            slowLogin.join();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.icthh.xm.uaa.security;
 import org.junit.Test;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+import static org.junit.Assert.assertFalse;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -44,4 +45,13 @@ public class CachePasswordHashEncoderUnitTest {
         verify(mockEncoder, times(1)).matches(eq("rawPassword"), eq("notCachedEncoder"));
     }
 
+    @Test
+    public void ifOtherPasswordIsCheckedAgainstCachedHashMatchWillBeCalled() {
+        when(mockEncoder.matches(eq("rawPassword"), eq("notCachedEncoder"))).thenReturn(true);
+        cachedEncoder.matches("rawPassword", "notCachedEncoder");
+
+        assertFalse(cachedEncoder.matches("otherPassword", "notCachedEncoder"));
+        verify(mockEncoder).matches(eq("otherPassword"), eq("notCachedEncoder"));
+    }
+
 }
@@ -0,0 +1,115 @@
+package com.icthh.xm.uaa.security;
+
+import static com.icthh.xm.uaa.config.Constants.KEYSTORE_ALIAS;
+import static com.icthh.xm.uaa.config.Constants.KEYSTORE_PATH;
+import static com.icthh.xm.uaa.config.Constants.KEYSTORE_PSWRD;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.codahale.metrics.Gauge;
+import java.util.Collections;
+import java.util.Date;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.KeyStoreKeyFactory;
+
+public class CachingJwtTokenStoreUnitTest {
+
+    private static final String CLIENT = "testClient";
+    private static final String LOGIN = "testLogin";
+
+    private JwtAccessTokenConverter converter;
+    private CachingJwtTokenStore tokenStore;
+
+    @Before
+    public void setup() throws Exception {
+        JwtAccessTokenConverter jwtAccessTokenConverter = new JwtAccessTokenConverter();
+        jwtAccessTokenConverter.setKeyPair(new KeyStoreKeyFactory(new ClassPathResource(KEYSTORE_PATH),
+            KEYSTORE_PSWRD.toCharArray()).getKeyPair(KEYSTORE_ALIAS));
+        jwtAccessTokenConverter.afterPropertiesSet();
+        converter = spy(jwtAccessTokenConverter);
+        tokenStore = new CachingJwtTokenStore(converter, 100, 3600);
+    }
+
+    @Test
+    public void testTokenIsVerifiedOnce() {
+        String token = createToken(60_000).getValue();
+
+        OAuth2AccessToken first = tokenStore.readAccessToken(token);
+        OAuth2AccessToken second = tokenStore.readAccessToken(token);
+        OAuth2Authentication authentication = tokenStore.readAuthentication(second);
+        tokenStore.readAuthentication(token);
+
+        assertNotNull(first);
+        assertNotSame(first, second);
+        assertEquals(LOGIN, authentication.getName());
+        verify(converter, times(1)).extractAccessToken(eq(token), any());
+        verify(converter, times(1)).extractAuthentication(any());
+        assertEquals(3L, gauge("hit"));
+        assertEquals(1L, gauge("miss"));
+    }
+
+    @Test
+    public void testCallersGetIndependentCopies() {
+        String token = createToken(60_000).getValue();
+
+        tokenStore.readAccessToken(token).getAdditionalInformation().put("mutated", true);
+        tokenStore.readAuthentication(token).setDetails("mutated");
+
+        assertNull(tokenStore.readAccessToken(token).getAdditionalInformation().get("mutated"));
+        assertNull(tokenStore.readAuthentication(token).getDetails());
+    }
+
+    @Test
+    public void testExpiredTokenIsNotCached() {
+        String token = createToken(-1000).getValue();
+
+        assertNotNull(tokenStore.readAccessToken(token));
+        assertNotNull(tokenStore.readAccessToken(token));
+
+        assertEquals(0L, gauge("size"));
+        verify(converter, times(2)).extractAccessToken(eq(token), any());
+    }
+
+    @Test
+    public void testRevokedTokenIsRejected() {
+        String token = createToken(60_000).getValue();
+        OAuth2AccessToken accessToken = tokenStore.readAccessToken(token);
+
+        tokenStore.removeAccessToken(accessToken);
+
+        assertNull(tokenStore.readAccessToken(token));
+        assertNull(tokenStore.readAuthentication(token));
+        assertEquals(1, gauge("revoked"));
+    }
+
+    private Object gauge(String name) {
+        return ((Gauge<?>) tokenStore.getMetrics().getMetrics().get(name)).getValue();
+    }
+
+    private OAuth2AccessToken createToken(long validityMillis) {
+        DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("token-" + System.nanoTime());
+        token.setExpiration(new Date(System.currentTimeMillis() + validityMillis));
+
+        UsernamePasswordAuthenticationToken user = new UsernamePasswordAuthenticationToken(LOGIN, "",
+            Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
+        OAuth2Request request = new OAuth2Request(Collections.<String, String>emptyMap(), CLIENT, null, true,
+            null, null, null, null, null);
+        return converter.enhance(token, new OAuth2Authentication(request, user));
+    }
+}
@@ -0,0 +1,102 @@
+package com.icthh.xm.uaa.security;
+
+import static com.icthh.xm.uaa.config.Constants.CLIENT_CHANGED_EVENT_TYPE;
+import static com.icthh.xm.uaa.config.Constants.SYSTEM_EVENT_PROP_CLIENT_ID;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.codahale.metrics.MetricRegistry;
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.commons.tenant.TenantContextUtils;
+import com.icthh.xm.commons.tenant.internal.DefaultTenantContextHolder;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import com.icthh.xm.uaa.repository.kafka.SystemTopicProducer;
+import java.util.Collections;
+import java.util.function.Supplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.ClientRegistrationException;
+
+public class ClientDetailsCacheUnitTest {
+
+    private static final String CLIENT_ID = "client";
+
+    private final TenantContextHolder tenantContextHolder = new DefaultTenantContextHolder();
+    private final SystemTopicProducer systemTopicProducer = mock(SystemTopicProducer.class);
+    @SuppressWarnings("unchecked")
+    private final Supplier<ClientDetails> loader = mock(Supplier.class);
+
+    private ClientDetailsCache clientDetailsCache;
+
+    @Before
+    public void before() {
+        TenantContextUtils.setTenant(tenantContextHolder, "XM");
+        clientDetailsCache = new ClientDetailsCache(new ApplicationProperties(), tenantContextHolder,
+            systemTopicProducer, new MetricRegistry());
+    }
+
+    @After
+    public void after() {
+        tenantContextHolder.getPrivilegedContext().destroyCurrentContext();
+    }
+
+    @Test
+    public void testClientDetailsAreLoadedOnce() {
+        ClientDetails clientDetails = mock(ClientDetails.class);
+        when(loader.get()).thenReturn(clientDetails);
+
+        assertSame(clientDetails, clientDetailsCache.get(CLIENT_ID, loader));
+        assertSame(clientDetails, clientDetailsCache.get(CLIENT_ID, loader));
+
+        verify(loader, times(1)).get();
+    }
+
+    @Test
+    public void testEvictReloadsAndNotifiesCluster() {
+        when(loader.get()).thenReturn(mock(ClientDetails.class));
+        clientDetailsCache.get(CLIENT_ID, loader);
+
+        clientDetailsCache.evict(CLIENT_ID);
+        clientDetailsCache.get(CLIENT_ID, loader);
+
+        verify(loader, times(2)).get();
+        verify(systemTopicProducer).send(eq(CLIENT_CHANGED_EVENT_TYPE), eq("XM"),
+            eq(Collections.singletonMap(SYSTEM_EVENT_PROP_CLIENT_ID, CLIENT_ID)));
+    }
+
+    @Test
+    public void testEvictLocalIsTenantAware() {
+        when(loader.get()).thenReturn(mock(ClientDetails.class));
+        clientDetailsCache.get(CLIENT_ID, loader);
+
+        clientDetailsCache.evictLocal("OTHER", CLIENT_ID);
+        clientDetailsCache.get(CLIENT_ID, loader);
+        clientDetailsCache.evictLocal("xm", CLIENT_ID);
+        clientDetailsCache.get(CLIENT_ID, loader);
+
+        verify(loader, times(2)).get();
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached() {
+        when(loader.get()).thenThrow(new ClientRegistrationException("Client client is blocked"));
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                clientDetailsCache.get(CLIENT_ID, loader);
+                fail("ClientRegistrationException expected");
+            } catch (ClientRegistrationException e) {
+                // expected
+            }
+        }
+
+        verify(loader, times(2)).get();
+    }
+}
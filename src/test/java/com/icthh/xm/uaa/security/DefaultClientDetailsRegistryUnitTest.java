@@ -0,0 +1,96 @@
+package com.icthh.xm.uaa.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.icthh.xm.commons.permission.constants.RoleConstant;
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.commons.tenant.TenantContextUtils;
+import com.icthh.xm.commons.tenant.internal.DefaultTenantContextHolder;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import com.icthh.xm.uaa.domain.properties.TenantProperties;
+import com.icthh.xm.uaa.service.TenantPropertiesService;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.oauth2.provider.ClientDetails;
+
+public class DefaultClientDetailsRegistryUnitTest {
+
+    private static final String CLIENT_ID = "webapp";
+
+    @Mock
+    private PasswordEncoder passwordEncoder;
+    @Mock
+    private TenantPropertiesService tenantPropertiesService;
+
+    private TenantContextHolder tenantContextHolder = new DefaultTenantContextHolder();
+
+    private DefaultClientDetailsRegistry registry;
+
+    @Before
+    public void before() {
+        MockitoAnnotations.initMocks(this);
+        TenantContextUtils.setTenant(tenantContextHolder, "XM");
+
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setDefaultClientId(Set.of(CLIENT_ID, "internal"));
+        applicationProperties.setClientGrantTypes(Set.of("password"));
+        applicationProperties.setClientScope(Set.of("openid"));
+
+        when(tenantPropertiesService.getTenantProps()).thenReturn(tenantProperties("secret"));
+        when(passwordEncoder.encode("secret")).thenReturn("encoded-secret");
+        when(passwordEncoder.encode("changed")).thenReturn("encoded-changed");
+
+        registry = new DefaultClientDetailsRegistry(applicationProperties, passwordEncoder, tenantPropertiesService,
+            tenantContextHolder);
+    }
+
+    @After
+    public void after() {
+        tenantContextHolder.getPrivilegedContext().destroyCurrentContext();
+    }
+
+    @Test
+    public void testDefaultClientDetailsAreBuiltOnce() {
+        ClientDetails first = registry.getClientDetails(CLIENT_ID);
+        ClientDetails second = registry.getClientDetails(CLIENT_ID);
+        registry.getClientDetails("internal");
+
+        assertSame(first, second);
+        assertEquals("encoded-secret", first.getClientSecret());
+        assertEquals(RoleConstant.SUPER_ADMIN, first.getAuthorities().iterator().next().getAuthority());
+        verify(passwordEncoder, times(1)).encode("secret");
+    }
+
+    @Test
+    public void testDefaultClientDetailsAreRebuiltAfterTenantPropertiesRefresh() {
+        registry.getClientDetails(CLIENT_ID);
+
+        when(tenantPropertiesService.getTenantProps()).thenReturn(tenantProperties("changed"));
+
+        assertEquals("encoded-changed", registry.getClientDetails(CLIENT_ID).getClientSecret());
+        verify(passwordEncoder, times(1)).encode("changed");
+    }
+
+    @Test
+    public void testIsDefaultClient() {
+        assertTrue(registry.isDefaultClient(CLIENT_ID));
+        assertFalse(registry.isDefaultClient("custom-client"));
+    }
+
+    private static TenantProperties tenantProperties(String defaultClientSecret) {
+        TenantProperties tenantProperties = new TenantProperties();
+        tenantProperties.getSecurity().setDefaultClientSecret(defaultClientSecret);
+        return tenantProperties;
+    }
+}
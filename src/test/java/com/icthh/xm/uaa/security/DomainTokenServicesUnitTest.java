@@ -30,6 +30,7 @@ import com.icthh.xm.uaa.config.ApplicationProperties;
 import com.icthh.xm.uaa.domain.User;
 import com.icthh.xm.uaa.domain.properties.TenantProperties;
 import com.icthh.xm.uaa.security.provider.DefaultAuthenticationRefreshProvider;
+import com.icthh.xm.uaa.service.OnlineUsersService;
 import com.icthh.xm.uaa.service.TenantPropertiesService;
 import com.icthh.xm.uaa.service.UserService;
 import java.security.KeyPair;
@@ -96,6 +97,8 @@ public class DomainTokenServicesUnitTest {
     private DefaultAuthenticationRefreshProvider authenticationRefreshProvider;
     @Mock
     private DomainJwtAccessTokenDetailsPostProcessor domainJwtAccessTokenDetailsPostProcessor;
+    @Mock
+    private OnlineUsersService onlineUsersService;
 
     @InjectMocks
     private UserSecurityValidator userSecurityValidator;
@@ -142,6 +145,7 @@ public class DomainTokenServicesUnitTest {
         tokenServices.setAuthenticationRefreshProvider(authenticationRefreshProvider);
         tokenServices.setUserService(userService);
         tokenServices.setUserSecurityValidator(userSecurityValidator);
+        tokenServices.setOnlineUsersService(onlineUsersService);
     }
 
     @Test
@@ -198,6 +202,9 @@ public class DomainTokenServicesUnitTest {
 
         OAuth2AccessToken refreshedToken = tokenServices.refreshAccessToken(refreshTokenValue, tokenRequest);
         assertTokenAttributes(refreshedToken);
+
+        // the login and the refresh are both recorded as online activity
+        verify(onlineUsersService, times(2)).record(LOGIN);
     }
 
     @Test
@@ -1,24 +1,35 @@
 package com.icthh.xm.uaa.security;
 
+import com.codahale.metrics.MetricRegistry;
 import com.icthh.xm.commons.permission.constants.RoleConstant;
 import com.icthh.xm.commons.tenant.TenantContext;
 import com.icthh.xm.commons.tenant.TenantContextHolder;
 import com.icthh.xm.commons.tenant.TenantKey;
+import com.icthh.xm.uaa.config.ApplicationProperties;
 import com.icthh.xm.uaa.domain.User;
 import com.icthh.xm.uaa.domain.UserLogin;
 import com.icthh.xm.uaa.repository.UserLoginRepository;
+import com.icthh.xm.uaa.repository.kafka.SystemTopicProducer;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.Optional;
 
 import static com.icthh.xm.uaa.UaaTestConstants.DEFAULT_TENANT_KEY_VALUE;
+import static com.icthh.xm.uaa.config.Constants.USER_CHANGED_EVENT_TYPE;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class DomainUserDetailsServiceUnitTest {
@@ -32,6 +43,10 @@ public class DomainUserDetailsServiceUnitTest {
     @Mock
     private TenantContext tenantContext;
 
+    @Mock
+    private SystemTopicProducer systemTopicProducer;
+
+    private DomainUserDetailsCache domainUserDetailsCache;
     private DomainUserDetailsService userDetailsService;
 
     private User user;
@@ -42,7 +57,10 @@ public class DomainUserDetailsServiceUnitTest {
         MockitoAnnotations.initMocks(this);
         when(tenantContextHolder.getContext()).thenReturn(tenantContext);
 
-        userDetailsService = new DomainUserDetailsService(userLoginRepository, tenantContextHolder);
+        domainUserDetailsCache = new DomainUserDetailsCache(new ApplicationProperties(),
+            tenantContextHolder, systemTopicProducer, new MetricRegistry());
+        userDetailsService = new DomainUserDetailsService(userLoginRepository, tenantContextHolder,
+            domainUserDetailsCache);
 
         userLogin = new UserLogin();
         userLogin.setLogin("admin");
@@ -105,4 +123,93 @@ public class DomainUserDetailsServiceUnitTest {
 
         assertEquals("admin", result.getUsername());
     }
+
+    @Test
+    public void testUserDetailsAreCachedAndCopied() {
+        when(tenantContext.getTenantKey()).thenReturn(Optional.of(TenantKey.valueOf(DEFAULT_TENANT_KEY_VALUE)));
+        when(userLoginRepository.findOneByLogin(eq("admin")))
+            .thenReturn(Optional.of(userLogin));
+
+        DomainUserDetails first = userDetailsService.loadUserByUsername("admin");
+        first.eraseCredentials();
+        DomainUserDetails second = userDetailsService.loadUserByUsername("ADMIN");
+
+        assertNotSame(first, second);
+        assertEquals("password", second.getPassword());
+        verify(userLoginRepository, times(1)).findOneByLogin(eq("admin"));
+    }
+
+    @Test
+    public void testEvictedUserDetailsAreReloaded() {
+        when(tenantContext.getTenantKey()).thenReturn(Optional.of(TenantKey.valueOf(DEFAULT_TENANT_KEY_VALUE)));
+        when(userLoginRepository.findOneByLogin(eq("admin")))
+            .thenReturn(Optional.of(userLogin));
+
+        userDetailsService.loadUserByUsername("admin");
+        user.setPassword("changed");
+        domainUserDetailsCache.evictUser("test");
+
+        assertEquals("changed", userDetailsService.loadUserByUsername("admin").getPassword());
+        verify(userLoginRepository, times(2)).findOneByLogin(eq("admin"));
+        verify(systemTopicProducer).send(eq(USER_CHANGED_EVENT_TYPE), eq(DEFAULT_TENANT_KEY_VALUE), any());
+    }
+
+    @Test
+    public void testUserEvictedOncePerTransaction() {
+        when(tenantContext.getTenantKey()).thenReturn(Optional.of(TenantKey.valueOf(DEFAULT_TENANT_KEY_VALUE)));
+        when(userLoginRepository.findOneByLogin(eq("admin")))
+            .thenReturn(Optional.of(userLogin));
+        userDetailsService.loadUserByUsername("admin");
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            domainUserDetailsCache.evictUser("test");
+            domainUserDetailsCache.evictUser("test");
+            commit();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(systemTopicProducer, times(1)).send(eq(USER_CHANGED_EVENT_TYPE), eq(DEFAULT_TENANT_KEY_VALUE), any());
+        userDetailsService.loadUserByUsername("admin");
+        verify(userLoginRepository, times(2)).findOneByLogin(eq("admin"));
+    }
+
+    @Test
+    public void testCreatedUserNotEvicted() {
+        when(tenantContext.getTenantKey()).thenReturn(Optional.of(TenantKey.valueOf(DEFAULT_TENANT_KEY_VALUE)));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            domainUserDetailsCache.userCreated("new");
+            domainUserDetailsCache.evictUser("new");
+            commit();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(systemTopicProducer, never()).send(any(), any(), any());
+    }
+
+    @Test
+    public void testUserEvictedOnlyInItsTenant() {
+        when(tenantContext.getTenantKey()).thenReturn(Optional.of(TenantKey.valueOf(DEFAULT_TENANT_KEY_VALUE)));
+        when(userLoginRepository.findOneByLogin(eq("admin")))
+            .thenReturn(Optional.of(userLogin));
+        userDetailsService.loadUserByUsername("admin");
+
+        domainUserDetailsCache.evictLocal("OTHER", "test");
+        userDetailsService.loadUserByUsername("admin");
+        verify(userLoginRepository, times(1)).findOneByLogin(eq("admin"));
+
+        domainUserDetailsCache.evictLocal(DEFAULT_TENANT_KEY_VALUE, "test");
+        userDetailsService.loadUserByUsername("admin");
+        verify(userLoginRepository, times(2)).findOneByLogin(eq("admin"));
+    }
+
+    private static void commit() {
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        TransactionSynchronizationManager.getSynchronizations()
+            .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+    }
 }
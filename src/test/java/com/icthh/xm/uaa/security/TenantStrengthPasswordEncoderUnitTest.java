@@ -0,0 +1,62 @@
+package com.icthh.xm.uaa.security;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.commons.tenant.TenantContextUtils;
+import com.icthh.xm.commons.tenant.internal.DefaultTenantContextHolder;
+import com.icthh.xm.uaa.domain.properties.TenantProperties;
+import com.icthh.xm.uaa.service.TenantPropertiesService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+public class TenantStrengthPasswordEncoderUnitTest {
+
+    private final TenantContextHolder tenantContextHolder = new DefaultTenantContextHolder();
+    private final TenantPropertiesService tenantPropertiesService = mock(TenantPropertiesService.class);
+    private final TenantProperties tenantProperties = new TenantProperties();
+
+    private TenantStrengthPasswordEncoder encoder;
+
+    @Before
+    public void before() {
+        TenantContextUtils.setTenant(tenantContextHolder, "XM");
+        when(tenantPropertiesService.getTenantProps()).thenReturn(tenantProperties);
+        encoder = new TenantStrengthPasswordEncoder(4, tenantPropertiesService, tenantContextHolder);
+    }
+
+    @After
+    public void after() {
+        tenantContextHolder.getPrivilegedContext().destroyCurrentContext();
+    }
+
+    @Test
+    public void testEncodeUsesTenantStrength() {
+        tenantProperties.getSecurity().setPasswordEncoderStrength(5);
+
+        String encoded = encoder.encode("password");
+
+        assertTrue(encoded.startsWith("$2a$05$"));
+        assertTrue(encoder.matches("password", encoded));
+        assertFalse(encoder.upgradeEncoding(encoded));
+    }
+
+    @Test
+    public void testHashOfOtherStrengthIsMatchedAndUpgraded() {
+        String encoded = new BCryptPasswordEncoder(5).encode("password");
+
+        assertTrue(encoder.matches("password", encoded));
+        assertTrue(encoder.upgradeEncoding(encoded));
+    }
+
+    @Test
+    public void testDefaultStrengthIsUsedWithoutTenantStrength() {
+        assertFalse(encoder.upgradeEncoding(new BCryptPasswordEncoder(4).encode("password")));
+        assertFalse(encoder.upgradeEncoding("not-a-bcrypt-hash"));
+    }
+}
@@ -0,0 +1,128 @@
+package com.icthh.xm.uaa.security;
+
+import static com.icthh.xm.commons.lep.XmLepConstants.THREAD_CONTEXT_KEY_AUTH_CONTEXT;
+import static com.icthh.xm.commons.lep.XmLepConstants.THREAD_CONTEXT_KEY_TENANT_CONTEXT;
+import static org.junit.Assert.assertTrue;
+
+import com.icthh.xm.commons.security.XmAuthenticationContextHolder;
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.commons.tenant.TenantContextUtils;
+import com.icthh.xm.lep.api.LepManager;
+import com.icthh.xm.uaa.UaaApp;
+import com.icthh.xm.uaa.config.xm.XmOverrideConfiguration;
+import com.icthh.xm.uaa.domain.User;
+import com.icthh.xm.uaa.domain.UserLogin;
+import com.icthh.xm.uaa.domain.UserLoginType;
+import com.icthh.xm.uaa.repository.UserLoginRepository;
+import com.icthh.xm.uaa.repository.UserRepository;
+import com.icthh.xm.uaa.repository.util.SqlStatementCounter;
+import java.time.Instant;
+import java.util.UUID;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * Regression test for the number of SQL statements executed while authenticating a token request.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {
+    UaaApp.class,
+    XmOverrideConfiguration.class
+})
+public class TokenIssuanceSqlCountIntTest {
+
+    private static final String TENANT = "XM";
+    private static final String PASSWORD = "password";
+
+    @Autowired
+    private UaaAuthenticationProvider uaaAuthenticationProvider;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserLoginRepository userLoginRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private TenantContextHolder tenantContextHolder;
+
+    @Autowired
+    private XmAuthenticationContextHolder authContextHolder;
+
+    @Autowired
+    private LepManager lepManager;
+
+    private String login;
+    private User user;
+
+    @Before
+    public void setup() {
+        TenantContextUtils.setTenant(tenantContextHolder, TENANT);
+        lepManager.beginThreadContext(ctx -> {
+            ctx.setValue(THREAD_CONTEXT_KEY_TENANT_CONTEXT, tenantContextHolder.getContext());
+            ctx.setValue(THREAD_CONTEXT_KEY_AUTH_CONTEXT, authContextHolder.getContext());
+        });
+
+        login = "sql-count-" + UUID.randomUUID() + "@xm.com";
+        user = new User();
+        user.setUserKey(UUID.randomUUID().toString());
+        user.setPassword(passwordEncoder.encode(PASSWORD));
+        user.setActivated(true);
+        user.setLangKey("en");
+        user.setRoleKey("ROLE-USER");
+        user.setUpdatePasswordDate(Instant.now());
+        UserLogin userLogin = new UserLogin();
+        userLogin.setUser(user);
+        userLogin.setLogin(login);
+        userLogin.setTypeKey(UserLoginType.EMAIL.getValue());
+        user.getLogins().add(userLogin);
+        user = userRepository.saveAndFlush(user);
+    }
+
+    @After
+    public void tearDown() {
+        userRepository.delete(user);
+        lepManager.endThreadContext();
+        tenantContextHolder.getPrivilegedContext().destroyCurrentContext();
+    }
+
+    @Test
+    public void testAuthenticationLoadsUserOnce() {
+        int userLoad = countStatements(() -> userLoginRepository.findOneByLogin(login));
+
+        int authentication = countStatements(this::authenticate);
+
+        assertTrue(userLoad > 0);
+        assertTrue("Statements: " + authentication, authentication <= userLoad);
+    }
+
+    @Test
+    public void testRepeatedAuthenticationLoadsUserAtMostOnce() {
+        authenticate();
+        int userLoad = countStatements(() -> userLoginRepository.findOneByLogin(login));
+
+        int authentication = countStatements(this::authenticate);
+
+        assertTrue("Statements: " + authentication, authentication <= userLoad);
+    }
+
+    private void authenticate() {
+        uaaAuthenticationProvider.authenticate(new UsernamePasswordAuthenticationToken(login, PASSWORD));
+    }
+
+    private static int countStatements(Runnable action) {
+        SqlStatementCounter.start();
+        action.run();
+        return SqlStatementCounter.stop();
+    }
+}
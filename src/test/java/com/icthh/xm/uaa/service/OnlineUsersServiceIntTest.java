@@ -7,34 +7,43 @@ import com.icthh.xm.uaa.UaaApp;
 import com.icthh.xm.uaa.config.ApplicationProperties;
 import com.icthh.xm.uaa.config.Constants;
 import com.icthh.xm.uaa.config.xm.XmOverrideConfiguration;
-import com.icthh.xm.uaa.repository.CustomAuditEventRepository;
+import com.icthh.xm.uaa.repository.kafka.SystemTopicProducer;
+import com.icthh.xm.uaa.security.TokenConstraintsService;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.actuate.audit.AuditEvent;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.test.context.junit4.SpringRunner;
-import org.springframework.test.context.transaction.BeforeTransaction;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.concurrent.TimeUnit;
+import java.util.HashMap;
+import java.util.Map;
 
 import static com.icthh.xm.commons.tenant.TenantContextUtils.buildTenant;
+import static com.icthh.xm.uaa.config.Constants.ONLINE_USERS_EVENT_TYPE;
+import static com.icthh.xm.uaa.config.Constants.SYSTEM_EVENT_PROP_OFFLINE;
+import static com.icthh.xm.uaa.config.Constants.SYSTEM_EVENT_PROP_ONLINE;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
-import static org.springframework.boot.actuate.security.AuthenticationAuditListener.AUTHENTICATION_SUCCESS;
 
 /**
- * Test class for the UserResource REST controller.
+ * Test class for the OnlineUsersService.
  *
- * @see UserService
+ * @see OnlineUsersService
  */
-@Transactional
 @RunWith(SpringRunner.class)
 @SpringBootTest(classes = {
     UaaApp.class,
@@ -42,48 +51,59 @@ import static org.springframework.boot.actuate.security.AuthenticationAuditListe
 })
 public class OnlineUsersServiceIntTest {
 
-    @Autowired
-    private OnlineUsersService onlineUsersService;
-    @Autowired
-    private CustomAuditEventRepository auditEventRepository;
+    private static final String DEFAULT_KEY = "TEST_KEY";
+    private static final int ACCESS_TOKEN_VALIDITY_SECONDS = 600;
+
     @Autowired
     private TenantContextHolder tenantContextHolder;
-    @SpyBean
+    @Autowired
     private ApplicationProperties applicationProperties;
+    @Mock
+    private TokenConstraintsService tokenConstraintsService;
+    @Mock
+    private SystemTopicProducer systemTopicProducer;
 
-    private static final String DEFAULT_KEY = "TEST_KEY";
-    private static final String DEFAULT_VALUE = "TEST_VALUE";
+    private OnlineUsersService onlineUsersService;
 
     @Before
     public void setUp() {
-        when(applicationProperties.isAuditEventsEnabled()).thenReturn(true);
-    }
-
-    @BeforeTransaction
-    public void initRepository() {
+        MockitoAnnotations.initMocks(this);
+        when(tokenConstraintsService.getTenantRelatedAccessTokenValiditySeconds())
+            .thenReturn(ACCESS_TOKEN_VALIDITY_SECONDS);
+        when(tokenConstraintsService.getDefaultAccessTokenValiditySeconds())
+            .thenReturn(ACCESS_TOKEN_VALIDITY_SECONDS);
+        onlineUsersService = new OnlineUsersService(tenantContextHolder, tokenConstraintsService,
+            systemTopicProducer, applicationProperties);
         TenantContextUtils.setTenant(tenantContextHolder, Constants.SUPER_TENANT);
-        auditEventRepository.deleteAll();
     }
 
     @Test
-    public void assertThatEntryAddWithAuditEventEnabled() {
-        auditEventRepository.add(new AuditEvent(DEFAULT_KEY, AUTHENTICATION_SUCCESS, Collections.emptyMap()));
-        assertThat(onlineUsersService.find()).hasSize(1);
+    public void assertThatEntryAdded() {
+        onlineUsersService.record(DEFAULT_KEY);
+        onlineUsersService.record(DEFAULT_KEY);
+
+        assertThat(onlineUsersService.find()).containsExactly(DEFAULT_KEY);
+        assertThat(onlineUsersService.count()).isEqualTo(1);
     }
 
     @Test
-    public void assertThatEntryNotAddWithAuditEventDisabled() {
-        when(applicationProperties.isAuditEventsEnabled()).thenReturn(false);
-        auditEventRepository.add(new AuditEvent(DEFAULT_KEY, AUTHENTICATION_SUCCESS, Collections.emptyMap()));
-        assertThat(onlineUsersService.find()).hasSize(0);
+    public void assertThatEntryEvicted() {
+        Instant now = Instant.now();
+        onlineUsersService.record("user1", now.minus(ACCESS_TOKEN_VALIDITY_SECONDS * 2, ChronoUnit.SECONDS));
+        onlineUsersService.record("user2", now.minus(ACCESS_TOKEN_VALIDITY_SECONDS / 2, ChronoUnit.SECONDS));
+
+        assertThat(onlineUsersService.find()).containsExactly("user2");
+        assertThat(onlineUsersService.count()).isEqualTo(1);
     }
 
     @Test
-    public void assertThatEntryEvicted() throws InterruptedException {
-        long timeToLive = 1;
-        auditEventRepository.add(new AuditEvent(DEFAULT_KEY, AUTHENTICATION_SUCCESS, Collections.emptyMap()));
-        TimeUnit.SECONDS.sleep(timeToLive);
-        assertThat(auditEventRepository.findAfter(Instant.now(), DEFAULT_VALUE)).isEmpty();
+    public void assertThatWindowUsesTenantAccessTokenValidity() {
+        onlineUsersService.record(DEFAULT_KEY, Instant.now().minus(30, ChronoUnit.MINUTES));
+        assertThat(onlineUsersService.count()).isEqualTo(0);
+
+        when(tokenConstraintsService.getTenantRelatedAccessTokenValiditySeconds()).thenReturn(3600);
+        onlineUsersService.record(DEFAULT_KEY, Instant.now().minus(30, ChronoUnit.MINUTES));
+        assertThat(onlineUsersService.count()).isEqualTo(1);
     }
 
     @Test
@@ -91,13 +111,13 @@ public class OnlineUsersServiceIntTest {
         PrivilegedTenantContext privilegedContext = tenantContextHolder.getPrivilegedContext();
         privilegedContext.execute(buildTenant("DEMO"),
             () -> {
-                auditEventRepository.add(new AuditEvent("DEMO:user1", AUTHENTICATION_SUCCESS));
-                auditEventRepository.add(new AuditEvent("DEMO:user2", AUTHENTICATION_SUCCESS));
+                onlineUsersService.record("DEMO:user1");
+                onlineUsersService.record("DEMO:user2");
             });
         privilegedContext.execute(buildTenant(Constants.SUPER_TENANT),
             () -> {
-                auditEventRepository.add(new AuditEvent("TEST:user1", AUTHENTICATION_SUCCESS));
-                auditEventRepository.add(new AuditEvent("XM:user1", AUTHENTICATION_SUCCESS));
+                onlineUsersService.record("TEST:user1");
+                onlineUsersService.record("XM:user1");
             });
         privilegedContext.execute(buildTenant("DEMO"),
             () -> {
@@ -105,27 +125,106 @@ public class OnlineUsersServiceIntTest {
                 assertThat(tenant).isEqualTo("DEMO");
 
                 Collection<String> entriesForDemoTenant = onlineUsersService.find();
-                assertThat(entriesForDemoTenant).isNotNull();
-                assertThat(entriesForDemoTenant).size().isEqualTo(2);
+                assertThat(entriesForDemoTenant).containsExactlyInAnyOrder("DEMO:user1", "DEMO:user2");
             });
         privilegedContext.execute(buildTenant(Constants.SUPER_TENANT),
             () -> {
                 String tenant = TenantContextUtils.getRequiredTenantKeyValue(tenantContextHolder);
                 assertThat(tenant).isEqualTo(Constants.SUPER_TENANT);
 
-                Collection<String> entriesForDemoTenant = onlineUsersService.find();
-                assertThat(entriesForDemoTenant).isNotNull();
-                assertThat(entriesForDemoTenant).size().isEqualTo(2);
+                Collection<String> entriesForSuperTenant = onlineUsersService.find();
+                assertThat(entriesForSuperTenant).containsExactlyInAnyOrder("TEST:user1", "XM:user1");
             });
     }
 
     @Test
     public void assertThatEntriesDeleted() {
-        assertThat(onlineUsersService.find()).size().isEqualTo(0);
-        auditEventRepository.add(new AuditEvent(DEFAULT_KEY, AUTHENTICATION_SUCCESS, Collections.emptyMap()));
-        assertThat(onlineUsersService.find().size()).isEqualTo(1);
+        assertThat(onlineUsersService.count()).isEqualTo(0);
+        onlineUsersService.record(DEFAULT_KEY);
+        assertThat(onlineUsersService.count()).isEqualTo(1);
 
         onlineUsersService.delete(DEFAULT_KEY);
-        assertThat(onlineUsersService.find()).size().isEqualTo(0);
+        assertThat(onlineUsersService.count()).isEqualTo(0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void assertThatRecordedEntriesBroadcast() {
+        onlineUsersService.record("user1");
+        onlineUsersService.delete("user2");
+
+        onlineUsersService.broadcast();
+
+        ArgumentCaptor<Object> data = ArgumentCaptor.forClass(Object.class);
+        verify(systemTopicProducer).send(eq(ONLINE_USERS_EVENT_TYPE), eq(Constants.SUPER_TENANT), data.capture());
+        Map<String, Object> event = (Map<String, Object>) data.getValue();
+        assertThat((Map<String, Object>) event.get(SYSTEM_EVENT_PROP_ONLINE))
+            .containsValue(Collections.singletonList("user1"));
+        assertThat((Map<String, Object>) event.get(SYSTEM_EVENT_PROP_OFFLINE))
+            .containsValue(Collections.singletonList("user2"));
+
+        // nothing changed since the previous broadcast
+        onlineUsersService.broadcast();
+        verify(systemTopicProducer).send(anyString(), anyString(), any());
+    }
+
+    @Test
+    public void assertThatBroadcastEntriesMerged() {
+        long minute = Instant.now().getEpochSecond() / 60;
+        Map<String, Object> data = new HashMap<>();
+        data.put(SYSTEM_EVENT_PROP_ONLINE, Collections.singletonMap(String.valueOf(minute),
+            Collections.singletonList("user1")));
+        onlineUsersService.merge(Constants.SUPER_TENANT, data);
+        assertThat(onlineUsersService.find()).containsExactly("user1");
+
+        data.put(SYSTEM_EVENT_PROP_ONLINE, Collections.emptyMap());
+        data.put(SYSTEM_EVENT_PROP_OFFLINE, Collections.singletonMap(String.valueOf(minute),
+            Collections.singletonList("user1")));
+        onlineUsersService.merge(Constants.SUPER_TENANT, data);
+        assertThat(onlineUsersService.count()).isEqualTo(0);
+
+        // a login broadcast before the deletion does not bring the user back
+        data.put(SYSTEM_EVENT_PROP_ONLINE, Collections.singletonMap(String.valueOf(minute),
+            Collections.singletonList("user1")));
+        data.put(SYSTEM_EVENT_PROP_OFFLINE, Collections.emptyMap());
+        onlineUsersService.merge(Constants.SUPER_TENANT, data);
+        assertThat(onlineUsersService.count()).isEqualTo(0);
+
+        // entries merged from the other nodes are not broadcast again
+        onlineUsersService.broadcast();
+        verify(systemTopicProducer, never()).send(anyString(), anyString(), any());
+    }
+
+    @Test
+    public void assertThatLargeChangesBroadcastInParts() {
+        ApplicationProperties splitProperties = new ApplicationProperties();
+        splitProperties.getOnlineUsers().setMaxPrincipalsPerEvent(2);
+        OnlineUsersService node = new OnlineUsersService(tenantContextHolder, tokenConstraintsService,
+            systemTopicProducer, splitProperties);
+        node.record("user1");
+        node.record("user2");
+        node.record("user3");
+
+        node.broadcast();
+
+        verify(systemTopicProducer, times(2)).send(eq(ONLINE_USERS_EVENT_TYPE), eq(Constants.SUPER_TENANT), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void assertThatStartedNodeCatchesUpFromSnapshot() {
+        ApplicationProperties snapshotProperties = new ApplicationProperties();
+        snapshotProperties.getOnlineUsers().setSnapshotIntervalMillis(0);
+        OnlineUsersService runningNode = new OnlineUsersService(tenantContextHolder, tokenConstraintsService,
+            systemTopicProducer, snapshotProperties);
+        runningNode.record("user1");
+        runningNode.broadcast();
+        runningNode.broadcast();
+
+        ArgumentCaptor<Object> data = ArgumentCaptor.forClass(Object.class);
+        verify(systemTopicProducer, times(2))
+            .send(eq(ONLINE_USERS_EVENT_TYPE), eq(Constants.SUPER_TENANT), data.capture());
+        onlineUsersService.merge(Constants.SUPER_TENANT, (Map<String, Object>) data.getAllValues().get(1));
+        assertThat(onlineUsersService.find()).containsExactly("user1");
     }
 }
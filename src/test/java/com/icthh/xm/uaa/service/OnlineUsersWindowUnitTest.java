@@ -0,0 +1,111 @@
+package com.icthh.xm.uaa.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import org.junit.Test;
+
+public class OnlineUsersWindowUnitTest {
+
+    private static final long WINDOW_MINUTES = 10;
+    private static final long MINUTE = 1000;
+
+    @Test
+    public void testPrincipalKeptInLastSeenMinute() {
+        OnlineUsersWindow window = new OnlineUsersWindow(100, WINDOW_MINUTES);
+        window.record("user1", MINUTE, WINDOW_MINUTES);
+        window.record("user1", MINUTE + 5, WINDOW_MINUTES);
+        window.merge("user1", MINUTE + 2);
+
+        assertThat(window.count(MINUTE + 5 + WINDOW_MINUTES, WINDOW_MINUTES)).isEqualTo(1);
+        assertThat(window.count(MINUTE + 6 + WINDOW_MINUTES, WINDOW_MINUTES)).isEqualTo(0);
+    }
+
+    @Test
+    public void testOldestPrincipalsDroppedWhenFull() {
+        OnlineUsersWindow window = new OnlineUsersWindow(2, WINDOW_MINUTES);
+        window.record("user1", MINUTE, WINDOW_MINUTES);
+        window.record("user2", MINUTE + 1, WINDOW_MINUTES);
+        window.record("user3", MINUTE + 2, WINDOW_MINUTES);
+
+        assertThat(window.principals(MINUTE + 2, WINDOW_MINUTES)).containsExactly("user2", "user3");
+    }
+
+    @Test
+    public void testOnlyLocalChangesDrained() {
+        OnlineUsersWindow window = new OnlineUsersWindow(100, WINDOW_MINUTES);
+        window.record("user1", MINUTE, WINDOW_MINUTES);
+        window.merge("user2", MINUTE);
+        window.remove("user3", MINUTE, true);
+        window.remove("user4", MINUTE, false);
+
+        OnlineUsersWindow.Changes changes = window.drainChanges();
+        assertThat(changes.getRecorded()).containsOnlyKeys("user1");
+        assertThat(changes.getRemoved()).containsOnlyKeys("user3");
+        assertThat(window.drainChanges().isEmpty()).isTrue();
+        assertThat(window.count(MINUTE, WINDOW_MINUTES)).isEqualTo(2);
+    }
+
+    @Test
+    public void testSnapshotDrainsAllPrincipals() {
+        OnlineUsersWindow window = new OnlineUsersWindow(100, WINDOW_MINUTES);
+        window.record("user1", MINUTE, WINDOW_MINUTES);
+        window.drainChanges();
+        window.merge("user2", MINUTE + 1);
+        window.remove("user3", MINUTE + 1, true);
+        window.remove("user4", MINUTE + 1, false);
+
+        OnlineUsersWindow.Changes changes = window.drainChanges(true);
+        assertThat(changes.getRecorded()).containsEntry("user1", MINUTE).containsEntry("user2", MINUTE + 1);
+        assertThat(changes.getRemoved()).containsEntry("user3", MINUTE + 1).containsEntry("user4", MINUTE + 1);
+        assertThat(window.drainChanges().isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testChangesSplitIntoParts() {
+        OnlineUsersWindow window = new OnlineUsersWindow(100, WINDOW_MINUTES);
+        window.record("user1", MINUTE, WINDOW_MINUTES);
+        window.record("user2", MINUTE, WINDOW_MINUTES);
+        window.record("user3", MINUTE, WINDOW_MINUTES);
+        window.remove("user4", MINUTE, true);
+
+        List<OnlineUsersWindow.Changes> parts = window.drainChanges().split(3);
+        assertThat(parts).hasSize(2);
+        assertThat(parts.get(0).getRecorded()).containsOnlyKeys("user1", "user2", "user3");
+        assertThat(parts.get(1).getRecorded()).isEmpty();
+        assertThat(parts.get(1).getRemoved()).containsOnlyKeys("user4");
+    }
+
+    @Test
+    public void testRemovedPrincipalNotMergedBack() {
+        OnlineUsersWindow window = new OnlineUsersWindow(100, WINDOW_MINUTES);
+        window.merge("user1", MINUTE);
+        window.remove("user1", MINUTE + 1, false);
+
+        window.merge("user1", MINUTE);
+        window.merge("user1", MINUTE + 1);
+        assertThat(window.count(MINUTE + 1, WINDOW_MINUTES)).isEqualTo(0);
+
+        window.merge("user1", MINUTE + 2);
+        assertThat(window.count(MINUTE + 2, WINDOW_MINUTES)).isEqualTo(1);
+    }
+
+    @Test
+    public void testPrincipalSeenAfterRemovalKept() {
+        OnlineUsersWindow window = new OnlineUsersWindow(100, WINDOW_MINUTES);
+        window.merge("user1", MINUTE + 2);
+        window.remove("user1", MINUTE + 1, false);
+
+        assertThat(window.count(MINUTE + 2, WINDOW_MINUTES)).isEqualTo(1);
+    }
+
+    @Test
+    public void testRemovalForgottenOutsideOfWindow() {
+        OnlineUsersWindow window = new OnlineUsersWindow(100, WINDOW_MINUTES);
+        window.remove("user1", MINUTE, true);
+        window.drainChanges();
+
+        window.expire(MINUTE + WINDOW_MINUTES + 1);
+        assertThat(window.drainChanges(true).getRemoved()).isEmpty();
+    }
+}
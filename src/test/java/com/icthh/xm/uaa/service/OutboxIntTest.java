@@ -0,0 +1,305 @@
+package com.icthh.xm.uaa.service;
+
+import static com.icthh.xm.uaa.UaaTestConstants.DEFAULT_TENANT_KEY_VALUE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.icthh.xm.commons.config.client.repository.TenantListRepository;
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.commons.tenant.TenantContextUtils;
+import com.icthh.xm.commons.tenant.TenantKey;
+import com.icthh.xm.uaa.UaaApp;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import com.icthh.xm.uaa.config.xm.XmOverrideConfiguration;
+import com.icthh.xm.uaa.domain.OutboxMessage;
+import com.icthh.xm.uaa.domain.User;
+import com.icthh.xm.uaa.repository.OutboxMessageRepository;
+import com.icthh.xm.uaa.repository.UserRepository;
+import com.icthh.xm.uaa.repository.kafka.ProfileEventProducer;
+import com.icthh.xm.uaa.service.mail.MailService;
+import com.icthh.xm.uaa.service.mail.UserMailType;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.mail.MailSendException;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+/**
+ * Test class for the OutboxService and the OutboxRelay.
+ *
+ * @see OutboxService
+ * @see OutboxRelay
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {
+    UaaApp.class,
+    XmOverrideConfiguration.class
+})
+public class OutboxIntTest {
+
+    private static final String USER_KEY = "outbox-user";
+    private static final String APPLICATION_URL = "http://localhost:8080";
+    private static final TenantKey TENANT_KEY = TenantKey.valueOf(DEFAULT_TENANT_KEY_VALUE);
+
+    @Autowired
+    private OutboxMessageRepository outboxMessageRepository;
+
+    @Autowired
+    private TenantContextHolder tenantContextHolder;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private MailService mailService;
+
+    @Mock
+    private ProfileEventProducer profileEventProducer;
+
+    @Mock
+    private TenantListRepository tenantListRepository;
+
+    private ApplicationProperties applicationProperties;
+
+    private MetricRegistry metricRegistry;
+
+    private TransactionTemplate transactionTemplate;
+
+    private OutboxService outboxService;
+
+    private OutboxRelay outboxRelay;
+
+    private User user;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        applicationProperties = new ApplicationProperties();
+        applicationProperties.getOutbox().setEnabled(true);
+        metricRegistry = new MetricRegistry();
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        user = new User();
+        user.setUserKey(USER_KEY);
+        when(userRepository.findOneWithLoginsByUserKey(USER_KEY)).thenReturn(Optional.of(user));
+        doReturn(Collections.singleton(DEFAULT_TENANT_KEY_VALUE.toLowerCase())).when(tenantListRepository)
+            .getTenants();
+        SettableListenableFuture<SendResult<String, String>> sent = new SettableListenableFuture<>();
+        sent.set(null);
+        when(profileEventProducer.publish(anyString())).thenReturn(sent);
+        when(mailService.deliverUserMail(any(), any(), any(), any()))
+            .thenReturn(CompletableFuture.completedFuture(null));
+
+        outboxService = new OutboxService(outboxMessageRepository, tenantContextHolder, mailService, objectMapper,
+            applicationProperties);
+        outboxRelay = new OutboxRelay(outboxMessageRepository, userRepository, mailService, profileEventProducer,
+            tenantListRepository, tenantContextHolder, objectMapper, transactionManager, applicationProperties,
+            metricRegistry);
+
+        TenantContextUtils.setTenant(tenantContextHolder, DEFAULT_TENANT_KEY_VALUE);
+        outboxMessageRepository.deleteAll();
+    }
+
+    @After
+    public void tearDown() {
+        TenantContextUtils.setTenant(tenantContextHolder, DEFAULT_TENANT_KEY_VALUE);
+        outboxMessageRepository.deleteAll();
+        tenantContextHolder.getPrivilegedContext().destroyCurrentContext();
+    }
+
+    @Test
+    public void testMessagesSentAfterCommit() {
+        transactionTemplate.execute(status -> {
+            outboxService.add(OutboxMessage.Type.PROFILE_EVENT, "event");
+            outboxService.sendUserMail(UserMailType.ACTIVATION, user, APPLICATION_URL);
+            return null;
+        });
+        verify(mailService, never()).deliverUserMail(UserMailType.ACTIVATION, user, APPLICATION_URL, TENANT_KEY);
+
+        relay();
+
+        verify(profileEventProducer).publish("event");
+        verify(mailService).deliverUserMail(UserMailType.ACTIVATION, user, APPLICATION_URL, TENANT_KEY);
+        assertThat(outboxMessageRepository.findAll()).isEmpty();
+        assertThat(metricRegistry.getMeters().get("outbox.sent").getCount()).isEqualTo(2);
+        assertThat(metricRegistry.getGauges().get("outbox.lag-millis").getValue()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testRolledBackMessagesNotSent() {
+        transactionTemplate.execute(status -> {
+            outboxService.add(OutboxMessage.Type.PROFILE_EVENT, "event");
+            status.setRollbackOnly();
+            return null;
+        });
+
+        relay();
+
+        verify(profileEventProducer, never()).publish(anyString());
+    }
+
+    @Test
+    public void testBatchStoredInCallerTransaction() {
+        transactionTemplate.execute(status -> {
+            outboxService.addAll(OutboxMessage.Type.PROFILE_EVENT, Arrays.asList("event1", "event2"));
+            status.setRollbackOnly();
+            return null;
+        });
+        assertThat(outboxMessageRepository.findAll()).isEmpty();
+
+        transactionTemplate.execute(status -> {
+            outboxService.addAll(OutboxMessage.Type.PROFILE_EVENT, Arrays.asList("event1", "event2"));
+            return null;
+        });
+        relay();
+
+        verify(profileEventProducer).publish("event1");
+        verify(profileEventProducer).publish("event2");
+        assertThat(outboxMessageRepository.findAll()).isEmpty();
+    }
+
+    @Test
+    public void testFailedMessageRetriedWithBackoff() {
+        applicationProperties.getOutbox().setMaxAttempts(2);
+        applicationProperties.getOutbox().setInitialBackoffMillis(0);
+        SettableListenableFuture<SendResult<String, String>> failed = new SettableListenableFuture<>();
+        failed.setException(new IllegalStateException("broker is not available"));
+        when(profileEventProducer.publish(anyString())).thenReturn(failed);
+        outboxService.add(OutboxMessage.Type.PROFILE_EVENT, "event");
+
+        relay();
+
+        List<OutboxMessage> messages = outboxMessageRepository.findAll();
+        assertThat(messages).hasSize(1);
+        assertThat(messages.get(0).getStatus()).isEqualTo(OutboxMessage.Status.PENDING);
+        assertThat(messages.get(0).getAttempts()).isEqualTo(1);
+        assertThat(messages.get(0).getLastError()).contains("broker is not available");
+        assertThat(metricRegistry.getMeters().get("outbox.retried").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.getGauges().get("outbox.lag-millis").getValue()).isNotNull();
+
+        relay();
+
+        verify(profileEventProducer, times(2)).publish("event");
+        messages = outboxMessageRepository.findAll();
+        assertThat(messages.get(0).getStatus()).isEqualTo(OutboxMessage.Status.FAILED);
+        assertThat(metricRegistry.getMeters().get("outbox.failed").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testFailedMailRetried() {
+        when(mailService.deliverUserMail(UserMailType.ACTIVATION, user, APPLICATION_URL, TENANT_KEY))
+            .thenReturn(CompletableFuture.failedFuture(new MailSendException("mail server is not available")));
+        outboxService.sendUserMail(UserMailType.ACTIVATION, user, APPLICATION_URL);
+
+        relay();
+
+        List<OutboxMessage> messages = outboxMessageRepository.findAll();
+        assertThat(messages).hasSize(1);
+        assertThat(messages.get(0).getAttempts()).isEqualTo(1);
+        assertThat(messages.get(0).getLastError()).contains("mail server is not available");
+    }
+
+    @Test
+    public void testMailsBeyondTenantRateLeftToNextBatch() {
+        // one mail within the send timeout
+        applicationProperties.getMail().getTenantRatePerSecond().put(DEFAULT_TENANT_KEY_VALUE, 0.04);
+        outboxService.sendUserMail(UserMailType.ACTIVATION, user, APPLICATION_URL);
+        outboxService.sendUserMail(UserMailType.PASSWORD_RESET, user, APPLICATION_URL);
+
+        relay();
+
+        verify(mailService).deliverUserMail(UserMailType.ACTIVATION, user, APPLICATION_URL, TENANT_KEY);
+        verify(mailService, never()).deliverUserMail(UserMailType.PASSWORD_RESET, user, APPLICATION_URL, TENANT_KEY);
+        List<OutboxMessage> messages = outboxMessageRepository.findAll();
+        assertThat(messages).hasSize(1);
+        assertThat(messages.get(0).getAttempts()).isEqualTo(0);
+
+        relay();
+
+        verify(mailService).deliverUserMail(UserMailType.PASSWORD_RESET, user, APPLICATION_URL, TENANT_KEY);
+        assertThat(outboxMessageRepository.findAll()).isEmpty();
+    }
+
+    @Test
+    public void testFailedMessageNotRetriedBeforeBackoff() {
+        SettableListenableFuture<SendResult<String, String>> failed = new SettableListenableFuture<>();
+        failed.setException(new IllegalStateException("broker is not available"));
+        when(profileEventProducer.publish(anyString())).thenReturn(failed);
+        outboxService.add(OutboxMessage.Type.PROFILE_EVENT, "event");
+
+        relay();
+        relay();
+
+        verify(profileEventProducer).publish("event");
+        assertThat(outboxMessageRepository.findAll().get(0).getNextAttemptAt()).isAfter(Instant.now());
+    }
+
+    @Test
+    public void testMessageClaimedWhileSent() {
+        AtomicReference<Instant> nextAttemptAt = new AtomicReference<>();
+        when(mailService.deliverUserMail(UserMailType.ACTIVATION, user, APPLICATION_URL, TENANT_KEY))
+            .thenAnswer(invocation -> {
+                nextAttemptAt.set(outboxMessageRepository.findAll().get(0).getNextAttemptAt());
+                return CompletableFuture.completedFuture(null);
+            });
+        outboxService.sendUserMail(UserMailType.ACTIVATION, user, APPLICATION_URL);
+
+        relay();
+
+        // the claim is committed before the mail is sent, so that the other nodes skip the message
+        assertThat(nextAttemptAt.get()).isAfter(Instant.now());
+        assertThat(outboxMessageRepository.findAll()).isEmpty();
+    }
+
+    @Test
+    public void testBatchesOfTenantCappedPerRelay() {
+        applicationProperties.getOutbox().setBatchSize(1);
+        applicationProperties.getOutbox().setMaxBatchesPerRelay(2);
+        outboxService.addAll(OutboxMessage.Type.PROFILE_EVENT, Arrays.asList("event1", "event2", "event3"));
+
+        relay();
+
+        verify(profileEventProducer, times(2)).publish(anyString());
+        assertThat(outboxMessageRepository.findAll()).hasSize(1);
+
+        relay();
+
+        verify(profileEventProducer).publish("event3");
+        assertThat(outboxMessageRepository.findAll()).isEmpty();
+    }
+
+    private void relay() {
+        outboxRelay.relay();
+        TenantContextUtils.setTenant(tenantContextHolder, DEFAULT_TENANT_KEY_VALUE);
+    }
+}
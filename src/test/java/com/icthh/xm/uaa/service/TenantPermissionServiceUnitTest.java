@@ -1,5 +1,6 @@
 package com.icthh.xm.uaa.service;
 
+import com.codahale.metrics.MetricRegistry;
 import com.icthh.xm.commons.permission.config.PermissionProperties;
 import com.icthh.xm.commons.permission.service.PermissionMappingService;
 import com.icthh.xm.commons.permission.service.filter.EqualsOrNullPermissionMsNameFilter;
@@ -7,6 +8,7 @@ import com.icthh.xm.commons.permission.service.filter.PermissionMsNameFilter;
 import com.icthh.xm.commons.tenant.TenantContext;
 import com.icthh.xm.commons.tenant.TenantContextHolder;
 import com.icthh.xm.commons.tenant.TenantKey;
+import com.icthh.xm.uaa.config.ApplicationProperties;
 import com.icthh.xm.uaa.service.dto.AccPermissionDTO;
 import java.util.stream.Collectors;
 import org.junit.Before;
@@ -53,6 +55,12 @@ public class TenantPermissionServiceUnitTest {
     @Spy
     private PermissionMappingService permissionMappingService = new PermissionMappingService(filter);
 
+    @Spy
+    private ApplicationProperties applicationProperties = new ApplicationProperties();
+
+    @Spy
+    private MetricRegistry metricRegistry = new MetricRegistry();
+
     @Before
     public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
@@ -120,5 +128,21 @@ public class TenantPermissionServiceUnitTest {
 
     }
 
-}
+    @Test
+    public void testRolesUnionIsCachedUntilRefresh() {
+
+        service.onInit(XM_PERMISSIONS, readConfigFile(XM_PERMISSIONS));
 
+        List<AccPermissionDTO> union = service.getEnabledPermissionByRole(List.of(ROLE_ANONYMOUS, ROLE_ADMIN));
+
+        assertEquals(service.getEnabledPermissionByRole(List.of(ROLE_ADMIN)).size()
+                     + service.getEnabledPermissionByRole(List.of(ROLE_ANONYMOUS)).size(), union.size());
+        assertSame(union, service.getEnabledPermissionByRole(List.of(ROLE_ADMIN, ROLE_ANONYMOUS, ROLE_ADMIN)));
+        assertEquals(1L, metricRegistry.getGauges().get("permission.union.cache.hit").getValue());
+
+        service.onRefresh(XM_PERMISSIONS, "");
+
+        assertTrue(service.getEnabledPermissionByRole(List.of(ROLE_ADMIN, ROLE_ANONYMOUS)).isEmpty());
+    }
+
+}
@@ -2,6 +2,7 @@ package com.icthh.xm.uaa.service;
 
 import com.icthh.xm.commons.config.client.repository.CommonConfigRepository;
 import com.icthh.xm.commons.config.client.repository.TenantConfigRepository;
+import com.icthh.xm.commons.exceptions.BusinessException;
 import com.icthh.xm.commons.permission.config.PermissionProperties;
 import com.icthh.xm.commons.permission.service.PermissionMappingService;
 import com.icthh.xm.commons.security.XmAuthenticationContext;
@@ -14,11 +15,13 @@ import com.icthh.xm.uaa.repository.ClientRepository;
 import com.icthh.xm.uaa.repository.UserRepository;
 import com.icthh.xm.uaa.service.dto.PermissionDTO;
 import com.icthh.xm.uaa.service.dto.RoleDTO;
+import com.icthh.xm.uaa.service.dto.RoleMatrixChangeDTO;
 import com.icthh.xm.uaa.service.dto.RoleMatrixDTO;
 import java.util.List;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -31,7 +34,6 @@ import java.util.Optional;
 import static com.icthh.xm.commons.permission.constants.RoleConstant.SUPER_ADMIN;
 import static com.icthh.xm.uaa.utils.FileUtil.getSingleConfigMap;
 import static com.icthh.xm.uaa.utils.FileUtil.readConfigFile;
-import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
@@ -191,18 +193,11 @@ public class TenantRoleServiceUnitTest {
         assertFalse(tenantRoleService.getRole(roleKey).isPresent());
 
         // privileges.yml exists
-        when(tenantConfigRepository.getConfigFullPath(XM_TENANT, ROLES_PATH)).thenReturn("");
-        when(tenantConfigRepository.getConfigFullPath(XM_TENANT, PERMISSIONS_PATH)).thenReturn("");
-        when(commonConfigRepository.getConfig(isNull(), eq(singletonList(privilegesPath))))
-            .thenReturn(getSingleConfigMap(privilegesPath, readConfigFile("/config/tenants/privileges.yml")));
+        tenantRoleService.onRefresh(privilegesPath, readConfigFile("/config/tenants/privileges.yml"));
         assertFalse(tenantRoleService.getRole(roleKey).isPresent());
 
         // roles.yml and privileges.yml exist
-        when(tenantConfigRepository.getConfigFullPath(XM_TENANT, ROLES_PATH))
-            .thenReturn(readConfigFile("/config/tenants/XM/roles.yml"));
-        when(tenantConfigRepository.getConfigFullPath(XM_TENANT, PERMISSIONS_PATH)).thenReturn("");
-        when(commonConfigRepository.getConfig(isNull(), eq(singletonList(privilegesPath))))
-            .thenReturn(getSingleConfigMap(privilegesPath, readConfigFile("/config/tenants/privileges.yml")));
+        tenantRoleService.onRefresh("/config/tenants/XM/roles.yml", readConfigFile("/config/tenants/XM/roles.yml"));
         Optional<RoleDTO> role = tenantRoleService.getRole(roleKey);
         log.info("ROLE DTO = {}", role);
         assertTrue(role.isPresent());
@@ -210,12 +205,8 @@ public class TenantRoleServiceUnitTest {
         assertTrue(role.get().getPermissions().stream().noneMatch(PermissionDTO::isEnabled));
 
         // roles, privileges and permissions exists
-        when(tenantConfigRepository.getConfigFullPath(XM_TENANT, ROLES_PATH))
-            .thenReturn(readConfigFile("/config/tenants/XM/roles.yml"));
-        when(tenantConfigRepository.getConfigFullPath(XM_TENANT, PERMISSIONS_PATH))
-            .thenReturn(readConfigFile("/config/tenants/XM/permissions.yml"));
-        when(commonConfigRepository.getConfig(isNull(), eq(singletonList(privilegesPath))))
-            .thenReturn(getSingleConfigMap(privilegesPath, readConfigFile("/config/tenants/privileges.yml")));
+        tenantRoleService.onRefresh("/config/tenants/XM/permissions.yml",
+            readConfigFile("/config/tenants/XM/permissions.yml"));
         role = tenantRoleService.getRole(roleKey);
         log.info("ROLE DTO = {}", role);
         assertTrue(role.isPresent());
@@ -311,6 +302,93 @@ public class TenantRoleServiceUnitTest {
             permission.getDescription().equals("Privilege to get custom privilege")));
     }
 
+    @Test
+    public void testRoleMatrixIsServedFromSnapshot() {
+        mockCustomPrivileges();
+
+        tenantRoleService.getRoleMatrix();
+        RoleMatrixDTO roleMatrix = tenantRoleService.getRoleMatrix();
+
+        assertRoles(roleMatrix);
+        verify(tenantConfigRepository).getConfigFullPath(XM_TENANT, ROLES_PATH);
+        verify(tenantConfigRepository).getConfigFullPath(XM_TENANT, CUSTOM_PRIVILEGES_PATH);
+        verify(commonConfigRepository).getConfig(isNull(), anyList());
+
+        tenantRoleService.onRefresh("/config/tenants/XM/roles.yml", "ROLE_USER:\n  description: test\n");
+
+        assertEquals(singletonList("ROLE_USER"), List.copyOf(tenantRoleService.getRoleMatrix().getRoles()));
+        verify(tenantConfigRepository).getConfigFullPath(XM_TENANT, ROLES_PATH);
+    }
+
+    @Test
+    public void testPatchRoleMatrixAppliesOnlyChangedCells() {
+        mockCustomPrivileges();
+        when(tenantConfigRepository.getConfigFullPath(XM_TENANT, PERMISSIONS_PATH))
+            .thenReturn(readConfigFile("/config/tenants/XM/permissions.yml"));
+        when(tenantPropertiesService.getTenantProps()).thenReturn(new TenantProperties());
+
+        List<RoleMatrixChangeDTO> applied = tenantRoleService.patchRoleMatrix(List.of(
+            new RoleMatrixChangeDTO("uaa", "ATTACHMENT.CREATE", "ROLE_ADMIN", true),
+            new RoleMatrixChangeDTO("uaa", "ATTACHMENT.DELETE", "ROLE_USER", false),
+            new RoleMatrixChangeDTO("uaa", "ATTACHMENT.DELETE", "ROLE_ADMIN", true)));
+
+        assertEquals(singletonList(new RoleMatrixChangeDTO("uaa", "ATTACHMENT.DELETE", "ROLE_ADMIN", true)), applied);
+        verify(tenantConfigRepository).updateConfigFullPath(eq(XM_TENANT), eq(PERMISSIONS_PATH), anyString());
+
+        RoleMatrixDTO roleMatrix = tenantRoleService.getRoleMatrix();
+        assertTrue(roleMatrix.getPermissions().stream().anyMatch(permission ->
+            permission.getPrivilegeKey().equals("ATTACHMENT.DELETE") && permission.getRoles().contains("ROLE_ADMIN")));
+        // the snapshot and the write start from the config service
+        verify(tenantConfigRepository, times(2)).getConfigFullPath(XM_TENANT, PERMISSIONS_PATH);
+    }
+
+    @Test
+    public void testPatchRoleMatrixKeepsPermissionsChangedAfterRefresh() {
+        mockCustomPrivileges();
+        when(tenantConfigRepository.getConfigFullPath(XM_TENANT, PERMISSIONS_PATH))
+            .thenReturn(readConfigFile("/config/tenants/XM/permissions.yml"));
+        when(tenantPropertiesService.getTenantProps()).thenReturn(new TenantProperties());
+        tenantRoleService.getRoleMatrix();
+
+        // changed by another node, not refreshed on this one yet
+        when(tenantConfigRepository.getConfigFullPath(XM_TENANT, PERMISSIONS_PATH))
+            .thenReturn(readConfigFile("/config/tenants/XM/permissions.yml")
+                + "\n  ROLE_USER:\n  - privilegeKey: \"ATTACHMENT.CREATE\"\n    disabled: false\n");
+
+        tenantRoleService.patchRoleMatrix(List.of(
+            new RoleMatrixChangeDTO("uaa", "ATTACHMENT.DELETE", "ROLE_ADMIN", true)));
+
+        ArgumentCaptor<String> permissionsYml = ArgumentCaptor.forClass(String.class);
+        verify(tenantConfigRepository).updateConfigFullPath(eq(XM_TENANT), eq(PERMISSIONS_PATH),
+            permissionsYml.capture());
+        assertTrue(permissionsYml.getValue().contains("ROLE_USER"));
+        assertTrue(tenantRoleService.getRoleMatrix().getPermissions().stream().anyMatch(permission ->
+            permission.getPrivilegeKey().equals("ATTACHMENT.CREATE") && permission.getRoles().contains("ROLE_USER")));
+    }
+
+    @Test(expected = BusinessException.class)
+    public void testPatchRoleMatrixRejectsUnknownPrivilege() {
+        mockCustomPrivileges();
+        when(tenantConfigRepository.getConfigFullPath(XM_TENANT, PERMISSIONS_PATH))
+            .thenReturn(readConfigFile("/config/tenants/XM/permissions.yml"));
+
+        tenantRoleService.patchRoleMatrix(List.of(
+            new RoleMatrixChangeDTO("uaa", "UNKNOWN.PRIVILEGE", "ROLE_ADMIN", true)));
+    }
+
+    @Test
+    public void testPatchRoleMatrixWithoutChangesDoesNotWrite() {
+        mockCustomPrivileges();
+        when(tenantConfigRepository.getConfigFullPath(XM_TENANT, PERMISSIONS_PATH))
+            .thenReturn(readConfigFile("/config/tenants/XM/permissions.yml"));
+
+        List<RoleMatrixChangeDTO> applied = tenantRoleService.patchRoleMatrix(List.of(
+            new RoleMatrixChangeDTO("uaa", "ATTACHMENT.CREATE", "ROLE_ADMIN", true)));
+
+        assertTrue(applied.isEmpty());
+        verify(tenantConfigRepository, never()).updateConfigFullPath(anyString(), anyString(), anyString());
+    }
+
     private void mockPrivileges() {
         String privilegesPath = "/config/tenants/privileges.yml";
 
@@ -387,8 +465,8 @@ public class TenantRoleServiceUnitTest {
         when(tenantPropertiesService.getTenantProps()).thenReturn(tenantProperties);
         when(tenantConfigRepository.getConfigFullPath(XM_TENANT, PERMISSIONS_PATH))
             .thenReturn(readConfigFile("/config/tenants/XM/permissions_removeDefault_init.yml"));
-        when(userRepository.findByRoleKey(MOCK_ROLE)).thenReturn(emptyList());
-        when(clientRepository.findByRoleKey(MOCK_ROLE)).thenReturn(emptyList());
+        when(userRepository.existsByRoleKey(MOCK_ROLE)).thenReturn(false);
+        when(clientRepository.existsByRoleKey(MOCK_ROLE)).thenReturn(false);
 
         tenantRoleService.deleteRole(MOCK_ROLE);
 
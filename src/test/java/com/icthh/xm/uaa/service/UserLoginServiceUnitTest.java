@@ -34,6 +34,7 @@ public class UserLoginServiceUnitTest {
         testedInstance.normalizeLogins(List.of(login));
 
         assertThat(login.getLogin()).isEqualTo("login");
+        assertThat(login.getNormalizedLogin()).isEqualTo("login");
     }
 
     @Test
@@ -43,6 +44,7 @@ public class UserLoginServiceUnitTest {
         testedInstance.normalizeLogins(List.of(login));
 
         assertThat(login.getLogin()).isEqualTo("login");
+        assertThat(login.getNormalizedLogin()).isEqualTo("login");
     }
 
     @Test(expected = BusinessException.class)
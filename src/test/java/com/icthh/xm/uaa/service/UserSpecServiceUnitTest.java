@@ -0,0 +1,75 @@
+package com.icthh.xm.uaa.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.github.fge.jsonschema.main.JsonSchema;
+import com.icthh.xm.commons.tenant.TenantContextHolder;
+import com.icthh.xm.commons.tenant.TenantContextUtils;
+import com.icthh.xm.commons.tenant.internal.DefaultTenantContextHolder;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UserSpecServiceUnitTest {
+
+    private static final String CONFIG_KEY = "/config/tenants/XM/uaa/uaa.yml";
+    private static final String ROLE_USER = "ROLE_USER";
+    private static final String CONFIG = "userSpec:\n"
+        + "  - roleKey: ROLE_USER\n"
+        + "    dataSpec: '{\"type\": \"object\", \"properties\": {\"stringKey\": {\"type\": \"string\"}}}'\n"
+        + "  - roleKey: ROLE_ADMIN\n"
+        + "    dataSpec: '{\"type\": \"object\"}'\n";
+
+    private final TenantContextHolder tenantContextHolder = new DefaultTenantContextHolder();
+
+    private UserSpecService userSpecService;
+
+    @Before
+    public void before() {
+        TenantContextUtils.setTenant(tenantContextHolder, "XM");
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setTenantPropertiesPathPattern("/config/tenants/{tenantName}/uaa/uaa.yml");
+        userSpecService = new UserSpecService(applicationProperties, tenantContextHolder);
+    }
+
+    @After
+    public void after() {
+        tenantContextHolder.getPrivilegedContext().destroyCurrentContext();
+    }
+
+    @Test
+    public void testDataSchemasAreCompiledOnRefresh() {
+        userSpecService.onRefresh(CONFIG_KEY, CONFIG);
+
+        List<JsonSchema> schemas = userSpecService.getDataSchemas(List.of(ROLE_USER, "ROLE_UNKNOWN"));
+
+        assertEquals(1, schemas.size());
+        assertSame(schemas.get(0), userSpecService.getDataSchemas(List.of(ROLE_USER)).get(0));
+        assertEquals(2, userSpecService.getDataSchemas(List.of(ROLE_USER, "ROLE_ADMIN")).size());
+    }
+
+    @Test
+    public void testInvalidSchemaKeepsPreviousSpecification() {
+        userSpecService.onRefresh(CONFIG_KEY, CONFIG);
+        JsonSchema schema = userSpecService.getDataSchemas(List.of(ROLE_USER)).get(0);
+
+        userSpecService.onRefresh(CONFIG_KEY, "userSpec:\n  - roleKey: ROLE_USER\n    dataSpec: '{'\n");
+
+        assertSame(schema, userSpecService.getDataSchemas(List.of(ROLE_USER)).get(0));
+        assertEquals(2, userSpecService.getUserSpec(List.of(ROLE_USER, "ROLE_ADMIN")).size());
+    }
+
+    @Test
+    public void testBlankConfigRemovesSpecification() {
+        userSpecService.onRefresh(CONFIG_KEY, CONFIG);
+
+        userSpecService.onRefresh(CONFIG_KEY, "");
+
+        assertTrue(userSpecService.getDataSchemas(List.of(ROLE_USER)).isEmpty());
+        assertTrue(userSpecService.getUserSpec(List.of(ROLE_USER)).isEmpty());
+    }
+}
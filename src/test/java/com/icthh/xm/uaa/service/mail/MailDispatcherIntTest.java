@@ -0,0 +1,180 @@
+package com.icthh.xm.uaa.service.mail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.codahale.metrics.MetricRegistry;
+import com.icegreen.greenmail.junit.GreenMailRule;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.mail.internet.MimeMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+
+/**
+ * Test class for the MailDispatcher against a local SMTP server.
+ *
+ * @see MailDispatcher
+ */
+public class MailDispatcherIntTest {
+
+    private static final long WAIT_SECONDS = 30;
+    private static final String SLOW_TENANT = "SLOW";
+    private static final String FAST_TENANT = "FAST";
+
+    @Rule
+    public final GreenMailRule greenMail = new GreenMailRule(ServerSetupTest.SMTP);
+
+    private ApplicationProperties applicationProperties;
+
+    private MetricRegistry metricRegistry;
+
+    private JavaMailSenderImpl javaMailSender;
+
+    private MailDispatcher mailDispatcher;
+
+    @Before
+    public void setup() {
+        applicationProperties = new ApplicationProperties();
+        applicationProperties.getMail().setSenderThreads(1);
+        applicationProperties.getMail().setBatchSize(10);
+        applicationProperties.getMail().setRatePerSecond(0);
+        metricRegistry = new MetricRegistry();
+
+        javaMailSender = new JavaMailSenderImpl();
+        javaMailSender.setHost("localhost");
+        javaMailSender.setPort(ServerSetupTest.SMTP.getPort());
+    }
+
+    @After
+    public void tearDown() {
+        if (mailDispatcher != null) {
+            mailDispatcher.stop();
+        }
+    }
+
+    @Test
+    public void testMailsSentOverPooledConnection() throws Exception {
+        startDispatcher();
+
+        awaitAll(send(FAST_TENANT, 25));
+        awaitAll(send(FAST_TENANT, 25));
+
+        assertThat(greenMail.getReceivedMessages()).hasSize(50);
+        assertThat(metricRegistry.getTimers().get("mail.dispatcher.connect-time").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.getTimers().get("mail.dispatcher.send-time").getCount()).isEqualTo(50);
+        assertThat(metricRegistry.getMeters().get("mail.dispatcher.sent").getCount()).isEqualTo(50);
+    }
+
+    @Test
+    public void testTenantRateCap() throws Exception {
+        applicationProperties.getMail().getTenantRatePerSecond().put(SLOW_TENANT, 10.0);
+        startDispatcher();
+
+        List<CompletableFuture<Void>> slow = send(SLOW_TENANT, 11);
+        CompletableFuture<Void> fast = send(FAST_TENANT, 1).get(0);
+
+        fast.get(WAIT_SECONDS, TimeUnit.SECONDS);
+        assertThat(slow.get(slow.size() - 1)).isNotDone();
+
+        long start = System.nanoTime();
+        awaitAll(slow);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThan(500);
+        assertThat(greenMail.getReceivedMessages()).hasSize(12);
+        assertThat(metricRegistry.getMeters().get("mail.dispatcher.throttled").getCount()).isEqualTo(10);
+    }
+
+    @Test
+    public void testThrottledMailsDoNotFillQueueOfOtherTenants() throws Exception {
+        applicationProperties.getMail().setQueueCapacity(2);
+        applicationProperties.getMail().setTenantQueueCapacity(3);
+        applicationProperties.getMail().setBlockTimeoutMillis(100);
+        applicationProperties.getMail().getTenantRatePerSecond().put(SLOW_TENANT, 1.0);
+        startDispatcher();
+
+        List<CompletableFuture<Void>> slow = send(SLOW_TENANT, 5);
+        List<CompletableFuture<Void>> fast = send(FAST_TENANT, 2);
+
+        awaitAll(fast);
+        assertThatThrownBy(() -> slow.get(4).get(WAIT_SECONDS, TimeUnit.SECONDS))
+            .isInstanceOf(ExecutionException.class)
+            .hasCauseInstanceOf(MailSendException.class);
+        awaitAll(slow.subList(0, 4));
+        assertThat(greenMail.getReceivedMessages()).hasSize(6);
+        assertThat(metricRegistry.getMeters().get("mail.dispatcher.rejected").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.getMeters().get("mail.dispatcher.throttled").getCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void testQueuedMailCancelled() throws Exception {
+        applicationProperties.getMail().getTenantRatePerSecond().put(SLOW_TENANT, 1.0);
+        startDispatcher();
+
+        List<CompletableFuture<Void>> slow = send(SLOW_TENANT, 2);
+        slow.get(0).get(WAIT_SECONDS, TimeUnit.SECONDS);
+
+        assertThat(slow.get(0).cancel(false)).isFalse();
+        assertThat(slow.get(1).cancel(false)).isTrue();
+        assertThat(slow.get(1)).isCancelled();
+        assertThat(metricRegistry.getGauges().get("mail.dispatcher.queue-size").getValue()).isEqualTo(0);
+        assertThat(greenMail.getReceivedMessages()).hasSize(1);
+    }
+
+    @Test
+    public void testMailFailsWhenServerIsDown() throws Exception {
+        startDispatcher();
+        greenMail.stop();
+
+        CompletableFuture<Void> result = send(FAST_TENANT, 1).get(0);
+
+        assertThatThrownBy(() -> result.get(WAIT_SECONDS, TimeUnit.SECONDS))
+            .isInstanceOf(ExecutionException.class)
+            .hasCauseInstanceOf(MailSendException.class);
+        assertThat(metricRegistry.getMeters().get("mail.dispatcher.failed").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testMailSentByCallerWhenNotAsync() throws Exception {
+        applicationProperties.getMail().setAsync(false);
+        startDispatcher();
+
+        CompletableFuture<Void> result = send(FAST_TENANT, 1).get(0);
+
+        assertThat(result).isDone();
+        result.get();
+        assertThat(greenMail.getReceivedMessages()).hasSize(1);
+    }
+
+    private void startDispatcher() {
+        mailDispatcher = new MailDispatcher(applicationProperties, metricRegistry);
+        mailDispatcher.start();
+    }
+
+    private List<CompletableFuture<Void>> send(String tenantKey, int count) throws Exception {
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            MimeMessage mimeMessage = javaMailSender.createMimeMessage();
+            MimeMessageHelper message = new MimeMessageHelper(mimeMessage, false, "UTF-8");
+            message.setTo("user" + i + "@xm-online.com");
+            message.setFrom(tenantKey.toLowerCase() + "@xm-online.com");
+            message.setSubject("Mail " + i);
+            message.setText("<p>Mail " + i + "</p>", true);
+            results.add(mailDispatcher.send(tenantKey, javaMailSender, mimeMessage));
+        }
+        return results;
+    }
+
+    private static void awaitAll(List<CompletableFuture<Void>> results) throws Exception {
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(WAIT_SECONDS, TimeUnit.SECONDS);
+    }
+}
@@ -1,5 +1,6 @@
 package com.icthh.xm.uaa.service.mail;
 
+import com.codahale.metrics.MetricRegistry;
 import com.icthh.xm.commons.config.client.service.TenantConfigService;
 import com.icthh.xm.commons.i18n.spring.service.LocalizationMessageService;
 import com.icthh.xm.commons.logging.util.MdcUtils;
@@ -8,11 +9,11 @@ import com.icthh.xm.commons.tenant.TenantContextHolder;
 import com.icthh.xm.commons.tenant.TenantContextUtils;
 import com.icthh.xm.commons.tenant.TenantKey;
 import com.icthh.xm.uaa.UaaApp;
+import com.icthh.xm.uaa.config.ApplicationProperties;
 import com.icthh.xm.uaa.config.xm.XmOverrideConfiguration;
 import com.icthh.xm.uaa.domain.User;
 import com.icthh.xm.uaa.domain.UserLogin;
 import com.icthh.xm.uaa.domain.UserLoginType;
-import freemarker.template.Configuration;
 import io.github.jhipster.config.JHipsterProperties;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.After;
@@ -63,9 +64,6 @@ public class MailServiceIntTest {
     @Autowired
     private MessageSource messageSource;
 
-    @Autowired
-    private Configuration freeMarker;
-
     @Autowired
     private TenantEmailTemplateService tenantEmailTemplateService;
 
@@ -103,8 +101,9 @@ public class MailServiceIntTest {
 
         doNothing().when(javaMailSender).send(any(MimeMessage.class));
         mailService = new MailService(jHipsterProperties, mailProviderService, messageSource,
-                                      tenantEmailTemplateService, freeMarker, tenantContextHolder,
-                                      tenantConfigService, localizationMessageService);
+                                      tenantEmailTemplateService, tenantContextHolder,
+                                      tenantConfigService, localizationMessageService,
+                                      new MailDispatcher(new ApplicationProperties(), new MetricRegistry()));
     }
 
     @After
@@ -114,7 +113,7 @@ public class MailServiceIntTest {
 
     @Test
     public void testSendEmail() throws Exception {
-        mailService.sendEmail("john.doe@example.com",
+        mailService.sendEmail(TEST_TENANT_KEY, "john.doe@example.com",
                               "testSubject",
                               "testContent",
                               TEST_TENANT_KEY.getValue() + EMAIL_SUFFIX,
@@ -131,8 +130,8 @@ public class MailServiceIntTest {
 
     @Test
     public void testSendHtmlEmail() throws Exception {
-        mailService.sendEmail("john.doe@example.com", "testSubject", "testContent", "test@xm-online.com",
-                              javaMailSender);
+        mailService.sendEmail(TEST_TENANT_KEY, "john.doe@example.com", "testSubject", "testContent",
+                              "test@xm-online.com", javaMailSender);
         verify(javaMailSender).send((MimeMessage) messageCaptor.capture());
         MimeMessage message = (MimeMessage) messageCaptor.getValue();
         assertThat(message.getSubject()).isEqualTo("testSubject");
@@ -247,7 +246,7 @@ public class MailServiceIntTest {
     @Test
     public void testSendEmailWithException() {
         doThrow(MailSendException.class).when(javaMailSender).send(any(MimeMessage.class));
-        mailService.sendEmail("john.doe@example.com",
+        mailService.sendEmail(TEST_TENANT_KEY, "john.doe@example.com",
                               "testSubject",
                               "testContent",
                               TEST_TENANT_KEY.getValue() + EMAIL_SUFFIX,
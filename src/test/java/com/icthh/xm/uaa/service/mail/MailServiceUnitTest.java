@@ -1,13 +1,16 @@
 package com.icthh.xm.uaa.service.mail;
 
+import com.codahale.metrics.MetricRegistry;
 import com.icthh.xm.commons.config.client.service.TenantConfigService;
 import com.icthh.xm.commons.i18n.spring.service.LocalizationMessageService;
 import com.icthh.xm.commons.mail.provider.MailProviderService;
 import com.icthh.xm.commons.tenant.PrivilegedTenantContext;
 import com.icthh.xm.commons.tenant.TenantContextHolder;
 import com.icthh.xm.commons.tenant.TenantKey;
+import com.icthh.xm.uaa.config.ApplicationProperties;
 import com.icthh.xm.uaa.domain.User;
 import freemarker.template.Configuration;
+import freemarker.template.Template;
 import lombok.SneakyThrows;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -70,6 +73,8 @@ public class MailServiceUnitTest {
     private MessageSource messageSource;
     @Mock
     private TenantContextHolder tenantContextHolder;
+    @Spy
+    private MailDispatcher mailDispatcher = new MailDispatcher(new ApplicationProperties(), new MetricRegistry());
 
     @Test
     @SneakyThrows
@@ -99,10 +104,13 @@ public class MailServiceUnitTest {
         verify(javaMailSender).send(mock);
     }
 
+    @SneakyThrows
     private MimeMessage sendEmail() {
         when(tenantContextHolder.getPrivilegedContext()).thenReturn(mock(PrivilegedTenantContext.class));
         when(messageSource.getMessage(MOCK_SUBJECT, null, forLanguageTag("fr"))).thenReturn(MOCK_SUBJECT);
-        when(tenantEmailTemplateService.getEmailTemplate(TENANT_KEY + "/" + FRANCE.getLanguage() + "/" + EMAIL_TEMPLATE)).thenReturn(TEST_TEMPLATE_CONTENT);
+        String templateKey = TENANT_KEY + "/" + FRANCE.getLanguage() + "/" + EMAIL_TEMPLATE;
+        when(tenantEmailTemplateService.getTemplate(templateKey))
+            .thenReturn(new Template(templateKey, TEST_TEMPLATE_CONTENT, freeMarkerConfiguration));
         MimeMessage mock = mock(MimeMessage.class);
         when(javaMailSender.createMimeMessage()).thenReturn(mock);
 
@@ -262,6 +270,28 @@ public class MailServiceUnitTest {
         verify(javaMailSender).send(mock);
     }
 
+    @Test
+    @SneakyThrows
+    public void testRefreshedConfiguration() {
+        when(tenantConfigService.getConfig()).thenReturn(
+            of(MAIL_SETTINGS, singletonList(of(
+                TEMPLATE_NAME, "EMAIL_TEMPLATE",
+                SUBJECT, of(FRANCE.getLanguage(), "otherSubject")
+            )))
+        );
+        sendEmail();
+
+        when(tenantConfigService.getConfig()).thenReturn(
+            of(MAIL_SETTINGS, singletonList(of(
+                TEMPLATE_NAME, "EMAIL_TEMPLATE",
+                SUBJECT, of(FRANCE.getLanguage(), "refreshedSubject")
+            )))
+        );
+        MimeMessage mock = sendEmail();
+
+        verify(mock).setSubject(eq("refreshedSubject"), eq("UTF-8"));
+    }
+
     @Test
     @SneakyThrows
     public void testSubjectAndFromConfiguration() {
@@ -0,0 +1,64 @@
+package com.icthh.xm.uaa.service.mail;
+
+import com.icthh.xm.uaa.config.ApplicationProperties;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.ui.freemarker.FreeMarkerTemplateUtils;
+
+import static java.util.Collections.singletonMap;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TenantEmailTemplateServiceUnitTest {
+
+    private static final String PATH = "/config/tenants/XM/uaa/emails/en/tfaOtpEmail.ftl";
+    private static final String TEMPLATE_KEY = "XM/en/tfaOtpEmail";
+
+    private TenantEmailTemplateService tenantEmailTemplateService;
+
+    @Before
+    public void setup() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setEmailPathPattern("/config/tenants/{tenantName}/uaa/emails/{langKey}/{fileName}.ftl");
+        tenantEmailTemplateService = new TenantEmailTemplateService(applicationProperties,
+            new Configuration(Configuration.VERSION_2_3_0));
+    }
+
+    @Test
+    public void testCompiledTemplateReused() throws Exception {
+        tenantEmailTemplateService.onRefresh(PATH, "Your code is ${otp}");
+
+        Template template = tenantEmailTemplateService.getTemplate(TEMPLATE_KEY);
+
+        assertThat(tenantEmailTemplateService.getTemplate(TEMPLATE_KEY)).isSameAs(template);
+        assertThat(FreeMarkerTemplateUtils.processTemplateIntoString(template, singletonMap("otp", "1234")))
+            .isEqualTo("Your code is 1234");
+    }
+
+    @Test
+    public void testCompiledTemplateInvalidatedOnRefresh() throws Exception {
+        tenantEmailTemplateService.onRefresh(PATH, "Your code is ${otp}");
+        Template template = tenantEmailTemplateService.getTemplate(TEMPLATE_KEY);
+
+        tenantEmailTemplateService.onRefresh(PATH, "Code: ${otp}");
+
+        Template refreshed = tenantEmailTemplateService.getTemplate(TEMPLATE_KEY);
+        assertThat(refreshed).isNotSameAs(template);
+        assertThat(FreeMarkerTemplateUtils.processTemplateIntoString(refreshed, singletonMap("otp", "1234")))
+            .isEqualTo("Code: 1234");
+        assertThat(tenantEmailTemplateService.getEmailTemplate(TEMPLATE_KEY)).isEqualTo("Code: ${otp}");
+    }
+
+    @Test
+    public void testRemovedTemplateNotFound() {
+        tenantEmailTemplateService.onRefresh(PATH, "Your code is ${otp}");
+        tenantEmailTemplateService.getTemplate(TEMPLATE_KEY);
+
+        tenantEmailTemplateService.onRefresh(PATH, "");
+
+        assertThatThrownBy(() -> tenantEmailTemplateService.getTemplate(TEMPLATE_KEY))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -2,10 +2,13 @@ package com.icthh.xm.uaa.validator;
 
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fge.jackson.JsonLoader;
+import com.github.fge.jsonschema.main.JsonSchema;
+import com.github.fge.jsonschema.main.JsonSchemaFactory;
 import com.icthh.xm.uaa.domain.User;
-import com.icthh.xm.uaa.domain.UserSpec;
 import com.icthh.xm.uaa.service.UserSpecService;
 import java.util.List;
+import lombok.SneakyThrows;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
@@ -50,7 +53,7 @@ public class JsonDataValidatorUnitTest {
     public void testValidationSuccessful() {
         // GIVEN
         when(user.getAuthorities()).thenReturn(List.of(ROLE_USER));
-        when(userSpecService.getUserSpec(List.of(ROLE_USER))).thenReturn(List.of(new UserSpec(ROLE_USER, DATA_SPEC_TEMPLATE, null)));
+        when(userSpecService.getDataSchemas(List.of(ROLE_USER))).thenReturn(List.of(dataSchema()));
 
         Map<String, Object> userData = new HashMap<>();
         userData.put("stringKey", "word");
@@ -68,7 +71,7 @@ public class JsonDataValidatorUnitTest {
     public void testValidationErrorForSchemeNotMatch() {
         // GIVEN
         when(user.getAuthorities()).thenReturn(List.of(ROLE_USER));
-        when(userSpecService.getUserSpec(List.of(ROLE_USER))).thenReturn(List.of(new UserSpec(ROLE_USER, DATA_SPEC_TEMPLATE, null)));
+        when(userSpecService.getDataSchemas(List.of(ROLE_USER))).thenReturn(List.of(dataSchema()));
 
         Map<String, Object> userData = new HashMap<>();
         userData.put("stringKey", 1);
@@ -89,7 +92,7 @@ public class JsonDataValidatorUnitTest {
     public void testValidationForEmptyDataButNotEmptySpec() {
         // GIVEN
         when(user.getAuthorities()).thenReturn(List.of(ROLE_USER));
-        when(userSpecService.getUserSpec(List.of(ROLE_USER))).thenReturn(List.of(new UserSpec(ROLE_USER, DATA_SPEC_TEMPLATE, null)));
+        when(userSpecService.getDataSchemas(List.of(ROLE_USER))).thenReturn(List.of(dataSchema()));
 
         when(user.getData()).thenReturn(Collections.emptyMap());
 
@@ -104,7 +107,7 @@ public class JsonDataValidatorUnitTest {
     public void testValidationForEmptySpec() {
         // GIVEN
         when(user.getAuthorities()).thenReturn(List.of(ROLE_USER));
-        when(userSpecService.getUserSpec(List.of(ROLE_USER))).thenReturn(Collections.emptyList());
+        when(userSpecService.getDataSchemas(List.of(ROLE_USER))).thenReturn(Collections.emptyList());
 
         // WHEN
         boolean valid = jsonDataValidator.isValid(user, constraintValidatorContext);
@@ -112,4 +115,9 @@ public class JsonDataValidatorUnitTest {
         // THEN
         assertTrue("Expected validation result is true", valid);
     }
+
+    @SneakyThrows
+    private static JsonSchema dataSchema() {
+        return JsonSchemaFactory.byDefault().getJsonSchema(JsonLoader.fromString(DATA_SPEC_TEMPLATE));
+    }
 }
@@ -1,5 +1,6 @@
 package com.icthh.xm.uaa.web.rest;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.icthh.xm.commons.tenant.TenantContextHolder;
 import com.icthh.xm.commons.tenant.TenantContextUtils;
 import com.icthh.xm.uaa.UaaApp;
@@ -9,6 +10,8 @@ import com.icthh.xm.uaa.domain.PersistentAuditEvent;
 import com.icthh.xm.uaa.repository.AuditEventPermittedRepository;
 import com.icthh.xm.uaa.repository.PersistenceAuditEventRepository;
 import com.icthh.xm.uaa.service.AuditEventService;
+import com.icthh.xm.uaa.web.rest.util.ExportUtil;
+import com.icthh.xm.uaa.web.rest.util.PaginationUtil;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -24,13 +27,17 @@ import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.transaction.AfterTransaction;
 import org.springframework.test.context.transaction.BeforeTransaction;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 
 import static com.icthh.xm.uaa.UaaTestConstants.DEFAULT_TENANT_KEY_VALUE;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasSize;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
@@ -74,6 +81,9 @@ public class AuditResourceIntTest {
     @Autowired
     private AuditEventPermittedRepository auditEventPermittedRepository;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     private PersistentAuditEvent auditEvent;
 
     private MockMvc restAuditMockMvc;
@@ -95,7 +105,7 @@ public class AuditResourceIntTest {
         AuditEventService auditEventService =
             new AuditEventService(auditEventRepository, auditEventConverter, auditEventPermittedRepository);
 
-        AuditResource auditResource = new AuditResource(auditEventService);
+        AuditResource auditResource = new AuditResource(auditEventService, objectMapper);
 
         this.restAuditMockMvc = MockMvcBuilders.standaloneSetup(auditResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
@@ -168,6 +178,76 @@ public class AuditResourceIntTest {
             .andExpect(header().string("X-Total-Count", "0"));
     }
 
+    @Test
+    public void getAuditsByDateWithKeysetPagination() throws Exception {
+        // Initialize the database with two audits in the period
+        auditEventRepository.save(auditEvent);
+        PersistentAuditEvent lastAuditEvent = new PersistentAuditEvent();
+        lastAuditEvent.setAuditEventType(SAMPLE_TYPE);
+        lastAuditEvent.setPrincipal(SAMPLE_PRINCIPAL + "last");
+        lastAuditEvent.setAuditEventDate(SAMPLE_TIMESTAMP);
+        auditEventRepository.save(lastAuditEvent);
+
+        String fromDate = SAMPLE_TIMESTAMP.minusSeconds(SECONDS_PER_DAY).toString().substring(0, 10);
+        String toDate = SAMPLE_TIMESTAMP.plusSeconds(SECONDS_PER_DAY).toString().substring(0, 10);
+        String url = "/management/audits?fromDate=" + fromDate + "&toDate=" + toDate + "&size=1";
+
+        MvcResult result = restAuditMockMvc.perform(get(url + "&cursor=&sort=id,desc&count=true"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+            .andExpect(header().string("X-Total-Count", "2"))
+            .andExpect(header().exists(PaginationUtil.NEXT_CURSOR_HEADER))
+            .andExpect(jsonPath("$", hasSize(1)))
+            .andExpect(jsonPath("$[0].principal").value(SAMPLE_PRINCIPAL + "last"))
+            .andReturn();
+
+        String cursor = result.getResponse().getHeader(PaginationUtil.NEXT_CURSOR_HEADER);
+        restAuditMockMvc.perform(get(url + "&cursor=" + cursor))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist("X-Total-Count"))
+            .andExpect(header().doesNotExist(PaginationUtil.NEXT_CURSOR_HEADER))
+            .andExpect(jsonPath("$", hasSize(1)))
+            .andExpect(jsonPath("$[0].principal").value(SAMPLE_PRINCIPAL));
+    }
+
+    @Test
+    public void exportAudits() throws Exception {
+        // Initialize the database with more audits than fit in one export batch
+        List<PersistentAuditEvent> auditEvents = new ArrayList<>();
+        for (int i = 0; i <= ExportUtil.BATCH_SIZE; i++) {
+            PersistentAuditEvent event = new PersistentAuditEvent();
+            event.setAuditEventType(SAMPLE_TYPE);
+            event.setPrincipal(SAMPLE_PRINCIPAL + i);
+            event.setAuditEventDate(SAMPLE_TIMESTAMP);
+            event.getData().put("remoteAddress", "127.0.0.1");
+            auditEvents.add(event);
+        }
+        auditEventRepository.saveAll(auditEvents);
+
+        restAuditMockMvc.perform(get("/management/audits/export"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+            .andExpect(jsonPath("$", hasSize(ExportUtil.BATCH_SIZE + 1)))
+            .andExpect(jsonPath("$[0].principal").value(SAMPLE_PRINCIPAL + 0))
+            .andExpect(jsonPath("$[" + ExportUtil.BATCH_SIZE + "].principal")
+                .value(SAMPLE_PRINCIPAL + ExportUtil.BATCH_SIZE))
+            .andExpect(jsonPath("$[0].data.remoteAddress").value("127.0.0.1"));
+    }
+
+    @Test
+    public void exportNonExistingAuditsByDate() throws Exception {
+        // Initialize the database
+        auditEventRepository.save(auditEvent);
+
+        // Generate dates for exporting audits by date, making sure the period will not contain the sample audit
+        String fromDate = SAMPLE_TIMESTAMP.minusSeconds(2 * SECONDS_PER_DAY).toString().substring(0, 10);
+        String toDate = SAMPLE_TIMESTAMP.minusSeconds(SECONDS_PER_DAY).toString().substring(0, 10);
+
+        restAuditMockMvc.perform(get("/management/audits/export?fromDate=" + fromDate + "&toDate=" + toDate))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(0)));
+    }
+
     @Test
     public void getNonExistingAudit() throws Exception {
         // Get the audit
@@ -4,15 +4,17 @@ import com.icthh.xm.commons.i18n.error.web.ExceptionTranslator;
 import com.icthh.xm.commons.tenant.TenantContextHolder;
 import com.icthh.xm.commons.tenant.TenantContextUtils;
 import com.icthh.xm.uaa.UaaApp;
+import com.icthh.xm.uaa.config.ApplicationProperties;
 import com.icthh.xm.uaa.config.xm.XmOverrideConfiguration;
-import com.icthh.xm.uaa.repository.CustomAuditEventRepository;
+import com.icthh.xm.uaa.repository.kafka.SystemTopicProducer;
+import com.icthh.xm.uaa.security.TokenConstraintsService;
 import com.icthh.xm.uaa.service.OnlineUsersService;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.actuate.audit.AuditEvent;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
@@ -20,20 +22,17 @@ import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
-import java.sql.Date;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
-import java.util.Collections;
 
-import static org.springframework.boot.actuate.security.AuthenticationAuditListener.AUTHENTICATION_SUCCESS;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
- * Test class for the ClientResource REST controller.
+ * Test class for the OnlineUsersResource REST controller.
  *
- * @see ClientResource
+ * @see OnlineUsersResource
  */
 @RunWith(SpringRunner.class)
 @SpringBootTest(classes = {UaaApp.class, XmOverrideConfiguration.class})
@@ -41,10 +40,10 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 public class OnlineUsersResourceIntTest {
 
     @Autowired
-    private CustomAuditEventRepository auditEventRepository;
+    private TokenConstraintsService tokenConstraintsService;
 
     @Autowired
-    private OnlineUsersService onlineUsersService;
+    private ApplicationProperties applicationProperties;
 
     @Autowired
     private ExceptionTranslator exceptionTranslator;
@@ -52,11 +51,18 @@ public class OnlineUsersResourceIntTest {
     @Autowired
     private TenantContextHolder tenantContextHolder;
 
+    @Mock
+    private SystemTopicProducer systemTopicProducer;
+
+    private OnlineUsersService onlineUsersService;
+
     private MockMvc restClientMockMvc;
 
     @Before
     public void setup() {
         MockitoAnnotations.initMocks(this);
+        onlineUsersService = new OnlineUsersService(tenantContextHolder, tokenConstraintsService,
+            systemTopicProducer, applicationProperties);
         this.restClientMockMvc = MockMvcBuilders.standaloneSetup(new OnlineUsersResource(onlineUsersService))
             .setControllerAdvice(exceptionTranslator).build();
         TenantContextUtils.setTenant(tenantContextHolder, "XM");
@@ -64,19 +70,14 @@ public class OnlineUsersResourceIntTest {
 
     @Test
     public void getAllOnlineUsers() throws Exception {
-        // Initialize the database
-        auditEventRepository.add(new AuditEvent("user1", AUTHENTICATION_SUCCESS));
-        auditEventRepository.add(new AuditEvent(
-            Instant.now().minus(1, ChronoUnit.DAYS),
-            "user2",
-            AUTHENTICATION_SUCCESS,
-            Collections
-                .emptyMap()));
+        // Initialize the online users
+        onlineUsersService.record("user1");
+        onlineUsersService.record("user2", Instant.now().minus(1, ChronoUnit.DAYS));
 
-        // Get all the clientList
+        // Get the number of online users
         restClientMockMvc.perform(get("/api/onlineUsers"))
             .andExpect(status().isOk())
             .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
-            .andReturn().getResponse().equals(1);
+            .andExpect(content().string("1"));
     }
 }
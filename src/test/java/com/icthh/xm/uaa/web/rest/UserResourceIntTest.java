@@ -10,20 +10,25 @@ import com.icthh.xm.commons.tenant.TenantContextUtils;
 import com.icthh.xm.lep.api.LepManager;
 import com.icthh.xm.uaa.UaaApp;
 import com.icthh.xm.uaa.commons.XmRequestContextHolder;
+import com.icthh.xm.uaa.config.ApplicationProperties;
 import com.icthh.xm.uaa.config.xm.XmOverrideConfiguration;
 import com.icthh.xm.uaa.domain.User;
 import com.icthh.xm.uaa.domain.UserLogin;
 import com.icthh.xm.uaa.domain.UserLoginType;
 import com.icthh.xm.uaa.domain.properties.TenantProperties;
+import com.icthh.xm.uaa.repository.UserLoginRepository;
 import com.icthh.xm.uaa.repository.UserRepository;
 import com.icthh.xm.uaa.repository.kafka.ProfileEventProducer;
 import com.icthh.xm.uaa.service.TenantPropertiesService;
+import com.icthh.xm.uaa.service.UserImportService;
 import com.icthh.xm.uaa.service.UserLoginService;
 import com.icthh.xm.uaa.service.UserMailService;
 import com.icthh.xm.uaa.service.UserService;
 import com.icthh.xm.uaa.service.dto.UserDTO;
+import com.icthh.xm.uaa.service.dto.UserImportStatusDTO;
 import com.icthh.xm.uaa.service.mapper.UserMapper;
 import com.icthh.xm.uaa.service.query.UserQueryService;
+import com.icthh.xm.uaa.web.rest.util.PaginationUtil;
 import com.icthh.xm.uaa.web.rest.vm.ManagedUserVM;
 
 import java.lang.reflect.Field;
@@ -41,6 +46,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationDetails;
@@ -48,12 +54,14 @@ import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.transaction.BeforeTransaction;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.ReflectionUtils;
 
 import javax.persistence.EntityManager;
+import javax.validation.Validator;
 import java.time.Instant;
 import java.util.Collections;
 import java.util.HashMap;
@@ -81,6 +89,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -161,9 +170,26 @@ public class UserResourceIntTest {
     @Autowired
     private TenantPropertiesService tenantPropertiesService;
 
+    @Autowired
+    private UserLoginRepository userLoginRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private Validator validator;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
     @Mock
     private ProfileEventProducer profileEventProducer;
 
+    private UserImportService userImportService;
+
     private MockMvc restUserMockMvc;
 
     private User user;
@@ -193,11 +219,16 @@ public class UserResourceIntTest {
         TenantContextUtils.setTenant(tenantContextHolder, DEFAULT_TENANT_KEY_VALUE);
         setTenantProps(tenantProperties -> {});
         doNothing().when(profileEventProducer).send(any());
+        userImportService = new UserImportService(userService, userLoginService, userLoginRepository,
+            profileEventProducer, passwordEncoder, tenantContextHolder, validator, objectMapper,
+            applicationProperties);
         UserResource userResource = new UserResource(userLoginService,
             mailService,
             userService,
             profileEventProducer,
-            userQueryService);
+            userQueryService,
+            userImportService,
+            objectMapper);
         this.restUserMockMvc = MockMvcBuilders.standaloneSetup(userResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
             .setControllerAdvice(exceptionTranslator)
@@ -210,6 +241,7 @@ public class UserResourceIntTest {
 
     @After
     public void destroy() {
+        userImportService.destroy();
         tenantContextHolder.getPrivilegedContext().destroyCurrentContext();
         lepManager.endThreadContext();
     }
@@ -432,6 +464,38 @@ public class UserResourceIntTest {
             .andExpect(jsonPath("$.[*].langKey").value(hasItem(DEFAULT_LANGKEY)));
     }
 
+    @Test
+    @Transactional
+    public void getAllUsersWithKeysetPagination() throws Exception {
+        userRepository.saveAndFlush(user);
+        User lastUser = createEntity("ROLE_ADMIN");
+        lastUser.getLogins().get(0).setLogin("last");
+        userRepository.saveAndFlush(lastUser);
+
+        MvcResult result = restUserMockMvc.perform(get("/api/users?cursor=&sort=id,desc&size=1&count=true")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(header().exists(PaginationUtil.NEXT_CURSOR_HEADER))
+            .andExpect(header().exists("X-Total-Count"))
+            .andExpect(jsonPath("$", hasSize(1)))
+            .andExpect(jsonPath("$[0].userKey").value(lastUser.getUserKey()))
+            .andExpect(jsonPath("$[0].logins[0].login").value("last"))
+            .andReturn();
+
+        String cursor = result.getResponse().getHeader(PaginationUtil.NEXT_CURSOR_HEADER);
+        restUserMockMvc.perform(get("/api/users?size=1&cursor=" + cursor)
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist("X-Total-Count"))
+            .andExpect(jsonPath("$", hasSize(1)))
+            .andExpect(jsonPath("$[0].userKey").value(user.getUserKey()))
+            .andExpect(jsonPath("$[0].logins[0].login").value("test"));
+
+        restUserMockMvc.perform(get("/api/users?cursor=invalid")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isBadRequest());
+    }
+
     @Test
     @Transactional
     public void getUser() throws Exception {
@@ -502,6 +566,35 @@ public class UserResourceIntTest {
             .andExpect(jsonPath("$", hasSize(1)));
     }
 
+    @Test
+    @Transactional
+    public void findUserByFilterWithKeysetPagination() throws Exception {
+        userRepository.saveAndFlush(user);
+        User userHomer = createEntity("ROLE_ADMIN");
+        userHomer.getLogins().get(0).setLogin("al-homero");
+        userHomer.getLogins().add(new UserLogin() {{
+            setLogin("donutEater");
+            setTypeKey(UserLoginType.EMAIL.getValue());
+            setUser(userHomer);
+        }});
+        userRepository.saveAndFlush(userHomer);
+
+        MvcResult result = restUserMockMvc.perform(get("/api/users/filter?login.contains=e&cursor=&size=1"))
+            .andExpect(status().isOk())
+            .andExpect(header().exists(PaginationUtil.NEXT_CURSOR_HEADER))
+            .andExpect(jsonPath("$", hasSize(1)))
+            .andExpect(jsonPath("$[0].userKey").value(user.getUserKey()))
+            .andReturn();
+
+        String cursor = result.getResponse().getHeader(PaginationUtil.NEXT_CURSOR_HEADER);
+        restUserMockMvc.perform(get("/api/users/filter?login.contains=e&size=1&cursor=" + cursor))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist(PaginationUtil.NEXT_CURSOR_HEADER))
+            .andExpect(jsonPath("$", hasSize(1)))
+            .andExpect(jsonPath("$[0].userKey").value(userHomer.getUserKey()))
+            .andExpect(jsonPath("$[0].logins", hasSize(2)));
+    }
+
     @Test
     @Transactional
     public void getUserByLoginContains() throws Exception {
@@ -1106,6 +1199,86 @@ public class UserResourceIntTest {
         assertThat(testUser.getAuthorities()).contains("test", "ROLE_ADMIN");
     }
 
+    @Test
+    public void importUsersFromNdjson() throws Exception {
+        beforeTransaction();
+        userRepository.saveAndFlush(user);
+
+        String ndjson = "{\"firstName\":\"first\",\"logins\":[{\"typeKey\":\"LOGIN.EMAIL\",\"login\":\" First@Example.com\"}]}\n"
+            + "{\"firstName\":\"second\",\"authorities\":[\"ROLE_ADMIN\"],"
+            + "\"logins\":[{\"typeKey\":\"LOGIN.NICKNAME\",\"login\":\"second\"}]}\n"
+            + "\n"
+            + "{\"firstName\":\"duplicate\",\"logins\":[{\"typeKey\":\"LOGIN.EMAIL\",\"login\":\"first@example.com\"}]}\n"
+            + "{\"firstName\":\"existing\",\"logins\":[{\"typeKey\":\"LOGIN.EMAIL\",\"login\":\"TEST\"}]}\n"
+            + "{\"firstName\":\"no logins\",\"logins\":[]}\n"
+            + "{\"firstName\":\"super\",\"authorities\":[\"SUPER-ADMIN\"],"
+            + "\"logins\":[{\"typeKey\":\"LOGIN.EMAIL\",\"login\":\"super@example.com\"}]}\n"
+            + "{not json\n";
+
+        String response = restUserMockMvc.perform(post("/api/users/import")
+            .contentType("application/x-ndjson")
+            .content(ndjson))
+            .andExpect(status().isAccepted())
+            .andExpect(header().exists("Location"))
+            .andExpect(jsonPath("$.rows").value(7))
+            .andReturn().getResponse().getContentAsString();
+
+        UserImportStatusDTO status = awaitImport(objectMapper.readValue(response, UserImportStatusDTO.class).getId());
+        assertThat(status.getState()).isEqualTo(UserImportStatusDTO.State.COMPLETED);
+        assertThat(status.getCreated()).isEqualTo(2);
+        assertThat(status.getFailed()).isEqualTo(5);
+        assertThat(status.getErrors()).extracting(UserImportStatusDTO.RowErrorDTO::getRow)
+            .containsExactlyInAnyOrder(4L, 5L, 6L, 7L, 8L);
+        assertThat(status.getErrors()).filteredOn(error -> error.getRow() == 8L)
+            .extracting(UserImportStatusDTO.RowErrorDTO::getCode).containsExactly(ERROR_IMPORT_PARSE);
+        assertThat(status.getErrors()).filteredOn(error -> error.getRow() == 7L)
+            .extracting(UserImportStatusDTO.RowErrorDTO::getCode)
+            .containsExactly(ERROR_SUPER_ADMIN_FORBIDDEN_OPERATION);
+
+        User first = userService.findOneByLogin("first@example.com").orElseThrow();
+        assertThat(first.getFirstName()).isEqualTo("first");
+        assertThat(first.getAuthorities()).containsExactly(ROLE_USER);
+        assertThat(first.getResetKey()).isNotNull();
+        assertThat(userService.findOneByLogin("second").orElseThrow().getAuthorities()).containsExactly("ROLE_ADMIN");
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void importUsersFromCsv() throws Exception {
+        beforeTransaction();
+        String csv = "firstName,lastName,authorities,email,msisdn\n"
+            + "first,last,ROLE_ADMIN;ROLE_USER,csv@example.com,380000000000\n"
+            + "second,last,,,\n";
+
+        String response = restUserMockMvc.perform(post("/api/users/import")
+            .contentType("text/csv")
+            .content(csv))
+            .andExpect(status().isAccepted())
+            .andReturn().getResponse().getContentAsString();
+
+        UserImportStatusDTO status = awaitImport(objectMapper.readValue(response, UserImportStatusDTO.class).getId());
+        assertThat(status.getCreated()).isEqualTo(1);
+        assertThat(status.getErrors()).extracting(UserImportStatusDTO.RowErrorDTO::getCode)
+            .containsExactly(ERROR_IMPORT_VALIDATION);
+
+        User user = userService.findOneByLogin("380000000000").orElseThrow();
+        assertThat(user.getAuthorities()).containsExactly("ROLE_ADMIN", "ROLE_USER");
+        assertThat(user.getLogins()).hasSize(2);
+        userRepository.deleteAll();
+    }
+
+    @SneakyThrows
+    private UserImportStatusDTO awaitImport(String id) {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            UserImportStatusDTO status = userImportService.getStatus(id).orElseThrow();
+            if (status.getState() != UserImportStatusDTO.State.RUNNING) {
+                return status;
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError("User import " + id + " is not completed");
+    }
+
     private void initSecurityContextWithUserKey(String userKey) {
         Map<String, String> detailsMap = new HashMap<>();
         detailsMap.put("user_key", userKey);
@@ -1,16 +1,22 @@
 package com.icthh.xm.uaa.web.rest.util;
 
+import com.icthh.xm.commons.exceptions.BusinessException;
+import com.icthh.xm.uaa.repository.KeysetPage;
+import com.icthh.xm.uaa.repository.KeysetPageable;
 import org.junit.Test;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpHeaders;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -41,4 +47,50 @@ public class PaginationUtilUnitTest {
         assertTrue(Long.valueOf(xTotalCountHeaders.get(0)).equals(400L));
     }
 
+    @Test
+    public void generateKeysetPaginationHttpHeadersTest() {
+        KeysetPageable pageable = new KeysetPageable(null, Sort.Direction.DESC, 50, true);
+        KeysetPage<String> page = new KeysetPage<>(new ArrayList<>(), pageable, 42L, 400L);
+        HttpHeaders headers = PaginationUtil.generateKeysetPaginationHttpHeaders(page,
+            UriComponentsBuilder.fromUriString("/api/_search/example?roleKey=ROLE_USER&cursor=&count=true"));
+
+        String cursor = headers.getFirst(PaginationUtil.NEXT_CURSOR_HEADER);
+        assertNotNull(cursor);
+        assertEquals("</api/_search/example?roleKey=ROLE_USER&count=true&cursor=" + cursor + "&size=50>; rel=\"next\","
+            + "</api/_search/example?roleKey=ROLE_USER&count=true&cursor=&size=50>; rel=\"first\"",
+            headers.getFirst(HttpHeaders.LINK));
+        assertEquals("400", headers.getFirst("X-Total-Count"));
+
+        KeysetPageable next = PaginationUtil.getKeysetPageable(cursor, PageRequest.of(0, 50), false);
+        assertEquals(Long.valueOf(42L), next.getAfterId());
+        assertEquals(Sort.Direction.DESC, next.getDirection());
+        assertEquals(50, next.getSize());
+    }
+
+    @Test
+    public void generateKeysetPaginationHttpHeadersForLastPageTest() {
+        KeysetPageable pageable = new KeysetPageable(42L, Sort.Direction.ASC, 20, false);
+        KeysetPage<String> page = new KeysetPage<>(new ArrayList<>(), pageable, null, null);
+        HttpHeaders headers = PaginationUtil.generateKeysetPaginationHttpHeaders(page,
+            UriComponentsBuilder.fromUriString("/api/_search/example?cursor=abc"));
+
+        assertNull(headers.getFirst(PaginationUtil.NEXT_CURSOR_HEADER));
+        assertNull(headers.getFirst("X-Total-Count"));
+        assertEquals("</api/_search/example?cursor=&size=20>; rel=\"first\"", headers.getFirst(HttpHeaders.LINK));
+    }
+
+    @Test
+    public void getFirstKeysetPageableTest() {
+        KeysetPageable pageable = PaginationUtil.getKeysetPageable("",
+            PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "id")), true);
+        assertNull(pageable.getAfterId());
+        assertEquals(Sort.Direction.DESC, pageable.getDirection());
+        assertEquals(10, pageable.getSize());
+        assertTrue(pageable.isWithCount());
+    }
+
+    @Test(expected = BusinessException.class)
+    public void getKeysetPageableWithInvalidCursorTest() {
+        PaginationUtil.getKeysetPageable("invalid", PageRequest.of(0, 10), false);
+    }
 }